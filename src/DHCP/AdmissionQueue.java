@@ -0,0 +1,219 @@
+package DHCP;
+
+import java.util.ArrayDeque;
+
+import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+
+/**
+ * Class representing the bounded queue between receiving and handling client messages.
+ *
+ * Messages are admitted in one of three priority classes and always handled highest class first.
+ * Losing a renewal eventually costs a working client its address, while a delayed DHCPDISCOVER
+ * is simply retransmitted, so when the queue is full an incoming message evicts the oldest
+ * message of the lowest class below its own. If there is none, the incoming message is shed.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class AdmissionQueue {
+
+	/**
+	 * Enumeration of the priority classes of client messages, highest priority first.
+	 */
+	public enum Priority {
+
+		/**
+		 * Messages of clients holding a lease: DHCPRELEASE, DHCPDECLINE and renewing or rebinding DHCPREQUEST.
+		 */
+		HIGH,
+
+		/**
+		 * DHCPREQUEST of clients selecting an offer or rebooting, and DHCPINFORM.
+		 */
+		MEDIUM,
+
+		/**
+		 * DHCPDISCOVER and messages that can not be classified.
+		 */
+		LOW
+	}
+
+	/**
+	 * Returns the priority class of the given encoded client message.
+	 *
+	 * @param type
+	 *        The type of the client message.
+	 * @param data
+	 *        The encoded client message.
+	 * @return HIGH for a DHCPRELEASE, a DHCPDECLINE or a DHCPREQUEST with the client IP address filled in,
+	 *         MEDIUM for any other DHCPREQUEST and for a DHCPINFORM, LOW otherwise.
+	 */
+	public static Priority classify(MessageType type, byte[] data) {
+		switch(type) {
+			case RELEASE:
+			case DECLINE:
+				return Priority.HIGH;
+			case REQUEST:
+				for(int i = Message.CIADDR_INDEX; i < Message.CIADDR_INDEX + 4; i++) {
+					if(data[i] != 0)
+						return Priority.HIGH;
+				}
+				return Priority.MEDIUM;
+			case INFORM:
+				return Priority.MEDIUM;
+			default:
+				return Priority.LOW;
+		}
+	}
+
+	/**
+	 * Initialize the new admission queue with given capacity.
+	 *
+	 * @param capacity
+	 *        The maximum number of queued messages over all priority classes.
+	 * @param dropCounters
+	 *        The counters to record shed messages in, as dropped because the queue is full.
+	 * @throws IllegalArgumentException
+	 *         The capacity is not positive.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public AdmissionQueue(int capacity, DropCounters dropCounters) throws IllegalArgumentException {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("The capacity of the queue has to be positive.");
+		this.capacity = capacity;
+		this.dropCounters = dropCounters;
+		this.queues = new ArrayDeque[Priority.values().length];
+		for(int i = 0; i < queues.length; i++)
+			queues[i] = new ArrayDeque<ReceivedData>();
+		this.shed = new long[Priority.values().length];
+	}
+
+	/**
+	 * Variable representing the maximum number of queued messages.
+	 */
+	private final int capacity;
+
+	/**
+	 * Variable representing the counters shed messages are recorded in.
+	 */
+	private final DropCounters dropCounters;
+
+	/**
+	 * Variable representing the queued messages of each priority class, indexed on the ordinal of the class.
+	 */
+	private final ArrayDeque<ReceivedData>[] queues;
+
+	/**
+	 * Variable representing the number of queued messages over all priority classes.
+	 */
+	private int depth = 0;
+
+	/**
+	 * Variable representing the number of shed messages of each priority class, indexed on the ordinal of the class.
+	 */
+	private final long[] shed;
+
+	/**
+	 * Return the maximum number of queued messages.
+	 *
+	 * @return The capacity of the queue.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Return the number of queued messages over all priority classes.
+	 *
+	 * @return The depth of the queue.
+	 */
+	public synchronized int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Return the number of queued messages of the given priority class.
+	 *
+	 * @param priority
+	 *        The priority class.
+	 * @return The depth of the queue for the priority class.
+	 */
+	public synchronized int getDepth(Priority priority) {
+		return queues[priority.ordinal()].size();
+	}
+
+	/**
+	 * Return the number of messages of the given priority class that were shed, either on arrival or by eviction.
+	 *
+	 * @param priority
+	 *        The priority class.
+	 * @return The number of shed messages of the priority class.
+	 */
+	public synchronized long getShed(Priority priority) {
+		return shed[priority.ordinal()];
+	}
+
+	/**
+	 * Return the number of messages that were shed over all priority classes.
+	 *
+	 * @return The number of shed messages.
+	 */
+	public synchronized long getShed() {
+		long result = 0;
+		for(long count: shed)
+			result += count;
+		return result;
+	}
+
+	/**
+	 * Admits a message to the queue. If the queue is full, the oldest message of the lowest
+	 * priority class below the class of the given message is evicted to make room.
+	 *
+	 * @param message
+	 *        The received message.
+	 * @param priority
+	 *        The priority class of the message.
+	 * @return True if the message was queued, false if it was shed.
+	 */
+	public synchronized boolean offer(ReceivedData message, Priority priority) {
+		if(depth == capacity) {
+			int victim = queues.length - 1;
+			while(victim > priority.ordinal() && queues[victim].isEmpty())
+				victim--;
+			if(victim <= priority.ordinal()) {
+				shed[priority.ordinal()]++;
+				dropCounters.record(DropReason.QUEUE_FULL);
+				return false;
+			}
+			queues[victim].pollFirst();
+			shed[victim]++;
+			dropCounters.record(DropReason.QUEUE_FULL);
+			depth--;
+		}
+		queues[priority.ordinal()].addLast(message);
+		depth++;
+		notify();
+		return true;
+	}
+
+	/**
+	 * Removes and returns the oldest message of the highest non-empty priority class,
+	 * waiting until a message is queued.
+	 *
+	 * @return The message to handle next.
+	 * @throws InterruptedException
+	 *         The waiting thread was interrupted.
+	 */
+	public synchronized ReceivedData take() throws InterruptedException {
+		while(depth == 0)
+			wait();
+		for(ArrayDeque<ReceivedData> queue: queues) {
+			if(!queue.isEmpty()) {
+				depth--;
+				return queue.pollFirst();
+			}
+		}
+		throw new IllegalStateException("The queue depth does not match the queued messages.");
+	}
+}
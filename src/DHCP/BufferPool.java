@@ -0,0 +1,107 @@
+package DHCP;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class representing a pool of equally sized byte buffers, reused for received packets
+ * instead of allocating a new buffer per packet.
+ *
+ * A buffer is acquired before receiving a packet and released once the packet is sent on.
+ * When all pooled buffers are in use, a new buffer is allocated; a released buffer is kept
+ * only if the pool is not full, so the pool never grows beyond its capacity.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class BufferPool {
+
+	/**
+	 * Initialize the new buffer pool, filled with the given number of buffers of the given size.
+	 *
+	 * @param capacity
+	 *        The maximum number of pooled buffers.
+	 * @param bufferSize
+	 *        The size of every buffer, in bytes.
+	 * @throws IllegalArgumentException
+	 *         The capacity or the buffer size is not positive.
+	 */
+	public BufferPool(int capacity, int bufferSize) throws IllegalArgumentException {
+		if(capacity <= 0 || bufferSize <= 0)
+			throw new IllegalArgumentException("The capacity and the buffer size of the pool have to be positive.");
+		this.bufferSize = bufferSize;
+		this.buffers = new ArrayBlockingQueue<byte[]>(capacity);
+		for(int i = 0; i < capacity; i++)
+			buffers.offer(new byte[bufferSize]);
+	}
+
+	/**
+	 * Variable representing the size of every buffer.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * Variable representing the buffers that are not in use.
+	 */
+	private final ArrayBlockingQueue<byte[]> buffers;
+
+	/**
+	 * Variable representing the number of buffers allocated because the pool was empty.
+	 */
+	private final LongAdder allocations = new LongAdder();
+
+	/**
+	 * Return the size of every buffer.
+	 *
+	 * @return The buffer size, in bytes.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Return the number of buffers that are not in use.
+	 *
+	 * @return The number of pooled buffers.
+	 */
+	public int getAvailable() {
+		return buffers.size();
+	}
+
+	/**
+	 * Return the number of buffers allocated because the pool was empty.
+	 *
+	 * @return The number of extra allocations.
+	 */
+	public long getAllocations() {
+		return allocations.sum();
+	}
+
+	/**
+	 * Takes a buffer out of the pool, allocating a new one if the pool is empty.
+	 *
+	 * @return A buffer of the buffer size of the pool.
+	 */
+	public byte[] acquire() {
+		byte[] buffer = buffers.poll();
+		if(buffer == null) {
+			allocations.increment();
+			buffer = new byte[bufferSize];
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. The buffer is dropped if the pool is full.
+	 *
+	 * @param buffer
+	 *        The buffer that is no longer in use.
+	 * @throws IllegalArgumentException
+	 *         The buffer does not have the buffer size of the pool.
+	 */
+	public void release(byte[] buffer) throws IllegalArgumentException {
+		if(buffer.length != bufferSize)
+			throw new IllegalArgumentException("The buffer does not belong to this pool.");
+		buffers.offer(buffer);
+	}
+}
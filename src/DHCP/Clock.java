@@ -0,0 +1,30 @@
+package DHCP;
+
+/**
+ * Interface representing the source of time of the lease logic of servers, pools and clients.
+ *
+ * The system clock follows the wall clock. A virtual clock only moves when it is advanced, so
+ * days of lease churn can be replayed in seconds.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public interface Clock {
+
+	/**
+	 * Return the current time.
+	 *
+	 * @return The current time (in milliseconds since the epoch).
+	 */
+	long currentTimeMillis();
+
+	/**
+	 * Waits until the given time has passed on this clock.
+	 *
+	 * @param millis
+	 *        The time to wait (in milliseconds).
+	 * @throws InterruptedException
+	 *         The waiting thread was interrupted.
+	 */
+	void sleep(long millis) throws InterruptedException;
+}
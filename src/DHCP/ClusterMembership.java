@@ -0,0 +1,202 @@
+package DHCP;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+
+/**
+ * Class representing the view a server of a cluster has of the live servers of the cluster, and the
+ * load balancing of the clients over them.
+ *
+ * Clients are spread with the hash of RFC 3074 (DHC Load Balancing Algorithm): the client hardware
+ * address of a message is hashed to one of 256 buckets and every bucket is owned by one live server,
+ * the buckets being divided in consecutive ranges over the servers in order of their identifier. A
+ * server only answers the clients of its own buckets. Every pool is cut into as many slices as there
+ * are live servers and a server only allocates addresses from the slice with its index in the view,
+ * so servers never hand out the same address.
+ *
+ * When servers join or leave, the buckets and slices are rebalanced over the new view. Since the
+ * other servers may see the change a moment later, a server answers no messages that can allocate an
+ * address, DISCOVERs and REQUESTs, for a short time after its view changed.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class ClusterMembership {
+
+	/**
+	 * Constant representing the number of hash buckets of the load balancing.
+	 */
+	public static final int NUMBER_OF_BUCKETS = 256;
+
+	/**
+	 * Constant representing the time (in milliseconds) after a view change during which no addresses are allocated.
+	 */
+	public static final long SETTLE_TIME = 2 * LeaseReplicator.HEARTBEAT_INTERVAL;
+
+	/**
+	 * Constant representing the mixing table of the hash of RFC 3074, a permutation of 0..255.
+	 */
+	private static final int[] MIXING_TABLE = {
+		251, 175, 119, 215,  81,  14,  79, 191, 103,  49, 181, 143, 186, 157,   0, 232,
+		 31,  32,  55,  60, 152,  58,  17, 237, 174,  70, 160, 144, 220,  90,  57, 223,
+		 59,   3,  18, 140, 111, 166, 203, 196, 134, 243, 124,  95, 222, 179, 197,  65,
+		180,  48,  36,  15, 107,  46, 233, 130, 165,  30, 123, 161, 209,  23,  97,  16,
+		 40,  91, 219,  61, 100,  10, 210, 109, 250, 127,  22, 138,  29, 108, 244,  67,
+		207,   9, 178, 204,  74,  98, 126, 249, 167, 116,  34,  77, 193, 200, 121,   5,
+		 20, 113,  71,  35, 128,  13, 182,  94,  25, 226, 227, 199,  75,  27,  41, 245,
+		230, 224,  43, 225, 177,  26, 155, 150, 212, 142, 218, 115, 241,  73,  88, 105,
+		 39, 114,  62, 255, 192, 201, 145, 214, 168, 158, 221, 148, 154, 122,  12,  84,
+		 82, 163,  44, 139, 228, 236, 205, 242, 217,  11, 187, 146, 159,  64,  86, 239,
+		195,  42, 106, 198, 118, 112, 184, 172,  87,   2, 173, 117, 176, 229, 247, 253,
+		137, 185,  99, 164, 102, 147,  45,  66, 231,  52, 141, 211, 194, 206, 246, 238,
+		 56, 110,  78, 248,  63, 240, 189,  93,  92,  51,  53, 183,  19, 171,  72,  50,
+		 33, 104, 101,  69,   8, 252,  83, 120,  76, 135,  85,  54, 202, 125, 188, 213,
+		 96, 235, 136, 208, 162, 129, 190, 132, 156,  38,  47,   1,   7, 254,  24,   4,
+		216, 131,  89,  21,  28, 133,  37, 153, 149,  80, 170,  68,   6, 169, 234, 151
+	};
+
+	/**
+	 * Initialize the membership of the server with the given identifier, alone in the cluster until
+	 * other servers are seen. The pools of the given scopes are sliced according to the view.
+	 *
+	 * @param nodeId
+	 *        The identifier of the server, unique in the cluster.
+	 * @param scopeConfiguration
+	 *        The scopes served by the server.
+	 */
+	public ClusterMembership(int nodeId, ScopeConfiguration scopeConfiguration) {
+		this.nodeId = nodeId;
+		this.scopeConfiguration = scopeConfiguration;
+		this.members = new int[] {nodeId};
+	}
+
+	/**
+	 * Variable representing the identifier of the server.
+	 */
+	private final int nodeId;
+
+	/**
+	 * Variable representing the scopes whose pools are sliced over the cluster.
+	 */
+	private final ScopeConfiguration scopeConfiguration;
+
+	/**
+	 * Variable representing the identifiers of the live servers, in ascending order, this server included.
+	 */
+	private volatile int[] members;
+
+	/**
+	 * Variable representing the time (System.nanoTime) the view last changed, 0 if it never changed.
+	 */
+	private volatile long viewChanged = 0;
+
+	/**
+	 * Return the identifier of the server.
+	 *
+	 * @return The node identifier.
+	 */
+	public int getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Return the identifiers of the live servers of the cluster.
+	 *
+	 * @return The identifiers, in ascending order, this server included.
+	 */
+	public int[] getMembers() {
+		return members.clone();
+	}
+
+	/**
+	 * Updates the view of the cluster to the given live peers. If the view changed, the hash buckets
+	 * and the slices of the pools are rebalanced over the new view.
+	 *
+	 * @param peers
+	 *        The identifiers of the other servers that are alive.
+	 * @return True if the view changed; false otherwise.
+	 */
+	public synchronized boolean update(Collection<Integer> peers) {
+		TreeSet<Integer> view = new TreeSet<Integer>(peers);
+		view.add(nodeId);
+		int[] updated = view.stream().mapToInt(Integer::intValue).toArray();
+		if(Arrays.equals(updated, members))
+			return false;
+		int index = Arrays.binarySearch(updated, nodeId);
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().setOwnedSlice(index, updated.length);
+		viewChanged = System.nanoTime();
+		members = updated;
+		System.out.println("Cluster view of node " + nodeId + " changed to " + Arrays.toString(updated) + ": owning slice " + (index + 1) + " of " + updated.length + ".");
+		return true;
+	}
+
+	/**
+	 * Return the identifier of the server owning the given hash bucket.
+	 *
+	 * @param bucket
+	 *        The hash bucket.
+	 * @return The identifier of the owning server.
+	 */
+	public int getOwner(int bucket) {
+		int[] members = this.members;
+		return members[bucket * members.length / NUMBER_OF_BUCKETS];
+	}
+
+	/**
+	 * Checks whether this server answers the given encoded client message: the client hashes to a
+	 * bucket of this server, and, for a message that can allocate an address, the view did not change
+	 * too recently.
+	 *
+	 * @param data
+	 *        The encoded message.
+	 * @param type
+	 *        The type of the message.
+	 * @return True if this server handles the message; false if it leaves it to another server.
+	 */
+	public boolean serves(byte[] data, MessageType type) {
+		if(getOwner(hashClient(data)) != nodeId)
+			return false;
+		long changed = viewChanged;
+		if(type != MessageType.DISCOVER && type != MessageType.REQUEST)
+			return true;
+		return changed == 0 || System.nanoTime() - changed > SETTLE_TIME * 1000000;
+	}
+
+	/**
+	 * Return the hash bucket of the client of the given encoded message: the hash of RFC 3074 of its
+	 * client hardware address, without trailing zero bytes.
+	 *
+	 * @param data
+	 *        The encoded message.
+	 * @return The hash bucket, between 0 and 255.
+	 */
+	public static int hashClient(byte[] data) {
+		int length = Message.CHADDR_LENGTH;
+		while(length > 0 && data[Message.CHADDR_INDEX + length - 1] == 0)
+			length--;
+		return hash(data, Message.CHADDR_INDEX, length);
+	}
+
+	/**
+	 * Return the hash of RFC 3074 of the given key.
+	 *
+	 * @param key
+	 *        The array holding the key.
+	 * @param offset
+	 *        The offset of the key in the array.
+	 * @param length
+	 *        The length of the key.
+	 * @return The hash, between 0 and 255.
+	 */
+	public static int hash(byte[] key, int offset, int length) {
+		int hash = length & 0xFF;
+		for(int i = length - 1; i >= 0; i--)
+			hash = MIXING_TABLE[hash ^ (key[offset + i] & 0xFF)];
+		return hash;
+	}
+}
@@ -0,0 +1,196 @@
+package DHCP;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class representing a server of a cluster of DHCP servers sharing the same scopes.
+ *
+ * Every server streams its own lease changes to every other server with a {@link LeaseReplicator}
+ * and applies the changes of the other servers with one {@link ReplicationReceiver}, so all servers
+ * know all leases. A server sees a peer as alive while it hears from the peer both ways: the peer
+ * acknowledges the heartbeats of the replication to it, and the replication of the peer itself keeps
+ * coming in. A peer that can be reached but can not reach back is thus left out, like one that is
+ * down. A server rebalances the clients and the slices of the pools over the live servers whenever that changes
+ * (see {@link ClusterMembership}). A server that leaves is thus replaced by the others, and a server
+ * that (re)joins first receives the leases of the others and then takes back its share.
+ *
+ * The servers can run as separate processes on one host, each on its own DHCP and replication port.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class ClusterNode {
+
+	/**
+	 * Initialize a new server of a cluster.
+	 *
+	 * @param nodeId
+	 *        The identifier of the server, unique in the cluster.
+	 * @param serverIP
+	 *        The IP at which the server can be reached.
+	 * @param serverPort
+	 *        The port at which the server listens for DHCP messages.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes, the same for all servers of the cluster.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoint of the server.
+	 * @param clusterPort
+	 *        The TCP port the replication connections of the other servers are accepted on.
+	 * @param peers
+	 *        The replication addresses of the other servers, keyed on their identifier.
+	 * @throws IllegalArgumentException
+	 *         The identifier of the server is one of the peers.
+	 */
+	public ClusterNode(int nodeId, InetAddress serverIP, int serverPort, int leaseTime, ScopeConfiguration scopeConfiguration,
+			Transport.Factory transportFactory, int clusterPort, Map<Integer, InetSocketAddress> peers) throws IllegalArgumentException {
+		if(peers.containsKey(nodeId))
+			throw new IllegalArgumentException("Node " + nodeId + " can not be its own peer.");
+		this.serverIP = serverIP;
+		this.serverPort = serverPort;
+		this.leaseTime = leaseTime;
+		this.scopeConfiguration = scopeConfiguration;
+		this.transportFactory = transportFactory;
+		this.membership = new ClusterMembership(nodeId, scopeConfiguration);
+		this.receiver = new ReplicationReceiver(scopeConfiguration, clusterPort, false);
+		for(Map.Entry<Integer, InetSocketAddress> peer: peers.entrySet()) {
+			InetSocketAddress address = peer.getValue();
+			replicators.put(peer.getKey(), new LeaseReplicator(scopeConfiguration, address.getAddress(), address.getPort(), nodeId));
+		}
+	}
+
+	/**
+	 * Variables representing the arguments of the server.
+	 */
+	private final InetAddress serverIP;
+	private final int serverPort;
+	private final int leaseTime;
+	private final ScopeConfiguration scopeConfiguration;
+	private final Transport.Factory transportFactory;
+
+	/**
+	 * Variable representing the view of the cluster of the server.
+	 */
+	private final ClusterMembership membership;
+
+	/**
+	 * Variable representing the receiver applying the lease changes of the other servers.
+	 */
+	private final ReplicationReceiver receiver;
+
+	/**
+	 * Variable representing the replicators of the lease changes of the server, keyed on the identifier of their peer.
+	 */
+	private final Map<Integer, LeaseReplicator> replicators = new LinkedHashMap<Integer, LeaseReplicator>();
+
+	/**
+	 * Variable representing the DHCP server, null before the node is started.
+	 */
+	private volatile DHCPServer server = null;
+
+	/**
+	 * Variable registering whether the node is stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Return the view of the cluster of the server.
+	 *
+	 * @return The cluster membership.
+	 */
+	public ClusterMembership getMembership() {
+		return membership;
+	}
+
+	/**
+	 * Return the DHCP server of the node.
+	 *
+	 * @return The server, null before the node is started.
+	 */
+	public DHCPServer getServer() {
+		return server;
+	}
+
+	/**
+	 * Return the receiver applying the lease changes of the other servers.
+	 *
+	 * @return The replication receiver.
+	 */
+	public ReplicationReceiver getReceiver() {
+		return receiver;
+	}
+
+	/**
+	 * Return the configuration of the scopes of the server.
+	 *
+	 * @return The scope configuration.
+	 */
+	public ScopeConfiguration getScopeConfiguration() {
+		return scopeConfiguration;
+	}
+
+	/**
+	 * Starts the node: accepts the replication of the other servers, connects to them, starts the
+	 * DHCP server and starts watching which servers are alive.
+	 *
+	 * @throws IOException
+	 *         The replication port could not be opened.
+	 * @throws UnknownHostException
+	 *         The server could not be started.
+	 */
+	public void start() throws IOException, UnknownHostException {
+		receiver.start();
+		for(LeaseReplicator replicator: replicators.values())
+			replicator.start();
+		server = new DHCPServer(serverIP, serverPort, leaseTime, scopeConfiguration, transportFactory, SystemClock.INSTANCE,
+				ProcessingMode.SERIAL, membership);
+		Thread monitor = new Thread(this::monitor, "cluster-monitor-" + membership.getNodeId());
+		monitor.setDaemon(true);
+		monitor.start();
+	}
+
+	/**
+	 * Stops the node: the DHCP server and all replication.
+	 */
+	public void stop() {
+		stopped = true;
+		DHCPServer server = this.server;
+		if(server != null)
+			server.stop();
+		for(LeaseReplicator replicator: replicators.values())
+			replicator.stop();
+		receiver.stop();
+	}
+
+	/**
+	 * Runs the monitor thread: every heartbeat interval, updates the view of the cluster to the peers
+	 * heard from both ways within the given number of missed heartbeats.
+	 */
+	private void monitor() {
+		long timeout = ReplicationReceiver.MISSED_HEARTBEATS * LeaseReplicator.HEARTBEAT_INTERVAL * 1000000;
+		try {
+			while(!stopped) {
+				long now = System.nanoTime();
+				List<Integer> alive = new ArrayList<Integer>();
+				for(Map.Entry<Integer, LeaseReplicator> replicator: replicators.entrySet()) {
+					long acknowledged = replicator.getValue().getLastAcknowledged();
+					long heard = receiver.getLastHeard(replicator.getKey());
+					if(acknowledged != 0 && now - acknowledged < timeout && heard != 0 && now - heard < timeout)
+						alive.add(replicator.getKey());
+				}
+				membership.update(alive);
+				Thread.sleep(LeaseReplicator.HEARTBEAT_INTERVAL);
+			}
+		} catch(InterruptedException e) {
+			// Stopped
+		}
+	}
+}
@@ -1,14 +1,16 @@
 package DHCP;
 import java.io.IOException;
-import java.net.DatagramSocket;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 
 import DHCP.Message.DHCPDiscoverMessage;
 import DHCP.Message.DHCPReleaseMessage;
 import DHCP.Message.DHCPRequestMessage;
 import DHCP.Message.Message;
+import DHCP.Message.MessageType;
 
 /**
  * Class representing a DHCP Client.
@@ -75,6 +77,96 @@ public class DHCPClient extends DHCPHost {
 	}
 
 	
+	/**********************************************************
+	 * Lease file
+	 **********************************************************/
+	
+	/**
+	 * Variable representing the path of the file the last lease is persisted to, null if leases are not persisted.
+	 */
+	private String leaseFile = null;
+	
+	/**
+	 * Return the path of the file the last lease of the client is persisted to.
+	 * 
+	 * @return The path of the lease file, null if leases are not persisted.
+	 */
+	public String getLeaseFile() {
+		return leaseFile;
+	}
+	
+	/**
+	 * Sets the path of the file the last lease of the client is persisted to.
+	 * 
+	 * @param leaseFile
+	 *        The path to set.
+	 */
+	private void setLeaseFile(String leaseFile) {
+		this.leaseFile = leaseFile;
+	}
+	
+	/**********************************************************
+	 * Server port
+	 **********************************************************/
+	
+	/**
+	 * Constant representing the port at which the server listens.
+	 */
+	public static final int DEFAULT_SERVER_PORT = 1602;
+	
+	/**
+	 * Variable representing the port the messages of the client are sent to: the port of the server,
+	 * or the port of a relay agent between the client and the server.
+	 */
+	private int serverPort = DEFAULT_SERVER_PORT;
+	
+	/**
+	 * Return the port the messages of the client are sent to.
+	 * 
+	 * @return The port of the server or relay agent.
+	 */
+	public int getServerPort() {
+		return serverPort;
+	}
+	
+	/**
+	 * Sets the port the messages of the client are sent to.
+	 * 
+	 * @param serverPort
+	 *        The port to set.
+	 */
+	private void setServerPort(int serverPort) {
+		this.serverPort = serverPort;
+	}
+	
+	/**********************************************************
+	 * Clock
+	 **********************************************************/
+	
+	/**
+	 * Variable representing the clock of the lease logic of the client. Retransmissions wait in real time.
+	 */
+	private Clock clock = SystemClock.INSTANCE;
+	
+	/**
+	 * Return the clock lease times of the client are computed with.
+	 * 
+	 * @return The clock of the client.
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Sets the clock of the lease logic of the client.
+	 * 
+	 * @param clock
+	 *        The clock to set.
+	 */
+	private void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
 	/**********************************************************
 	 * Constructor
 	 **********************************************************/
@@ -84,10 +176,94 @@ public class DHCPClient extends DHCPHost {
 	 * 
 	 * @post The client has no IP address.
 	 * @post The MAC address of the client is equal to the given MAC address.
+	 * @post The leases of the client are not persisted.
 	 */
 	public DHCPClient(String macAddress){
+		this(macAddress, null);
+	}
+	
+	/**
+	 * Initialize the new DHCPClient, persisting its last lease to the given file.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseFile
+	 *        The path of the file to persist the last lease to, null to not persist leases.
+	 * @post The client has no IP address.
+	 * @post The MAC address of the client is equal to the given MAC address.
+	 * @post The lease file of the client is equal to the given path.
+	 */
+	public DHCPClient(String macAddress, String leaseFile){
+		this(macAddress, leaseFile, DEFAULT_SERVER_PORT);
+	}
+	
+	/**
+	 * Initialize the new DHCPClient, sending its messages to the given port, for example of a relay agent.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseFile
+	 *        The path of the file to persist the last lease to, null to not persist leases.
+	 * @param serverPort
+	 *        The port to send the messages of the client to.
+	 * @post The client has no IP address.
+	 * @post The MAC address of the client is equal to the given MAC address.
+	 * @post The lease file of the client is equal to the given path.
+	 * @post The server port of the client is equal to the given port.
+	 */
+	public DHCPClient(String macAddress, String leaseFile, int serverPort){
+		this(macAddress, leaseFile, serverPort, DatagramTransport.FACTORY);
+	}
+	
+	/**
+	 * Initialize the new DHCPClient, sending its messages to the given port over the given kind of transport.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseFile
+	 *        The path of the file to persist the last lease to, null to not persist leases.
+	 * @param serverPort
+	 *        The port to send the messages of the client to.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoints of the client.
+	 * @post The client has no IP address.
+	 * @post The MAC address of the client is equal to the given MAC address.
+	 * @post The lease file of the client is equal to the given path.
+	 * @post The server port of the client is equal to the given port.
+	 * @post The transport factory of the client is equal to the given factory.
+	 */
+	public DHCPClient(String macAddress, String leaseFile, int serverPort, Transport.Factory transportFactory){
+		this(macAddress, leaseFile, serverPort, transportFactory, SystemClock.INSTANCE);
+	}
+	
+	/**
+	 * Initialize the new DHCPClient, sending its messages to the given port over the given kind of transport,
+	 * with lease times on the given clock.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseFile
+	 *        The path of the file to persist the last lease to, null to not persist leases.
+	 * @param serverPort
+	 *        The port to send the messages of the client to.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoints of the client.
+	 * @param clock
+	 *        The clock of the lease logic of the client.
+	 * @post The client has no IP address.
+	 * @post The MAC address of the client is equal to the given MAC address.
+	 * @post The lease file of the client is equal to the given path.
+	 * @post The server port of the client is equal to the given port.
+	 * @post The transport factory of the client is equal to the given factory.
+	 * @post The clock of the client is equal to the given clock.
+	 */
+	public DHCPClient(String macAddress, String leaseFile, int serverPort, Transport.Factory transportFactory, Clock clock){
+		this.setClock(clock);
 		this.setMacAddress(macAddress);
 		this.setCiaddr(null);
+		this.setLeaseFile(leaseFile);
+		this.setServerPort(serverPort);
+		this.setTransportFactory(transportFactory);
 	}
 	
 	/**********************************************************
@@ -95,48 +271,79 @@ public class DHCPClient extends DHCPHost {
 	 **********************************************************/
 	
 	/**
-	 * Gets an IP for the client. If the lease time for the IP address is expired, renewing the lease.
+	 * Gets an IP for the client and renews the lease when half of the lease time has passed.
+	 * 
+	 * @throws IOException
+	 *         No IP could be acquired within the retry budget.
 	 */
 	public void getIP() throws IllegalArgumentException, SocketException, IOException{
+		Message acknowledge = acquireIP();
+		int leaseTime = Utilities.convertToInt(acknowledge.getOptions().getOption(51).getContents());
+		try {
+			getClock().sleep(leaseTime*500L);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to renew the lease.");
+		}
+		renewLease(acknowledge.getSiaddr());
+	}
+	
+	/**
+	 * Acquires an IP for the client, without renewing it later. If the last lease of the client is persisted and not yet expired, the client first requests
+	 * that IP directly (INIT-REBOOT) and only falls back to DHCPDISCOVER on a DHCPNAK or timeout.
+	 * Unanswered messages are retransmitted and the configuration is restarted after a randomized,
+	 * exponentially growing delay, within the retry budget of the retransmission policy.
+	 * 
+	 * @return The DHCPACK of the server.
+	 * @throws IOException
+	 *         No IP could be acquired within the retry budget.
+	 */
+	public Message acquireIP() throws IllegalArgumentException, SocketException, IOException{
 		// Initialize connection sockets and settings
-		DatagramSocket socket = new DatagramSocket();
+		Transport socket = getTransportFactory().open(null, 0);
 //		UDPHost client = new UDPHost(InetAddress.getByName("10.33.14.246"), 1234); //Server KU Leuven
-		UDPHost client = new UDPHost(InetAddress.getByName("localhost"), 1602);
+		UDPHost client = new UDPHost(InetAddress.getByName("localhost"), getServerPort());
 		
-		// Discover
-		Message offer = DHCPDiscover(client, socket);
-		if(Utilities.convertToInt(offer.getOptions().getOption(53).getContents()) == 2) {
-			System.out.println("DHCPOFFER received.");
-			System.out.println("- Suggested IP: " + offer.getYiaddr().toString());
-		}
-		else {
-			System.out.println("No DHCPOFFER received. Restarting the configuration.");
-			socket.close();
-			getIP();
-		}
-
-		// Request
-		Message acknowledge = DHCPRequest(offer.getXid(), offer.getYiaddr(), offer.getSiaddr(), client, socket);
+		Message acknowledge = null;
+		startExchange();
+		try {
+			// Init-reboot
+			acknowledge = DHCPInitReboot(client, socket);
+			
+			while(acknowledge == null) {
+				// Discover
+				Message offer = DHCPDiscover(client, socket);
+				if(offer.getMessageType() != MessageType.OFFER) {
+					System.out.println("No DHCPOFFER received. Restarting the configuration.");
+					backOff();
+					continue;
+				}
+				System.out.println("DHCPOFFER received.");
+				System.out.println("- Suggested IP: " + offer.getYiaddr().toString());
 		
-		// Acknowledge received and waiting till lease expired to renew
-		if(Utilities.convertToInt(acknowledge.getOptions().getOption(53).getContents()) == 5) {
-			System.out.println("DHCPACK received.");
-			setCiaddr(acknowledge.getYiaddr());
-			System.out.println("SYSTEM IP SET TO " + getCiaddr().toString());
-			int leaseTime = Utilities.convertToInt(acknowledge.getOptions().getOption(51).getContents());
-			System.out.println("- Lease time: " + leaseTime + " seconds.");
+				// Request
+				acknowledge = DHCPRequest(offer.getXid(), offer.getYiaddr(), offer.getSiaddr(), client, socket);
+				
+				// Negative acknowledge received, reconfiguration
+				if(acknowledge.getMessageType() != MessageType.ACK) {
+					System.out.println("DCHPNAK received. Restarting the configuration.");
+					acknowledge = null;
+					backOff();
+				}
+			}
+		} finally {
 			socket.close();
-			long timeBeginLease = System.currentTimeMillis();
-			while(System.currentTimeMillis() - timeBeginLease < 0.5*leaseTime*1000){}
-			renewLease(acknowledge.getSiaddr());
+			endAcquisition();
 		}
 		
-		// Negative acknowledge received, reconfiguration
-		else {
-			System.out.println("DCHPNAK received. Restarting the configuration.");
-			socket.close();
-			getIP();
-		}
+		// Acknowledge received and waiting till lease expired to renew
+		System.out.println("DHCPACK received.");
+		setCiaddr(acknowledge.getYiaddr());
+		System.out.println("SYSTEM IP SET TO " + getCiaddr().toString());
+		int leaseTime = Utilities.convertToInt(acknowledge.getOptions().getOption(51).getContents());
+		System.out.println("- Lease time: " + leaseTime + " seconds.");
+		storeLease(acknowledge.getSiaddr(), leaseTime);
+		return acknowledge;
 	}
 	
 	/**
@@ -145,52 +352,275 @@ public class DHCPClient extends DHCPHost {
 	 * @post The client has no IP address.
 	 */
 	public void releaseIP() throws UnknownHostException, IOException {
-		DatagramSocket socket = new DatagramSocket();
+		Transport socket = getTransportFactory().open(null, 0);
 //		UDPHost client = new UDPHost(InetAddress.getByName("10.33.14.246"), 1234); //Server KU Leuven
-		UDPHost client = new UDPHost(InetAddress.getByName("localhost"), 1602);
+		UDPHost client = new UDPHost(InetAddress.getByName("localhost"), getServerPort());
 		
 		DHCPRelease(client, socket);
 		setCiaddr(null);
+		if(getLeaseFile() != null)
+			StoredLease.delete(getLeaseFile());
 		System.out.println("IP RELEASED.");
 		
 		socket.close();
 	}
 	
 	/**
-	 * Renews the lease of the client.
+	 * Renews the lease of the client. When the server refuses the renewal with a DHCPNAK, the client
+	 * drops its address and persisted lease and restarts the configuration.
 	 * 
-	 * @post The IP address of the client is equal to the IP address before, with a new lease time period.
+	 * @post If the server acknowledged the renewal, the IP address of the client is equal to the IP address before, with a new lease time period.
+	 * @post If the server refused the renewal, the IP address of the client is the one acquired by {@link #acquireIP()}.
 	 */
 	public void renewLease(InetAddress siaddr) throws SocketException, IOException{
 		System.out.println("LEASE RENEWAL STARTED.");
-		DatagramSocket socket = new DatagramSocket();
+		Transport socket = getTransportFactory().open(null, 0);
 //		UDPHost client = new UDPHost(InetAddress.getByName("10.33.14.246"), 1234); //Server KU Leuven
-		UDPHost client = new UDPHost(InetAddress.getByName("localhost"), 1602);
+		UDPHost client = new UDPHost(InetAddress.getByName("localhost"), getServerPort());
 		
-		Message ack = DHCPRequest(Utilities.generateXid(), getCiaddr(), siaddr, client, socket);
+		startExchange();
+		Message ack;
+		try {
+			ack = DHCPRenew(Utilities.generateXid(), client, socket);
+		} finally {
+			socket.close();
+		}
+		if(ack.getMessageType() != MessageType.ACK) {
+			System.out.println("DHCPNAK received. Restarting the configuration.");
+			setCiaddr(null);
+			if(getLeaseFile() != null)
+				StoredLease.delete(getLeaseFile());
+			acquireIP();
+			return;
+		}
 		setCiaddr(ack.getYiaddr());
 		System.out.println("LEASE RENEWAL COMPLETE, SYSTEM IP SET TO "+ getCiaddr().toString());
-		System.out.println("- Lease time: "+ Utilities.convertToInt(ack.getOptions().getOption(51).getContents())+ " seconds.");
-		
-		socket.close();
+		int leaseTime = Utilities.convertToInt(ack.getOptions().getOption(51).getContents());
+		System.out.println("- Lease time: "+ leaseTime + " seconds.");
+		storeLease(siaddr, leaseTime);
 	}
 	
 	
+	/**********************************************************
+	 * Retransmission
+	 **********************************************************/
+	
+	/**
+	 * Variable representing the retransmission policy of the client.
+	 */
+	private RetransmissionPolicy retransmissionPolicy = new RetransmissionPolicy();
+	
+	/**
+	 * Return the retransmission policy of the client.
+	 * 
+	 * @return The retransmission policy.
+	 */
+	public RetransmissionPolicy getRetransmissionPolicy() {
+		return retransmissionPolicy;
+	}
+	
+	/**
+	 * Sets the retransmission policy of the client.
+	 * 
+	 * @param retransmissionPolicy
+	 *        The retransmission policy to set.
+	 */
+	public void setRetransmissionPolicy(RetransmissionPolicy retransmissionPolicy) {
+		this.retransmissionPolicy = retransmissionPolicy;
+	}
+	
+	/**
+	 * Variable representing the number of retries of the current exchange with the server.
+	 */
+	private int currentRetries = 0;
+	
+	/**
+	 * Variable representing the number of address acquisitions (calls of getIP) so far.
+	 */
+	private long numberOfAcquisitions = 0;
+	
+	/**
+	 * Variable representing the number of retries of all address acquisitions so far.
+	 */
+	private long totalAcquisitionRetries = 0;
+	
+	/**
+	 * Variable representing the number of retries of the last address acquisition.
+	 */
+	private int lastAcquisitionRetries = 0;
+	
+	/**
+	 * Return the number of address acquisitions so far.
+	 * 
+	 * @return The number of acquisitions.
+	 */
+	public long getNumberOfAcquisitions() {
+		return numberOfAcquisitions;
+	}
+	
+	/**
+	 * Return the number of retries (retransmissions and restarts) of the last address acquisition.
+	 * 
+	 * @return The number of retries of the last acquisition.
+	 */
+	public int getLastAcquisitionRetries() {
+		return lastAcquisitionRetries;
+	}
+	
+	/**
+	 * Return the average number of retries (retransmissions and restarts) per address acquisition.
+	 * 
+	 * @return The average number of retries per acquisition, zero if there were no acquisitions.
+	 */
+	public double getAverageRetriesPerAcquisition() {
+		if(numberOfAcquisitions == 0)
+			return 0;
+		return (double) totalAcquisitionRetries / numberOfAcquisitions;
+	}
+	
+	/**
+	 * Starts a new exchange with the server with a full retry budget.
+	 */
+	private void startExchange() {
+		currentRetries = 0;
+	}
+	
+	/**
+	 * Ends an address acquisition and records its number of retries.
+	 */
+	private void endAcquisition() {
+		numberOfAcquisitions++;
+		lastAcquisitionRetries = currentRetries;
+		totalAcquisitionRetries += currentRetries;
+	}
+	
+	/**
+	 * Counts a retry of the current exchange.
+	 * 
+	 * @throws IOException
+	 *         The retry budget of the current exchange is exhausted.
+	 */
+	private void countRetry() throws IOException {
+		if(currentRetries >= getRetransmissionPolicy().getRetryBudget())
+			throw new IOException("No answer from the server within " + getRetransmissionPolicy().getRetryBudget() + " retries.");
+		currentRetries++;
+	}
+	
+	/**
+	 * Waits a randomized, exponentially growing delay before restarting the configuration.
+	 * 
+	 * @throws IOException
+	 *         The retry budget of the current exchange is exhausted.
+	 */
+	private void backOff() throws IOException {
+		countRetry();
+		try {
+			getClock().sleep(getRetransmissionPolicy().getDelay(currentRetries - 1));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while backing off.");
+		}
+	}
+	
+	/**
+	 * Sends a message to the server and returns the answer. The message is retransmitted,
+	 * with the same transaction ID, when no answer arrives within the delay of the retransmission policy.
+	 * Late copies of the offer received while a request is sent are skipped.
+	 * 
+	 * @param message
+	 *        The message to send.
+	 * @param client
+	 *        The UDPClient currently in use.
+	 * @param socket
+	 *        The transport currently in use.
+	 *        
+	 * @return The answer from the server.
+	 * @throws IOException
+	 *         The retry budget of the current exchange is exhausted.
+	 */
+	private Message exchange(Message message, UDPHost client, Transport socket) throws IOException {
+		for(int attempt = 0; ; attempt++) {
+			socket.setTimeout((int) getRetransmissionPolicy().getDelay(attempt));
+			try {
+				Message response = sendUDPMessage(message, client, socket);
+				// A request shares the transaction ID of the offer, so a late copy of the offer is no answer to it
+				while(message.getMessageType() == MessageType.REQUEST && response.getMessageType() == MessageType.OFFER) {
+					System.out.println("- Late DHCPOFFER ignored. Awaiting the answer to the DHCPREQUEST.");
+					response = waitForCorrectAnswer(message.getXid(), Message.convertToMessage(client.receiveData(socket).getData()), client, socket);
+				}
+				return response;
+			} catch(SocketTimeoutException e) {
+				countRetry();
+				System.out.println("- No answer received. Retransmitting.");
+			}
+		}
+	}
+	
+	/**
+	 * Persists the current lease of the client to its lease file, if leases are persisted.
+	 * 
+	 * @param server
+	 *        The IP address of the server that granted the lease.
+	 * @param leaseTime
+	 *        The lease time (in seconds) granted by the server.
+	 */
+	private void storeLease(InetAddress server, int leaseTime) {
+		if(getLeaseFile() == null)
+			return;
+		try {
+			new StoredLease(getCiaddr(), server, getClock().currentTimeMillis() + leaseTime*1000L).save(getLeaseFile());
+		} catch(IOException e) {
+			System.out.println("- Lease could not be persisted: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Requests the IP address of the persisted lease directly (INIT-REBOOT) and returns the DHCPACK from the server.
+	 * 
+	 * @param client
+	 *        The UDPClient currently in use.
+	 * @param socket
+	 *        The transport currently in use.
+	 *        
+	 * @return The DHCPACK from the server, null if there is no persisted lease or the server answered
+	 * 		   with a DHCPNAK or did not answer in time.
+	 */
+	private Message DHCPInitReboot(UDPHost client, Transport socket) throws SocketException, IOException {
+		if(getLeaseFile() == null)
+			return null;
+		StoredLease lease = StoredLease.load(getLeaseFile(), getClock().currentTimeMillis());
+		if(lease == null)
+			return null;
+		DHCPRequestMessage requestMessage = new DHCPRequestMessage(Utilities.generateXid(), getMacAddress(), lease.getAddress(), null);
+		System.out.println("DHCPREQUEST (INIT-REBOOT) sent to request IP " + lease.getAddress().toString());
+		socket.setTimeout((int) getRetransmissionPolicy().getDelay(0));
+		try {
+			Message response = sendUDPMessage(requestMessage, client, socket);
+			if(response.getMessageType() == MessageType.ACK)
+				return response;
+			System.out.println("DHCPNAK received. Falling back to DHCPDISCOVER.");
+		} catch(SocketTimeoutException e) {
+			System.out.println("No answer received. Falling back to DHCPDISCOVER.");
+		}
+		StoredLease.delete(getLeaseFile());
+		return null;
+	}
+	
 	/**
 	 * Sends a DHCPDISCOVER and returns the answer from the server.
 	 * 
 	 * @param client
 	 *        The UDPClient currently in use.
 	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 *        The transport currently in use.
 	 * 
 	 * @return The response of the server.
 	 */
-	private Message DHCPDiscover(UDPHost client, DatagramSocket socket) throws IllegalArgumentException, SocketException, IOException {
+	private Message DHCPDiscover(UDPHost client, Transport socket) throws IllegalArgumentException, SocketException, IOException {
 		DHCPDiscoverMessage discoverMessage = new DHCPDiscoverMessage(getMacAddress());
 		
 		System.out.println("DHCPDISCOVER sent by " + this.getMacAddress() + ".");
-		Message response = sendUDPMessage(discoverMessage, client, socket);
+		Message response = exchange(discoverMessage, client, socket);
 		return response;
 	}
 	
@@ -206,15 +636,35 @@ public class DHCPClient extends DHCPHost {
 	 * @param client
 	 *        The UDPClient currently in use.
 	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 *        The transport currently in use.
 	 *        
 	 * @return The reply from the server.
 	 */
-	private Message DHCPRequest(int transactionID, InetAddress offeredAddress, InetAddress serverAddress, UDPHost client, DatagramSocket socket) throws SocketException, IOException{
+	private Message DHCPRequest(int transactionID, InetAddress offeredAddress, InetAddress serverAddress, UDPHost client, Transport socket) throws SocketException, IOException{
 		DHCPRequestMessage requestMessage = new DHCPRequestMessage(transactionID, getMacAddress(), offeredAddress, serverAddress);
 		
 		System.out.println("DHCPREQUEST sent to request IP " + offeredAddress.toString()+" at server " + serverAddress.toString());
-		Message response = sendUDPMessage(requestMessage, client, socket);
+		Message response = exchange(requestMessage, client, socket);
+		return response;
+	}
+
+	/**
+	 * Sends a DHCPREQUEST to renew the lease of the current IP address of the client and returns the answer from the server.
+	 * 
+	 * @param transactionID
+	 *        The transaction ID of the communication with the server.
+	 * @param client
+	 *        The UDPClient currently in use.
+	 * @param socket
+	 *        The transport currently in use.
+	 *        
+	 * @return The reply from the server.
+	 */
+	private Message DHCPRenew(int transactionID, UDPHost client, Transport socket) throws SocketException, IOException{
+		DHCPRequestMessage requestMessage = new DHCPRequestMessage(transactionID, getMacAddress(), getCiaddr());
+		
+		System.out.println("DHCPREQUEST sent to renew IP " + getCiaddr().toString());
+		Message response = exchange(requestMessage, client, socket);
 		return response;
 	}
 
@@ -224,11 +674,11 @@ public class DHCPClient extends DHCPHost {
 	 * @param client
 	 *        The UDPClient currently in use.
 	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 *        The transport currently in use.
 	 *        
 	 * @post  The client has no IP address.
 	 */
-	private void DHCPRelease(UDPHost client, DatagramSocket socket) throws UnknownHostException, SocketException, IOException{
+	private void DHCPRelease(UDPHost client, Transport socket) throws UnknownHostException, SocketException, IOException{
 		DHCPReleaseMessage releaseMessage = new DHCPReleaseMessage(getMacAddress());
 		sendUDPMessageWithoutResponse(releaseMessage, client, socket);
 		this.setCiaddr(null);
@@ -2,7 +2,6 @@ package DHCP;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.DatagramSocket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 
@@ -10,6 +9,30 @@ import DHCP.Message.Message;
 
 public abstract class DHCPHost {
 	
+	/**
+	 * Variable representing the factory opening the transport endpoints of the host.
+	 */
+	private Transport.Factory transportFactory = DatagramTransport.FACTORY;
+	
+	/**
+	 * Return the factory opening the transport endpoints of the host.
+	 * 
+	 * @return The transport factory, datagram sockets by default.
+	 */
+	public Transport.Factory getTransportFactory() {
+		return transportFactory;
+	}
+	
+	/**
+	 * Sets the factory opening the transport endpoints of the host.
+	 * 
+	 * @param transportFactory
+	 *        The transport factory to set.
+	 */
+	protected void setTransportFactory(Transport.Factory transportFactory) {
+		this.transportFactory = transportFactory;
+	}
+	
 	/**
 	 * Creates a UDP message in DHCP format with all given fields and sends it to the server.
 	 * 
@@ -18,13 +41,31 @@ public abstract class DHCPHost {
 	 * @param client
 	 *        The UDPClient currently in use.
 	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 *        The transport currently in use.
 	 * 
 	 * @return The answer from the server as a message.
 	 */
-	protected Message sendUDPMessage(Message message, UDPHost client, DatagramSocket socket) throws UnknownHostException, SocketException, IOException {
-		Message response = Message.convertToMessage(client.sendData(message.convertToByteArray(), socket));
-		return waitForCorrectAnswer(message.getXid(), response, client, socket);
+	protected Message sendUDPMessage(Message message, UDPHost client, Transport socket) throws UnknownHostException, SocketException, IOException {
+		return sendUDPBytes(message.convertToByteArray(), message.getXid(), client, socket);
+	}
+	
+	/**
+	 * Sends an encoded DHCP message and returns the answer with the same transaction ID.
+	 * 
+	 * @param data
+	 * 		  The encoded message to be sent.
+	 * @param xid
+	 *        The transaction ID of the encoded message.
+	 * @param client
+	 *        The UDPClient currently in use.
+	 * @param socket
+	 *        The transport currently in use.
+	 * 
+	 * @return The answer from the other end as a message.
+	 */
+	protected Message sendUDPBytes(byte[] data, int xid, UDPHost client, Transport socket) throws UnknownHostException, SocketException, IOException {
+		Message response = Message.convertToMessage(client.sendData(data, socket));
+		return waitForCorrectAnswer(xid, response, client, socket);
 	}
 	
 	/**
@@ -35,9 +76,9 @@ public abstract class DHCPHost {
 	 * @param client
 	 *        The UDPClient currently in use.
 	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 *        The transport currently in use.
 	 */
-	protected void sendUDPMessageWithoutResponse(Message message, UDPHost client, DatagramSocket socket) throws UnknownHostException, SocketException, IOException {
+	protected void sendUDPMessageWithoutResponse(Message message, UDPHost client, Transport socket) throws UnknownHostException, SocketException, IOException {
 		client.sendDataWithoutResponse(message.convertToByteArray(), socket);
 	}
 	
@@ -52,11 +93,11 @@ public abstract class DHCPHost {
 	 * @param client
 	 *        The UDP client currently in use.
 	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 *        The transport currently in use.
 	 *        
 	 * @return The correct reply from the server. 
 	 */
-	protected Message waitForCorrectAnswer(int xid, Message response, UDPHost client, DatagramSocket socket) throws UnknownHostException, UnsupportedEncodingException, IllegalArgumentException, IOException{
+	protected Message waitForCorrectAnswer(int xid, Message response, UDPHost client, Transport socket) throws UnknownHostException, UnsupportedEncodingException, IllegalArgumentException, IOException{
 		if(isCorrectResponseMessage(xid, response)){
 			return response;
 		}
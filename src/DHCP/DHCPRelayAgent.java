@@ -0,0 +1,623 @@
+package DHCP;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import DHCP.Message.Message;
+import DHCP.Message.Option;
+
+/**
+ * Class representing a DHCP relay agent, forwarding the messages of clients on its own link
+ * to a DHCP server and the replies of the server back to the clients.
+ *
+ * A client message gets the address of the relay agent as gateway IP address (giaddr), so the
+ * server selects the scope of the link of the relay agent and sends its replies to the relay port
+ * at that address. The relay agent adds a Relay Agent Information option (82) to the client message,
+ * with the address and port the message came from as Circuit ID and an optional Remote ID. The server
+ * echoes the option in its reply; the relay agent forwards the reply to the client of the Circuit ID
+ * and strips the option again, so the relay agent keeps no state per client.
+ *
+ * A relay agent can forward the client messages to several servers, such as the servers of a cluster,
+ * which decide among themselves which one answers.
+ *
+ * Every direction has a receiving thread and a forwarding thread. Packets are received into buffers
+ * of a buffer pool, and the forwarding thread sends all queued packets in one batch before returning
+ * their buffers to the pool.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class DHCPRelayAgent {
+
+	/**
+	 * Constant representing the default port at which relay agents receive the replies of the server.
+	 */
+	public static final int RELAY_PORT = 1603;
+
+	/**
+	 * Constant representing the maximum number of relay agents a client message may pass.
+	 */
+	private static final int MAXIMUM_HOPS = 16;
+
+	/**
+	 * Constant representing the maximum number of packets sent in one batch.
+	 */
+	private static final int BATCH_SIZE = 32;
+
+	/**
+	 * Constant representing the maximum number of packets waiting to be forwarded, per direction.
+	 */
+	private static final int FORWARD_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Constant representing the number of pooled receive buffers.
+	 */
+	private static final int BUFFER_POOL_CAPACITY = 256;
+
+	/**
+	 * Constants representing the op codes of client messages and server replies.
+	 */
+	private static final int BOOTREQUEST = 1;
+	private static final int BOOTREPLY = 2;
+
+	/**
+	 * Constant representing the code of the Relay Agent Information option.
+	 */
+	private static final int AGENT_INFORMATION = 82;
+
+	/**
+	 * Constants representing the codes of the Circuit ID and Remote ID sub-options.
+	 */
+	private static final int CIRCUIT_ID = 1;
+	private static final int REMOTE_ID = 2;
+
+	/**
+	 * Constant representing the length of a Circuit ID: an IPv4 address and a port.
+	 */
+	private static final int CIRCUIT_ID_LENGTH = 6;
+
+	/**
+	 * Constant representing the minimum length of a message forwarded to a client.
+	 */
+	private static final int MINIMUM_MESSAGE_SIZE = 300;
+
+	/**********************************************************
+	 * Constructors
+	 **********************************************************/
+
+	/**
+	 * Initialize the new relay agent without Remote ID, receiving the replies of the server at the relay port.
+	 *
+	 * @param relayAddress
+	 *        The address of the relay agent on the link of its clients.
+	 * @param clientPort
+	 *        The port at which the relay agent receives the messages of its clients.
+	 * @param serverAddress
+	 *        The address of the DHCP server.
+	 * @param serverPort
+	 *        The port at which the DHCP server listens.
+	 */
+	public DHCPRelayAgent(InetAddress relayAddress, int clientPort, InetAddress serverAddress, int serverPort) {
+		this(relayAddress, clientPort, serverAddress, serverPort, RELAY_PORT, null, DatagramTransport.FACTORY);
+	}
+
+	/**
+	 * Initialize the new relay agent.
+	 *
+	 * @param relayAddress
+	 *        The address of the relay agent on the link of its clients.
+	 * @param clientPort
+	 *        The port at which the relay agent receives the messages of its clients.
+	 * @param serverAddress
+	 *        The address of the DHCP server.
+	 * @param serverPort
+	 *        The port at which the DHCP server listens.
+	 * @param relayPort
+	 *        The port at which the relay agent receives the replies of the server.
+	 * @param remoteId
+	 *        The Remote ID added to every client message, null for none.
+	 * @param transportFactory
+	 *        The factory opening the client and server endpoints of the relay agent.
+	 * @throws IllegalArgumentException
+	 *         The relay address is not an IPv4 address, or the Remote ID is longer than 255 bytes.
+	 */
+	public DHCPRelayAgent(InetAddress relayAddress, int clientPort, InetAddress serverAddress, int serverPort, int relayPort,
+			String remoteId, Transport.Factory transportFactory) throws IllegalArgumentException {
+		this(relayAddress, clientPort, Collections.singletonList(new InetSocketAddress(serverAddress, serverPort)), relayPort, remoteId, transportFactory);
+	}
+
+	/**
+	 * Initialize the new relay agent, forwarding every client message to all given servers.
+	 *
+	 * @param relayAddress
+	 *        The address of the relay agent on the link of its clients.
+	 * @param clientPort
+	 *        The port at which the relay agent receives the messages of its clients.
+	 * @param servers
+	 *        The addresses and ports of the DHCP servers.
+	 * @param relayPort
+	 *        The port at which the relay agent receives the replies of the servers.
+	 * @param remoteId
+	 *        The Remote ID added to every client message, null for none.
+	 * @param transportFactory
+	 *        The factory opening the client and server endpoints of the relay agent.
+	 * @throws IllegalArgumentException
+	 *         The relay address is not an IPv4 address, there are no servers, or the Remote ID is longer than 255 bytes.
+	 */
+	public DHCPRelayAgent(InetAddress relayAddress, int clientPort, List<InetSocketAddress> servers, int relayPort,
+			String remoteId, Transport.Factory transportFactory) throws IllegalArgumentException {
+		if(relayAddress.getAddress().length != 4)
+			throw new IllegalArgumentException("The relay address has to be an IPv4 address.");
+		if(servers.isEmpty())
+			throw new IllegalArgumentException("The relay agent needs at least one server.");
+		this.relayAddress = relayAddress;
+		this.clientPort = clientPort;
+		this.servers = new ArrayList<InetSocketAddress>(servers);
+		this.relayPort = relayPort;
+		this.transportFactory = transportFactory;
+		this.remoteId = remoteId == null ? new byte[0] : remoteId.getBytes(StandardCharsets.US_ASCII);
+		if(this.remoteId.length > 255)
+			throw new IllegalArgumentException("The Remote ID is longer than 255 bytes.");
+	}
+
+	/**
+	 * Variable representing the address of the relay agent on the link of its clients.
+	 */
+	private final InetAddress relayAddress;
+
+	/**
+	 * Variable representing the port at which the relay agent receives the messages of its clients.
+	 */
+	private final int clientPort;
+
+	/**
+	 * Variable representing the addresses and ports of the DHCP servers.
+	 */
+	private final List<InetSocketAddress> servers;
+
+	/**
+	 * Variable representing the port at which the relay agent receives the replies of the server.
+	 */
+	private final int relayPort;
+
+	/**
+	 * Variable representing the factory opening the client and server endpoints of the relay agent.
+	 */
+	private final Transport.Factory transportFactory;
+
+	/**
+	 * Variable representing the Remote ID added to every client message, empty for none.
+	 */
+	private final byte[] remoteId;
+
+	/**
+	 * Variable representing the buffers packets are received in.
+	 */
+	private final BufferPool bufferPool = new BufferPool(BUFFER_POOL_CAPACITY, Message.MAXIMUM_MESSAGE_SIZE);
+
+	/**
+	 * Return the address of the relay agent on the link of its clients.
+	 *
+	 * @return The relay address, used as gateway IP address.
+	 */
+	public InetAddress getRelayAddress() {
+		return relayAddress;
+	}
+
+	/**
+	 * Return the port at which the relay agent receives the messages of its clients.
+	 *
+	 * @return The client port.
+	 */
+	public int getClientPort() {
+		return clientPort;
+	}
+
+	/**
+	 * Return the addresses and ports of the DHCP servers client messages are forwarded to.
+	 *
+	 * @return The servers.
+	 */
+	public List<InetSocketAddress> getServers() {
+		return Collections.unmodifiableList(servers);
+	}
+
+	/**
+	 * Return the buffers packets are received in.
+	 *
+	 * @return The buffer pool.
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**********************************************************
+	 * Statistics
+	 **********************************************************/
+
+	/**
+	 * Variable representing the number of client messages forwarded to the servers, counted once for all servers.
+	 */
+	private final LongAdder forwardedToServer = new LongAdder();
+
+	/**
+	 * Variable representing the number of server replies forwarded to clients.
+	 */
+	private final LongAdder forwardedToClients = new LongAdder();
+
+	/**
+	 * Variable representing the number of received packets that were not forwarded.
+	 */
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Variable representing the number of batches sent.
+	 */
+	private final LongAdder batches = new LongAdder();
+
+	/**
+	 * Return the number of client messages forwarded to the server.
+	 *
+	 * @return The number of forwarded client messages.
+	 */
+	public long getForwardedToServer() {
+		return forwardedToServer.sum();
+	}
+
+	/**
+	 * Return the number of server replies forwarded to clients.
+	 *
+	 * @return The number of forwarded server replies.
+	 */
+	public long getForwardedToClients() {
+		return forwardedToClients.sum();
+	}
+
+	/**
+	 * Return the number of received packets that were not forwarded: packets that are not valid
+	 * messages, client messages that passed too many relay agents or carry a Relay Agent Information
+	 * option of their own, server replies without a Circuit ID of this relay agent, and packets that
+	 * did not fit in the forwarding queue.
+	 *
+	 * @return The number of dropped packets.
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Return the number of batches sent, over both directions.
+	 *
+	 * @return The number of batches.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**********************************************************
+	 * Operation
+	 **********************************************************/
+
+	/**
+	 * Variable representing the socket at which the messages of the clients are received and their replies are sent.
+	 */
+	private Transport clientSocket;
+
+	/**
+	 * Variable representing the socket at which the replies of the server are received and the client messages are sent.
+	 */
+	private Transport serverSocket;
+
+	/**
+	 * Variable representing the threads of the relay agent.
+	 */
+	private final ArrayList<Thread> threads = new ArrayList<Thread>();
+
+	/**
+	 * Starts relaying: opens the client and server sockets and starts the receiving and forwarding threads.
+	 *
+	 * @throws SocketException
+	 *         One of the sockets could not be opened.
+	 * @throws IllegalStateException
+	 *         The relay agent is already started.
+	 */
+	public synchronized void start() throws SocketException, IllegalStateException {
+		if(!threads.isEmpty())
+			throw new IllegalStateException("The relay agent is already started.");
+		clientSocket = transportFactory.open(relayAddress, clientPort);
+		try {
+			serverSocket = transportFactory.open(relayAddress, relayPort);
+		} catch(SocketException e) {
+			clientSocket.close();
+			throw e;
+		}
+		ArrayBlockingQueue<ReceivedData> toServer = new ArrayBlockingQueue<ReceivedData>(FORWARD_QUEUE_CAPACITY);
+		ArrayBlockingQueue<ReceivedData> toClients = new ArrayBlockingQueue<ReceivedData>(FORWARD_QUEUE_CAPACITY);
+		threads.add(new Thread(new Receiving(clientSocket, toServer, true), "relay-upstream-receive"));
+		threads.add(new Thread(new Forwarding(serverSocket, toServer, forwardedToServer, servers), "relay-upstream-forward"));
+		threads.add(new Thread(new Receiving(serverSocket, toClients, false), "relay-downstream-receive"));
+		threads.add(new Thread(new Forwarding(clientSocket, toClients, forwardedToClients, null), "relay-downstream-forward"));
+		for(Thread thread: threads)
+			thread.start();
+	}
+
+	/**
+	 * Stops relaying: closes the sockets and waits for the threads to end.
+	 *
+	 * @throws InterruptedException
+	 *         The waiting thread was interrupted.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if(threads.isEmpty())
+			return;
+		clientSocket.close();
+		serverSocket.close();
+		for(Thread thread: threads)
+			thread.interrupt();
+		for(Thread thread: threads)
+			thread.join();
+		threads.clear();
+	}
+
+	/**
+	 * Inner class defined to receive the packets of one direction and queue them for forwarding.
+	 */
+	private class Receiving implements Runnable {
+
+		/**
+		 * Initialize the receiving of packets at the given socket.
+		 *
+		 * @param socket
+		 *        The socket the packets are received at.
+		 * @param queue
+		 *        The queue of packets to forward.
+		 * @param upstream
+		 *        True for messages of clients, false for replies of the server.
+		 */
+		private Receiving(Transport socket, ArrayBlockingQueue<ReceivedData> queue, boolean upstream) {
+			this.socket = socket;
+			this.queue = queue;
+			this.upstream = upstream;
+		}
+
+		private final Transport socket;
+
+		private final ArrayBlockingQueue<ReceivedData> queue;
+
+		private final boolean upstream;
+
+		public void run() {
+			UDPHost host = new UDPHost(relayAddress, 0);
+			while(!socket.isClosed()) {
+				byte[] buffer = bufferPool.acquire();
+				ReceivedData packet;
+				try {
+					packet = host.receiveData(socket, buffer);
+				} catch(IOException e) {
+					// Socket closed: relaying stopped
+					bufferPool.release(buffer);
+					return;
+				}
+				ReceivedData forward = upstream ? relayToServer(packet) : relayToClient(packet);
+				if(forward == null || !queue.offer(forward)) {
+					dropped.increment();
+					bufferPool.release(buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inner class defined to send the queued packets of one direction in batches.
+	 */
+	private class Forwarding implements Runnable {
+
+		/**
+		 * Initialize the forwarding of queued packets from the given socket.
+		 *
+		 * @param socket
+		 *        The socket the packets are sent from.
+		 * @param queue
+		 *        The queue of packets to forward, holding their destination.
+		 * @param forwarded
+		 *        The counter of forwarded packets.
+		 * @param destinations
+		 *        The destinations every packet is sent to, null to send a packet to its own destination.
+		 */
+		private Forwarding(Transport socket, ArrayBlockingQueue<ReceivedData> queue, LongAdder forwarded, List<InetSocketAddress> destinations) {
+			this.socket = socket;
+			this.queue = queue;
+			this.forwarded = forwarded;
+			this.destinations = destinations;
+		}
+
+		private final Transport socket;
+
+		private final ArrayBlockingQueue<ReceivedData> queue;
+
+		private final LongAdder forwarded;
+
+		private final List<InetSocketAddress> destinations;
+
+		public void run() {
+			UDPHost host = new UDPHost(relayAddress, 0);
+			ArrayList<ReceivedData> batch = new ArrayList<ReceivedData>(BATCH_SIZE);
+			try {
+				while(true) {
+					batch.add(queue.take());
+					queue.drainTo(batch, BATCH_SIZE - 1);
+					for(ReceivedData packet: batch) {
+						try {
+							if(destinations == null)
+								host.sendDataTo(packet.getData(), packet.getLength(), packet.getAddress(), packet.getPort(), socket);
+							else {
+								for(InetSocketAddress destination: destinations)
+									host.sendDataTo(packet.getData(), packet.getLength(), destination.getAddress(), destination.getPort(), socket);
+							}
+							forwarded.increment();
+						} catch(IOException e) {
+							dropped.increment();
+						}
+						bufferPool.release(packet.getData());
+					}
+					batches.increment();
+					batch.clear();
+				}
+			} catch(InterruptedException e) {
+				// Relaying stopped
+				for(ReceivedData packet: batch)
+					bufferPool.release(packet.getData());
+			}
+		}
+	}
+
+	/**********************************************************
+	 * Relaying
+	 **********************************************************/
+
+	/**
+	 * Prepares a client message for the server: increments the hop count and, for a message coming
+	 * straight from a client, fills in the gateway IP address and adds the Relay Agent Information option.
+	 * A message that already passed another relay agent is forwarded unchanged otherwise.
+	 *
+	 * @param packet
+	 *        The received client message, changed in place.
+	 * @return The message addressed to the server, null if it has to be dropped.
+	 */
+	ReceivedData relayToServer(ReceivedData packet) {
+		byte[] data = packet.getData();
+		int length = packet.getLength();
+		if(length <= Message.OPTIONS_INDEX || (data[Message.OP_INDEX] & 0xFF) != BOOTREQUEST)
+			return null;
+		int hops = data[Message.HOPS_INDEX] & 0xFF;
+		if(hops >= MAXIMUM_HOPS)
+			return null;
+		data[Message.HOPS_INDEX] = (byte) (hops + 1);
+		if(isZero(data, Message.GIADDR_INDEX)) {
+			// A client can not add relay agent information itself (RFC 3046, 2.1)
+			if(findOption(data, length, AGENT_INFORMATION) >= 0)
+				return null;
+			int end = findOption(data, length, Option.END);
+			byte[] clientAddress = packet.getAddress().getAddress();
+			if(end < 0 || clientAddress.length != 4)
+				return null;
+			int subOptionsLength = 2 + CIRCUIT_ID_LENGTH + (remoteId.length == 0 ? 0 : 2 + remoteId.length);
+			if(subOptionsLength > 255 || end + 2 + subOptionsLength + 1 > data.length)
+				return null;
+			int index = end;
+			data[index++] = (byte) AGENT_INFORMATION;
+			data[index++] = (byte) subOptionsLength;
+			data[index++] = (byte) CIRCUIT_ID;
+			data[index++] = (byte) CIRCUIT_ID_LENGTH;
+			System.arraycopy(clientAddress, 0, data, index, 4);
+			index += 4;
+			data[index++] = (byte) (packet.getPort() >>> 8);
+			data[index++] = (byte) packet.getPort();
+			if(remoteId.length > 0) {
+				data[index++] = (byte) REMOTE_ID;
+				data[index++] = (byte) remoteId.length;
+				System.arraycopy(remoteId, 0, data, index, remoteId.length);
+				index += remoteId.length;
+			}
+			data[index++] = (byte) Option.END;
+			length = Math.max(length, index);
+			System.arraycopy(relayAddress.getAddress(), 0, data, Message.GIADDR_INDEX, 4);
+		}
+		InetSocketAddress server = servers.get(0);
+		return new ReceivedData(data, length, server.getAddress(), server.getPort());
+	}
+
+	/**
+	 * Prepares a server reply for the client: reads the client address and port from the Circuit ID
+	 * of the Relay Agent Information option and strips the option.
+	 *
+	 * @param packet
+	 *        The received server reply, changed in place.
+	 * @return The reply addressed to the client, null if it has to be dropped.
+	 */
+	ReceivedData relayToClient(ReceivedData packet) {
+		byte[] data = packet.getData();
+		int length = packet.getLength();
+		if(length <= Message.OPTIONS_INDEX || (data[Message.OP_INDEX] & 0xFF) != BOOTREPLY)
+			return null;
+		for(int i = 0; i < 4; i++) {
+			if(data[Message.GIADDR_INDEX + i] != relayAddress.getAddress()[i])
+				return null;
+		}
+		int option = findOption(data, length, AGENT_INFORMATION);
+		if(option < 0)
+			return null;
+		int optionEnd = option + 2 + (data[option + 1] & 0xFF);
+		if(optionEnd > length)
+			return null;
+		InetAddress clientAddress = null;
+		int clientPort = 0;
+		for(int index = option + 2; index + 1 < optionEnd; index += 2 + (data[index + 1] & 0xFF)) {
+			if((data[index] & 0xFF) == CIRCUIT_ID && (data[index + 1] & 0xFF) == CIRCUIT_ID_LENGTH && index + 2 + CIRCUIT_ID_LENGTH <= optionEnd) {
+				try {
+					clientAddress = InetAddress.getByAddress(new byte[] {data[index + 2], data[index + 3], data[index + 4], data[index + 5]});
+				} catch(UnknownHostException e) {
+					// Can not happen: an IPv4 address always has four bytes
+					return null;
+				}
+				clientPort = ((data[index + 6] & 0xFF) << 8) | (data[index + 7] & 0xFF);
+			}
+		}
+		if(clientAddress == null)
+			return null;
+		System.arraycopy(data, optionEnd, data, option, length - optionEnd);
+		length -= optionEnd - option;
+		if(length < MINIMUM_MESSAGE_SIZE) {
+			for(int i = length; i < MINIMUM_MESSAGE_SIZE; i++)
+				data[i] = 0;
+			length = MINIMUM_MESSAGE_SIZE;
+		}
+		return new ReceivedData(data, length, clientAddress, clientPort);
+	}
+
+	/**
+	 * Returns the index of the first option with given code in the options of an encoded message,
+	 * or the index of the end option if the given code is the end option.
+	 *
+	 * @param data
+	 *        The encoded message.
+	 * @param length
+	 *        The length of the encoded message.
+	 * @param code
+	 *        The code of the option.
+	 * @return The index of the option, -1 if the message has no such option or its options are malformed.
+	 */
+	private static int findOption(byte[] data, int length, int code) {
+		int index = Message.OPTIONS_INDEX;
+		while(index < length) {
+			int current = data[index] & 0xFF;
+			if(current == code)
+				return index;
+			if(current == Option.END)
+				return -1;
+			if(current == Option.PAD)
+				index++;
+			else if(index + 1 < length)
+				index += 2 + (data[index + 1] & 0xFF);
+			else
+				return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether the four bytes at the given index are zero.
+	 */
+	private static boolean isZero(byte[] data, int index) {
+		return data[index] == 0 && data[index + 1] == 0 && data[index + 2] == 0 && data[index + 3] == 0;
+	}
+}
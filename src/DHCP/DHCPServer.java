@@ -1,13 +1,15 @@
 package DHCP;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 
-import DHCP.Message.DHCPAckMessage;
-import DHCP.Message.DHCPNakMessage;
-import DHCP.Message.DHCPOfferMessage;
 import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+import DHCP.Message.Option;
+import DHCP.Monitoring.TransactionStageEvent;
 
 /**
  * Class representing a DHCP Server.
@@ -74,39 +76,251 @@ public class DHCPServer extends DHCPHost implements Runnable {
 	private void setLeaseTime(int leaseTime) {
 		this.leaseTime = leaseTime;
 	}
+	
+	/**
+	 * Return the time at which a lease granted now to the given client of the given scope expires,
+	 * with the lease time of the client dispersed as configured for the scope.
+	 * 
+	 * @param scope
+	 *        The scope serving the client.
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @return The lease expiration time.
+	 */
+	private long getLeaseExpirationTime(Scope scope, String macAddress) {
+		return getClock().currentTimeMillis() + scope.getLeaseTime(getLeaseTime(), macAddress)*1000L;
+	}
 
 	
 	/**********************************************************
-	 * Pool of IP addresses
+	 * Clock
+	 **********************************************************/
+	
+	/**
+	 * Variable representing the clock of the lease logic of the server.
+	 */
+	private Clock clock = SystemClock.INSTANCE;
+	
+	/**
+	 * Return the clock lease and reservation expiration times are computed with.
+	 * 
+	 * @return The clock of the server.
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Sets the clock of the lease logic of the server.
+	 * 
+	 * @param clock
+	 *        The clock to set.
+	 */
+	private void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
+	/**********************************************************
+	 * Processing mode
+	 **********************************************************/
+	
+	/**
+	 * Variable representing the way received messages are dispatched to be handled.
+	 */
+	private ProcessingMode processingMode = ProcessingMode.SERIAL;
+	
+	/**
+	 * Return the way received messages are dispatched to be handled.
+	 * 
+	 * @return The processing mode of the server.
+	 */
+	public ProcessingMode getProcessingMode() {
+		return processingMode;
+	}
+	
+	/**
+	 * Sets the way received messages are dispatched to be handled.
+	 * 
+	 * @param processingMode
+	 *        The processing mode to set.
+	 */
+	private void setProcessingMode(ProcessingMode processingMode) {
+		this.processingMode = processingMode;
+	}
+	
+	/**********************************************************
+	 * Cluster
+	 **********************************************************/
+	
+	/**
+	 * Variable representing the view of the cluster the server is part of, null for a standalone server.
+	 */
+	private ClusterMembership clusterMembership = null;
+	
+	/**
+	 * Return the view of the cluster the server is part of.
+	 * 
+	 * @return The cluster membership of the server, null if the server is not part of a cluster.
+	 */
+	public ClusterMembership getClusterMembership() {
+		return clusterMembership;
+	}
+	
+	/**
+	 * Sets the view of the cluster the server is part of.
+	 * 
+	 * @param clusterMembership
+	 *        The cluster membership to set, null for a standalone server.
+	 */
+	private void setClusterMembership(ClusterMembership clusterMembership) {
+		this.clusterMembership = clusterMembership;
+	}
+	
+	/**********************************************************
+	 * Scopes
 	 **********************************************************/
 
 	/**
-	 * Variable representing the pool of IP addresses the server can issue.
+	 * Variable representing the scopes served by the server, keyed on their subnet prefix.
 	 */
-	private IPPool pool = null;
+	private final ScopeTrie scopes = new ScopeTrie();
 	
 	/**
-	 * Constant representing the first part of all pool IP addresses.
+	 * Variable representing the configuration of the scopes served by the server.
 	 */
-	private static final String POOL_IP_PREFIX = "192.168.100.";
+	private ScopeConfiguration scopeConfiguration = null;
 	
 	/**
-	 * Constant representing the last part of the first IP in the pool.
+	 * Return the configuration of the scopes served by the server.
+	 * 
+	 * @return The scope configuration.
 	 */
-	private static final int IP_FIRST = 100;
+	public ScopeConfiguration getScopeConfiguration() {
+		return scopeConfiguration;
+	}
 	
 	/**
-	 * Constant representing the last part of the last IP in the pool.
+	 * Sets the scope configuration and indexes all configured scopes on their subnet prefix.
+	 * 
+	 * @param scopeConfiguration
+	 *        The scope configuration to set.
+	 * @throws IllegalArgumentException
+	 *         The configuration contains no scopes or two scopes serve the same subnet.
+	 * @post   The reply templates of all scopes are encoded for the server IP.
+	 * @post   The reserved IP addresses are kept out of dynamic allocation in all pools.
 	 */
-	private static final int IP_LAST = 200;
+	private void setScopeConfiguration(ScopeConfiguration scopeConfiguration) throws IllegalArgumentException, UnknownHostException {
+		if(scopeConfiguration.getScopes().isEmpty())
+			throw new IllegalArgumentException("The server needs at least one scope.");
+		for(Scope scope: scopeConfiguration.getScopes()) {
+			this.scopes.insert(scope);
+			scope.getPool().setClock(this.getClock());
+			scope.initializeReplyTemplates(this.getServerIP());
+			scope.getPool().excludeReservedAddresses(scopeConfiguration.getReservations());
+		}
+		this.scopeConfiguration = scopeConfiguration;
+	}
 	
 	/**
-	 * Return the pool of IP addresses
+	 * Return the pool of IP addresses of the default scope.
 	 * 
-	 * @return The pool of IP addresses.
+	 * @return The pool of IP addresses of the default scope, or of the first scope if there is no default scope.
 	 */
 	public IPPool getPool() {
-		return pool;
+		Scope defaultScope = getScopeConfiguration().getDefaultScope();
+		if(defaultScope == null)
+			defaultScope = getScopeConfiguration().getScopes().get(0);
+		return defaultScope.getPool();
+	}
+	
+	/**
+	 * Selects the scope serving the given message. The relay agent address (giaddr) is used
+	 * if the message was relayed, the client IP address (ciaddr) if the client has one, and
+	 * the address of the receiving interface otherwise.
+	 * 
+	 * @param message
+	 *        The message received by the server.
+	 * @return The scope with the longest subnet prefix matching the selection address,
+	 *         the default scope if no subnet matches.
+	 * @throws IllegalArgumentException
+	 *         No scope matches and there is no default scope.
+	 */
+	public Scope selectScope(Message message) throws IllegalArgumentException {
+		InetAddress selectionAddress = this.getServerIP();
+		if(!message.getGiaddr().isAnyLocalAddress())
+			selectionAddress = message.getGiaddr();
+		else if(!message.getCiaddr().isAnyLocalAddress())
+			selectionAddress = message.getCiaddr();
+		Scope scope = scopes.lookup(selectionAddress);
+		if(scope == null)
+			scope = getScopeConfiguration().getDefaultScope();
+		if(scope == null)
+			throw new IllegalArgumentException("No scope serves " + selectionAddress.getHostAddress() + ".");
+		return scope;
+	}
+
+	/**********************************************************
+	 * Lease persistence
+	 **********************************************************/
+	
+	/**
+	 * Constant representing the maximum time (in milliseconds) a lease change waits before it is written to the journal.
+	 */
+	private static final long LEASE_FLUSH_WINDOW = 100;
+	
+	/**
+	 * Constant representing the number of addresses with a waiting lease change at which the journal is written early.
+	 */
+	private static final int MAXIMUM_PENDING_LEASE_CHANGES = 4096;
+	
+	/**
+	 * Variable representing the store writing the lease changes to the lease journal, null if the leases are kept in memory only.
+	 */
+	private WriteBehindLeaseStore leaseStore = null;
+	
+	/**
+	 * Return the store writing the lease changes of the server to its lease journal.
+	 * 
+	 * @return The lease store, null if the configuration has no lease journal.
+	 */
+	public WriteBehindLeaseStore getLeaseStore() {
+		return leaseStore;
+	}
+	
+	/**
+	 * Restores the leases of the lease journal of the scope configuration, if any, and starts writing
+	 * the lease changes to it. Leases that expired while the server was down are not restored.
+	 * 
+	 * @throws IllegalArgumentException
+	 *         The lease journal can not be read.
+	 */
+	private void startLeasePersistence() throws IllegalArgumentException {
+		String path = getScopeConfiguration().getLeaseJournalPath();
+		if(path == null)
+			return;
+		LeaseJournal journal = new LeaseJournal(path);
+		try {
+			int restored = journal.restore(getScopeConfiguration(), getClock().currentTimeMillis());
+			System.out.println("Restored " + restored + " leases from " + path + ".");
+		} catch(IOException e) {
+			throw new IllegalArgumentException("The lease journal " + path + " can not be read: " + e.getMessage());
+		}
+		leaseStore = new WriteBehindLeaseStore(getScopeConfiguration(), journal, LEASE_FLUSH_WINDOW, MAXIMUM_PENDING_LEASE_CHANGES);
+		leaseStore.start();
+	}
+	
+	/**
+	 * Writes the waiting lease changes to the lease journal and closes it, if any.
+	 */
+	private void stopLeasePersistence() {
+		WriteBehindLeaseStore leaseStore = this.leaseStore;
+		if(leaseStore == null)
+			return;
+		try {
+			leaseStore.stop();
+		} catch(IOException e) {
+			System.out.println("Error occured in lease persistence: " + e.getMessage() + ". Changes since the last flush are lost.");
+		}
 	}
 	
 	/**********************************************************
@@ -114,42 +328,463 @@ public class DHCPServer extends DHCPHost implements Runnable {
 	 **********************************************************/
 
 	/**
-	 * Initialize a new DHCP server and starts two threads:
-	 * an operation thread and a pool control thread.
-	 * 
+	 * Initialize a new DHCP server serving the built-in default scope and starts two threads:
+	 * an operation thread (which starts a processing thread) and a pool control thread.
+	 *
 	 * @param serverIP
 	 *        The IP at which the server can be reached.
 	 * @param leaseTime
 	 * 		  The lease time (in seconds).
 	 */
 	public DHCPServer(InetAddress serverIP, int leaseTime) throws UnknownHostException {
+		this(serverIP, leaseTime, ScopeConfiguration.defaultConfiguration());
+	}
+
+	/**
+	 * Initialize a new DHCP server serving the given scopes and starts two threads:
+	 * an operation thread (which starts a processing thread) and a pool control thread.
+	 *
+	 * @param serverIP
+	 *        The IP at which the server can be reached.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes to serve.
+	 */
+	public DHCPServer(InetAddress serverIP, int leaseTime, ScopeConfiguration scopeConfiguration) throws IllegalArgumentException, UnknownHostException {
+		this(serverIP, leaseTime, scopeConfiguration, DatagramTransport.FACTORY);
+	}
+
+	/**
+	 * Initialize a new DHCP server serving the given scopes over the given kind of transport and starts
+	 * two threads: an operation thread (which starts a processing thread) and a pool control thread.
+	 *
+	 * @param serverIP
+	 *        The IP at which the server can be reached.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes to serve.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoint of the server.
+	 */
+	public DHCPServer(InetAddress serverIP, int leaseTime, ScopeConfiguration scopeConfiguration, Transport.Factory transportFactory) throws IllegalArgumentException, UnknownHostException {
+		this(serverIP, leaseTime, scopeConfiguration, transportFactory, SystemClock.INSTANCE);
+	}
+
+	/**
+	 * Initialize a new DHCP server serving the given scopes over the given kind of transport, with lease
+	 * times on the given clock, and starts two threads: an operation thread (which starts a processing thread)
+	 * and a pool control thread.
+	 *
+	 * @param serverIP
+	 *        The IP at which the server can be reached.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes to serve.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoint of the server.
+	 * @param clock
+	 *        The clock of the lease logic of the server and its pools.
+	 */
+	public DHCPServer(InetAddress serverIP, int leaseTime, ScopeConfiguration scopeConfiguration, Transport.Factory transportFactory, Clock clock) throws IllegalArgumentException, UnknownHostException {
+		this(serverIP, leaseTime, scopeConfiguration, transportFactory, clock, ProcessingMode.SERIAL);
+	}
+
+	/**
+	 * Initialize a new DHCP server serving the given scopes over the given kind of transport, with lease
+	 * times on the given clock, and starts two threads: an operation thread (which starts the threads
+	 * of the given processing mode) and a pool control thread.
+	 *
+	 * @param serverIP
+	 *        The IP at which the server can be reached.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes to serve.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoint of the server.
+	 * @param clock
+	 *        The clock of the lease logic of the server and its pools.
+	 * @param processingMode
+	 *        The way received messages are dispatched to be handled.
+	 */
+	public DHCPServer(InetAddress serverIP, int leaseTime, ScopeConfiguration scopeConfiguration, Transport.Factory transportFactory, Clock clock, ProcessingMode processingMode) throws IllegalArgumentException, UnknownHostException {
+		this(serverIP, SERVER_PORT, leaseTime, scopeConfiguration, transportFactory, clock, processingMode, null);
+	}
+	
+	/**
+	 * Initialize a new DHCP server listening on the given port, as a server of a cluster if a membership
+	 * is given, and starts two threads: an operation thread (which starts the threads of the given
+	 * processing mode) and a pool control thread. A server of a cluster only answers the clients that
+	 * hash to it and only allocates addresses from its slice of every pool.
+	 *
+	 * @param serverIP
+	 *        The IP at which the server can be reached.
+	 * @param serverPort
+	 *        The port at which the server listens.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes to serve.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoint of the server.
+	 * @param clock
+	 *        The clock of the lease logic of the server and its pools.
+	 * @param processingMode
+	 *        The way received messages are dispatched to be handled.
+	 * @param clusterMembership
+	 *        The view of the cluster the server is part of, null for a standalone server.
+	 * @throws IllegalArgumentException
+	 *         The configuration contains no scopes, two scopes serve the same subnet or the lease journal can not be read.
+	 */
+	public DHCPServer(InetAddress serverIP, int serverPort, int leaseTime, ScopeConfiguration scopeConfiguration, Transport.Factory transportFactory, Clock clock,
+			ProcessingMode processingMode, ClusterMembership clusterMembership) throws IllegalArgumentException, UnknownHostException {
+		setServerPort(serverPort);
+		setClusterMembership(clusterMembership);
+		setTransportFactory(transportFactory);
+		setClock(clock);
+		this.rateLimiter = new RateLimiter(RATE_LIMITER_SIZE, RATE_LIMIT_BURST, RATE_LIMIT_PER_SECOND, RATE_LIMIT_LINK_BURST, RATE_LIMIT_LINK_PER_SECOND, clock);
+		this.responseCache = new ResponseCache(RESPONSE_CACHE_SIZE, RESPONSE_CACHE_TIME_TO_LIVE, clock);
+		setProcessingMode(processingMode);
 		setServerIP(serverIP);
 		setLeaseTime(leaseTime);
-		this.pool = new IPPool(POOL_IP_PREFIX, IP_FIRST, IP_LAST);
+		setScopeConfiguration(scopeConfiguration);
+		startLeasePersistence();
 		Thread thread = new Thread(this);
 		thread.start();
-		Thread threadPoolControl = new Thread(new PoolControl());
+		threadPoolControl = new Thread(new PoolControl());
 		threadPoolControl.start();
 	}
 	
+	/**
+	 * Variable representing the thread checking the pools.
+	 */
+	private final Thread threadPoolControl;
+	
+	/**
+	 * Variable representing the socket the server receives on, null before the server operates.
+	 */
+	private volatile Transport socket = null;
+	
+	/**
+	 * Variable registering whether the server is stopped.
+	 */
+	private volatile boolean stopped = false;
+	
+	/**
+	 * Check whether the server is stopped.
+	 * 
+	 * @return True if the server is stopped; false otherwise.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+	
+	/**
+	 * Stops the server: closes its socket, which ends the operation and processing threads, and stops
+	 * checking the pools. The leases in the pools are kept, and written to the lease journal if any.
+	 */
+	public void stop() {
+		stopped = true;
+		Transport socket = this.socket;
+		if(socket != null)
+			socket.close();
+		threadPoolControl.interrupt();
+		stopLeasePersistence();
+	}
+
 	/**********************************************************
 	 * Server
 	 **********************************************************/
 	
 	/**
-	 * Simulates normal operation of the server.
+	 * Constant representing the default port at which the server listens.
+	 */
+	private static final int SERVER_PORT = 1602;
+	
+	/**
+	 * Variable representing the port at which the server listens.
+	 */
+	private int serverPort = SERVER_PORT;
+	
+	/**
+	 * Return the port at which the server listens.
+	 * 
+	 * @return The server port.
+	 */
+	public int getServerPort() {
+		return serverPort;
+	}
+	
+	/**
+	 * Sets the port at which the server listens.
+	 * 
+	 * @param serverPort
+	 *        The server port to set.
+	 */
+	private void setServerPort(int serverPort) {
+		this.serverPort = serverPort;
+	}
+	
+	/**
+	 * Constant representing the maximum number of received messages waiting to be handled.
+	 */
+	private static final int ADMISSION_QUEUE_CAPACITY = 1024;
+	
+	/**
+	 * Variable representing the number of received packets dropped without being handled, per reason.
+	 */
+	private final DropCounters dropCounters = new DropCounters();
+	
+	/**
+	 * Return the number of received packets dropped without being handled, per reason.
+	 * 
+	 * @return The drop counters.
+	 */
+	public DropCounters getDropCounters() {
+		return dropCounters;
+	}
+	
+	/**
+	 * Variable representing the received messages waiting to be handled.
+	 */
+	private final AdmissionQueue admissionQueue = new AdmissionQueue(ADMISSION_QUEUE_CAPACITY, dropCounters);
+	
+	/**
+	 * Return the queue of received messages waiting to be handled.
+	 * 
+	 * @return The admission queue.
+	 */
+	public AdmissionQueue getAdmissionQueue() {
+		return admissionQueue;
+	}
+	
+	/**
+	 * Constant representing the maximum number of clients whose rate limit is tracked.
+	 */
+	private static final int RATE_LIMITER_SIZE = 1 << 16;
+	
+	/**
+	 * Constant representing the number of messages a client can send at once.
+	 */
+	private static final int RATE_LIMIT_BURST = 20;
+	
+	/**
+	 * Constant representing the number of messages per second a client can send in the long run.
+	 */
+	private static final double RATE_LIMIT_PER_SECOND = 5;
+	
+	/**
+	 * Constant representing the number of new clients a link can bring at once.
+	 */
+	private static final int RATE_LIMIT_LINK_BURST = 10000;
+	
+	/**
+	 * Constant representing the number of new clients per second a link can bring in the long run.
+	 */
+	private static final double RATE_LIMIT_LINK_PER_SECOND = 10000;
+	
+	/**
+	 * Variable representing the per-client rate limit on received messages.
+	 */
+	private final RateLimiter rateLimiter;
+	
+	/**
+	 * Return the per-client rate limit on received messages.
+	 * 
+	 * @return The rate limiter.
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+	
+	/**
+	 * Constant representing the number of threads handling messages in the thread pool mode,
+	 * and the number of decoding and of encoding threads in the pipeline mode.
+	 */
+	private static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * Constant representing the number of slots in the ring buffer of the pipeline mode.
+	 */
+	private static final int PIPELINE_CAPACITY = 1024;
+	
+	/**
+	 * Simulates normal operation of the server: receives messages on a single socket and dispatches
+	 * them according to the processing mode of the server. Malformed packets, messages of clients
+	 * served by another server of the cluster and messages of clients over their rate limit are 
+	 * dropped before they are decoded.
 	 */
 	public void operate() throws Exception {
 		UDPHost server = new UDPHost(InetAddress.getByName("localhost"), 0);
-		DatagramSocket socket = new DatagramSocket(1602);
-		ReceivedData rcvd = server.receiveData(socket);
-		Message incomingMessage = Message.convertToMessage(rcvd.getData());
-		server.setDestinationPort(rcvd.getPort());
+		Transport socket = getTransportFactory().open(null, getServerPort());
+		this.socket = socket;
+		if(stopped)
+			socket.close();
+		try {
+			switch(getProcessingMode()) {
+				case THREAD_POOL:
+					operateThreadPool(server, socket);
+					break;
+				case PIPELINE:
+					operatePipeline(server, socket);
+					break;
+				default:
+					operateSerial(server, socket);
+			}
+		} finally {
+			socket.close();
+		}
+	}
+	
+	/**
+	 * Checks whether a received message is admitted to be handled, and counts it as dropped if not.
+	 * 
+	 * @param rcvd
+	 *        The received message.
+	 * @param type
+	 *        The type of the received message.
+	 * @return True if the message is well formed, the client is served by this server of the cluster
+	 *         and the client is within its rate limit; false otherwise.
+	 */
+	private boolean admit(ReceivedData rcvd, MessageType type) {
+		if(type == MessageType.MALFORMED) {
+			dropCounters.record(DropReason.MALFORMED);
+			return false;
+		}
+		ClusterMembership cluster = getClusterMembership();
+		if(cluster != null && !cluster.serves(rcvd.getData(), type)) {
+			dropCounters.record(DropReason.OTHER_NODE);
+			return false;
+		}
+		if(!rateLimiter.tryAcquire(rcvd.getData())) {
+			dropCounters.record(DropReason.RATE_LIMITED);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Admits the received messages to the admission queue, from which a separate processing thread handles them.
+	 */
+	private void operateSerial(UDPHost server, Transport socket) throws Exception {
+		operateQueue(server, socket, new Thread(new Processing(socket)));
+	}
+	
+	/**
+	 * Admits the received messages to the admission queue, from which a pool of threads takes them,
+	 * each handling a message from decode to send.
+	 */
+	private void operateThreadPool(UDPHost server, Transport socket) throws Exception {
+		Thread[] threads = new Thread[WORKER_THREADS];
+		for(int i = 0; i < threads.length; i++)
+			threads[i] = new Thread(new Processing(socket));
+		operateQueue(server, socket, threads);
+	}
+	
+	/**
+	 * Admits the received messages to the admission queue, from which a feeding thread publishes them,
+	 * highest priority first, in the ring buffer of a pipeline of stages. The feeding thread waits while
+	 * the ring buffer is full; meanwhile the admission queue fills up and sheds the lowest priority first.
+	 */
+	private void operatePipeline(UDPHost server, Transport socket) throws Exception {
+		RingPipeline<Transaction> pipeline = createPipeline(socket);
+		pipeline.start();
+		try {
+			operateQueue(server, socket, new Thread(() -> feed(pipeline)));
+		} finally {
+			pipeline.stop();
+		}
+	}
+	
+	/**
+	 * Receives messages and admits them to the admission queue, while the given threads take them out
+	 * of it. The threads are started first and interrupted when the server stops.
+	 * 
+	 * @param server
+	 *        The UDP server.
+	 * @param socket
+	 *        The socket the messages are received on.
+	 * @param threads
+	 *        The threads taking the messages out of the admission queue.
+	 */
+	private void operateQueue(UDPHost server, Transport socket, Thread... threads) throws Exception {
+		for(Thread thread: threads)
+			thread.start();
+		try {
+			while(true) {
+				ReceivedData rcvd = server.receiveData(socket);
+				MessageType type = MessageType.classify(rcvd.getData());
+				if(admit(rcvd, type))
+					admissionQueue.offer(rcvd, AdmissionQueue.classify(type, rcvd.getData()));
+			}
+		} finally {
+			for(Thread thread: threads)
+				thread.interrupt();
+		}
+	}
+	
+	/**
+	 * Publishes the messages of the admission queue in the ring buffer of the given pipeline, highest priority first.
+	 * 
+	 * @param pipeline
+	 *        The pipeline handling the messages.
+	 */
+	private void feed(RingPipeline<Transaction> pipeline) {
+		try {
+			while(true) {
+				ReceivedData rcvd = admissionQueue.take();
+				long sequence = pipeline.next();
+				Transaction transaction = pipeline.get(sequence);
+				transaction.received = rcvd;
+				transaction.type = MessageType.classify(rcvd.getData());
+				pipeline.publish(sequence);
+			}
+		} catch(InterruptedException e) {
+			// Operation stopped
+		}
+	}
+	
+	/**
+	 * Inner class defined to handle the messages in the admission queue, highest priority first.
+	 */
+	private class Processing implements Runnable {
+		
+		/**
+		 * Initialize the processing of the messages received on the given socket.
+		 * 
+		 * @param socket
+		 *        The socket the messages are received on and the replies are sent from.
+		 */
+		private Processing(Transport socket) {
+			this.socket = socket;
+		}
 		
-		handleResponse(incomingMessage, server, socket);
+		/**
+		 * The socket the messages are received on and the replies are sent from.
+		 */
+		private final Transport socket;
 		
-		socket.close();
-		operate();
+		public void run() {
+			try {
+				UDPHost server = new UDPHost(InetAddress.getByName("localhost"), 0);
+				while(true) {
+					ReceivedData rcvd = admissionQueue.take();
+					server.setDestinationPort(rcvd.getPort());
+					try {
+						handleResponse(rcvd.getData(), server, socket);
+					} catch(Exception e) {
+						System.out.println("Error while handling message: " + e.getMessage() + ". Resuming normal operation.");
+					}
+				}
+			} catch(InterruptedException e) {
+				// Operation stopped
+			} catch(UnknownHostException e) {
+				System.out.println("Error occured in processing");
+			}
+		}
 	}
 	
 	/**
@@ -174,209 +809,626 @@ public class DHCPServer extends DHCPHost implements Runnable {
 		try {
 			operate();
 		} catch (Exception e) {
-			System.out.println("Error occured in operation");
+			if(!stopped)
+				System.out.println("Error occured in operation");
 		}
 	}
 
+	/**********************************************************
+	 * Message handling
+	 **********************************************************/
+	
+	/**
+	 * Interface for handlers of one type of client message.
+	 */
+	private interface MessageHandler {
+		
+		/**
+		 * Handle a message of the client.
+		 * 
+		 * @param scope
+		 *        The scope serving the client.
+		 * @param message
+		 *        The message of the client.
+		 * @return The reply to send to the client, null if the message needs no reply.
+		 */
+		Reply handle(Scope scope, Message message) throws Exception;
+	}
+	
 	/**
-	 * Handle a response of the client and return normal operation.
+	 * Interface for a reply decided by a handler, encoded separately from the decision.
+	 */
+	private interface Reply {
+		
+		/**
+		 * Encodes the reply.
+		 * 
+		 * @return The encoded reply.
+		 */
+		byte[] encode() throws Exception;
+	}
+	
+	/**
+	 * Variable representing the handlers of the client messages, keyed on the message type.
+	 * Message types without handler are ignored.
+	 */
+	private final EnumMap<MessageType, MessageHandler> handlers = createHandlers();
+	
+	/**
+	 * Creates the dispatch table of the client messages.
+	 * 
+	 * @return The handlers keyed on the message type they handle.
+	 */
+	private EnumMap<MessageType, MessageHandler> createHandlers() {
+		EnumMap<MessageType, MessageHandler> result = new EnumMap<MessageType, MessageHandler>(MessageType.class);
+		result.put(MessageType.DISCOVER, this::handleDiscover);
+		result.put(MessageType.REQUEST, this::handleRequest);
+		result.put(MessageType.DECLINE, this::handleDecline);
+		result.put(MessageType.RELEASE, this::handleRelease);
+		result.put(MessageType.INFORM, this::handleInform);
+		return result;
+	}
+	
+	/**
+	 * Constant representing the maximum number of replies kept for retransmitted client messages.
+	 */
+	private static final int RESPONSE_CACHE_SIZE = 4096;
+	
+	/**
+	 * Constant representing the time (in milliseconds) a reply is kept for retransmitted client messages.
+	 */
+	private static final long RESPONSE_CACHE_TIME_TO_LIVE = 5000;
+	
+	/**
+	 * Variable representing the replies kept to answer retransmitted client messages.
+	 */
+	private final ResponseCache responseCache;
+	
+	/**
+	 * Return the cache of replies to retransmitted client messages.
 	 * 
-	 * @param response
-	 * 		  The response of the client.
+	 * @return The response cache.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
+	/**
+	 * Handle a response of the client: classify it and dispatch it to the handler of its message type.
+	 * A retransmission of a message that was already answered gets the cached reply, without being handled again,
+	 * and a retransmission of a message that is still being handled is dropped.
+	 * 
+	 * @param data
+	 * 		  The encoded response of the client.
 	 * @param server
 	 * 		  The UDP server.
 	 * @param socket
-	 * 		  The bidirectional connection socket.
+	 * 		  The bidirectional connection transport.
 	 */
-	private void handleResponse(Message response, UDPHost server, DatagramSocket socket) throws Exception{
+	private void handleResponse(byte[] data, UDPHost server, Transport socket) throws Exception{
+		MessageType type = MessageType.classify(data);
+		MessageHandler handler = handlers.get(type);
+		if(handler == null) {
+			System.out.println("Unknown message received. Ignoring message and resuming normal operation.");
+			return;
+		}
+		byte[] reply = responseCache.lookup(data, type);
+		if(reply == ResponseCache.IN_FLIGHT) {
+			System.out.println("Retransmitted " + type + " received while the original is handled. Dropping it.");
+			dropCounters.record(DropReason.IN_FLIGHT);
+			return;
+		}
+		if(reply != null) {
+			System.out.println("Retransmitted " + type + " received. Resending cached reply.");
+			sendReply(reply, data, type, server, socket);
+			return;
+		}
+		boolean answered = false;
 		try {
-			// DHCPDiscover received
-			if(Utilities.convertToInt(response.getOptions().getOption(53).getContents()) == 1) {
-				System.out.println("DHCPDISCOVER received.");
-				InetAddress requestedIP = InetAddress.getByAddress(response.getOptions().getOption(50).getContents());	
-				// If the client has already an IP in use: don't answer
-				if(this.clientHasAlreadyIP(response.getChaddr())) {
-					System.out.println("Client has already IP; waiting for release.");
-					socket.close();
-					operate();
-				}
-				try {
-					handleResponse(DHCPOffer(response.getXid(), requestedIP, response.getChaddr(), server, socket), server, socket);
-				}
-				catch(Exception ex) {
-					// Do nothing
-				}
-			}
-			// DHCPRequest received
-			else if(Utilities.convertToInt(response.getOptions().getOption(53).getContents()) == 3) {
-				System.out.println("DHCPREQUEST received.");
-				InetAddress offeredIP = InetAddress.getByAddress(response.getOptions().getOption(50).getContents());
-				if(getPool().isInPoolAndAvailable(offeredIP) || (offeredIP.equals(getPool().getIPByMacAddress(response.getChaddr()).getIpAddress()))){
-					getPool().getIPFromPool(offeredIP).setLeaseExpirationTime(System.currentTimeMillis() + getLeaseTime()*1000);
-					getPool().getIPFromPool(offeredIP).setLeased(true);
-					getPool().getIPFromPool(offeredIP).setMacAddress(response.getChaddr());
-					DHCPAck(response.getXid(), InetAddress.getByAddress(response.getOptions().getOption(50).getContents()), response.getChaddr(), server, socket);
-					printLeasedAddresses(this.getPool().returnLeasedAddresses());
-					socket.close();
-					operate();
-				}
-				else {
-					DHCPNak(response.getXid(), response.getChaddr(), server, socket);
-					socket.close();
-					operate();
-				}
-			}
-			else {
-				System.out.println("Unknown message received. Ignoring message and resuming normal operation.");
-				socket.close();
-				operate();
-			}
-		// No options, so illegal argument exception: release
-		} catch (IllegalArgumentException e) {
-			if(response.getYiaddr().equals(InetAddress.getByName("0.0.0.0"))) {		
-				System.out.println("DHCPRELEASE received by " + response.getChaddr() + ".");
-				getPool().getIPByMacAddress(response.getChaddr()).setLeased(false); //don't remove MAC addr from pool to make quick initialization possible
-				getPool().getIPByMacAddress(response.getChaddr()).setLeaseExpirationTime(0);
-				printLeasedAddresses(this.getPool().returnLeasedAddresses());
-				socket.close();
-				operate();
+			TransactionStageEvent decode = TransactionStageEvent.start(TransactionStageEvent.DECODE);
+			Message response = Message.convertToMessage(data);
+			decode.end(response, type);
+			TransactionStageEvent handle = TransactionStageEvent.start(TransactionStageEvent.HANDLE);
+			Reply decision = handler.handle(selectScope(response), response);
+			handle.end(response, type);
+			if(decision != null) {
+				TransactionStageEvent encode = TransactionStageEvent.start(TransactionStageEvent.ENCODE);
+				reply = decision.encode();
+				encode.end(response, type);
+				responseCache.store(data, type, reply, reply.length);
+				answered = true;
+				sendReply(reply, data, type, server, socket);
 			}
+		} finally {
+			if(!answered)
+				responseCache.abandon(data, type);
+		}
+	}
+	
+	/**
+	 * Sends a reply to the client it answers. A message relayed by a relay agent carries the address
+	 * of the relay agent as gateway IP address; its reply carries the same gateway IP address and is
+	 * unicast to that address, at the port the relayed message came from, so relay agents can receive
+	 * replies at any port. Any other reply is sent back to the client.
+	 * 
+	 * @param reply
+	 *        The encoded reply.
+	 * @param request
+	 *        The encoded message of the client.
+	 * @param type
+	 *        The type of the message of the client.
+	 * @param server
+	 * 		  The UDP server, addressed to the port the message of the client came from.
+	 * @param socket
+	 * 		  The bidirectional connection transport.
+	 */
+	private void sendReply(byte[] reply, byte[] request, MessageType type, UDPHost server, Transport socket) throws IOException {
+		TransactionStageEvent send = TransactionStageEvent.start(TransactionStageEvent.SEND);
+		byte[] giaddr = Arrays.copyOfRange(request, Message.GIADDR_INDEX, Message.GIADDR_INDEX + 4);
+		if(giaddr[0] == 0 && giaddr[1] == 0 && giaddr[2] == 0 && giaddr[3] == 0)
+			server.sendDataWithoutResponse(reply, socket);
+		else {
+			System.arraycopy(giaddr, 0, reply, Message.GIADDR_INDEX, 4);
+			server.sendDataTo(reply, reply.length, InetAddress.getByAddress(giaddr), server.getDestinationPort(), socket);
+		}
+		send.end(request, type);
+	}
+	
+	/**********************************************************
+	 * Pipeline
+	 **********************************************************/
+	
+	/**
+	 * Class representing a slot of the ring buffer of the pipeline: a received message and the state
+	 * of its handling. Every stage only writes the fields it produces.
+	 */
+	private static final class Transaction {
+		
+		/**
+		 * The received message, set by the feeding thread.
+		 */
+		private ReceivedData received;
+		
+		/**
+		 * The type of the received message, set by the feeding thread.
+		 */
+		private MessageType type;
 		
-			else {
-				System.out.println("Unknown message received. Ignoring message and resuming normal operation.");
-				socket.close();
-				operate();
+		/**
+		 * The handler of the message and the decoded message with its scope, set by the decode stage.
+		 * The message is null if it is not handled.
+		 */
+		private MessageHandler handler;
+		private Message message;
+		private Scope scope;
+		
+		/**
+		 * Whether the decode stage marked the message as in flight in the response cache.
+		 */
+		private boolean inFlight;
+		
+		/**
+		 * The reply decided by the allocation stage.
+		 */
+		private Reply decision;
+		
+		/**
+		 * The encoded reply, set by the decode stage for a retransmission and by the encode stage otherwise.
+		 */
+		private byte[] reply;
+	}
+	
+	/**
+	 * Creates the pipeline handling the messages received on the given socket in four stages: decode
+	 * and encode on several threads, allocation on one thread, the only one changing the pools,
+	 * and send on one thread.
+	 * 
+	 * @param socket
+	 *        The socket the messages are received on and the replies are sent from.
+	 * @return The pipeline, not yet started.
+	 */
+	private RingPipeline<Transaction> createPipeline(Transport socket) throws UnknownHostException {
+		RingPipeline<Transaction> pipeline = new RingPipeline<Transaction>(PIPELINE_CAPACITY, Transaction::new);
+		UDPHost server = new UDPHost(InetAddress.getByName("localhost"), 0);
+		pipeline.addStage("decode", WORKER_THREADS, (transaction, sequence) -> decode(transaction));
+		pipeline.addStage("allocate", 1, (transaction, sequence) -> allocate(transaction));
+		pipeline.addStage("encode", WORKER_THREADS, (transaction, sequence) -> encode(transaction));
+		pipeline.addStage("send", 1, (transaction, sequence) -> send(transaction, server, socket));
+		return pipeline;
+	}
+	
+	/**
+	 * Decode stage of the pipeline: looks up the reply to a retransmission or decodes the message and selects its scope.
+	 */
+	private void decode(Transaction transaction) {
+		transaction.message = null;
+		transaction.scope = null;
+		transaction.decision = null;
+		transaction.reply = null;
+		transaction.handler = handlers.get(transaction.type);
+		if(transaction.handler == null) {
+			System.out.println("Unknown message received. Ignoring message and resuming normal operation.");
+			return;
+		}
+		byte[] data = transaction.received.getData();
+		transaction.reply = responseCache.lookup(data, transaction.type);
+		if(transaction.reply == ResponseCache.IN_FLIGHT) {
+			System.out.println("Retransmitted " + transaction.type + " received while the original is handled. Dropping it.");
+			dropCounters.record(DropReason.IN_FLIGHT);
+			transaction.reply = null;
+			return;
+		}
+		if(transaction.reply != null) {
+			System.out.println("Retransmitted " + transaction.type + " received. Resending cached reply.");
+			return;
+		}
+		transaction.inFlight = true;
+		TransactionStageEvent decode = TransactionStageEvent.start(TransactionStageEvent.DECODE);
+		try {
+			Message message = Message.convertToMessage(data);
+			transaction.scope = selectScope(message);
+			transaction.message = message;
+		} catch(Exception e) {
+			System.out.println("Error while handling message: " + e.getMessage() + ". Resuming normal operation.");
+		}
+		decode.end(data, transaction.type);
+	}
+	
+	/**
+	 * Allocation stage of the pipeline: decides the reply to a decoded message, changing the pool of its scope.
+	 */
+	private void allocate(Transaction transaction) {
+		if(transaction.message == null)
+			return;
+		TransactionStageEvent handle = TransactionStageEvent.start(TransactionStageEvent.HANDLE);
+		try {
+			transaction.decision = transaction.handler.handle(transaction.scope, transaction.message);
+		} catch(Exception e) {
+			System.out.println("Error while handling message: " + e.getMessage() + ". Resuming normal operation.");
+		}
+		handle.end(transaction.message, transaction.type);
+	}
+	
+	/**
+	 * Encode stage of the pipeline: encodes the decided reply and keeps it for retransmissions.
+	 */
+	private void encode(Transaction transaction) {
+		if(transaction.decision == null)
+			return;
+		TransactionStageEvent encode = TransactionStageEvent.start(TransactionStageEvent.ENCODE);
+		try {
+			byte[] reply = transaction.decision.encode();
+			responseCache.store(transaction.received.getData(), transaction.type, reply, reply.length);
+			transaction.reply = reply;
+		} catch(Exception e) {
+			System.out.println("Error while handling message: " + e.getMessage() + ". Resuming normal operation.");
+		}
+		encode.end(transaction.message, transaction.type);
+	}
+	
+	/**
+	 * Send stage of the pipeline: sends the reply, if any, and clears the slot. A message handled
+	 * without a reply is no longer in flight, so a retransmission of it is handled again.
+	 */
+	private void send(Transaction transaction, UDPHost server, Transport socket) {
+		if(transaction.inFlight && transaction.reply == null)
+			responseCache.abandon(transaction.received.getData(), transaction.type);
+		if(transaction.reply != null) {
+			server.setDestinationPort(transaction.received.getPort());
+			try {
+				sendReply(transaction.reply, transaction.received.getData(), transaction.type, server, socket);
+			} catch(IOException e) {
+				System.out.println("Error while sending reply: " + e.getMessage() + ". Resuming normal operation.");
 			}
 		}
+		transaction.received = null;
+		transaction.inFlight = false;
+		transaction.handler = null;
+		transaction.message = null;
+		transaction.scope = null;
+		transaction.decision = null;
+		transaction.reply = null;
+	}
+	
+	/**
+	 * Handle a DHCPDISCOVER: offer the reserved IP of a client with a fixed reservation in the scope,
+	 * otherwise the requested IP if available and another available IP if not.
+	 * Clients that already have an IP in use get no answer.
+	 */
+	private Reply handleDiscover(Scope scope, Message message) throws Exception {
+		System.out.println("DHCPDISCOVER received.");
+		// If the client has already an IP in use: don't answer
+		if(this.clientHasAlreadyIP(scope.getPool(), message.getChaddr())) {
+			System.out.println("Client has already IP; waiting for release.");
+			return null;
+		}
+		InetAddress reservedIP = getReservedIP(scope, message.getChaddr());
+		if(reservedIP != null)
+			return DHCPOffer(scope, message, reservedIP);
+		Option option50 = message.getOptions().findOption(50);
+		InetAddress requestedIP = option50 == null ? Message.ZERO_ADDRESS : InetAddress.getByAddress(option50.getContents());
+		TransactionStageEvent search = TransactionStageEvent.start(TransactionStageEvent.POOL_SEARCH);
+		InetAddress offerIP = this.getOfferIP(scope.getPool(), requestedIP, message.getChaddr());
+		search.end(message, MessageType.DISCOVER);
+		if(offerIP == null) {
+			// Waiting for an address would hold up every other message, renewals included
+			dropCounters.record(DropReason.POOL_EXHAUSTED);
+			return null;
+		}
+		return DHCPOffer(scope, message, offerIP);
+	}
+	
+	/**
+	 * Handle a DHCPREQUEST: acknowledge the requested IP if it is available or already leased
+	 * to the client, refuse it otherwise. A client with a fixed reservation in the scope only gets its reserved IP. 
+	 * Requests of bound clients renewing or rebinding their lease take the renewal path.
+	 */
+	private Reply handleRequest(Scope scope, Message message) throws Exception {
+		Option option50 = message.getOptions().findOption(50);
+		if(option50 == null && !message.getCiaddr().isAnyLocalAddress())
+			return handleRenew(scope, message);
+		System.out.println("DHCPREQUEST received.");
+		IPPool pool = scope.getPool();
+		InetAddress offeredIP = option50 == null ? message.getCiaddr() : InetAddress.getByAddress(option50.getContents());
+		InetAddress reservedIP = getReservedIP(scope, message.getChaddr());
+		if(reservedIP != null) {
+			if(!reservedIP.equals(offeredIP) || pool.lease(reservedIP, message.getChaddr(), getLeaseExpirationTime(scope, message.getChaddr())) == null)
+				return DHCPNak(scope, message);
+			return DHCPAck(scope, message, reservedIP);
+		}
+		TransactionStageEvent search = TransactionStageEvent.start(TransactionStageEvent.POOL_SEARCH);
+		// Handlers may run concurrently: checking and leasing in one step keeps two clients off the same address
+		boolean available = pool.leaseIfAvailable(offeredIP, message.getChaddr(), getLeaseExpirationTime(scope, message.getChaddr())) != null;
+		search.end(message, MessageType.REQUEST);
+		if(available){
+			Reply ackMessage = DHCPAck(scope, message, offeredIP);
+			printLeasedAddresses(pool.returnLeasedAddresses());
+			return ackMessage;
+		}
+		else {
+			return DHCPNak(scope, message);
+		}
+	}
+	
+	/**
+	 * Handle a DHCPREQUEST of a client in the RENEWING or REBINDING state (client IP filled in, 
+	 * no requested IP): look up the lease on client IP and MAC address, extend it in place and
+	 * acknowledge it, or refuse it if the client IP is not leased to the client.
+	 */
+	private Reply handleRenew(Scope scope, Message message) throws Exception {
+		System.out.println("DHCPREQUEST (renewal) received by " + message.getChaddr() + ".");
+		InetAddress reservedIP = getReservedIP(scope, message.getChaddr());
+		if(reservedIP != null) {
+			if(!reservedIP.equals(message.getCiaddr())
+					|| scope.getPool().lease(reservedIP, message.getChaddr(), getLeaseExpirationTime(scope, message.getChaddr())) == null)
+				return DHCPNak(scope, message);
+			return DHCPAck(scope, message, reservedIP);
+		}
+		IPAddress lease = scope.getPool().renew(message.getCiaddr(), message.getChaddr(), getLeaseExpirationTime(scope, message.getChaddr()));
+		if(lease == null)
+			return DHCPNak(scope, message);
+		return DHCPAck(scope, message, lease.getIpAddress());
+	}
+	
+	/**
+	 * Handle a DHCPDECLINE: the declined IP is in use by another host, so it is kept out of
+	 * the pool for one lease time, if it is leased or offered to the client that declined it.
+	 */
+	private Reply handleDecline(Scope scope, Message message) throws Exception {
+		System.out.println("DHCPDECLINE received by " + message.getChaddr() + ".");
+		Option option50 = message.getOptions().findOption(50);
+		if(option50 == null)
+			return null;
+		InetAddress declined = InetAddress.getByAddress(option50.getContents());
+		if(scope.getPool().decline(declined, message.getChaddr(), getClock().currentTimeMillis() + getLeaseTime()*1000L) == null)
+			System.out.println("- Ignored: " + declined.getHostAddress() + " is not leased or offered to the client.");
+		return null;
+	}
+	
+	/**
+	 * Handle a DHCPRELEASE: the IP of the client becomes available again.
+	 */
+	private Reply handleRelease(Scope scope, Message message) throws Exception {
+		System.out.println("DHCPRELEASE received by " + message.getChaddr() + ".");
+		IPAddress lease = scope.getPool().findIPByMacAddress(message.getChaddr());
+		if(lease == null)
+			return null;
+		scope.getPool().release(lease);
+		printLeasedAddresses(scope.getPool().returnLeasedAddresses());
+		return null;
+	}
+	
+	/**
+	 * Handle a DHCPINFORM: the client already has an IP, so acknowledge without assigning an IP or lease time.
+	 */
+	private Reply handleInform(Scope scope, Message message) throws Exception {
+		System.out.println("DHCPINFORM received by " + message.getChaddr() + ".");
+		return () -> {
+			byte[] ackMessage = scope.getInformAckTemplate().fill(message.getXid(), Message.ZERO_ADDRESS, message.getChaddr(), 0, 
+					getOptionBlock(scope, message), message.getMaximumMessageSize());
+			System.out.println("DHCPACK sent.");
+			return ackMessage;
+		};
 	}
 	
 	/**
-	 * Constant used to compensate search time.
+	 * Constant representing the time (in milliseconds) an offered IP stays reserved for the client it is offered to.
 	 */
-	private static final double PORTION_TIME_WAITING = 0.5;
+	private static final long OFFER_RESERVATION_TIME = 10000;
 	
 	/**
-	 * Returns the requested IP if available, returns a random available IP if the requested IP is not available.
+	 * Returns the requested IP if available, returns another available IP if the requested IP is not available.
+	 * The returned IP is reserved for the client for a short time, so it is not offered to other clients.
+	 * The search does not wait for addresses to be freed: an exhausted pool makes no offer.
 	 * 
+	 * @param pool
+	 *        The pool of the scope serving the client.
 	 * @param requestedIP
 	 *        The IP requested by the client.
+	 * @param macAddress
+	 *        The MAC address of the client.
 	 *        
-	 * @return The requested IP if available, returns a random available IP if the requested IP is not available.
-	 * 
-	 * @throws Exception
-	 *         When no IP addresses are available.
-	 */
-	public InetAddress getOfferIP(InetAddress requestedIP) throws Exception {
-		long timeBeginSearch = System.currentTimeMillis();
-		InetAddress offerIP = null;
-		while(System.currentTimeMillis() - timeBeginSearch < PORTION_TIME_WAITING*this.getLeaseTime() && offerIP == null){
-			if(getPool().isInPoolAndAvailable(requestedIP))
-				offerIP = requestedIP;
-			else {
-				try {
-					offerIP = getPool().getAvailableAddress();
-				}
-				catch(Exception ex) {
-					// Do nothing
-				}
-			}
-		}
-		if(offerIP == null)
-			throw new Exception("No offer IP founded in time.");
-		else
-			return offerIP;
+	 * @return The requested IP if available, another available IP if the requested IP is not available,
+	 *         null if no IP is available.
+	 */
+	public InetAddress getOfferIP(IPPool pool, InetAddress requestedIP, String macAddress) {
+		long reservationExpirationTime = getClock().currentTimeMillis() + OFFER_RESERVATION_TIME;
+		if(pool.reserve(requestedIP, macAddress, reservationExpirationTime))
+			return requestedIP;
+		return pool.tryReserveAvailableAddress(macAddress, reservationExpirationTime);
+	}
+	
+	/**
+	 * Returns the IP address reserved for the given client, if it lies in the pool of the given scope.
+	 * A reserved client reaching the server through another subnet is served like any other client
+	 * there, so it is never handed an address off its link.
+	 * 
+	 * @param scope
+	 *        The scope serving the client.
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @return The reserved IP address of the client, null if it has none in the scope.
+	 */
+	private InetAddress getReservedIP(Scope scope, String macAddress) {
+		InetAddress reservedIP = getScopeConfiguration().getReservations().lookup(macAddress);
+		if(reservedIP == null || !scope.getPool().contains(reservedIP))
+			return null;
+		return reservedIP;
 	}
 	
 	/**
 	 * Check whether a client has already an IP address in use.
 	 * 
+	 * @param pool
+	 *        The pool of the scope serving the client.
 	 * @param macAddress
 	 * 	 	  The MAC address of the client to check.
 	 * @return True if the client has already an IP address in use;
 	 * 		   false otherwise.
 	 */
-	private boolean clientHasAlreadyIP(String macAddress) {
-		try {
-			this.getPool().getIPByMacAddress(macAddress);
-			return true;
-		} catch(IllegalArgumentException e) {
-			return false;
-		}
+	private boolean clientHasAlreadyIP(IPPool pool, String macAddress) {
+		IPAddress ip = pool.findIPByMacAddress(macAddress);
+		return ip != null && ip.isLeased();
 	}
 
+	/**
+	 * Constant representing the time (in milliseconds) between two checks of the pools, on the clock of the server.
+	 */
+	private static final long POOL_CHECK_INTERVAL = 100;
+
 	/**
 	 * Inner class defined to check the pool.
 	 */
 	private class PoolControl implements Runnable {
 		public void run(){
-			while(true){
-				getPool().checkPoolLeases();
+			try {
+				while(true){
+					for(Scope scope: getScopeConfiguration().getScopes())
+						scope.getPool().checkPoolLeases();
+					getClock().sleep(POOL_CHECK_INTERVAL);
+				}
+			} catch(InterruptedException e) {
+				// Pool control stopped
 			}
 		}
 	}
 
 	/**
-	 * Creates and sends a DHCPOFFER message and returns the response.
+	 * Returns the encoded options of the scope answering the Parameter Request List (option 55) of the given request.
+	 * The Relay Agent Information option (82) of a relayed request is echoed in front of them.
 	 * 
-	 * @param xid
-	 *        The transaction ID used by the client for DHCPDISCOVER.
-	 * @param requestedIP
-	 *        The requested IP by the client.
-	 * @param macAddress
-	 *        The MAC address of the client.
-	 * @param server
-	 *        The UDP connection currently in use by the server.
-	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 * @param scope
+	 *        The scope serving the client.
+	 * @param request
+	 *        The message of the client.
+	 * @return The encoded options requested by the client, all options of the scope if the client sent no list,
+	 *         preceded by the relay agent information of the request if any.
+	 */
+	private byte[] getOptionBlock(Scope scope, Message request) {
+		Option option55 = request.getOptions().findOption(55);
+		byte[] block = scope.getOptions().getOptionBlock(option55 == null ? null : option55.getContents());
+		byte[] agentInformation = getAgentInformationBlock(request);
+		if(agentInformation.length == 0)
+			return block;
+		byte[] result = Arrays.copyOf(agentInformation, agentInformation.length + block.length);
+		System.arraycopy(block, 0, result, agentInformation.length, block.length);
+		return result;
+	}
+	
+	/**
+	 * Returns the encoded Relay Agent Information option (82) of the given request, to be echoed in the reply,
+	 * so the relay agent can deliver the reply to the client.
+	 * 
+	 * @param request
+	 *        The message of the client.
+	 * @return The encoded relay agent information of the request, empty if the request was not relayed.
+	 */
+	private byte[] getAgentInformationBlock(Message request) {
+		Option option82 = request.getOptions().findOption(82);
+		return option82 == null ? new byte[0] : option82.returnBytes();
+	}
+
+	/**
+	 * Creates a DHCPOFFER message from the template of the scope, with the options requested by the client.
+	 * 
+	 * @param scope
+	 *        The scope serving the client.
+	 * @param request
+	 *        The DHCPDISCOVER of the client.
+	 * @param offerIP
+	 *        The IP offered to the client.
 	 *        
-	 * @return The response from the client.
+	 * @return The DHCPOFFER message, to be encoded.
 	 */
-	private Message DHCPOffer(int xid, InetAddress requestedIP, String macAddress, UDPHost server, DatagramSocket socket) throws Exception {
-		InetAddress offerIP = this.getOfferIP(requestedIP);
-		InetAddress serverIP = server.getReceiverIP();
-		DHCPOfferMessage offerMessage = new DHCPOfferMessage(xid, offerIP, macAddress, serverIP);
-			
-		System.out.println("DHCPOFFER sent.");
-		Message response = sendUDPMessage(offerMessage, server, socket);
-		return response;
+	private Reply DHCPOffer(Scope scope, Message request, InetAddress offerIP) {
+		return () -> {
+			byte[] offerMessage = scope.getOfferTemplate().fill(request.getXid(), offerIP, request.getChaddr(), scope.getLeaseTime(getLeaseTime(), request.getChaddr()),
+					getOptionBlock(scope, request), request.getMaximumMessageSize());
+			System.out.println("DHCPOFFER sent.");
+			return offerMessage;
+		};
 	}
 
 	/**
-	 * Sends a DHCPACK message to the client to confirm that 
-	 * the IP address is now leased to the client.
+	 * Creates a DHCPACK message from the template of the scope, with the options requested by the client,
+	 * to confirm to the client that the IP address is now leased to the client.
 	 * 
-	 * @param xid
-	 *        The transaction ID provided by the client.
-	 * @param requestedIP
-	 *        The IP offered by the server.
-	 * @param macAddress
-	 *        The MAC address of the client.
-	 * @param server
-	 *        The UDP connection currently in use.
-	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 * @param scope
+	 *        The scope serving the client.
+	 * @param request
+	 *        The DHCPREQUEST of the client.
+	 * @param assignedIP
+	 *        The IP leased to the client.
+	 *        
+	 * @return The DHCPACK message, to be encoded.
 	 */
-	private void DHCPAck(int xid, InetAddress requestedIP, String macAddress, UDPHost server, DatagramSocket socket) throws Exception {
-		DHCPAckMessage ackMessage = new DHCPAckMessage(xid, requestedIP, this.getServerIP(), macAddress, this.getLeaseTime());
-		System.out.println("DHCPACK sent.");
-		sendUDPMessageWithoutResponse(ackMessage, server, socket);
+	private Reply DHCPAck(Scope scope, Message request, InetAddress assignedIP) {
+		return () -> {
+			byte[] ackMessage = scope.getAckTemplate().fill(request.getXid(), assignedIP, request.getChaddr(), scope.getLeaseTime(getLeaseTime(), request.getChaddr()),
+					getOptionBlock(scope, request), request.getMaximumMessageSize());
+			System.out.println("DHCPACK sent.");
+			return ackMessage;
+		};
 	}
 
 	/**
-	 * Sends a DHCPNAK message to the client to state that the IP address offered can not be leased.
+	 * Creates a DHCPNAK message from the template of the scope, to state to the client that 
+	 * the IP address offered can not be leased. The Relay Agent Information option of a relayed
+	 * request is echoed, so the relay agent can deliver the refusal.
 	 * 
-	 * @param xid
-	 *        The transaction ID provided by the client.
-	 * @param macAddress
-	 *        The MAC address of the client.
-	 * @param server
-	 *        The UDP connection currently in use.
-	 * @param socket
-	 *        The DatagramSocket currently in use.
+	 * @param scope
+	 *        The scope serving the client.
+	 * @param request
+	 *        The message of the client.
+	 *        
+	 * @return The DHCPNAK message, to be encoded.
 	 */
-	private void DHCPNak(int xid, String macAddress, UDPHost server, DatagramSocket socket) throws Exception {
-		DHCPNakMessage nakMessage = new DHCPNakMessage(xid, macAddress);
-		System.out.println("DHCPNAK sent.");
-		sendUDPMessageWithoutResponse(nakMessage, server, socket);
+	private Reply DHCPNak(Scope scope, Message request) {
+		return () -> {
+			byte[] nakMessage = scope.getNakTemplate().fill(request.getXid(), Message.ZERO_ADDRESS, request.getChaddr(), 0,
+					getAgentInformationBlock(request), request.getMaximumMessageSize());
+			System.out.println("DHCPNAK sent.");
+			return nakMessage;
+		};
 	}
 }
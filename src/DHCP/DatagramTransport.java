@@ -0,0 +1,66 @@
+package DHCP;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+
+/**
+ * Class representing a transport endpoint on a DatagramSocket: datagrams are sent over the network.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class DatagramTransport implements Transport {
+
+	/**
+	 * Constant representing the factory opening endpoints on datagram sockets.
+	 */
+	public static final Transport.Factory FACTORY = DatagramTransport::new;
+
+	/**
+	 * Initialize the new endpoint on a datagram socket bound to the given address and port.
+	 *
+	 * @param address
+	 *        The local address to bind to, null for any local address.
+	 * @param port
+	 *        The local port to bind to, 0 for any free port.
+	 * @throws SocketException
+	 *         The socket could not be opened.
+	 */
+	public DatagramTransport(InetAddress address, int port) throws SocketException {
+		this.socket = new DatagramSocket(port, address);
+	}
+
+	/**
+	 * Variable representing the socket of the endpoint.
+	 */
+	private final DatagramSocket socket;
+
+	public void send(byte[] data, int length, InetAddress address, int port) throws IOException {
+		socket.send(new DatagramPacket(data, length, address, port));
+	}
+
+	public ReceivedData receive(byte[] buffer) throws IOException {
+		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+		socket.receive(packet);
+		return new ReceivedData(buffer, packet.getLength(), packet.getAddress(), packet.getPort());
+	}
+
+	public void setTimeout(int timeout) throws SocketException {
+		socket.setSoTimeout(timeout);
+	}
+
+	public int getLocalPort() {
+		return socket.getLocalPort();
+	}
+
+	public void close() {
+		socket.close();
+	}
+
+	public boolean isClosed() {
+		return socket.isClosed();
+	}
+}
@@ -0,0 +1,70 @@
+package DHCP;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class representing the number of packets dropped by the server, per drop reason.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class DropCounters {
+
+	/**
+	 * Initialize the drop counters with all counts equal to zero.
+	 */
+	public DropCounters() {
+		counts = new LongAdder[DropReason.values().length];
+		for(int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+	}
+
+	/**
+	 * Variable representing the number of dropped packets, indexed on the ordinal of the drop reason.
+	 */
+	private final LongAdder[] counts;
+
+	/**
+	 * Counts a dropped packet.
+	 *
+	 * @param reason
+	 *        The reason the packet was dropped.
+	 */
+	public void record(DropReason reason) {
+		counts[reason.ordinal()].increment();
+	}
+
+	/**
+	 * Return the number of packets dropped for the given reason.
+	 *
+	 * @param reason
+	 *        The drop reason.
+	 * @return The number of dropped packets.
+	 */
+	public long getCount(DropReason reason) {
+		return counts[reason.ordinal()].sum();
+	}
+
+	/**
+	 * Return the number of dropped packets over all reasons.
+	 *
+	 * @return The total number of dropped packets.
+	 */
+	public long getTotal() {
+		long result = 0;
+		for(LongAdder count: counts)
+			result += count.sum();
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for(DropReason reason: DropReason.values()) {
+			if(result.length() > 0)
+				result.append(", ");
+			result.append(reason).append('=').append(getCount(reason));
+		}
+		return result.toString();
+	}
+}
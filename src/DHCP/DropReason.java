@@ -0,0 +1,40 @@
+package DHCP;
+
+/**
+ * Enumeration of the reasons the server drops a received packet without answering it.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public enum DropReason {
+
+	/**
+	 * The client sent more messages than its rate limit allows.
+	 */
+	RATE_LIMITED,
+
+	/**
+	 * The packet is not a valid DHCP message.
+	 */
+	MALFORMED,
+
+	/**
+	 * The admission queue was full and the message was shed or evicted.
+	 */
+	QUEUE_FULL,
+
+	/**
+	 * The client hashes to another server of the cluster, or the cluster view changed too recently to make offers.
+	 */
+	OTHER_NODE,
+
+	/**
+	 * The pool of the scope of a DHCPDISCOVER had no address left to offer.
+	 */
+	POOL_EXHAUSTED,
+
+	/**
+	 * The message is a retransmission of a message that is still being handled.
+	 */
+	IN_FLIGHT
+}
@@ -119,6 +119,73 @@ public class IPAddress {
 		this.leaseExpirationTime = leaseExpirationTime;
 	}
 	
+	/**
+	 * Variable representing the hardware address of the client this IP is offered to.
+	 */
+	private String reservedFor = "";
+	
+	/**
+	 * @return The hardware address of the client this IP is offered to, empty if it is not reserved.
+	 */
+	public String getReservedFor() {
+		return reservedFor;
+	}
+	
+	/**
+	 * Variable representing the server time at which the reservation of this IP for an offer expires.
+	 */
+	private long reservationExpirationTime = 0;
 	
+	/**
+	 * Return the expiration time of the reservation of this IP for an offer.
+	 * 
+	 * @return The server time at which the reservation expires, zero if the IP is not reserved.
+	 */
+	public long getReservationExpirationTime() {
+		return reservationExpirationTime;
+	}
+	
+	/**
+	 * Reserves this IP for an offer to the client with given hardware address until the given time.
+	 * 
+	 * @param macAddress
+	 *        The hardware address of the client, empty to clear the reservation.
+	 * @param reservationExpirationTime
+	 *        The expiration time of the reservation, zero to clear the reservation.
+	 */
+	void setReservation(String macAddress, long reservationExpirationTime) {
+		this.reservedFor = macAddress;
+		this.reservationExpirationTime = reservationExpirationTime;
+	}
+	
+	/**
+	 * Checks whether this IP is reserved for an offer at the given time.
+	 * 
+	 * @param currentTime
+	 *        The current server time.
+	 * @return True if the IP has a reservation that has not yet expired.
+	 */
+	public boolean isReserved(long currentTime) {
+		return reservationExpirationTime > currentTime;
+	}
+	
+	/**
+	 * Variable registering whether this IP was removed from its pool, because it was no longer leased or offered.
+	 */
+	private boolean retired = false;
+	
+	/**
+	 * @return True if this IP was removed from its pool, so its pool has to be asked for the IP again.
+	 */
+	boolean isRetired() {
+		return retired;
+	}
+	
+	/**
+	 * Marks this IP as removed from its pool.
+	 */
+	void retire() {
+		this.retired = true;
+	}
 	
 }
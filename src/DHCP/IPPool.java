@@ -3,10 +3,29 @@ package DHCP;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import DHCP.Monitoring.ExpirySweepEvent;
+import DHCP.Monitoring.LeaseBoundEvent;
+import DHCP.Monitoring.LeaseExpiredEvent;
 
 /**
  * Class representing a pool of IP address.
  * 
+ * The free addresses are split into partitions, one per worker thread, so that concurrent
+ * allocations do not contend on one lock. A worker takes addresses from its home partition 
+ * and steals from the next partitions when it is empty. Addresses that become free again
+ * return to the partition that owns their slice of the pool.
+ * 
+ * In a cluster, a server only allocates the addresses of the slice of the pool it owns; the
+ * partitions then cover that slice only. The leases of the other slices are still tracked.
+ * 
  * @author Laurent De Laere
  * 		   Simon Geirnaert
  *
@@ -14,9 +33,59 @@ import java.util.ArrayList;
 public class IPPool {
 	
 	/**
-	 * Variable representing a list of IP addresses.
+	 * Variable representing the first IP address of the pool, as an integer.
+	 */
+	private final int firstAddress;
+	
+	/**
+	 * Variable representing the number of IP addresses in the pool.
 	 */
-	ArrayList<IPAddress> ipPool = new ArrayList<IPAddress>();
+	private final int size;
+	
+	/**
+	 * Variable representing the IP addresses of the pool that are in use, keyed on their offset from
+	 * the first address. Addresses are added when offered or leased and removed again when they are
+	 * neither leased nor offered any more, so an address without an entry is free.
+	 */
+	private final ConcurrentHashMap<Integer, IPAddress> ipPool = new ConcurrentHashMap<Integer, IPAddress>();
+	
+	/**
+	 * Variable representing the leased IP addresses of the pool, keyed and ordered on their offset,
+	 * so the leases can be listed without visiting every touched address.
+	 */
+	private final ConcurrentSkipListMap<Integer, IPAddress> leased = new ConcurrentSkipListMap<Integer, IPAddress>();
+	
+	/**
+	 * Variable representing the IP addresses in use of the pool keyed on the MAC address of the
+	 * client they were last bound to.
+	 */
+	private final ConcurrentHashMap<String, IPAddress> macIndex = new ConcurrentHashMap<String, IPAddress>();
+	
+	/**
+	 * Variable representing the earliest time at which a lease or an offer reservation of the pool
+	 * can expire, so the pool is only checked when something is due.
+	 */
+	private final AtomicLong nextExpiration = new AtomicLong(Long.MAX_VALUE);
+	
+	/**
+	 * Variable representing the number of partitions the owned slice is split into.
+	 */
+	private final int numberOfPartitions;
+	
+	/**
+	 * Variable representing the owned slice of the pool and its partitions of free addresses.
+	 */
+	private volatile OwnedSlice ownedSlice;
+	
+	/**
+	 * Constant used to number the worker threads allocating addresses.
+	 */
+	private static final AtomicInteger NEXT_WORKER = new AtomicInteger();
+	
+	/**
+	 * Constant representing the number of the current worker thread.
+	 */
+	private static final ThreadLocal<Integer> WORKER = ThreadLocal.withInitial(NEXT_WORKER::getAndIncrement);
 
 	/**
 	 * Initialize the pool of IP addresses with given 
@@ -26,28 +95,332 @@ public class IPPool {
 	 * 		 IP addresses with given prefix.
 	 */
 	public IPPool(String IPPrefix, int beginIPSuffix, int endIPSuffix) throws UnknownHostException {
-		for(int i = beginIPSuffix; i <= endIPSuffix; i++){
-			addToPool(InetAddress.getByName(IPPrefix + i));
+		this(InetAddress.getByName(IPPrefix + beginIPSuffix), InetAddress.getByName(IPPrefix + endIPSuffix));
+	}
+	
+	/**
+	 * Initialize the pool of IP addresses with all addresses between 
+	 * the given first and last IP address (both inclusive), with one partition per available processor.
+	 * No per-address state is created until an address is first used.
+	 * 
+	 * @param firstIP
+	 *        The first IP address of the pool.
+	 * @param lastIP
+	 *        The last IP address of the pool.
+	 * @throws IllegalArgumentException
+	 *         The first IP address comes after the last IP address or the range is too large.
+	 */
+	public IPPool(InetAddress firstIP, InetAddress lastIP) throws IllegalArgumentException {
+		this(firstIP, lastIP, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Initialize the pool of IP addresses with all addresses between 
+	 * the given first and last IP address (both inclusive), split into the given number of partitions.
+	 * No per-address state is created until an address is first used.
+	 * 
+	 * @param firstIP
+	 *        The first IP address of the pool.
+	 * @param lastIP
+	 *        The last IP address of the pool.
+	 * @param numberOfPartitions
+	 *        The number of partitions of the free addresses, at most the number of addresses.
+	 * @throws IllegalArgumentException
+	 *         The first IP address comes after the last IP address, the range is too large
+	 *         or the number of partitions is not positive.
+	 */
+	public IPPool(InetAddress firstIP, InetAddress lastIP, int numberOfPartitions) throws IllegalArgumentException {
+		if(numberOfPartitions <= 0)
+			throw new IllegalArgumentException("The pool needs at least one partition.");
+		long first = Utilities.convertToInt(firstIP.getAddress()) & 0xFFFFFFFFL;
+		long last = Utilities.convertToInt(lastIP.getAddress()) & 0xFFFFFFFFL;
+		if(first > last)
+			throw new IllegalArgumentException("The first IP address of the pool comes after the last IP address.");
+		if(last - first + 1 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The pool can not contain more than " + Integer.MAX_VALUE + " IP addresses.");
+		this.firstAddress = (int) first;
+		this.size = (int) (last - first + 1);
+		this.numberOfPartitions = numberOfPartitions;
+		this.ownedSlice = new OwnedSlice(0, size, numberOfPartitions);
+	}
+	
+	/**
+	 * Return the number of partitions of the free addresses of the pool.
+	 * 
+	 * @return The number of partitions.
+	 */
+	public int getNumberOfPartitions() {
+		return ownedSlice.partitions.length;
+	}
+	
+	/**
+	 * Return the number of IP addresses in the slice of the pool this server allocates from.
+	 * 
+	 * @return The number of owned IP addresses, the size of the pool unless the pool is sliced.
+	 */
+	public int getNumberOfOwnedAddresses() {
+		OwnedSlice slice = ownedSlice;
+		return slice.end - slice.start;
+	}
+	
+	/**
+	 * Restricts the allocation of addresses to the given slice of the pool: the pool is cut into the given
+	 * number of consecutive slices of (nearly) equal size. The free addresses of the slice are rebuilt from
+	 * the state of the pool; addresses of other slices are no longer offered or leased to new clients,
+	 * but their leases are still kept and renewed.
+	 * 
+	 * @param slice
+	 *        The index of the owned slice.
+	 * @param numberOfSlices
+	 *        The number of slices of the pool.
+	 * @throws IllegalArgumentException
+	 *         The number of slices is not positive or the index is not a slice.
+	 */
+	public void setOwnedSlice(int slice, int numberOfSlices) throws IllegalArgumentException {
+		if(numberOfSlices <= 0 || slice < 0 || slice >= numberOfSlices)
+			throw new IllegalArgumentException("Slice " + slice + " of " + numberOfSlices + " does not exist.");
+		int start = (int) ((long) size * slice / numberOfSlices);
+		int end = (int) ((long) size * (slice + 1) / numberOfSlices);
+		this.ownedSlice = new OwnedSlice(start, end, numberOfPartitions);
+	}
+	
+	/**
+	 * Checks whether the IP address at the given offset is allocated by this server: it lies in the 
+	 * owned slice and is not reserved for a fixed client.
+	 * 
+	 * @param offset
+	 *        The offset of the IP address.
+	 * @return True if the address can be offered and leased to new clients.
+	 */
+	private boolean isAllocatable(int offset) {
+		return ownedSlice.contains(offset) && !isExcluded(offset);
+	}
+	
+	/**
+	 * Returns the offset of the given IP address to the partition that owns it,
+	 * unless the address is reserved for a fixed client or lies outside the owned slice.
+	 * 
+	 * @param offset
+	 *        The offset of the IP address that became free.
+	 */
+	private void returnToPartition(int offset) {
+		OwnedSlice slice = ownedSlice;
+		if(slice.contains(offset) && !isExcluded(offset))
+			slice.getPartition(offset).push(offset);
+	}
+	
+	/**
+	 * Class representing the slice of the pool a server allocates from, split into partitions.
+	 * A new slice is built on every change, so the partitions of a slice never change.
+	 */
+	private static final class OwnedSlice {
+		
+		private OwnedSlice(int start, int end, int numberOfPartitions) {
+			this.start = start;
+			this.end = end;
+			int length = end - start;
+			numberOfPartitions = Math.max(1, Math.min(numberOfPartitions, length));
+			this.partitionSize = Math.max(1, (int) ((length + (long) numberOfPartitions - 1) / numberOfPartitions));
+			this.partitions = new PoolPartition[(length + partitionSize - 1) / partitionSize];
+			for(int i = 0; i < partitions.length; i++)
+				partitions[i] = new PoolPartition(start + i * partitionSize, start + (int) Math.min((long) (i + 1) * partitionSize, length));
+		}
+		
+		/**
+		 * The first offset of the slice, inclusive, and the last offset, exclusive.
+		 */
+		private final int start;
+		private final int end;
+		
+		/**
+		 * The number of offsets in each partition (the last partition can be smaller).
+		 */
+		private final int partitionSize;
+		
+		/**
+		 * The partitions of the free addresses of the slice, none for an empty slice.
+		 */
+		private final PoolPartition[] partitions;
+		
+		private boolean contains(int offset) {
+			return offset >= start && offset < end;
 		}
+		
+		private PoolPartition getPartition(int offset) {
+			return partitions[(offset - start) / partitionSize];
+		}
+	}
+	
+	/**
+	 * Variable representing the offsets of the IP addresses reserved for fixed clients,
+	 * which are never allocated dynamically.
+	 */
+	private volatile BitSet excluded = new BitSet();
+	
+	/**
+	 * Keeps the IP addresses of the given reservations that lie in the pool out of dynamic allocation.
+	 * 
+	 * @param reservations
+	 *        The fixed reservations of the server.
+	 * @return The number of reserved IP addresses in the pool.
+	 */
+	public int excludeReservedAddresses(ReservationTable reservations) {
+		BitSet result = new BitSet();
+		for(int address: reservations.getReservedAddresses(firstAddress, getLastAddress()))
+			result.set(address - firstAddress);
+		this.excluded = result;
+		return result.cardinality();
+	}
+	
+	/**
+	 * Checks whether the IP address at the given offset is reserved for a fixed client.
+	 * 
+	 * @param offset
+	 *        The offset of the IP address.
+	 * @return True if the address is kept out of dynamic allocation.
+	 */
+	private boolean isExcluded(int offset) {
+		return excluded.get(offset);
+	}
+	
+	/**
+	 * Return the first IP address of the pool as an integer.
+	 * 
+	 * @return The first IP address of the pool.
+	 */
+	public int getFirstAddress() {
+		return firstAddress;
 	}
 	
 	/**
-	 * Adds a given IP address to the pool of IP addresses.
+	 * Return the last IP address of the pool as an integer.
+	 * 
+	 * @return The last IP address of the pool.
+	 */
+	public int getLastAddress() {
+		return firstAddress + size - 1;
+	}
+	
+	/**
+	 * Return the offset of the given IP address from the first address of the pool.
 	 * 
 	 * @param ip
-	 *        The IP to add to the pool.
+	 *        The IP address to convert.
+	 * @return The offset of the IP address, -1 if the address is not in the pool.
+	 */
+	private int getOffset(InetAddress ip) {
+		byte[] address = ip.getAddress();
+		if(address.length != 4)
+			return -1;
+		long offset = (Utilities.convertToInt(address) - firstAddress) & 0xFFFFFFFFL;
+		return offset < size ? (int) offset : -1;
+	}
+	
+	/**
+	 * Checks whether the given IP address lies in the range of the pool.
+	 * 
+	 * @param address
+	 *        The IP address to check.
+	 * @return True if the address is in the pool; false otherwise.
+	 */
+	public boolean contains(InetAddress address) {
+		return getOffset(address) >= 0;
+	}
+	
+	/**
+	 * Checks whether the given IP address, given as an integer, lies in the range of the pool.
+	 * 
+	 * @param address
+	 *        The IP address to check.
+	 * @return True if the address is in the pool; false otherwise.
+	 */
+	public boolean contains(int address) {
+		return ((address - firstAddress) & 0xFFFFFFFFL) < size;
+	}
+	
+	/**
+	 * Return the IP address at the given offset from the first address of the pool.
+	 * 
+	 * @param offset
+	 *        The offset of the IP address.
+	 * @return The IP address at the given offset.
+	 */
+	private InetAddress getAddressAt(int offset) {
+		try {
+			return Utilities.convertToInetAddress(firstAddress + offset);
+		} catch (UnknownHostException e) {
+			// Can not happen: an IPv4 address always has four bytes
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Variable representing the clock the lease and reservation expiration times of the pool are compared with.
+	 */
+	private volatile Clock clock = SystemClock.INSTANCE;
+	
+	/**
+	 * Return the clock the expiration times of the pool are compared with.
+	 * 
+	 * @return The clock of the pool, the system clock by default.
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Sets the clock the expiration times of the pool are compared with.
+	 * 
+	 * @param clock
+	 *        The clock to set.
+	 */
+	void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
+	/**
+	 * Variable representing the listeners to the changes of the leases of the pool.
+	 */
+	private final CopyOnWriteArrayList<LeaseListener> leaseListeners = new CopyOnWriteArrayList<LeaseListener>();
+	
+	/**
+	 * Registers a listener to the changes of the leases of the pool.
+	 * 
+	 * @param listener
+	 *        The listener to register.
+	 */
+	public void addLeaseListener(LeaseListener listener) {
+		leaseListeners.add(listener);
+	}
+	
+	/**
+	 * Unregisters a listener to the changes of the leases of the pool.
+	 * 
+	 * @param listener
+	 *        The listener to unregister.
+	 */
+	public void removeLeaseListener(LeaseListener listener) {
+		leaseListeners.remove(listener);
+	}
+	
+	/**
+	 * Reports a change of a lease to all listeners. Called while the address is locked.
 	 */
-	private void addToPool(InetAddress ip){
-		this.getIpPool().add(new IPAddress(ip));
+	private void fireLeaseChanged(LeaseEventType type, IPAddress ip, boolean replicated) {
+		if(leaseListeners.isEmpty())
+			return;
+		LeaseEvent event = new LeaseEvent(type, ip.getIpAddress(), ip.getMacAddress(), ip.getLeaseExpirationTime(), replicated);
+		for(LeaseListener listener: leaseListeners)
+			listener.leaseChanged(event);
 	}
 	
 	/**
-	 * Return the pool of IP addresses.
+	 * Return the IP addresses of the pool that are in use.
 	 * 
-	 * @return The pool of IP addresses.
+	 * @return The IP addresses that are leased, declined or offered.
 	 */
-	public ArrayList<IPAddress> getIpPool() {
-		return ipPool;
+	public Collection<IPAddress> getIpPool() {
+		return ipPool.values();
 	}
 	
 	/**
@@ -56,11 +429,11 @@ public class IPPool {
 	 * @return The number of IP addresses in the pool.
 	 */
 	public int getNumberOfIPAddresses() {
-		return this.getIpPool().size();
+		return size;
 	}
 	
 	/**
-	 * Gets an available IP address.
+	 * Gets an available IP address, reserved for a short time so it is not handed out again.
 	 * 
 	 * @return An available IP address.
 	 * 
@@ -68,11 +441,141 @@ public class IPPool {
 	 *         There is no IP address available.
 	 */
 	public InetAddress getAvailableAddress() throws Exception {
-		for(int i=0; i<getIpPool().size(); i++){
-			if(!getIpPool().get(i).isLeased())
-					return getIpPool().get(i).getIpAddress();
+		return reserveAvailableAddress("", getClock().currentTimeMillis() + DEFAULT_RESERVATION_TIME);
+	}
+	
+	/**
+	 * Constant representing the time (in milliseconds) an address handed out by getAvailableAddress stays reserved.
+	 */
+	private static final long DEFAULT_RESERVATION_TIME = 10000;
+	
+	/**
+	 * Constant representing the number of addresses tried from the preferred address of a client onwards.
+	 */
+	private static final int AFFINITY_PROBES = 8;
+	
+	/**
+	 * Returns the offset of the preferred IP address of the client with given MAC address in a range
+	 * of the given length: a hash of the MAC address, so the same client prefers the same address 
+	 * without any history being kept, and different clients spread over the whole range.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param length
+	 *        The number of addresses in the range, positive.
+	 * @return The offset of the preferred IP address of the client from the start of the range.
+	 */
+	private static int getPreferredOffset(String macAddress, int length) {
+		return (int) Long.remainderUnsigned(Utilities.hashMacAddress(macAddress), length);
+	}
+	
+	/**
+	 * Reserves an available IP address for an offer to the given client until the given time.
+	 * The preferred address of the client and the addresses following it are tried first, so a 
+	 * returning client usually gets the same address again. Otherwise an address is taken from
+	 * the partition of the current worker, or from the next partitions if it is empty. Only
+	 * addresses of the owned slice are reserved.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client the address is offered to, empty to take any address.
+	 * @param reservationExpirationTime
+	 *        The time at which the reservation expires.
+	 * @return The reserved IP address.
+	 * 
+	 * @throws Exception
+	 *         There is no IP address available.
+	 */
+	public InetAddress reserveAvailableAddress(String macAddress, long reservationExpirationTime) throws Exception {
+		InetAddress address = tryReserveAvailableAddress(macAddress, reservationExpirationTime);
+		if(address == null)
+			throw new Exception("There are currently no IP addresses available.");
+		return address;
+	}
+	
+	/**
+	 * Reserves an available IP address for an offer to the given client until the given time, like
+	 * {@link #reserveAvailableAddress(String, long)}, without failing when the pool is exhausted.
+	 * 
+	 * @param macAddress
+	 *        The MAC address of the client the address is offered to, empty to take any address.
+	 * @param reservationExpirationTime
+	 *        The time at which the reservation expires.
+	 * @return The reserved IP address, null if there is no IP address available.
+	 */
+	public InetAddress tryReserveAvailableAddress(String macAddress, long reservationExpirationTime) {
+		long currentTime = getClock().currentTimeMillis();
+		OwnedSlice slice = ownedSlice;
+		int length = slice.end - slice.start;
+		if(!macAddress.isEmpty() && length > 0) {
+			int preferred = getPreferredOffset(macAddress, length);
+			for(int i = 0; i < Math.min(AFFINITY_PROBES, length); i++) {
+				int offset = slice.start + (int) ((preferred + (long) i) % length);
+				if(isExcluded(offset))
+					continue;
+				IPAddress ip = tryReserve(offset, macAddress, reservationExpirationTime, currentTime);
+				if(ip != null)
+					return ip.getIpAddress();
+			}
 		}
-		throw new Exception("There are currently no IP addresses available.");
+		PoolPartition[] partitions = slice.partitions;
+		int home = partitions.length == 0 ? 0 : WORKER.get() % partitions.length;
+		for(int i = 0; i < partitions.length; i++) {
+			PoolPartition partition = partitions[(home + i) % partitions.length];
+			for(int offset = partition.poll(); offset >= 0; offset = partition.poll()) {
+				if(isExcluded(offset))
+					continue;
+				IPAddress ip = tryReserve(offset, macAddress, reservationExpirationTime, currentTime);
+				if(ip != null)
+					return ip.getIpAddress();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Reserves the given IP address for an offer to the given client until the given time,
+	 * if it is available to that client.
+	 * 
+	 * @param address
+	 *        The IP address to reserve.
+	 * @param macAddress
+	 *        The MAC address of the client the address is offered to.
+	 * @param reservationExpirationTime
+	 *        The time at which the reservation expires.
+	 * @return True if the address is in the owned slice of the pool, not reserved for a fixed client 
+	 *         and now reserved for the client.
+	 */
+	public boolean reserve(InetAddress address, String macAddress, long reservationExpirationTime) {
+		int offset = getOffset(address);
+		if(offset < 0 || !isAllocatable(offset))
+			return false;
+		return tryReserve(offset, macAddress, reservationExpirationTime, getClock().currentTimeMillis()) != null;
+	}
+	
+	/**
+	 * Reserves the IP address at the given offset if it is not leased and not reserved for another client,
+	 * returning the reserved address or null.
+	 */
+	private IPAddress tryReserve(int offset, String macAddress, long reservationExpirationTime, long currentTime) {
+		while(true) {
+			IPAddress ip = getEntry(offset);
+			synchronized(ip) {
+				if(ip.isRetired())
+					continue;
+				if(!isAvailableTo(ip, macAddress, currentTime))
+					return null;
+				ip.setReservation(macAddress, reservationExpirationTime);
+				expiresAt(reservationExpirationTime);
+				return ip;
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether the given IP address can be offered or leased to the given client.
+	 */
+	private static boolean isAvailableTo(IPAddress ip, String macAddress, long currentTime) {
+		return !ip.isLeased() && (!ip.isReserved(currentTime) || ip.getReservedFor().equals(macAddress));
 	}
 	
 	/**
@@ -81,18 +584,34 @@ public class IPPool {
 	 * @param ip
 	 *        The IP to check
 	 *        
-	 * @return True if the IP is in the pool and is not yet in use.
+	 * @return True if the IP is in the pool, is not yet in use and is not reserved for an offer.
 	 */
 	public boolean isInPoolAndAvailable(InetAddress ip){
-		for(int i =0; i<getIpPool().size(); i++){
-			if(getIpPool().get(i).getIpAddress().equals(ip) && !getIpPool().get(i).isLeased())
-				return true;
-		}
-		return false;
+		return isInPoolAndAvailable(ip, "");
+	}
+	
+	/**
+	 * Checks if an IP address is in the pool and available to the given client.
+	 * 
+	 * @param ip
+	 *        The IP to check
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 *        
+	 * @return True if the IP is in the owned slice of the pool, is not reserved for a fixed client,
+	 *         is not yet in use and is not reserved for an offer to another client.
+	 */
+	public boolean isInPoolAndAvailable(InetAddress ip, String macAddress){
+		int offset = getOffset(ip);
+		if(offset < 0 || !isAllocatable(offset))
+			return false;
+		IPAddress address = ipPool.get(offset);
+		return address == null || isAvailableTo(address, macAddress, getClock().currentTimeMillis());
 	}
 	
 	/**
 	 * Returns the IP address from the pool for the given InetAddress.
+	 * The state of the address is created when it is requested for the first time.
 	 * 
 	 * @param address
 	 *        The given InetAddress
@@ -100,11 +619,24 @@ public class IPPool {
 	 * @return The IPAddress if it is present in the pool, else null.
 	 */
 	public IPAddress getIPFromPool(InetAddress address){
-		for(int i=0; i<getIpPool().size(); i++){
-			if(getIpPool().get(i).getIpAddress().equals(address))
-				return getIpPool().get(i);
+		int offset = getOffset(address);
+		if(offset < 0)
+			return null;
+		return getEntry(offset);
+	}
+	
+	/**
+	 * Returns the IP address at the given offset, creating its state if it is not in use.
+	 */
+	private IPAddress getEntry(int offset){
+		IPAddress ip = ipPool.get(offset);
+		if(ip == null) {
+			IPAddress created = new IPAddress(getAddressAt(offset));
+			ip = ipPool.putIfAbsent(offset, created);
+			if(ip == null)
+				ip = created;
 		}
-		return null;
+		return ip;
 	}
 	
 	/**
@@ -118,38 +650,330 @@ public class IPPool {
 	 * 		   The given MAC address has no active lease.
 	 */
 	public IPAddress getIPByMacAddress(String macAddress){
-		for(int i=0; i<getIpPool().size(); i++){
-			if(getIpPool().get(i).getMacAddress().equals(macAddress))
-				return getIpPool().get(i);
+		IPAddress ip = findIPByMacAddress(macAddress);
+		if(ip == null)
+			throw new IllegalArgumentException("The given MAC address has no active lease.");
+		return ip;
+	}
+	
+	/**
+	 * Finds the IP address from the pool for the given MAC address.
+	 * 
+	 * @param macAddress
+	 *        The given MAC address of the client.
+	 *        
+	 * @return The IP address matching the given MAC address, null if there is none.
+	 */
+	public IPAddress findIPByMacAddress(String macAddress){
+		return macIndex.get(macAddress);
+	}
+	
+	/**
+	 * Leases the given IP address to the client with given MAC address until the given time.
+	 * 
+	 * @param address
+	 *        The IP address to lease.
+	 * @param macAddress
+	 *        The MAC address of the client, empty if the address is not leased to a client.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expires.
+	 * @return The leased IP address, null if the address is not in the pool.
+	 */
+	public IPAddress lease(InetAddress address, String macAddress, long leaseExpirationTime){
+		return lease(address, macAddress, leaseExpirationTime, false);
+	}
+	
+	/**
+	 * Leases the given IP address to the client with given MAC address until the given time, if it is
+	 * available to the client or already held by it. The check and the lease are one atomic step, so
+	 * two clients requesting the same address concurrently never both get it.
+	 * 
+	 * @param address
+	 *        The IP address to lease.
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expires.
+	 * @return The leased IP address, null if the address is not in the pool or not available to the client.
+	 */
+	public IPAddress leaseIfAvailable(InetAddress address, String macAddress, long leaseExpirationTime){
+		int offset = getOffset(address);
+		if(offset < 0)
+			return null;
+		while(true) {
+			IPAddress ip = getEntry(offset);
+			synchronized(ip) {
+				if(ip.isRetired())
+					continue;
+				long currentTime = getClock().currentTimeMillis();
+				boolean heldByClient = ip.getMacAddress().equals(macAddress);
+				if(!heldByClient && (!isAllocatable(offset) || !isAvailableTo(ip, macAddress, currentTime))) {
+					retireIfUnused(offset, ip, currentTime);
+					return null;
+				}
+				return lease(address, macAddress, leaseExpirationTime, false);
+			}
+		}
+	}
+	
+	/**
+	 * Marks the given IP address as in use by another device until the given time, after the client
+	 * with given MAC address declined it. Only an address that is leased to or offered to the client
+	 * and that this server allocates is marked, so a client can not take addresses of other clients,
+	 * fixed reservations or other servers out of the pool.
+	 * 
+	 * @param address
+	 *        The declined IP address.
+	 * @param macAddress
+	 *        The MAC address of the client that declined the address.
+	 * @param declineExpirationTime
+	 *        The time until which the address is not handed out again.
+	 * @return The declined IP address, null if the address was not marked.
+	 */
+	public IPAddress decline(InetAddress address, String macAddress, long declineExpirationTime){
+		int offset = getOffset(address);
+		if(offset < 0 || !isAllocatable(offset))
+			return null;
+		IPAddress ip = ipPool.get(offset);
+		if(ip == null)
+			return null;
+		synchronized(ip) {
+			boolean heldByClient = ip.isLeased() && ip.getMacAddress().equals(macAddress);
+			boolean offeredToClient = !ip.isLeased() && ip.isReserved(getClock().currentTimeMillis()) && ip.getReservedFor().equals(macAddress);
+			if(!heldByClient && !offeredToClient)
+				return null;
+			return lease(address, "", declineExpirationTime, false);
+		}
+	}
+	
+	/**
+	 * Leases the given IP address, reporting whether the lease was replicated from another server.
+	 */
+	private IPAddress lease(InetAddress address, String macAddress, long leaseExpirationTime, boolean replicated){
+		int offset = getOffset(address);
+		if(offset < 0)
+			return null;
+		IPAddress ip;
+		while(true) {
+			ip = getEntry(offset);
+			synchronized(ip) {
+				if(ip.isRetired())
+					continue;
+				bind(offset, ip, macAddress, leaseExpirationTime, replicated);
+				break;
+			}
+		}
+		LeaseBoundEvent.emit(address, macAddress, leaseExpirationTime, false);
+		return ip;
+	}
+	
+	/**
+	 * Binds the given IP address at the given offset to the given client. Called while the address is locked.
+	 */
+	private void bind(int offset, IPAddress ip, String macAddress, long leaseExpirationTime, boolean replicated){
+		String previousMacAddress = ip.getMacAddress();
+		if(!previousMacAddress.equals(macAddress)) {
+			macIndex.remove(previousMacAddress, ip);
+			if(!macAddress.isEmpty())
+				macIndex.put(macAddress, ip);
+		}
+		ip.setMacAddress(macAddress);
+		ip.setLeaseExpirationTime(leaseExpirationTime);
+		ip.setReservation("", 0);
+		ip.setLeased(true);
+		leased.put(offset, ip);
+		expiresAt(leaseExpirationTime);
+		fireLeaseChanged(LeaseEventType.BIND, ip, replicated);
+	}
+	
+	/**
+	 * Extends the lease of the given IP address if it is leased to the client with given MAC address.
+	 * Only the lease expiration time changes, so no allocation state of the pool is touched.
+	 * 
+	 * @param address
+	 *        The IP address of the client.
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseExpirationTime
+	 *        The new time at which the lease expires.
+	 * @return The renewed IP address, null if the address is not leased to the client.
+	 */
+	public IPAddress renew(InetAddress address, String macAddress, long leaseExpirationTime){
+		return renew(address, macAddress, leaseExpirationTime, false);
+	}
+	
+	/**
+	 * Extends the lease of the given IP address, reporting whether the renewal was replicated from another server.
+	 */
+	private IPAddress renew(InetAddress address, String macAddress, long leaseExpirationTime, boolean replicated){
+		int offset = getOffset(address);
+		if(offset < 0)
+			return null;
+		IPAddress ip = ipPool.get(offset);
+		if(ip == null)
+			return null;
+		synchronized(ip) {
+			if(!ip.isLeased() || !ip.getMacAddress().equals(macAddress))
+				return null;
+			ip.setLeaseExpirationTime(leaseExpirationTime);
+			expiresAt(leaseExpirationTime);
+			fireLeaseChanged(LeaseEventType.RENEW, ip, replicated);
+		}
+		LeaseBoundEvent.emit(address, macAddress, leaseExpirationTime, true);
+		return ip;
+	}
+	
+	/**
+	 * Ends the lease of the given IP address and returns it to its partition. The state of the 
+	 * address is dropped unless it is offered again; a returning client still prefers the same
+	 * address, so quick initialization remains possible.
+	 * 
+	 * @param ip
+	 *        The IP address to release.
+	 */
+	public void release(IPAddress ip){
+		int offset = getOffset(ip.getIpAddress());
+		synchronized(ip) {
+			if(ip.isRetired())
+				return;
+			ip.setLeased(false);
+			ip.setLeaseExpirationTime(0);
+			leased.remove(offset, ip);
+			fireLeaseChanged(LeaseEventType.RELEASE, ip, false);
+			retireIfUnused(offset, ip, getClock().currentTimeMillis());
+		}
+		returnToPartition(offset);
+	}
+	
+	/**
+	 * Applies a lease change of another server to the pool: a bind leases the address, a renewal extends
+	 * the lease and a release or expiry ends the lease if the address is still leased. The changes the
+	 * pool reports for it are marked as replicated, so they are not replicated back.
+	 * 
+	 * @param event
+	 *        The lease change to apply.
+	 * @return True if the address of the change is in the pool; false otherwise.
+	 */
+	public boolean apply(LeaseEvent event) {
+		int offset = getOffset(event.getAddress());
+		if(offset < 0)
+			return false;
+		switch(event.getType()) {
+			case BIND:
+				lease(event.getAddress(), event.getMacAddress(), event.getLeaseExpirationTime(), true);
+				break;
+			case RENEW:
+				renew(event.getAddress(), event.getMacAddress(), event.getLeaseExpirationTime(), true);
+				break;
+			default:
+				IPAddress ip = ipPool.get(offset);
+				if(ip == null)
+					break;
+				synchronized(ip) {
+					if(!ip.isLeased())
+						break;
+					ip.setLeased(false);
+					ip.setLeaseExpirationTime(0);
+					leased.remove(offset, ip);
+					fireLeaseChanged(event.getType(), ip, true);
+					retireIfUnused(offset, ip, getClock().currentTimeMillis());
+				}
+				returnToPartition(offset);
 		}
-		throw new IllegalArgumentException("The given MAC address has no active lease.");
+		return true;
+	}
+	
+	/**
+	 * Lowers the earliest time at which a lease or an offer reservation of the pool can expire to the given time.
+	 */
+	private void expiresAt(long expirationTime) {
+		if(expirationTime < nextExpiration.get())
+			nextExpiration.accumulateAndGet(expirationTime, Math::min);
+	}
+	
+	/**
+	 * Removes the given IP address at the given offset from the addresses in use if it is neither leased
+	 * nor offered. Called while the address is locked; whoever locks it afterwards sees it retired and
+	 * asks the pool for the address again.
+	 */
+	private void retireIfUnused(int offset, IPAddress ip, long currentTime) {
+		if(ip.isLeased() || ip.isReserved(currentTime))
+			return;
+		ip.retire();
+		ipPool.remove(offset, ip);
+		macIndex.remove(ip.getMacAddress(), ip);
 	}
 	
 	/**
-	 * Checks all IP's in the pool for expired leases and changes the lease status if necessary.
+	 * Checks all IP's in use in the pool for expired leases and expired offer reservations, changes the 
+	 * lease status if necessary, returns the freed addresses to their partition and drops their state.
+	 * Nothing is checked before the earliest lease or reservation of the pool is due.
 	 */
 	public void checkPoolLeases(){
-		for(int i=0; i<this.getNumberOfIPAddresses(); i++){
-			if((getIpPool().get(i).getLeaseExpirationTime() < System.currentTimeMillis()) && this.getIpPool().get(i).isLeased()){
-				getIpPool().get(i).setLeased(false);
-				System.out.println("Lease of client with MAC address " + this.getIpPool().get(i).getMacAddress() + " has expired.");
+		if(getClock().currentTimeMillis() < nextExpiration.get())
+			return;
+		// Leases and reservations changed from here on lower the time again themselves
+		nextExpiration.set(Long.MAX_VALUE);
+		ExpirySweepEvent sweep = ExpirySweepEvent.start();
+		int examined = 0;
+		int expired = 0;
+		int reservationsFreed = 0;
+		for(IPAddress ip: getIpPool()){
+			long currentTime = getClock().currentTimeMillis();
+			int offset = getOffset(ip.getIpAddress());
+			long leaseExpirationTime = 0;
+			boolean leaseExpired = false;
+			boolean freed = false;
+			examined++;
+			synchronized(ip) {
+				if((ip.getLeaseExpirationTime() < currentTime) && ip.isLeased()){
+					leaseExpirationTime = ip.getLeaseExpirationTime();
+					ip.setLeased(false);
+					leased.remove(offset, ip);
+					fireLeaseChanged(LeaseEventType.EXPIRE, ip, false);
+					leaseExpired = true;
+					freed = true;
+				}
+				else if(!ip.isLeased() && ip.getReservationExpirationTime() != 0 && !ip.isReserved(currentTime)) {
+					ip.setReservation("", 0);
+					freed = true;
+				}
+				if(ip.isLeased())
+					expiresAt(ip.getLeaseExpirationTime());
+				else if(ip.isReserved(currentTime))
+					expiresAt(ip.getReservationExpirationTime());
+				else
+					retireIfUnused(offset, ip, currentTime);
+			}
+			if(freed)
+				returnToPartition(offset);
+			if(leaseExpired) {
+				expired++;
+				LeaseExpiredEvent.emit(ip.getIpAddress(), ip.getMacAddress(), leaseExpirationTime);
+				System.out.println("Lease of client with MAC address " + ip.getMacAddress() + " has expired.");
 				DHCPServer.printLeasedAddresses(returnLeasedAddresses());
 			}
+			else if(freed)
+				reservationsFreed++;
 		}
+		sweep.end(examined, expired, reservationsFreed);
 	}
 	
 	/**
 	 * Return all leased addresses.
 	 * 
-	 * @return A list of leased IP addresses.
+	 * @return A list of leased IP addresses, in ascending order.
 	 */
 	public ArrayList<IPAddress> returnLeasedAddresses() {
-		ArrayList<IPAddress> leasedAddresses = new ArrayList<IPAddress>();
-		for(int i=0; i<this.getNumberOfIPAddresses(); i++) {
-			IPAddress currentIP = getIpPool().get(i);
-			if(currentIP.isLeased())
-				leasedAddresses.add(currentIP);
-		}
-		return leasedAddresses;
+		return new ArrayList<IPAddress>(leased.values());
+	}
+	
+	/**
+	 * Return the number of leased addresses.
+	 * 
+	 * @return The number of leased IP addresses.
+	 */
+	public int getNumberOfLeasedAddresses() {
+		return leased.size();
 	}
 }
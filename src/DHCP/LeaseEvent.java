@@ -0,0 +1,125 @@
+package DHCP;
+
+import java.net.InetAddress;
+
+/**
+ * Class representing a change to the lease of an address in a pool.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class LeaseEvent {
+
+	/**
+	 * Initialize a new lease event.
+	 *
+	 * @param type
+	 *        The kind of change.
+	 * @param address
+	 *        The address whose lease changed.
+	 * @param macAddress
+	 *        The MAC address of the client holding the lease, empty for a declined address.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expires or expired, 0 for a released address.
+	 */
+	public LeaseEvent(LeaseEventType type, InetAddress address, String macAddress, long leaseExpirationTime) {
+		this(type, address, macAddress, leaseExpirationTime, false);
+	}
+
+	/**
+	 * Initialize a new lease event, possibly reporting a change applied on behalf of another server.
+	 *
+	 * @param type
+	 *        The kind of change.
+	 * @param address
+	 *        The address whose lease changed.
+	 * @param macAddress
+	 *        The MAC address of the client holding the lease, empty for a declined address.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expires or expired, 0 for a released address.
+	 * @param replicated
+	 *        Whether the change was replicated from another server rather than made by this server.
+	 */
+	public LeaseEvent(LeaseEventType type, InetAddress address, String macAddress, long leaseExpirationTime, boolean replicated) {
+		this.type = type;
+		this.address = address;
+		this.macAddress = macAddress;
+		this.leaseExpirationTime = leaseExpirationTime;
+		this.replicated = replicated;
+	}
+
+	/**
+	 * Variable representing the kind of change.
+	 */
+	private final LeaseEventType type;
+
+	/**
+	 * Return the kind of change.
+	 *
+	 * @return The type of the event.
+	 */
+	public LeaseEventType getType() {
+		return type;
+	}
+
+	/**
+	 * Variable representing the address whose lease changed.
+	 */
+	private final InetAddress address;
+
+	/**
+	 * Return the address whose lease changed.
+	 *
+	 * @return The IP address.
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Variable representing the MAC address of the client holding the lease.
+	 */
+	private final String macAddress;
+
+	/**
+	 * Return the MAC address of the client holding the lease.
+	 *
+	 * @return The MAC address, empty for a declined address.
+	 */
+	public String getMacAddress() {
+		return macAddress;
+	}
+
+	/**
+	 * Variable representing the time at which the lease expires.
+	 */
+	private final long leaseExpirationTime;
+
+	/**
+	 * Return the time at which the lease expires.
+	 *
+	 * @return The lease expiration time, 0 for a released address.
+	 */
+	public long getLeaseExpirationTime() {
+		return leaseExpirationTime;
+	}
+
+	/**
+	 * Variable registering whether the change was replicated from another server.
+	 */
+	private final boolean replicated;
+
+	/**
+	 * Check whether the change was replicated from another server.
+	 *
+	 * @return True if another server made the change; false if this server made it.
+	 */
+	public boolean isReplicated() {
+		return replicated;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + address.getHostAddress() + " " + macAddress + " " + leaseExpirationTime;
+	}
+}
@@ -0,0 +1,339 @@
+package DHCP;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class representing a stream of the lease changes of all pools of a server to any number of subscribers.
+ *
+ * The changes are published in a bounded ring buffer without locks: a publishing thread claims a
+ * sequence number with one atomic increment and stores the change in its slot together with that
+ * number, so a reader can tell from the slot alone whether it holds the change it expects, a change
+ * not yet published, or a change that already overwrote it. Publishing never waits for subscribers:
+ * a subscriber that falls behind by more than the capacity of the ring loses the oldest changes, is
+ * notified of the overflow and resumes with the oldest change still in the ring.
+ *
+ * Every subscription has its own cursor. Changes are either pulled with {@link Subscription#poll()}
+ * or pushed to a {@link LeaseSubscriber} by a delivery thread of the subscription.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class LeaseEventStream implements LeaseListener {
+
+	/**
+	 * Constant representing the longest time (in nanoseconds) a delivery thread waits before it checks the ring again.
+	 */
+	private static final long MAXIMUM_WAIT = 10000000;
+
+	/**
+	 * Initialize a new stream of the lease changes of the given scopes.
+	 *
+	 * @param scopeConfiguration
+	 *        The scopes whose lease changes are published.
+	 * @param capacity
+	 *        The number of changes kept in the ring, a power of two.
+	 * @throws IllegalArgumentException
+	 *         The capacity is not a positive power of two.
+	 */
+	public LeaseEventStream(ScopeConfiguration scopeConfiguration, int capacity) throws IllegalArgumentException {
+		if(capacity <= 0 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("The capacity has to be a power of two.");
+		this.scopeConfiguration = scopeConfiguration;
+		this.slots = new AtomicReferenceArray<Entry>(capacity);
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Variable representing the scopes whose lease changes are published.
+	 */
+	private final ScopeConfiguration scopeConfiguration;
+
+	/**
+	 * Variable representing the slots of the ring, each holding the last change stored in it.
+	 */
+	private final AtomicReferenceArray<Entry> slots;
+
+	/**
+	 * Variable representing the mask mapping a sequence number on its slot.
+	 */
+	private final int mask;
+
+	/**
+	 * Variable representing the sequence number of the next change to publish.
+	 */
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	/**
+	 * Variable representing the subscriptions of the stream.
+	 */
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	/**
+	 * Variable registering whether a delivery thread is parked and needs to be woken up for new changes.
+	 */
+	private volatile boolean subscribersWaiting = false;
+
+	/**
+	 * Return the number of changes kept in the ring.
+	 *
+	 * @return The capacity of the stream.
+	 */
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * Return the number of changes published so far.
+	 *
+	 * @return The number of published changes.
+	 */
+	public long getPublished() {
+		return nextSequence.get();
+	}
+
+	/**
+	 * Starts publishing the lease changes of the pools.
+	 */
+	public void start() {
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().addLeaseListener(this);
+	}
+
+	/**
+	 * Stops publishing the lease changes of the pools and cancels all subscriptions.
+	 */
+	public void stop() {
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().removeLeaseListener(this);
+		for(Subscription subscription: subscriptions)
+			subscription.cancel();
+	}
+
+	/**
+	 * Publishes a lease change of a pool.
+	 */
+	public void leaseChanged(LeaseEvent event) {
+		publish(event);
+	}
+
+	/**
+	 * Publishes a change to all subscriptions, without waiting for any of them.
+	 *
+	 * @param event
+	 *        The change to publish.
+	 */
+	public void publish(LeaseEvent event) {
+		long sequence = nextSequence.getAndIncrement();
+		Entry entry = new Entry(sequence, event);
+		int index = (int) sequence & mask;
+		// A publisher that claimed a sequence number a whole ring later may have stored its change first
+		for(Entry current = slots.get(index); current == null || current.sequence < sequence; current = slots.get(index)) {
+			if(slots.compareAndSet(index, current, entry))
+				break;
+		}
+		if(subscribersWaiting) {
+			subscribersWaiting = false;
+			for(Subscription subscription: subscriptions) {
+				Thread thread = subscription.deliveryThread;
+				if(thread != null)
+					LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * Subscribes to the changes published from now on, to be pulled with {@link Subscription#poll()}.
+	 *
+	 * @return The new subscription.
+	 */
+	public Subscription subscribe() {
+		Subscription subscription = new Subscription(null);
+		subscriptions.add(subscription);
+		return subscription;
+	}
+
+	/**
+	 * Subscribes the given subscriber to the changes published from now on. A delivery thread of the
+	 * subscription pushes the changes to the subscriber.
+	 *
+	 * @param subscriber
+	 *        The subscriber.
+	 * @return The new subscription.
+	 */
+	public Subscription subscribe(LeaseSubscriber subscriber) {
+		Subscription subscription = new Subscription(subscriber);
+		subscriptions.add(subscription);
+		Thread thread = new Thread(subscription::deliver, "lease-event-subscriber");
+		thread.setDaemon(true);
+		subscription.deliveryThread = thread;
+		thread.start();
+		return subscription;
+	}
+
+	/**
+	 * Class representing a change stored in a slot of the ring, with its sequence number.
+	 */
+	private static final class Entry {
+
+		private Entry(long sequence, LeaseEvent event) {
+			this.sequence = sequence;
+			this.event = event;
+		}
+
+		private final long sequence;
+
+		private final LeaseEvent event;
+	}
+
+	/**
+	 * Class representing the subscription of one reader to the stream, with its own cursor.
+	 * Only one thread may read from a subscription.
+	 */
+	public final class Subscription {
+
+		private Subscription(LeaseSubscriber subscriber) {
+			this.subscriber = subscriber;
+			this.cursor = new Sequence(nextSequence.get());
+		}
+
+		/**
+		 * Variable representing the subscriber changes are pushed to, null for a subscription that is polled.
+		 */
+		private final LeaseSubscriber subscriber;
+
+		/**
+		 * Variable representing the sequence number of the next change to read.
+		 */
+		private final Sequence cursor;
+
+		/**
+		 * Variable representing the thread pushing the changes to the subscriber, null for a subscription that is polled.
+		 */
+		private volatile Thread deliveryThread = null;
+
+		/**
+		 * Variable registering whether the subscription is cancelled.
+		 */
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Variables representing the number of overflows and the number of changes lost by them.
+		 */
+		private volatile long overflows = 0;
+		private volatile long lostEvents = 0;
+
+		/**
+		 * Variable representing the number of changes lost since the last overflow notification.
+		 */
+		private long unreportedLostEvents = 0;
+
+		/**
+		 * Return the number of changes published but not yet read by the subscription.
+		 *
+		 * @return The lag of the subscription.
+		 */
+		public long getLag() {
+			return Math.max(0, nextSequence.get() - cursor.get());
+		}
+
+		/**
+		 * Return the number of times the subscription fell behind by more than the capacity of the stream.
+		 *
+		 * @return The number of overflows.
+		 */
+		public long getOverflows() {
+			return overflows;
+		}
+
+		/**
+		 * Return the number of changes the subscription lost through overflows.
+		 *
+		 * @return The number of lost changes.
+		 */
+		public long getLostEvents() {
+			return lostEvents;
+		}
+
+		/**
+		 * Check whether the subscription is cancelled.
+		 *
+		 * @return True if the subscription is cancelled; false otherwise.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Cancels the subscription and stops its delivery thread, if any.
+		 */
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			Thread thread = deliveryThread;
+			if(thread != null)
+				LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Reads the next change of the stream, if it has been published. If changes were overwritten
+		 * before they were read, the subscription skips to the oldest change still in the ring and counts
+		 * the lost changes as an overflow.
+		 *
+		 * @return The next change, null if no new change has been published.
+		 */
+		public LeaseEvent poll() {
+			while(true) {
+				long next = cursor.get();
+				Entry entry = slots.get((int) next & mask);
+				if(entry == null || entry.sequence < next)
+					return null;
+				if(entry.sequence == next) {
+					cursor.set(next + 1);
+					return entry.event;
+				}
+				// Overwritten: resume with the oldest change that can still be in the ring
+				long oldest = Math.max(next + 1, nextSequence.get() - slots.length());
+				cursor.set(oldest);
+				overflows++;
+				lostEvents += oldest - next;
+				unreportedLostEvents += oldest - next;
+			}
+		}
+
+		/**
+		 * Runs the delivery thread: pushes every change to the subscriber, notifying it of overflows first.
+		 */
+		private void deliver() {
+			while(!cancelled) {
+				LeaseEvent event = poll();
+				if(unreportedLostEvents > 0) {
+					long lost = unreportedLostEvents;
+					unreportedLostEvents = 0;
+					notify(() -> subscriber.overflowed(lost));
+				}
+				if(event != null) {
+					notify(() -> subscriber.leaseChanged(event));
+					continue;
+				}
+				// Ask for a wake-up before the last check, so a change published after the check wakes the thread
+				subscribersWaiting = true;
+				if(cursor.get() == nextSequence.get() && !cancelled)
+					LockSupport.parkNanos(this, MAXIMUM_WAIT);
+			}
+		}
+
+		/**
+		 * Calls the subscriber, so an error of the subscriber does not end the delivery.
+		 */
+		private void notify(Runnable call) {
+			try {
+				call.run();
+			} catch(RuntimeException e) {
+				System.out.println("Error in lease subscriber: " + e.getMessage() + ". Resuming delivery.");
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package DHCP;
+
+/**
+ * Enumeration of the changes to the lease of an address in a pool.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public enum LeaseEventType {
+
+	/**
+	 * The address is leased to a client, or declined and kept out of the pool.
+	 */
+	BIND,
+
+	/**
+	 * The lease of the address is extended by its client.
+	 */
+	RENEW,
+
+	/**
+	 * The lease of the address is ended by its client.
+	 */
+	RELEASE,
+
+	/**
+	 * The lease of the address ran out without being renewed.
+	 */
+	EXPIRE
+}
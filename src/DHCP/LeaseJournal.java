@@ -0,0 +1,191 @@
+package DHCP;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class representing the lease database of a server: an append-only file of lease changes.
+ *
+ * Every record holds the state of one address after a change, in the format of lease replication,
+ * so the last record of an address is all that is needed to restore it. A change that was torn by a
+ * crash ends the journal; the records before it are kept. The journal grows with every change and is
+ * rewritten to the current leases when it has grown too long.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class LeaseJournal {
+
+	/**
+	 * Initialize a new journal in the file at the given path. The file is created on the first append.
+	 *
+	 * @param path
+	 *        The path of the journal file.
+	 */
+	public LeaseJournal(String path) {
+		this.file = new File(path);
+	}
+
+	/**
+	 * Variable representing the journal file.
+	 */
+	private final File file;
+
+	/**
+	 * Variable representing the stream appending to the journal file, null while the file is closed.
+	 */
+	private FileOutputStream output = null;
+
+	/**
+	 * Variable representing the buffered stream records are written to, null while the file is closed.
+	 */
+	private DataOutputStream records = null;
+
+	/**
+	 * Variable representing the number of records appended since the journal was opened or rewritten.
+	 */
+	private long appendedRecords = 0;
+
+	/**
+	 * Return the path of the journal file.
+	 *
+	 * @return The path.
+	 */
+	public String getPath() {
+		return file.getPath();
+	}
+
+	/**
+	 * Return the number of records appended since the journal was opened or last rewritten.
+	 *
+	 * @return The number of appended records.
+	 */
+	public synchronized long getAppendedRecords() {
+		return appendedRecords;
+	}
+
+	/**
+	 * Appends the given lease changes to the journal, in the given order.
+	 *
+	 * @param changes
+	 *        The lease changes to append.
+	 * @param sync
+	 *        Whether to wait until the changes reached the storage device.
+	 * @throws IOException
+	 *         The changes could not be written.
+	 */
+	public synchronized void append(Collection<LeaseEvent> changes, boolean sync) throws IOException {
+		if(records == null) {
+			output = new FileOutputStream(file, true);
+			records = new DataOutputStream(new BufferedOutputStream(output));
+		}
+		for(LeaseEvent change: changes)
+			LeaseReplicator.writeEvent(records, change);
+		records.flush();
+		if(sync)
+			output.getChannel().force(false);
+		appendedRecords += changes.size();
+	}
+
+	/**
+	 * Replaces the journal by one record per given lease. The new journal is written next to the old
+	 * one and moved over it, so a crash leaves either the old or the new journal.
+	 *
+	 * @param leases
+	 *        The current leases.
+	 * @throws IOException
+	 *         The new journal could not be written.
+	 */
+	public synchronized void rewrite(Collection<LeaseEvent> leases) throws IOException {
+		File rewritten = new File(file.getPath() + ".new");
+		try(FileOutputStream stream = new FileOutputStream(rewritten)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			for(LeaseEvent lease: leases)
+				LeaseReplicator.writeEvent(out, lease);
+			out.flush();
+			stream.getChannel().force(false);
+		}
+		close();
+		Files.move(rewritten.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		appendedRecords = 0;
+	}
+
+	/**
+	 * Closes the journal file. The next append opens it again.
+	 *
+	 * @throws IOException
+	 *         The journal file could not be closed.
+	 */
+	public synchronized void close() throws IOException {
+		if(records != null) {
+			records.close();
+			records = null;
+			output = null;
+		}
+	}
+
+	/**
+	 * Reads the last recorded state of every address in the journal.
+	 *
+	 * @return The last change of every address, keyed on the address, in order of first appearance.
+	 * @throws IOException
+	 *         The journal file could not be read.
+	 */
+	public synchronized Map<InetAddress, LeaseEvent> read() throws IOException {
+		Map<InetAddress, LeaseEvent> result = new LinkedHashMap<InetAddress, LeaseEvent>();
+		if(!file.isFile())
+			return result;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while(true) {
+				LeaseEvent change = LeaseReplicator.readEvent(in);
+				result.put(change.getAddress(), change);
+			}
+		} catch(EOFException | UTFDataFormatException | ArrayIndexOutOfBoundsException e) {
+			// End of the journal, possibly a change torn by a crash
+		}
+		return result;
+	}
+
+	/**
+	 * Restores the leases recorded in the journal that have not expired at the given time in the pools
+	 * of the given scopes. Restored leases are reported to the lease listeners of the pools as replicated.
+	 *
+	 * @param scopeConfiguration
+	 *        The scopes to restore the leases in.
+	 * @param currentTime
+	 *        The current time.
+	 * @return The number of restored leases.
+	 * @throws IOException
+	 *         The journal file could not be read.
+	 */
+	public int restore(ScopeConfiguration scopeConfiguration, long currentTime) throws IOException {
+		int restored = 0;
+		for(LeaseEvent change: read().values()) {
+			LeaseEventType type = change.getType();
+			if((type != LeaseEventType.BIND && type != LeaseEventType.RENEW) || change.getLeaseExpirationTime() <= currentTime)
+				continue;
+			LeaseEvent lease = new LeaseEvent(LeaseEventType.BIND, change.getAddress(), change.getMacAddress(), change.getLeaseExpirationTime(), true);
+			for(Scope scope: scopeConfiguration.getScopes()) {
+				if(scope.getPool().apply(lease)) {
+					restored++;
+					break;
+				}
+			}
+		}
+		return restored;
+	}
+}
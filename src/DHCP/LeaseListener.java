@@ -0,0 +1,19 @@
+package DHCP;
+
+/**
+ * Interface for listeners to the changes of the leases of a pool.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public interface LeaseListener {
+
+	/**
+	 * Called after the lease of an address changed. The changes of one address are reported in the
+	 * order they happened, while the address is locked, so the listener must not block.
+	 *
+	 * @param event
+	 *        The change.
+	 */
+	void leaseChanged(LeaseEvent event);
+}
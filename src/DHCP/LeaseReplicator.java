@@ -0,0 +1,463 @@
+package DHCP;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class representing the replication of the leases of a primary server to a hot standby secondary
+ * server over a TCP connection.
+ *
+ * The replicator listens to the lease changes of all pools of the primary and queues them without
+ * blocking the server. A sender thread streams the queued changes to the secondary in batches, each
+ * batch numbered with the sequence number of its last change, and sends a heartbeat when there is
+ * nothing to send. The secondary acknowledges the sequence number of every batch it applied and of
+ * every heartbeat.
+ *
+ * On every (re)connection, and whenever the secondary falls so far behind that the queue overflows,
+ * the queue is dropped and a snapshot of all leases is sent instead. The changes queued after the
+ * snapshot are applied on top of it; since every change of an address is queued in order, the
+ * secondary ends in the state of the primary.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class LeaseReplicator implements LeaseListener {
+
+	/**
+	 * Constant representing the default TCP port the secondary accepts the replication connection on.
+	 */
+	public static final int DEFAULT_PORT = 1647;
+
+	/**
+	 * Constant representing the time (in milliseconds) between two heartbeats of an idle connection.
+	 */
+	public static final long HEARTBEAT_INTERVAL = 200;
+
+	/**
+	 * Constants representing the frame types of the replication protocol.
+	 */
+	static final byte SNAPSHOT = 1;
+	static final byte BATCH = 2;
+	static final byte HEARTBEAT = 3;
+	static final byte HELLO = 4;
+
+	/**
+	 * Constant representing the maximum number of changes in one batch.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * Constant representing the maximum number of queued changes before the secondary is resynchronized with a snapshot.
+	 */
+	private static final int MAXIMUM_BACKLOG = 1 << 16;
+
+	/**
+	 * Constant representing the time (in milliseconds) between two attempts to connect to the secondary.
+	 */
+	private static final long RECONNECT_INTERVAL = 500;
+
+	/**
+	 * Initialize a new replicator of the leases of the given scopes to the secondary at the given address.
+	 *
+	 * @param scopeConfiguration
+	 *        The scopes of the primary server.
+	 * @param secondary
+	 *        The address of the secondary server.
+	 * @param port
+	 *        The port the secondary accepts the replication connection on.
+	 */
+	public LeaseReplicator(ScopeConfiguration scopeConfiguration, InetAddress secondary, int port) {
+		this(scopeConfiguration, secondary, port, -1);
+	}
+
+	/**
+	 * Initialize a new replicator of the leases of the given scopes of a server of a cluster to the peer
+	 * at the given address. The replicator introduces itself to the peer with the identifier of its server.
+	 *
+	 * @param scopeConfiguration
+	 *        The scopes of the server.
+	 * @param peer
+	 *        The address of the peer.
+	 * @param port
+	 *        The port the peer accepts the replication connection on.
+	 * @param nodeId
+	 *        The identifier of the server in the cluster, -1 for a primary outside a cluster.
+	 */
+	public LeaseReplicator(ScopeConfiguration scopeConfiguration, InetAddress peer, int port, int nodeId) {
+		this.scopeConfiguration = scopeConfiguration;
+		this.secondary = new InetSocketAddress(peer, port);
+		this.nodeId = nodeId;
+	}
+
+	/**
+	 * Variable representing the scopes whose leases are replicated.
+	 */
+	private final ScopeConfiguration scopeConfiguration;
+
+	/**
+	 * Variable representing the address of the secondary server.
+	 */
+	private final InetSocketAddress secondary;
+
+	/**
+	 * Variable representing the identifier of the server in its cluster, -1 for a primary outside a cluster.
+	 */
+	private final int nodeId;
+
+	/**
+	 * Variable representing the changes waiting to be sent.
+	 */
+	private final ConcurrentLinkedQueue<LeaseEvent> queue = new ConcurrentLinkedQueue<LeaseEvent>();
+
+	/**
+	 * Variable representing the number of changes waiting to be sent.
+	 */
+	private final AtomicInteger backlog = new AtomicInteger();
+
+	/**
+	 * Variable registering whether the queue overflowed, so the secondary needs a snapshot.
+	 */
+	private volatile boolean overflowed = false;
+
+	/**
+	 * Variable registering whether the secondary is connected; changes are only queued while it is.
+	 */
+	private volatile boolean connected = false;
+
+	/**
+	 * Variable registering whether the sender thread is parked and needs to be woken up for new changes.
+	 */
+	private volatile boolean senderWaiting = false;
+
+	/**
+	 * Variable registering whether the replicator is running.
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * Variable representing the sender thread.
+	 */
+	private volatile Thread sender = null;
+
+	/**
+	 * Variable representing the current connection to the secondary.
+	 */
+	private volatile Socket connection = null;
+
+	/**
+	 * Variable representing the sequence number of the last batch or snapshot sent.
+	 */
+	private volatile long sequence = 0;
+
+	/**
+	 * Variable representing the sequence number of the last batch or snapshot applied by the secondary.
+	 */
+	private volatile long acknowledgedSequence = 0;
+
+	/**
+	 * Variable representing the time (System.nanoTime) the secondary last acknowledged a frame, 0 if it never did.
+	 */
+	private volatile long lastAcknowledged = 0;
+
+	/**
+	 * Variables representing the numbers of changes and batches sent and of snapshots sent.
+	 */
+	private volatile long sentChanges = 0;
+	private volatile long sentBatches = 0;
+	private volatile long sentSnapshots = 0;
+
+	/**
+	 * Return the sequence number of the last batch or snapshot sent to the secondary.
+	 *
+	 * @return The last sent sequence number.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Return the sequence number of the last batch or snapshot the secondary acknowledged.
+	 *
+	 * @return The acknowledged sequence number.
+	 */
+	public long getAcknowledgedSequence() {
+		return acknowledgedSequence;
+	}
+
+	/**
+	 * Return the time the secondary last acknowledged a frame. The secondary acknowledges every
+	 * heartbeat, so this time stays recent as long as the secondary keeps up with the connection.
+	 *
+	 * @return The System.nanoTime of the last acknowledgement, 0 if none was received.
+	 */
+	public long getLastAcknowledged() {
+		return lastAcknowledged;
+	}
+
+	/**
+	 * Return the number of changes sent in batches.
+	 *
+	 * @return The number of sent changes.
+	 */
+	public long getSentChanges() {
+		return sentChanges;
+	}
+
+	/**
+	 * Return the number of batches sent.
+	 *
+	 * @return The number of sent batches.
+	 */
+	public long getSentBatches() {
+		return sentBatches;
+	}
+
+	/**
+	 * Return the number of snapshots sent.
+	 *
+	 * @return The number of sent snapshots.
+	 */
+	public long getSentSnapshots() {
+		return sentSnapshots;
+	}
+
+	/**
+	 * Check whether the secondary is connected.
+	 *
+	 * @return True if the replication connection is up; false otherwise.
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Starts listening to the pools of the primary and connecting to the secondary.
+	 */
+	public void start() {
+		running = true;
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().addLeaseListener(this);
+		sender = new Thread(this::send, "lease-replicator");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * Stops the replication and closes the connection to the secondary.
+	 */
+	public void stop() {
+		running = false;
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().removeLeaseListener(this);
+		Socket connection = this.connection;
+		if(connection != null) {
+			try {
+				connection.close();
+			} catch(IOException e) {
+				// Closing anyway
+			}
+		}
+		Thread sender = this.sender;
+		if(sender != null)
+			sender.interrupt();
+	}
+
+	/**
+	 * Queues a change for the secondary, unless the secondary is not connected or the queue overflowed:
+	 * the snapshot sent on connection or after the overflow covers the change. Changes replicated from
+	 * another server are not queued, so servers replicating to each other do not echo them back.
+	 */
+	public void leaseChanged(LeaseEvent event) {
+		if(event.isReplicated() || !connected || overflowed)
+			return;
+		if(backlog.incrementAndGet() > MAXIMUM_BACKLOG) {
+			// The change is not queued, so it does not count in the backlog
+			backlog.decrementAndGet();
+			overflowed = true;
+			return;
+		}
+		queue.offer(event);
+		if(senderWaiting) {
+			senderWaiting = false;
+			LockSupport.unpark(sender);
+		}
+	}
+
+	/**
+	 * Runs the sender thread: connects to the secondary, sends a snapshot and streams the queued changes
+	 * until the connection fails, then reconnects.
+	 */
+	private void send() {
+		boolean wasConnected = false;
+		while(running) {
+			try(Socket socket = new Socket()) {
+				socket.connect(secondary, (int) RECONNECT_INTERVAL);
+				socket.setTcpNoDelay(true);
+				connection = socket;
+				if(!running)
+					break;
+				System.out.println("Lease replication to " + secondary + " connected.");
+				wasConnected = true;
+				startAcknowledgementReader(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				if(nodeId >= 0) {
+					// Sent along with the snapshot that follows
+					out.writeByte(HELLO);
+					out.writeLong(nodeId);
+				}
+				connected = true;
+				stream(out);
+			} catch(IOException e) {
+				if(wasConnected && running)
+					System.out.println("Lease replication to " + secondary + " lost: " + e.getMessage());
+				wasConnected = false;
+			} finally {
+				connected = false;
+				connection = null;
+			}
+			if(running) {
+				try {
+					Thread.sleep(RECONNECT_INTERVAL);
+				} catch(InterruptedException e) {
+					// Stopped
+				}
+			}
+		}
+	}
+
+	/**
+	 * Streams the changes to a connected secondary, starting with a snapshot.
+	 */
+	private void stream(DataOutputStream out) throws IOException {
+		resynchronize(out);
+		List<LeaseEvent> batch = new ArrayList<LeaseEvent>(BATCH_SIZE);
+		long lastFrame = System.nanoTime();
+		while(running) {
+			if(overflowed) {
+				resynchronize(out);
+				lastFrame = System.nanoTime();
+				continue;
+			}
+			for(LeaseEvent event = queue.poll(); event != null; event = queue.poll()) {
+				batch.add(event);
+				if(batch.size() == BATCH_SIZE)
+					break;
+			}
+			if(!batch.isEmpty()) {
+				backlog.addAndGet(-batch.size());
+				out.writeByte(BATCH);
+				out.writeLong(sequence + 1);
+				out.writeInt(batch.size());
+				for(LeaseEvent event: batch)
+					writeEvent(out, event);
+				out.flush();
+				sequence++;
+				sentChanges += batch.size();
+				sentBatches++;
+				batch.clear();
+				lastFrame = System.nanoTime();
+				continue;
+			}
+			long idle = System.nanoTime() - lastFrame;
+			if(idle >= HEARTBEAT_INTERVAL * 1000000) {
+				out.writeByte(HEARTBEAT);
+				out.writeLong(sequence);
+				out.flush();
+				lastFrame = System.nanoTime();
+				continue;
+			}
+			senderWaiting = true;
+			if(queue.isEmpty() && !overflowed)
+				LockSupport.parkNanos(this, HEARTBEAT_INTERVAL * 1000000 - idle);
+			senderWaiting = false;
+			if(Thread.interrupted() && !running)
+				return;
+		}
+	}
+
+	/**
+	 * Drops the queued changes and sends a snapshot of all leases instead.
+	 */
+	private void resynchronize(DataOutputStream out) throws IOException {
+		overflowed = false;
+		for(LeaseEvent event = queue.poll(); event != null; event = queue.poll())
+			backlog.decrementAndGet();
+		List<LeaseEvent> snapshot = new ArrayList<LeaseEvent>();
+		for(Scope scope: scopeConfiguration.getScopes()) {
+			for(IPAddress ip: scope.getPool().returnLeasedAddresses()) {
+				synchronized(ip) {
+					if(ip.isLeased())
+						snapshot.add(new LeaseEvent(LeaseEventType.BIND, ip.getIpAddress(), ip.getMacAddress(), ip.getLeaseExpirationTime()));
+				}
+			}
+		}
+		out.writeByte(SNAPSHOT);
+		out.writeLong(sequence + 1);
+		out.writeInt(snapshot.size());
+		for(LeaseEvent event: snapshot)
+			writeEvent(out, event);
+		out.flush();
+		sequence++;
+		sentSnapshots++;
+	}
+
+	/**
+	 * Starts a thread reading the acknowledged sequence numbers of the secondary, until the connection closes.
+	 */
+	private void startAcknowledgementReader(DataInputStream in) {
+		Thread reader = new Thread(() -> {
+			try {
+				while(true) {
+					acknowledgedSequence = in.readLong();
+					lastAcknowledged = System.nanoTime();
+				}
+			} catch(IOException e) {
+				// Connection closed
+			}
+		}, "lease-replicator-acknowledgements");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Writes a lease change in the replication protocol.
+	 *
+	 * @param out
+	 *        The stream to write to.
+	 * @param event
+	 *        The change to write.
+	 */
+	static void writeEvent(DataOutputStream out, LeaseEvent event) throws IOException {
+		out.writeByte(event.getType().ordinal());
+		out.write(event.getAddress().getAddress());
+		out.writeUTF(event.getMacAddress());
+		out.writeLong(event.getLeaseExpirationTime());
+	}
+
+	/**
+	 * Reads a lease change in the replication protocol.
+	 *
+	 * @param in
+	 *        The stream to read from.
+	 * @return The change read.
+	 */
+	static LeaseEvent readEvent(DataInputStream in) throws IOException {
+		LeaseEventType type = LeaseEventType.values()[in.readUnsignedByte()];
+		byte[] address = new byte[4];
+		in.readFully(address);
+		String macAddress = in.readUTF();
+		long leaseExpirationTime = in.readLong();
+		return new LeaseEvent(type, InetAddress.getByAddress(address), macAddress, leaseExpirationTime);
+	}
+}
@@ -0,0 +1,29 @@
+package DHCP;
+
+/**
+ * Interface for subscribers to a {@link LeaseEventStream}, such as address management or firewall systems.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public interface LeaseSubscriber {
+
+	/**
+	 * Called for every lease change delivered to the subscriber, in the order the changes were published,
+	 * on the delivery thread of the subscription.
+	 *
+	 * @param event
+	 *        The change.
+	 */
+	void leaseChanged(LeaseEvent event);
+
+	/**
+	 * Called when the subscriber fell so far behind that changes were overwritten before it read them.
+	 * Delivery resumes with the oldest change still in the stream; a subscriber that needs the complete
+	 * state can read the current leases of the pools again.
+	 *
+	 * @param lostEvents
+	 *        The number of changes the subscriber missed.
+	 */
+	void overflowed(long lostEvents);
+}
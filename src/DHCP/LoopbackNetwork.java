@@ -0,0 +1,342 @@
+package DHCP;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class representing an in-memory network of transport endpoints in a single JVM, to run many
+ * clients against a server without sockets.
+ *
+ * All endpoints share one loopback address and are identified by their port only. A sent datagram
+ * is copied into a lock-free queue of the receiving endpoint and the receiving thread, if waiting,
+ * is woken up. The network can lose datagrams, delay them and reorder them, each with a configurable
+ * probability or time, to exercise retransmissions. A datagram to a port without endpoint is
+ * silently lost, as with UDP.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class LoopbackNetwork implements Transport.Factory {
+
+	/**
+	 * Constant representing the first port given to endpoints opened on any free port.
+	 */
+	private static final int FIRST_EPHEMERAL_PORT = 49152;
+
+	/**
+	 * Constant representing the maximum extra delay of a reordered datagram (in nanoseconds), on top of the delay of the network.
+	 */
+	private static final long REORDER_WINDOW = 1000000;
+
+	/**
+	 * Initialize a new loopback network without loss, delay or reordering.
+	 */
+	public LoopbackNetwork() {
+		this(0, 0, 0);
+	}
+
+	/**
+	 * Initialize a new loopback network with the given impairments.
+	 *
+	 * @param lossProbability
+	 *        The probability that a datagram is lost.
+	 * @param reorderProbability
+	 *        The probability that a datagram is held back, so that datagrams sent after it overtake it.
+	 * @param delay
+	 *        The one-way delay of every datagram (in microseconds).
+	 * @throws IllegalArgumentException
+	 *         A probability is not between 0 and 1, or the delay is negative.
+	 */
+	public LoopbackNetwork(double lossProbability, double reorderProbability, long delay) throws IllegalArgumentException {
+		if(lossProbability < 0 || lossProbability > 1 || reorderProbability < 0 || reorderProbability > 1)
+			throw new IllegalArgumentException("A probability has to be between 0 and 1.");
+		if(delay < 0)
+			throw new IllegalArgumentException("The delay can not be negative.");
+		this.lossProbability = lossProbability;
+		this.reorderProbability = reorderProbability;
+		this.delay = delay * 1000;
+		try {
+			this.address = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+		} catch(UnknownHostException e) {
+			// Can not happen: an IPv4 address always has four bytes
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Variable representing the probability that a datagram is lost.
+	 */
+	private final double lossProbability;
+
+	/**
+	 * Variable representing the probability that a datagram is reordered.
+	 */
+	private final double reorderProbability;
+
+	/**
+	 * Variable representing the one-way delay of every datagram (in nanoseconds).
+	 */
+	private final long delay;
+
+	/**
+	 * Variable representing the address shared by all endpoints.
+	 */
+	private final InetAddress address;
+
+	/**
+	 * Variable representing the open endpoints, keyed on their port.
+	 */
+	private final ConcurrentHashMap<Integer, Endpoint> endpoints = new ConcurrentHashMap<Integer, Endpoint>();
+
+	/**
+	 * Variable representing the next port tried for an endpoint opened on any free port.
+	 */
+	private final AtomicInteger nextEphemeralPort = new AtomicInteger(FIRST_EPHEMERAL_PORT);
+
+	/**
+	 * Variable representing the sequence number of the next datagram, keeping datagrams due at the same time in order.
+	 */
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	/**
+	 * Variables representing the numbers of datagrams sent, lost, reordered and received by an endpoint.
+	 */
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder lost = new LongAdder();
+	private final LongAdder reordered = new LongAdder();
+	private final LongAdder received = new LongAdder();
+
+	/**
+	 * Return the number of datagrams sent on the network.
+	 *
+	 * @return The number of sent datagrams.
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+	/**
+	 * Return the number of datagrams lost: dropped on purpose or sent to a port without endpoint.
+	 *
+	 * @return The number of lost datagrams.
+	 */
+	public long getLost() {
+		return lost.sum();
+	}
+
+	/**
+	 * Return the number of datagrams held back to be overtaken.
+	 *
+	 * @return The number of reordered datagrams.
+	 */
+	public long getReordered() {
+		return reordered.sum();
+	}
+
+	/**
+	 * Return the number of datagrams received by an endpoint.
+	 *
+	 * @return The number of received datagrams.
+	 */
+	public long getReceived() {
+		return received.sum();
+	}
+
+	/**
+	 * Return the number of open endpoints.
+	 *
+	 * @return The number of endpoints.
+	 */
+	public int getNumberOfEndpoints() {
+		return endpoints.size();
+	}
+
+	/**
+	 * Opens an endpoint on the network. The given address is ignored: all endpoints share the loopback address.
+	 *
+	 * @throws SocketException
+	 *         The given port is in use, or no port is free.
+	 */
+	public Transport open(InetAddress address, int port) throws SocketException {
+		if(port != 0) {
+			Endpoint endpoint = new Endpoint(port);
+			if(endpoints.putIfAbsent(port, endpoint) != null)
+				throw new SocketException("Port " + port + " is already in use.");
+			return endpoint;
+		}
+		for(int attempt = 0; attempt < 65536 - FIRST_EPHEMERAL_PORT; attempt++) {
+			int candidate = FIRST_EPHEMERAL_PORT + Math.floorMod(nextEphemeralPort.getAndIncrement() - FIRST_EPHEMERAL_PORT, 65536 - FIRST_EPHEMERAL_PORT);
+			Endpoint endpoint = new Endpoint(candidate);
+			if(endpoints.putIfAbsent(candidate, endpoint) == null)
+				return endpoint;
+		}
+		throw new SocketException("No free port on the loopback network.");
+	}
+
+	/**
+	 * Class representing a datagram in flight.
+	 */
+	private static final class Datagram implements Comparable<Datagram> {
+
+		private Datagram(byte[] data, int sourcePort, long due, long sequence) {
+			this.data = data;
+			this.sourcePort = sourcePort;
+			this.due = due;
+			this.sequence = sequence;
+		}
+
+		private final byte[] data;
+
+		private final int sourcePort;
+
+		/**
+		 * The time (System.nanoTime) from which the datagram can be received.
+		 */
+		private final long due;
+
+		private final long sequence;
+
+		public int compareTo(Datagram other) {
+			if(due != other.due)
+				return due - other.due < 0 ? -1 : 1;
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/**
+	 * Class representing an endpoint on the loopback network.
+	 *
+	 * Senders only append to the lock-free inbox. Receiving is serialized per endpoint: the receiving
+	 * thread moves the inbox into a queue ordered on due time and takes the first due datagram, parking
+	 * until a datagram is due, a datagram arrives or the timeout passes.
+	 */
+	private final class Endpoint implements Transport {
+
+		private Endpoint(int port) {
+			this.port = port;
+		}
+
+		private final int port;
+
+		private final ConcurrentLinkedQueue<Datagram> inbox = new ConcurrentLinkedQueue<Datagram>();
+
+		/**
+		 * The datagrams taken from the inbox but not yet received, only used by the receiving thread.
+		 */
+		private final PriorityQueue<Datagram> pending = new PriorityQueue<Datagram>();
+
+		private final Object receiveLock = new Object();
+
+		private volatile Thread waiter = null;
+
+		private volatile int timeout = 0;
+
+		private volatile boolean closed = false;
+
+		public void send(byte[] data, int length, InetAddress address, int port) throws IOException {
+			if(closed)
+				throw new SocketException("The endpoint is closed.");
+			sent.increment();
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			Endpoint destination = endpoints.get(port);
+			if(destination == null || (lossProbability > 0 && random.nextDouble() < lossProbability)) {
+				lost.increment();
+				return;
+			}
+			long due = System.nanoTime() + delay;
+			if(reorderProbability > 0 && random.nextDouble() < reorderProbability) {
+				reordered.increment();
+				due = System.nanoTime() + delay + 1 + random.nextLong(REORDER_WINDOW);
+			}
+			destination.deliver(new Datagram(Arrays.copyOf(data, length), this.port, due, nextSequence.getAndIncrement()));
+		}
+
+		/**
+		 * Appends a datagram to the inbox and wakes up the receiving thread.
+		 */
+		private void deliver(Datagram datagram) {
+			inbox.offer(datagram);
+			Thread thread = waiter;
+			if(thread != null)
+				LockSupport.unpark(thread);
+		}
+
+		public ReceivedData receive(byte[] buffer) throws IOException {
+			synchronized(receiveLock) {
+				long timeoutNanos = timeout * 1000000L;
+				long deadline = System.nanoTime() + timeoutNanos;
+				waiter = Thread.currentThread();
+				try {
+					while(true) {
+						if(closed)
+							throw new SocketException("The endpoint is closed.");
+						for(Datagram datagram = inbox.poll(); datagram != null; datagram = inbox.poll())
+							pending.add(datagram);
+						Datagram first = pending.peek();
+						long now = System.nanoTime();
+						if(first != null && first.due - now <= 0) {
+							pending.poll();
+							received.increment();
+							int length = Math.min(first.data.length, buffer.length);
+							System.arraycopy(first.data, 0, buffer, 0, length);
+							return new ReceivedData(buffer, length, address, first.sourcePort);
+						}
+						long wait = Long.MAX_VALUE;
+						if(timeoutNanos > 0) {
+							wait = deadline - now;
+							if(wait <= 0)
+								throw new SocketTimeoutException("Receive timed out.");
+						}
+						if(first != null)
+							wait = Math.min(wait, first.due - now);
+						if(wait == Long.MAX_VALUE)
+							LockSupport.park(this);
+						else
+							LockSupport.parkNanos(this, wait);
+						if(Thread.interrupted())
+							throw new InterruptedIOException("Interrupted while receiving.");
+					}
+				} finally {
+					waiter = null;
+				}
+			}
+		}
+
+		public void setTimeout(int timeout) throws SocketException {
+			if(timeout < 0)
+				throw new SocketException("The timeout can not be negative.");
+			this.timeout = timeout;
+		}
+
+		public int getLocalPort() {
+			return port;
+		}
+
+		public void close() {
+			if(closed)
+				return;
+			closed = true;
+			endpoints.remove(port, this);
+			Thread thread = waiter;
+			if(thread != null)
+				LockSupport.unpark(thread);
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import DHCP.AdmissionQueue;
+import DHCP.DHCPServer;
+import DHCP.ScopeConfiguration;
+import DHCP.Utilities;
+import DHCP.Message.DHCPDiscoverMessage;
+import DHCP.Message.DHCPRequestMessage;
+import DHCP.Message.Message;
+
+/**
+ * Measures the latency of lease renewals with and without a flood of DHCPDISCOVERs from
+ * random clients. Renewals are admitted with a higher priority than DHCPDISCOVERs, so their
+ * latency should stay flat under the flood while DHCPDISCOVERs are shed.
+ *
+ * Optional arguments: number of renewals per phase, number of flooding threads.
+ */
+public class benchmarkAdmission {
+
+	private static final int SERVER_PORT = 1602;
+
+	private static final int CLIENTS = 50;
+
+	public static void main(String[] args) throws Exception {
+		int renewals = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int flooders = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		PrintStream out = System.out;
+		// The server logs every message; keep the log out of the measurement
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		InetAddress localhost = InetAddress.getByName("localhost");
+		// Every DISCOVER reserves an address for its offer, so the flood exhausts this /24 within a few hundred
+		// packets; the remaining DISCOVERs must be dropped without holding up the renewals
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "flood");
+		scopes.setProperty("default.scope", "flood");
+		scopes.setProperty("scope.flood.subnet", "10.0.0.0/24");
+		scopes.setProperty("scope.flood.range", "10.0.0.10-10.0.0.254");
+		DHCPServer server = new DHCPServer(localhost, 3600, ScopeConfiguration.fromProperties(scopes));
+		Thread.sleep(500);
+
+		DatagramSocket socket = new DatagramSocket();
+		socket.setSoTimeout(1000);
+		// Renewals rotate over several clients to stay within the per-client rate limit
+		String[] macs = new String[CLIENTS];
+		InetAddress[] addresses = new InetAddress[CLIENTS];
+		for(int i = 0; i < CLIENTS; i++) {
+			macs[i] = String.format("BENCHMARKRENEW%02d", i);
+			addresses[i] = InetAddress.getByName("10.0.0." + (120 + i));
+			if(exchange(socket, localhost, new DHCPRequestMessage(Utilities.generateXid(), macs[i], addresses[i], null)) < 0) {
+				out.println("No lease acquired; is another server running on port " + SERVER_PORT + "?");
+				System.exit(1);
+			}
+		}
+
+		out.println("Renewal latency (" + renewals + " renewals per phase)");
+		report(out, "idle", measure(socket, localhost, macs, addresses, renewals));
+
+		Flood flood = new Flood(localhost, flooders);
+		flood.start();
+		Thread.sleep(500);
+		long[] underFlood = measure(socket, localhost, macs, addresses, renewals);
+		flood.stop();
+		report(out, "flood", underFlood);
+
+		AdmissionQueue queue = server.getAdmissionQueue();
+		out.println("DISCOVERs sent: " + flood.getSent());
+		out.println("Shed: " + queue.getShed(AdmissionQueue.Priority.LOW) + " low, "
+				+ queue.getShed(AdmissionQueue.Priority.MEDIUM) + " medium, "
+				+ queue.getShed(AdmissionQueue.Priority.HIGH) + " high");
+		out.println("Queue depth at end of flood: " + queue.getDepth() + " / " + queue.getCapacity());
+		out.println("Dropped: " + server.getDropCounters());
+		System.exit(0);
+	}
+
+	/**
+	 * Sends the given number of renewals one after the other and returns their latencies
+	 * in nanoseconds, -1 for renewals that were not answered.
+	 */
+	private static long[] measure(DatagramSocket socket, InetAddress server, String[] macs, InetAddress[] addresses, int renewals) throws Exception {
+		long[] latencies = new long[renewals];
+		for(int i = 0; i < renewals; i++)
+			latencies[i] = exchange(socket, server, new DHCPRequestMessage(Utilities.generateXid(), macs[i % CLIENTS], addresses[i % CLIENTS]));
+		return latencies;
+	}
+
+	/**
+	 * Sends the message and returns the time until the reply with the same transaction ID, -1 on a timeout.
+	 */
+	private static long exchange(DatagramSocket socket, InetAddress server, Message message) throws Exception {
+		byte[] data = message.convertToByteArray();
+		byte[] buffer = new byte[Message.MAXIMUM_MESSAGE_SIZE];
+		long start = System.nanoTime();
+		socket.send(new DatagramPacket(data, data.length, server, SERVER_PORT));
+		try {
+			while(true) {
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				if(Message.convertToMessage(Arrays.copyOf(buffer, packet.getLength())).getXid() == message.getXid())
+					return System.nanoTime() - start;
+			}
+		} catch(SocketTimeoutException e) {
+			return -1;
+		}
+	}
+
+	private static void report(PrintStream out, String phase, long[] latencies) {
+		long[] answered = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+		int lost = latencies.length - answered.length;
+		if(answered.length == 0) {
+			out.printf("  %-6s all %d renewals lost%n", phase, lost);
+			return;
+		}
+		out.printf("  %-6s p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms  lost %d%n", phase,
+				answered[answered.length / 2] / 1e6,
+				answered[(int) (answered.length * 0.99)] / 1e6,
+				answered[answered.length - 1] / 1e6, lost);
+	}
+
+	/**
+	 * Threads sending DHCPDISCOVERs of random clients as fast as possible, without reading the replies.
+	 */
+	private static class Flood implements Runnable {
+
+		private Flood(InetAddress server, int threads) {
+			this.server = server;
+			this.threads = new Thread[threads];
+		}
+
+		private final InetAddress server;
+
+		private final Thread[] threads;
+
+		private volatile boolean running = true;
+
+		private long sent = 0;
+
+		private synchronized void count(long count) {
+			sent += count;
+		}
+
+		private synchronized long getSent() {
+			return sent;
+		}
+
+		private void start() {
+			for(int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(this);
+				threads[i].start();
+			}
+		}
+
+		private void stop() throws InterruptedException {
+			running = false;
+			for(Thread thread: threads)
+				thread.join();
+		}
+
+		public void run() {
+			long count = 0;
+			try {
+				DatagramSocket socket = new DatagramSocket();
+				while(running) {
+					String mac = String.format("%016X", ThreadLocalRandom.current().nextLong());
+					byte[] data = new DHCPDiscoverMessage(mac).convertToByteArray();
+					socket.send(new DatagramPacket(data, data.length, server, SERVER_PORT));
+					count++;
+				}
+				socket.close();
+			} catch(Exception e) {
+				// Stop flooding
+			}
+			count(count);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package DHCP.Main;
+
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import DHCP.IPPool;
+import DHCP.LeaseEvent;
+import DHCP.LeaseEventStream;
+import DHCP.LeaseSubscriber;
+import DHCP.ScopeConfiguration;
+
+/**
+ * Compares learning about lease changes by polling the leased addresses of a pool with subscribing to
+ * a lease event stream. A pool binds, renews and releases the leases of a population of clients in a
+ * number of rounds, first without consumers, then while a consumer polls the pool, and then with a
+ * fast and a slow subscriber on the stream. Reports the time spent on the request path per change,
+ * the changes each consumer saw and the overflows of the slow subscriber.
+ *
+ * Optional arguments: number of clients, number of rounds, capacity of the stream, delay of the slow subscriber (in microseconds).
+ */
+public class benchmarkLeaseEventStream {
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+		long slowDelay = args.length > 3 ? Long.parseLong(args[3]) : 200;
+
+		System.out.printf("%d clients, %d rounds, stream capacity %d, slow subscriber %d us per change%n", clients, rounds, capacity, slowDelay);
+		System.out.printf("%-12s %14s %12s %12s%n", "consumers", "us per change", "changes", "copied");
+
+		// Warm up, then the baseline: nobody listens
+		run(pool(), clients, rounds);
+		IPPool pool = pool();
+		double perChange = run(pool, clients, rounds);
+		System.out.printf("%-12s %14.2f %12d %12s%n", "none", perChange, (long) clients * (rounds + 2), "-");
+
+		// Polling: a consumer copies the leased addresses of the pool over and over
+		IPPool polledPool = pool();
+		AtomicLong polls = new AtomicLong();
+		AtomicLong copied = new AtomicLong();
+		Thread poller = new Thread(() -> {
+			while(!Thread.currentThread().isInterrupted()) {
+				copied.addAndGet(polledPool.returnLeasedAddresses().size());
+				polls.incrementAndGet();
+			}
+		});
+		poller.setDaemon(true);
+		poller.start();
+		perChange = run(polledPool, clients, rounds);
+		poller.interrupt();
+		poller.join();
+		System.out.printf("%-12s %14.2f %12s %12d%n", "polling", perChange, polls.get() + " polls", copied.get());
+
+		// Stream: a fast and a slow subscriber with their own cursor
+		ScopeConfiguration configuration = configuration();
+		LeaseEventStream stream = new LeaseEventStream(configuration, capacity);
+		CountingSubscriber fast = new CountingSubscriber(0);
+		CountingSubscriber slow = new CountingSubscriber(slowDelay);
+		LeaseEventStream.Subscription fastSubscription = stream.subscribe(fast);
+		LeaseEventStream.Subscription slowSubscription = stream.subscribe(slow);
+		stream.start();
+		perChange = run(configuration.getScopes().get(0).getPool(), clients, rounds);
+		// Let the subscribers catch up with what is left in the ring
+		for(int i = 0; i < 200 && (fastSubscription.getLag() > 0 || slowSubscription.getLag() > 0); i++)
+			Thread.sleep(10);
+		stream.stop();
+		System.out.printf("%-12s %14.2f %12d %12s%n", "stream", perChange, stream.getPublished(), "-");
+		System.out.printf("  fast subscriber: %d received, %d overflows, %d lost%n", fast.received.get(),
+				fastSubscription.getOverflows(), fastSubscription.getLostEvents());
+		System.out.printf("  slow subscriber: %d received, %d overflows, %d lost, %d lost as notified%n", slow.received.get(),
+				slowSubscription.getOverflows(), slowSubscription.getLostEvents(), slow.lost.get());
+		System.out.printf("  slow subscriber accounted for %d of %d changes%n", slow.received.get() + slow.lost.get(), stream.getPublished());
+	}
+
+	/**
+	 * Subscriber counting the changes and lost changes it is told about, spending the given time on every change.
+	 */
+	private static class CountingSubscriber implements LeaseSubscriber {
+
+		private CountingSubscriber(long delay) {
+			this.delay = delay;
+		}
+
+		private final long delay;
+
+		private final AtomicLong received = new AtomicLong();
+
+		private final AtomicLong lost = new AtomicLong();
+
+		public void leaseChanged(LeaseEvent event) {
+			received.incrementAndGet();
+			if(delay > 0) {
+				long end = System.nanoTime() + delay * 1000;
+				while(System.nanoTime() < end)
+					Thread.onSpinWait();
+			}
+		}
+
+		public void overflowed(long lostEvents) {
+			lost.addAndGet(lostEvents);
+		}
+	}
+
+	/**
+	 * Leases an address to every client, renews all leases in the given number of rounds and releases
+	 * them, returning the time per change.
+	 */
+	private static double run(IPPool pool, int clients, int rounds) throws Exception {
+		InetAddress[] addresses = new InetAddress[clients];
+		long expiration = System.currentTimeMillis() + 3600000;
+		long start = System.nanoTime();
+		for(int i = 0; i < clients; i++) {
+			String mac = String.format("STREAM%010d", i);
+			addresses[i] = pool.reserveAvailableAddress(mac, expiration);
+			pool.lease(addresses[i], mac, expiration);
+		}
+		for(int round = 1; round <= rounds; round++) {
+			for(int i = 0; i < clients; i++)
+				pool.renew(addresses[i], String.format("STREAM%010d", i), expiration + round);
+		}
+		for(int i = 0; i < clients; i++)
+			pool.release(pool.getIPFromPool(addresses[i]));
+		long time = System.nanoTime() - start;
+		return time / 1000.0 / ((long) clients * (rounds + 2));
+	}
+
+	private static IPPool pool() throws Exception {
+		return configuration().getScopes().get(0).getPool();
+	}
+
+	private static ScopeConfiguration configuration() throws Exception {
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "stream");
+		scopes.setProperty("default.scope", "stream");
+		scopes.setProperty("scope.stream.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.stream.range", "10.0.0.10-10.0.15.254");
+		return ScopeConfiguration.fromProperties(scopes);
+	}
+}
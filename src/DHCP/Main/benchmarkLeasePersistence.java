@@ -0,0 +1,110 @@
+package DHCP.Main;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Properties;
+
+import DHCP.IPPool;
+import DHCP.LeaseJournal;
+import DHCP.LeaseListener;
+import DHCP.ScopeConfiguration;
+import DHCP.WriteBehindLeaseStore;
+
+/**
+ * Compares synchronous lease persistence, which appends and syncs every lease change to the journal
+ * before the pool returns, with the write-behind store. A pool leases addresses to a population of
+ * clients, which then renew their leases in a number of renewal storms. Reports the time spent on the
+ * request path per change, the records written and the flushes, and checks that a new pool restored
+ * from the journal holds the same leases.
+ *
+ * Optional arguments: number of clients, number of renewal rounds, flush window (in milliseconds).
+ */
+public class benchmarkLeasePersistence {
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		long flushWindow = args.length > 2 ? Long.parseLong(args[2]) : 100;
+
+		System.out.printf("%d clients, %d renewal rounds, flush window %d ms%n", clients, rounds, flushWindow);
+		System.out.printf("%-14s %14s %10s %10s %14s %14s %10s%n", "persistence", "us per change", "records", "flushes",
+				"mean flush us", "max flush us", "restored");
+
+		// Synchronous: every change is appended and synced on the request path
+		ScopeConfiguration configuration = configuration();
+		LeaseJournal journal = new LeaseJournal(journalPath("synchronous"));
+		long[] records = new long[1];
+		LeaseListener writeThrough = event -> {
+			try {
+				journal.append(Collections.singletonList(event), true);
+				records[0]++;
+			} catch(Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		configuration.getScopes().get(0).getPool().addLeaseListener(writeThrough);
+		double perChange = run(configuration, clients, rounds);
+		journal.close();
+		System.out.printf("%-14s %14.2f %10d %10d %14s %14s %10d%n", "synchronous", perChange, records[0], records[0], "-", "-",
+				restore(journal));
+
+		// Write-behind: changes are coalesced per address and flushed in sorted batches
+		configuration = configuration();
+		LeaseJournal behindJournal = new LeaseJournal(journalPath("write-behind"));
+		WriteBehindLeaseStore store = new WriteBehindLeaseStore(configuration, behindJournal, flushWindow, 1 << 16);
+		store.start();
+		perChange = run(configuration, clients, rounds);
+		store.stop();
+		System.out.printf("%-14s %14.2f %10d %10d %14.0f %14.0f %10d%n", "write-behind", perChange, store.getWrittenRecords(), store.getFlushes(),
+				store.getMeanFlushLatency(), store.getMaximumFlushLatency(), restore(behindJournal));
+		System.out.printf("coalescing ratio %.1f changes per record%n", store.getCoalescingRatio());
+	}
+
+	/**
+	 * Leases an address to every client and renews all leases in the given number of rounds, returning the time per change.
+	 */
+	private static double run(ScopeConfiguration configuration, int clients, int rounds) throws Exception {
+		IPPool pool = configuration.getScopes().get(0).getPool();
+		InetAddress[] addresses = new InetAddress[clients];
+		long expiration = System.currentTimeMillis() + 3600000;
+		long start = System.nanoTime();
+		for(int i = 0; i < clients; i++) {
+			String mac = String.format("PERSIST%09d", i);
+			addresses[i] = pool.reserveAvailableAddress(mac, expiration);
+			pool.lease(addresses[i], mac, expiration);
+		}
+		for(int round = 1; round <= rounds; round++) {
+			// Spread the storm over the round, as renewals arrive over a few hundred milliseconds
+			for(int i = 0; i < clients; i++)
+				pool.renew(addresses[i], String.format("PERSIST%09d", i), expiration + round);
+			Thread.sleep(50);
+		}
+		long time = System.nanoTime() - start - rounds * 50000000L;
+		return time / 1000.0 / (clients * (rounds + 1));
+	}
+
+	/**
+	 * Restores the journal in a new pool and returns the number of restored leases.
+	 */
+	private static int restore(LeaseJournal journal) throws Exception {
+		int restored = journal.restore(configuration(), System.currentTimeMillis());
+		new File(journal.getPath()).delete();
+		return restored;
+	}
+
+	private static String journalPath(String name) {
+		File file = new File(System.getProperty("java.io.tmpdir"), "benchmark-" + name + ".leases");
+		file.delete();
+		return file.getPath();
+	}
+
+	private static ScopeConfiguration configuration() throws Exception {
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "persistence");
+		scopes.setProperty("default.scope", "persistence");
+		scopes.setProperty("scope.persistence.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.persistence.range", "10.0.0.10-10.0.15.254");
+		return ScopeConfiguration.fromProperties(scopes);
+	}
+}
@@ -0,0 +1,97 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import DHCP.DHCPClient;
+import DHCP.DHCPServer;
+import DHCP.LoopbackNetwork;
+import DHCP.ProcessingMode;
+import DHCP.RetransmissionPolicy;
+import DHCP.ScopeConfiguration;
+import DHCP.SystemClock;
+
+/**
+ * Compares the processing modes of the server: the admission queue with one processing thread,
+ * a pool of threads handling every message from decode to send, and the staged pipeline on a
+ * ring buffer. For every mode a server is started on its own in-memory loopback network and
+ * client threads run full DISCOVER, OFFER, REQUEST, ACK handshakes followed by a RELEASE.
+ * Reports the throughput and the latency of an acquisition.
+ *
+ * Optional arguments: number of transactions per mode, number of client threads, number of rounds.
+ */
+public class benchmarkPipeline {
+
+	private static final int SERVER_PORT = 1602;
+
+	public static void main(String[] args) throws Exception {
+		int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		PrintStream out = System.out;
+		// The server and clients log every message; keep the log out of the benchmark
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		out.printf("%d transactions per mode, %d client threads, %d processors%n", transactions, threads, Runtime.getRuntime().availableProcessors());
+		out.printf("%6s %-12s %10s %12s %10s %10s %10s %8s%n", "round", "mode", "time (s)", "tx per s", "p50 (us)", "p99 (us)", "max (us)", "failed");
+		for(int round = 1; round <= rounds; round++) {
+			for(ProcessingMode mode: ProcessingMode.values())
+				run(out, round, mode, transactions, threads);
+		}
+		System.exit(0);
+	}
+
+	private static void run(PrintStream out, int round, ProcessingMode mode, int transactions, int threads) throws Exception {
+		LoopbackNetwork network = new LoopbackNetwork();
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "benchmark");
+		scopes.setProperty("default.scope", "benchmark");
+		scopes.setProperty("scope.benchmark.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.benchmark.range", "10.0.0.10-10.0.15.254");
+		new DHCPServer(InetAddress.getByName("127.0.0.1"), 60, ScopeConfiguration.fromProperties(scopes), network, SystemClock.INSTANCE, mode);
+		Thread.sleep(200);
+
+		RetransmissionPolicy policy = new RetransmissionPolicy(20, 320, 5, 8);
+		AtomicInteger remaining = new AtomicInteger(transactions);
+		long[] latencies = new long[transactions];
+		AtomicInteger measured = new AtomicInteger();
+		LongAdder failed = new LongAdder();
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for(int i = 0; i < threads; i++) {
+			workers[i] = new Thread(() -> {
+				while(remaining.getAndDecrement() > 0) {
+					String mac = String.format("%016X", ThreadLocalRandom.current().nextLong());
+					DHCPClient client = new DHCPClient(mac, null, SERVER_PORT, network);
+					client.setRetransmissionPolicy(policy);
+					try {
+						long begin = System.nanoTime();
+						client.acquireIP();
+						latencies[measured.getAndIncrement()] = (System.nanoTime() - begin) / 1000;
+						client.releaseIP();
+					} catch(Exception e) {
+						failed.increment();
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for(Thread worker: workers)
+			worker.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long[] sorted = Arrays.copyOf(latencies, measured.get());
+		Arrays.sort(sorted);
+		out.printf("%6d %-12s %10.1f %12.0f %10d %10d %10d %8d%n", round, mode, seconds, transactions / seconds,
+				sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1], failed.sum());
+	}
+}
@@ -0,0 +1,74 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import DHCP.IPAddress;
+import DHCP.IPPool;
+
+/**
+ * Measures the allocation throughput of the IP pool with 1 to 32 threads, each repeatedly
+ * taking an available address, leasing it and releasing it again. The pool is split into one
+ * partition per thread and compared with a pool with a single shared partition.
+ *
+ * Optional argument: duration (in milliseconds) of every measurement.
+ */
+public class benchmarkPoolScaling {
+
+	private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+	public static void main(String[] args) throws Exception {
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+		PrintStream out = System.out;
+		// The pool logs every lease change; keep the log out of the measurement
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		out.println("Allocations per second (" + Runtime.getRuntime().availableProcessors() + " processors)");
+		out.printf("%8s %16s %16s%n", "threads", "1 partition", "per thread");
+		for(int threads: THREADS) {
+			double shared = measure(threads, 1, duration);
+			double partitioned = measure(threads, threads, duration);
+			out.printf("%8d %16.0f %16.0f%n", threads, shared, partitioned);
+		}
+	}
+
+	private static double measure(int threads, int partitions, long duration) throws Exception {
+		final IPPool pool = new IPPool(InetAddress.getByName("10.0.0.1"), InetAddress.getByName("10.0.255.254"), partitions);
+		final LongAdder allocations = new LongAdder();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		Thread[] workers = new Thread[threads];
+		for(int i = 0; i < threads; i++) {
+			final String mac = String.format("BENCHMARKPOOL%03d", i);
+			workers[i] = new Thread(() -> {
+				try {
+					start.await();
+					long count = 0;
+					while(System.currentTimeMillis() < end[0]) {
+						long expiration = System.currentTimeMillis() + 60000;
+						// No MAC address for the reservation: measure the partitions, not the preferred addresses
+						InetAddress address = pool.reserveAvailableAddress("", expiration);
+						IPAddress ip = pool.lease(address, mac, expiration);
+						pool.release(ip);
+						count++;
+					}
+					allocations.add(count);
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+			});
+			workers[i].start();
+		}
+		end[0] = System.currentTimeMillis() + duration;
+		start.countDown();
+		for(Thread worker: workers)
+			worker.join();
+		return allocations.sum() * 1000.0 / duration;
+	}
+}
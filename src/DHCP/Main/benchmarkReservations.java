@@ -0,0 +1,47 @@
+package DHCP.Main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import DHCP.ReservationTable;
+
+/**
+ * Measures loading a reservations file with one million reservations and looking them up.
+ *
+ * Optional argument: number of reservations.
+ */
+public class benchmarkReservations {
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		File file = File.createTempFile("reservations", ".csv");
+		file.deleteOnExit();
+		String[] macs = new String[size];
+		try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			for(int i = 0; i < size; i++) {
+				macs[i] = String.format("RESERVED%08X", i);
+				int address = 0x0A000000 + 1 + i;
+				writer.write(macs[i] + ", 10." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF));
+				writer.newLine();
+			}
+		}
+
+		long start = System.nanoTime();
+		ReservationTable table = ReservationTable.load(file.getPath());
+		long loadTime = System.nanoTime() - start;
+		System.out.printf("Loaded %d reservations in %.1f ms (%d processors)%n", table.size(), loadTime / 1e6, Runtime.getRuntime().availableProcessors());
+
+		int found = 0;
+		start = System.nanoTime();
+		for(int i = 0; i < size; i++) {
+			if(table.lookup(macs[i]) != null)
+				found++;
+		}
+		long lookupTime = System.nanoTime() - start;
+		if(table.lookup("NOTRESERVED00000") != null)
+			found = -1;
+		System.out.printf("Looked up %d reservations in %.1f ms (%.0f ns per lookup)%n", found, lookupTime / 1e6, (double) lookupTime / size);
+	}
+}
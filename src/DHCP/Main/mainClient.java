@@ -5,8 +5,9 @@ import DHCP.DHCPClient;
 public class mainClient {
 	public static void main(String[] args) throws Exception {
 		// Two different clients after each other: same IP
-		DHCPClient client = new DHCPClient("SG18SK12LD25BW01");
-		DHCPClient client2 = new DHCPClient("JH57DF98RV15FH95");
+		// The last lease of each client is persisted, so a restart requests the same IP directly
+		DHCPClient client = new DHCPClient("SG18SK12LD25BW01", "SG18SK12LD25BW01.lease");
+		DHCPClient client2 = new DHCPClient("JH57DF98RV15FH95", "JH57DF98RV15FH95.lease");
 		
 		client.getIP();
 		System.out.println("");
@@ -0,0 +1,144 @@
+package DHCP.Main;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import DHCP.DHCPClient;
+import DHCP.DHCPRelayAgent;
+import DHCP.DatagramTransport;
+import DHCP.RetransmissionPolicy;
+import DHCP.Message.Message;
+
+/**
+ * Runs a cluster of servers as separate processes on loopback (see {@link mainClusterNode}), with a
+ * relay agent forwarding every client message to all servers. Clients acquire addresses, one server
+ * is killed, the bound clients renew their leases with the remaining servers and new clients are
+ * served by them, then the server is restarted and takes back its share of the clients. After every
+ * phase the bound addresses are checked to be unique, and the number of clients served by each
+ * server is reported.
+ *
+ * Optional arguments: number of servers, number of clients per phase.
+ */
+public class mainCluster {
+
+	private static final int RELAY_CLIENT_PORT = 1604;
+
+	private static final long CLUSTER_STARTUP_TIME = 4000;
+
+	private static final long FAILURE_DETECTION_TIME = 2000;
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		PrintStream out = System.out;
+		// The clients log every message; keep them out of the report
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		Process[] processes = new Process[nodes];
+		for(int node = 0; node < nodes; node++)
+			processes[node] = startNode(node, nodes);
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		List<InetSocketAddress> servers = new ArrayList<InetSocketAddress>();
+		for(int node = 0; node < nodes; node++)
+			servers.add(new InetSocketAddress(localhost, mainClusterNode.FIRST_SERVER_PORT + node));
+		DHCPRelayAgent relay = new DHCPRelayAgent(localhost, RELAY_CLIENT_PORT, servers, DHCPRelayAgent.RELAY_PORT, "cluster",
+				DatagramTransport.FACTORY);
+		relay.start();
+		Thread.sleep(CLUSTER_STARTUP_TIME);
+
+		List<DHCPClient> bound = new ArrayList<DHCPClient>();
+		try {
+			out.println("Phase 1: " + nodes + " servers");
+			acquire(out, bound, 0, clients);
+			check(out, bound);
+
+			int victim = nodes - 1;
+			processes[victim].destroy();
+			processes[victim].waitFor();
+			Thread.sleep(FAILURE_DETECTION_TIME);
+			out.println("Phase 2: server " + victim + " killed");
+			renew(out, bound);
+			acquire(out, bound, clients, clients / 2);
+			check(out, bound);
+
+			processes[victim] = startNode(victim, nodes);
+			Thread.sleep(CLUSTER_STARTUP_TIME);
+			out.println("Phase 3: server " + victim + " restarted");
+			renew(out, bound);
+			acquire(out, bound, clients + clients / 2, clients / 2);
+			check(out, bound);
+		} finally {
+			relay.stop();
+			for(Process process: processes)
+				process.destroy();
+		}
+		System.exit(0);
+	}
+
+	private static Process startNode(int node, int nodes) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), mainClusterNode.class.getName(),
+				Integer.toString(node), Integer.toString(nodes));
+		builder.inheritIO();
+		return builder.start();
+	}
+
+	private static void acquire(PrintStream out, List<DHCPClient> bound, int first, int count) {
+		RetransmissionPolicy policy = new RetransmissionPolicy(250, 2000, 5, 8);
+		Map<String, Integer> servedBy = new TreeMap<String, Integer>();
+		int failed = 0;
+		long start = System.nanoTime();
+		for(int i = first; i < first + count; i++) {
+			DHCPClient client = new DHCPClient(String.format("CLUSTER%09d", i), null, RELAY_CLIENT_PORT);
+			client.setRetransmissionPolicy(policy);
+			try {
+				Message ack = client.acquireIP();
+				servedBy.merge(ack.getSiaddr().getHostAddress(), 1, Integer::sum);
+				bound.add(client);
+			} catch(Exception e) {
+				failed++;
+			}
+		}
+		out.printf("  %d clients acquired in %.0f ms, %d failed, served by %s%n", count - failed, (System.nanoTime() - start) / 1e6, failed, servedBy);
+	}
+
+	private static void renew(PrintStream out, List<DHCPClient> bound) {
+		int renewed = 0;
+		int refused = 0;
+		for(DHCPClient client: bound) {
+			InetAddress before = client.getCiaddr();
+			try {
+				client.renewLease(InetAddress.getLoopbackAddress());
+				if(before.equals(client.getCiaddr()))
+					renewed++;
+				else
+					refused++;
+			} catch(Exception e) {
+				refused++;
+			}
+		}
+		out.printf("  %d leases renewed with the same address, %d refused%n", renewed, refused);
+	}
+
+	private static void check(PrintStream out, List<DHCPClient> bound) {
+		Set<InetAddress> addresses = new HashSet<InetAddress>();
+		int duplicates = 0;
+		for(DHCPClient client: bound) {
+			if(client.getCiaddr() != null && !addresses.add(client.getCiaddr()))
+				duplicates++;
+		}
+		out.printf("  %d clients bound, %d distinct addresses, %d duplicates%n", bound.size(), addresses.size(), duplicates);
+	}
+}
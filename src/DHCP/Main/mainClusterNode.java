@@ -0,0 +1,67 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import DHCP.ClusterNode;
+import DHCP.DatagramTransport;
+import DHCP.ScopeConfiguration;
+
+/**
+ * Runs one server of a cluster on loopback, as its own process. Server n listens for DHCP messages
+ * on port 1610 + n and for the lease replication of the other servers on port 1650 + n, and is
+ * reachable at 127.0.0.(n + 1). All servers of the cluster serve the same scope.
+ *
+ * Arguments: identifier of the server (0 to number of servers - 1), number of servers of the cluster,
+ * optionally the lease time in seconds.
+ */
+public class mainClusterNode {
+
+	public static final int FIRST_SERVER_PORT = 1610;
+
+	public static final int FIRST_CLUSTER_PORT = 1650;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.out.println("Usage: mainClusterNode <node id> <number of nodes> [lease time]");
+			return;
+		}
+		int nodeId = Integer.parseInt(args[0]);
+		int nodes = Integer.parseInt(args[1]);
+		int leaseTime = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+		PrintStream out = System.out;
+		// The server logs every message; only keep the cluster messages
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {
+				String line = new String(b, off, len);
+				if(line.contains("Cluster") || line.contains("replication"))
+					out.write(b, off, len);
+			}
+		}));
+
+		Map<Integer, InetSocketAddress> peers = new LinkedHashMap<Integer, InetSocketAddress>();
+		for(int peer = 0; peer < nodes; peer++) {
+			if(peer != nodeId)
+				peers.put(peer, new InetSocketAddress(InetAddress.getLoopbackAddress(), FIRST_CLUSTER_PORT + peer));
+		}
+		ClusterNode node = new ClusterNode(nodeId, InetAddress.getByName("127.0.0." + (nodeId + 1)), FIRST_SERVER_PORT + nodeId, leaseTime,
+				configuration(), DatagramTransport.FACTORY, FIRST_CLUSTER_PORT + nodeId, peers);
+		node.start();
+		out.println("Cluster node " + nodeId + " of " + nodes + " started.");
+	}
+
+	static ScopeConfiguration configuration() throws Exception {
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "cluster");
+		scopes.setProperty("default.scope", "cluster");
+		scopes.setProperty("scope.cluster.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.cluster.range", "10.0.0.10-10.0.15.254");
+		return ScopeConfiguration.fromProperties(scopes);
+	}
+}
@@ -0,0 +1,120 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Properties;
+
+import DHCP.DHCPClient;
+import DHCP.DHCPServer;
+import DHCP.LeaseReplicator;
+import DHCP.LoopbackNetwork;
+import DHCP.RetransmissionPolicy;
+import DHCP.ScopeConfiguration;
+import DHCP.StandbyServer;
+import DHCP.SystemClock;
+import DHCP.Message.Message;
+
+/**
+ * Runs a hot standby failover pair in one JVM: a primary server replicates its leases over a TCP
+ * connection on loopback to a secondary server, both serving clients on an in-memory loopback network.
+ * Clients acquire and release addresses with the primary, the primary is stopped, and after the
+ * secondary took over the bound clients renew their leases with the secondary.
+ *
+ * Optional arguments: number of clients, replication port.
+ */
+public class mainFailover {
+
+	private static final int SERVER_PORT = 1602;
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int replicationPort = args.length > 1 ? Integer.parseInt(args[1]) : LeaseReplicator.DEFAULT_PORT;
+		PrintStream out = System.out;
+		// The servers and clients log every message; only keep the failover messages
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {
+				String line = new String(b, off, len);
+				if(line.contains("replication") || line.contains("taking over"))
+					out.write(b, off, len);
+			}
+		}));
+
+		InetAddress serverIP = InetAddress.getByName("127.0.0.1");
+		LoopbackNetwork network = new LoopbackNetwork();
+		StandbyServer secondary = new StandbyServer(serverIP, 60, configuration(), network, SystemClock.INSTANCE, replicationPort);
+		secondary.start();
+		ScopeConfiguration primaryConfiguration = configuration();
+		DHCPServer primary = new DHCPServer(serverIP, 60, primaryConfiguration, network);
+		LeaseReplicator replicator = new LeaseReplicator(primaryConfiguration, InetAddress.getLoopbackAddress(), replicationPort);
+		replicator.start();
+		Thread.sleep(200);
+		while(!replicator.isConnected())
+			Thread.sleep(10);
+
+		RetransmissionPolicy policy = new RetransmissionPolicy(250, 2000, 5, 8);
+		DHCPClient[] population = new DHCPClient[clients];
+		long start = System.nanoTime();
+		for(int i = 0; i < clients; i++) {
+			population[i] = new DHCPClient(String.format("FAILOVER%08d", i), null, SERVER_PORT, network);
+			population[i].setRetransmissionPolicy(policy);
+			population[i].acquireIP();
+		}
+		int released = 0;
+		for(int i = 0; i < clients; i += 10) {
+			population[i].releaseIP();
+			population[i] = null;
+			released++;
+		}
+		out.printf("%d clients bound with the primary, %d released, in %.0f ms%n", clients - released, released, (System.nanoTime() - start) / 1e6);
+		// Releases are not answered: wait for the primary to handle the last ones
+		for(int wait = 0; wait < 1000 && primary.getPool().getNumberOfLeasedAddresses() > clients - released; wait++)
+			Thread.sleep(10);
+		while(replicator.getAcknowledgedSequence() < replicator.getSequence())
+			Thread.sleep(1);
+		out.printf("replicated %d changes in %d batches, sequence %d acknowledged%n", replicator.getSentChanges(),
+				replicator.getSentBatches(), replicator.getAcknowledgedSequence());
+		out.printf("leases on primary %d, on secondary %d%n", primary.getPool().getNumberOfLeasedAddresses(),
+				secondary.getScopeConfiguration().getScopes().get(0).getPool().getNumberOfLeasedAddresses());
+
+		long failure = System.nanoTime();
+		primary.stop();
+		replicator.stop();
+		while(!secondary.hasTakenOver())
+			Thread.sleep(10);
+		out.printf("secondary took over %.0f ms after the primary stopped%n", (System.nanoTime() - failure) / 1e6);
+		Thread.sleep(200);
+
+		int renewed = 0;
+		int refused = 0;
+		for(DHCPClient client: population) {
+			if(client == null)
+				continue;
+			InetAddress before = client.getCiaddr();
+			try {
+				client.renewLease(serverIP);
+				if(before.equals(client.getCiaddr()))
+					renewed++;
+			} catch(Exception e) {
+				refused++;
+			}
+		}
+		DHCPClient newcomer = new DHCPClient("FAILOVERNEWCOMER", null, SERVER_PORT, network);
+		newcomer.setRetransmissionPolicy(policy);
+		Message ack = newcomer.acquireIP();
+		out.printf("after takeover: %d leases renewed with the same address, %d refused; new client got %s%n", renewed, refused,
+				ack.getYiaddr().getHostAddress());
+		secondary.stop();
+		System.exit(0);
+	}
+
+	private static ScopeConfiguration configuration() throws Exception {
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "failover");
+		scopes.setProperty("default.scope", "failover");
+		scopes.setProperty("scope.failover.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.failover.range", "10.0.0.10-10.0.15.254");
+		return ScopeConfiguration.fromProperties(scopes);
+	}
+}
@@ -0,0 +1,91 @@
+package DHCP.Main;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import DHCP.DHCPClient;
+import DHCP.DHCPRelayAgent;
+import DHCP.DHCPServer;
+import DHCP.DatagramTransport;
+import DHCP.Utilities;
+import DHCP.Message.DHCPRequestMessage;
+import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+
+/**
+ * Runs a server, a relay agent and two clients over loopback. The clients send their messages
+ * to the relay agent, which forwards them to the server with its own address as gateway IP address
+ * and a Relay Agent Information option; the server unicasts its replies to the relay agent.
+ * Finally a client requests an address outside the pool and renews a lease it does not hold,
+ * both of which have to be refused with a DHCPNAK delivered through the relay agent.
+ */
+public class mainRelay {
+
+	private static final int SERVER_PORT = 1602;
+
+	private static final int RELAY_CLIENT_PORT = 1604;
+
+	public static void main(String[] args) throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		new DHCPServer(localhost, 10);
+		DHCPRelayAgent relay = new DHCPRelayAgent(localhost, RELAY_CLIENT_PORT, localhost, SERVER_PORT,
+				DHCPRelayAgent.RELAY_PORT, "relay-loopback", DatagramTransport.FACTORY);
+		relay.start();
+		Thread.sleep(500);
+
+		DHCPClient client = new DHCPClient("SG18SK12LD25BW01", null, RELAY_CLIENT_PORT);
+		DHCPClient client2 = new DHCPClient("JH57DF98RV15FH95", null, RELAY_CLIENT_PORT);
+		client.getIP();
+		client2.getIP();
+		client.releaseIP();
+		client2.releaseIP();
+		Thread.sleep(200);
+
+		DatagramSocket socket = new DatagramSocket();
+		socket.setSoTimeout(2000);
+		int naks = 0;
+		if(isNak(exchange(socket, localhost, new DHCPRequestMessage(Utilities.generateXid(), "NK18SK12LD25BW02",
+				InetAddress.getByName("10.99.0.1"), null))))
+			naks++;
+		if(isNak(exchange(socket, localhost, new DHCPRequestMessage(Utilities.generateXid(), "NK18SK12LD25BW02",
+				InetAddress.getByName("192.168.100.150")))))
+			naks++;
+		socket.close();
+
+		relay.stop();
+		System.out.println("Forwarded to server: " + relay.getForwardedToServer()
+				+ ", to clients: " + relay.getForwardedToClients()
+				+ ", dropped: " + relay.getDropped()
+				+ ", batches: " + relay.getBatches()
+				+ ", extra buffers allocated: " + relay.getBufferPool().getAllocations());
+		System.out.println("DHCPNAKs delivered through the relay agent: " + naks + " / 2");
+		System.exit(0);
+	}
+
+	/**
+	 * Sends the message to the relay agent and returns the reply with the same transaction ID, null on a timeout.
+	 */
+	private static Message exchange(DatagramSocket socket, InetAddress relay, Message message) throws Exception {
+		byte[] data = message.convertToByteArray();
+		byte[] buffer = new byte[Message.MAXIMUM_MESSAGE_SIZE];
+		socket.send(new DatagramPacket(data, data.length, relay, RELAY_CLIENT_PORT));
+		try {
+			while(true) {
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				Message reply = Message.convertToMessage(Arrays.copyOf(buffer, packet.getLength()));
+				if(reply.getXid() == message.getXid())
+					return reply;
+			}
+		} catch(SocketTimeoutException e) {
+			return null;
+		}
+	}
+
+	private static boolean isNak(Message reply) {
+		return reply != null && reply.getMessageType() == MessageType.NAK;
+	}
+}
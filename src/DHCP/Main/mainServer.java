@@ -3,9 +3,17 @@ package DHCP.Main;
 import java.net.InetAddress;
 
 import DHCP.DHCPServer;
+import DHCP.ScopeConfiguration;
 
 public class mainServer {
 	public static void main(String[] args) throws Exception {
-		new DHCPServer(InetAddress.getByName("localhost"), 10);
+		// Optional argument: path of a scope configuration file (see scopes.properties)
+		DHCPServer server;
+		if(args.length > 0)
+			server = new DHCPServer(InetAddress.getByName("localhost"), 10, ScopeConfiguration.load(args[0]));
+		else
+			server = new DHCPServer(InetAddress.getByName("localhost"), 10);
+		// Write the last lease changes to the lease journal, if configured, when the server is shut down
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
 	}
 }
@@ -0,0 +1,98 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import DHCP.DHCPClient;
+import DHCP.DHCPServer;
+import DHCP.LoopbackNetwork;
+import DHCP.RetransmissionPolicy;
+import DHCP.ScopeConfiguration;
+
+/**
+ * Runs a server and many clients in a single JVM over an in-memory loopback network, optionally
+ * losing, reordering and delaying datagrams. Every transaction is a full DISCOVER, OFFER, REQUEST,
+ * ACK handshake of a new client followed by a RELEASE. Reports the throughput and the distribution
+ * of the number of retries per acquisition.
+ *
+ * Optional arguments: number of transactions, number of client threads, loss probability,
+ * reorder probability, one-way delay (in microseconds).
+ */
+public class simulateLoopback {
+
+	private static final int SERVER_PORT = 1602;
+
+	private static final int MAXIMUM_RETRIES = 8;
+
+	public static void main(String[] args) throws Exception {
+		long transactions = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		double loss = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+		double reorder = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+		long delay = args.length > 4 ? Long.parseLong(args[4]) : 0;
+		PrintStream out = System.out;
+		// The server and clients log every message; keep the log out of the simulation
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		LoopbackNetwork network = new LoopbackNetwork(loss, reorder, delay);
+		// Lost releases keep their address until the lease expires; the server lists all leases on every ACK,
+		// so the pool is large enough to absorb the losses but not larger
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "simulation");
+		scopes.setProperty("default.scope", "simulation");
+		scopes.setProperty("scope.simulation.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.simulation.range", "10.0.0.10-10.0.15.254");
+		DHCPServer server = new DHCPServer(InetAddress.getByName("127.0.0.1"), 60, ScopeConfiguration.fromProperties(scopes), network);
+		Thread.sleep(200);
+
+		// Short retransmission delays: the loopback network answers within microseconds
+		RetransmissionPolicy policy = new RetransmissionPolicy(20, 320, 5, MAXIMUM_RETRIES);
+		AtomicLong remaining = new AtomicLong(transactions);
+		AtomicLongArray retries = new AtomicLongArray(MAXIMUM_RETRIES + 1);
+		LongAdder failed = new LongAdder();
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for(int i = 0; i < threads; i++) {
+			workers[i] = new Thread(() -> {
+				while(remaining.getAndDecrement() > 0) {
+					String mac = String.format("%016X", ThreadLocalRandom.current().nextLong());
+					DHCPClient client = new DHCPClient(mac, null, SERVER_PORT, network);
+					client.setRetransmissionPolicy(policy);
+					try {
+						client.acquireIP();
+						retries.incrementAndGet(client.getLastAcquisitionRetries());
+						client.releaseIP();
+					} catch(Exception e) {
+						failed.increment();
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for(Thread worker: workers)
+			worker.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		out.printf("%d transactions, %d threads, loss %.3f, reorder %.3f, delay %d us%n", transactions, threads, loss, reorder, delay);
+		out.printf("  %.1f s, %.0f transactions per second, %.2f million per minute%n", seconds,
+				transactions / seconds, transactions / seconds * 60 / 1e6);
+		out.printf("  datagrams sent %d, lost %d, reordered %d%n", network.getSent(), network.getLost(), network.getReordered());
+		out.println("  acquisitions failed after " + MAXIMUM_RETRIES + " retries: " + failed.sum());
+		out.println("  leases held at the end (lost releases): " + server.getPool().getNumberOfLeasedAddresses());
+		out.println("  retries per acquisition:");
+		for(int r = 0; r <= MAXIMUM_RETRIES; r++) {
+			if(retries.get(r) > 0)
+				out.printf("    %d: %d%n", r, retries.get(r));
+		}
+		System.exit(0);
+	}
+}
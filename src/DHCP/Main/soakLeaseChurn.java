@@ -0,0 +1,125 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import DHCP.Clock;
+import DHCP.DHCPClient;
+import DHCP.DHCPServer;
+import DHCP.IPPool;
+import DHCP.LoopbackNetwork;
+import DHCP.RetransmissionPolicy;
+import DHCP.ScopeConfiguration;
+import DHCP.VirtualClock;
+import DHCP.Message.Message;
+
+/**
+ * Replays days of lease churn in seconds: a server and a population of clients share a virtual clock
+ * and an in-memory loopback network, and the clock is advanced in large steps. In every step clients
+ * arrive and acquire an address, renew at half of their lease time, release their address or leave
+ * without releasing it, so their lease expires. Per simulated day the wall-clock time, the number of
+ * transactions, the number of leases held and the duration of the expiry sweep are reported.
+ *
+ * Optional arguments: number of days, number of clients, step (in minutes), lease time (in seconds).
+ */
+public class soakLeaseChurn {
+
+	private static final int SERVER_PORT = 1602;
+
+	private static final double ARRIVAL_PROBABILITY = 0.2;
+
+	private static final double RELEASE_PROBABILITY = 0.01;
+
+	private static final double LEAVE_PROBABILITY = 0.01;
+
+	public static void main(String[] args) throws Exception {
+		int days = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		long step = (args.length > 2 ? Long.parseLong(args[2]) : 15) * 60000;
+		int leaseTime = args.length > 3 ? Integer.parseInt(args[3]) : 14400;
+		PrintStream out = System.out;
+		// The server and clients log every message; keep the log out of the soak test
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+		// The clients back off in real time: the clock only moves when this thread advances it
+		Clock clientClock = clock.sleepingInRealTime();
+		LoopbackNetwork network = new LoopbackNetwork();
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "soak");
+		scopes.setProperty("default.scope", "soak");
+		scopes.setProperty("scope.soak.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.soak.range", "10.0.0.10-10.0.15.254");
+		DHCPServer server = new DHCPServer(InetAddress.getByName("127.0.0.1"), leaseTime, ScopeConfiguration.fromProperties(scopes), network, clock);
+		IPPool pool = server.getPool();
+		Thread.sleep(200);
+
+		Random random = new Random(42);
+		RetransmissionPolicy policy = new RetransmissionPolicy(50, 400, 10, 4);
+		DHCPClient[] population = new DHCPClient[clients];
+		InetAddress[] servers = new InetAddress[clients];
+		long[] renewalTimes = new long[clients];
+		int[] generations = new int[clients];
+		long stepsPerDay = 24 * 3600000L / step;
+
+		out.printf("%d clients, lease time %d s, step %d min, %d steps per day%n", clients, leaseTime, step / 60000, stepsPerDay);
+		out.printf("%5s %10s %12s %8s %8s %14s %14s%n", "day", "wall (ms)", "transactions", "failed", "leases", "sweep p50 (us)", "sweep max (us)");
+		for(int day = 1; day <= days; day++) {
+			long wallStart = System.nanoTime();
+			long transactions = 0;
+			long failed = 0;
+			long[] sweeps = new long[(int) stepsPerDay];
+			for(int s = 0; s < stepsPerDay; s++) {
+				long now = clock.currentTimeMillis();
+				for(int i = 0; i < clients; i++) {
+					try {
+						if(population[i] == null) {
+							if(random.nextDouble() < ARRIVAL_PROBABILITY) {
+								// A new device: a client that left may still hold a lease under its old MAC address
+								String mac = String.format("SOAK%06d%06d", i, generations[i]++);
+								DHCPClient client = new DHCPClient(mac, null, SERVER_PORT, network, clientClock);
+								client.setRetransmissionPolicy(policy);
+								transactions++;
+								Message ack = client.acquireIP();
+								population[i] = client;
+								servers[i] = ack.getSiaddr();
+								renewalTimes[i] = now + leaseTime * 500L;
+							}
+						}
+						else if(random.nextDouble() < LEAVE_PROBABILITY) {
+							population[i] = null;
+						}
+						else if(random.nextDouble() < RELEASE_PROBABILITY) {
+							transactions++;
+							population[i].releaseIP();
+							population[i] = null;
+						}
+						else if(now >= renewalTimes[i]) {
+							transactions++;
+							population[i].renewLease(servers[i]);
+							renewalTimes[i] = now + leaseTime * 500L;
+						}
+					} catch(Exception e) {
+						failed++;
+						population[i] = null;
+					}
+				}
+				clock.advance(step);
+				long sweepStart = System.nanoTime();
+				pool.checkPoolLeases();
+				sweeps[s] = (System.nanoTime() - sweepStart) / 1000;
+			}
+			Arrays.sort(sweeps);
+			out.printf("%5d %10d %12d %8d %8d %14d %14d%n", day, (System.nanoTime() - wallStart) / 1000000, transactions, failed,
+					pool.getNumberOfLeasedAddresses(), sweeps[sweeps.length / 2], sweeps[sweeps.length - 1]);
+		}
+		System.exit(0);
+	}
+}
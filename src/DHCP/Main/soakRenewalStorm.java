@@ -0,0 +1,146 @@
+package DHCP.Main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import DHCP.Clock;
+import DHCP.DHCPClient;
+import DHCP.DHCPServer;
+import DHCP.LoopbackNetwork;
+import DHCP.RetransmissionPolicy;
+import DHCP.ScopeConfiguration;
+import DHCP.Utilities;
+import DHCP.VirtualClock;
+import DHCP.Message.Message;
+
+/**
+ * Replays the renewals after a mass boot: a population of clients acquires an address at the same
+ * moment and then renews at half of the lease time it was given, for a number of renewal cycles. The
+ * server and clients share a virtual clock and an in-memory loopback network; the clock advances in
+ * steps of one second and the clients due in a step renew concurrently. The run is repeated with the
+ * lease times dispersed over the given jitter band. Per run the peak number of renewals in one second,
+ * the peak CPU time of a step and the peak depth of the admission queue of the server are reported.
+ *
+ * Optional arguments: number of clients, lease time (in seconds), jitter (in percent), number of renewal cycles.
+ */
+public class soakRenewalStorm {
+
+	private static final int SERVER_PORT = 1602;
+
+	private static final long STEP = 1000;
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int leaseTime = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+		int jitter = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int cycles = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+		PrintStream out = System.out;
+		// The server and clients log every message; keep the log out of the soak test
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+
+		out.printf("%d clients, lease time %d s, %d renewal cycles%n", clients, leaseTime, cycles);
+		out.printf("%8s %10s %16s %14s %16s %16s %8s%n", "jitter", "renewals", "peak per second", "busy seconds", "peak step cpu ms",
+				"peak queue depth", "failed");
+		run(out, clients, leaseTime, 0, cycles);
+		run(out, clients, leaseTime, jitter, cycles);
+		System.exit(0);
+	}
+
+	private static void run(PrintStream out, int clients, int leaseTime, int jitter, int cycles) throws Exception {
+		VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+		// The clients back off in real time: the clock only moves when this thread advances it
+		Clock clientClock = clock.sleepingInRealTime();
+		LoopbackNetwork network = new LoopbackNetwork();
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "storm");
+		scopes.setProperty("default.scope", "storm");
+		scopes.setProperty("scope.storm.subnet", "10.0.0.0/20");
+		scopes.setProperty("scope.storm.range", "10.0.0.10-10.0.15.254");
+		scopes.setProperty("scope.storm.lease-jitter", Integer.toString(jitter));
+		DHCPServer server = new DHCPServer(InetAddress.getByName("127.0.0.1"), leaseTime, ScopeConfiguration.fromProperties(scopes), network, clock);
+		Thread.sleep(200);
+
+		// The mass boot: every client acquires an address at the same virtual time
+		RetransmissionPolicy policy = new RetransmissionPolicy(250, 2000, 5, 8);
+		DHCPClient[] population = new DHCPClient[clients];
+		InetAddress[] servers = new InetAddress[clients];
+		long[] renewalTimes = new long[clients];
+		long[] halfLeaseTimes = new long[clients];
+		for(int i = 0; i < clients; i++) {
+			population[i] = new DHCPClient(String.format("STORM%011d", i), null, SERVER_PORT, network, clientClock);
+			population[i].setRetransmissionPolicy(policy);
+			Message ack = population[i].acquireIP();
+			servers[i] = ack.getSiaddr();
+			halfLeaseTimes[i] = Utilities.convertToInt(ack.getOptions().getOption(51).getContents()) * 500L;
+			renewalTimes[i] = clock.currentTimeMillis() + halfLeaseTimes[i];
+		}
+
+		AtomicInteger peakDepth = new AtomicInteger();
+		Thread sampler = new Thread(() -> {
+			while(!Thread.currentThread().isInterrupted()) {
+				peakDepth.accumulateAndGet(server.getAdmissionQueue().getDepth(), Math::max);
+				LockSupport.parkNanos(100000);
+			}
+		});
+		sampler.setDaemon(true);
+		sampler.start();
+
+		// Every client runs its own renewal timer: all clients due in a step renew at once
+		ExecutorService executor = Executors.newCachedThreadPool();
+		com.sun.management.OperatingSystemMXBean system = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		long end = clock.currentTimeMillis() + cycles * leaseTime * 500L;
+		int renewals = 0;
+		int peakRenewals = 0;
+		int busySeconds = 0;
+		long peakCpu = 0;
+		int failed = 0;
+		while(clock.currentTimeMillis() < end) {
+			clock.advance(STEP);
+			long now = clock.currentTimeMillis();
+			List<Callable<Boolean>> due = new ArrayList<Callable<Boolean>>();
+			for(int i = 0; i < clients; i++) {
+				if(renewalTimes[i] > now)
+					continue;
+				renewalTimes[i] += halfLeaseTimes[i];
+				DHCPClient client = population[i];
+				InetAddress serverIP = servers[i];
+				due.add(() -> {
+					client.renewLease(serverIP);
+					return true;
+				});
+			}
+			if(due.isEmpty())
+				continue;
+			long cpuStart = system.getProcessCpuTime();
+			for(Future<Boolean> renewal: executor.invokeAll(due)) {
+				try {
+					renewal.get();
+				} catch(Exception e) {
+					failed++;
+				}
+			}
+			peakCpu = Math.max(peakCpu, system.getProcessCpuTime() - cpuStart);
+			renewals += due.size();
+			peakRenewals = Math.max(peakRenewals, due.size());
+			busySeconds++;
+		}
+		executor.shutdown();
+		sampler.interrupt();
+		server.stop();
+		out.printf("%7d%% %10d %16d %14d %16.1f %16d %8d%n", jitter, renewals, peakRenewals, busySeconds, peakCpu / 1e6, peakDepth.get(), failed);
+	}
+}
@@ -32,8 +32,27 @@ public class DHCPAckMessage extends Message {
 	 * 		   options for an acknowledge message.
 	 */
 	public DHCPAckMessage(int xid, InetAddress assignedAddress, InetAddress serverIP, String macAddress, int leaseTime) throws IllegalArgumentException, UnknownHostException {
-		super(2,1,6,0, xid, 0, FLAGS1, InetAddress.getByName("0.0.0.0"), assignedAddress, serverIP, InetAddress.getByName("0.0.0.0"), macAddress, "", "",  null);
+		super(2,1,6,0, xid, 0, FLAGS1, ZERO_ADDRESS, assignedAddress, serverIP, ZERO_ADDRESS, macAddress, "", "",  null);
 		OptionsList options = new OptionsList(new Option(53, Utilities.convertToByteArray(1, 5)), new Option(51,Utilities.convertToByteArray(4, leaseTime)));
 		this.setOptions(options);
 	}
+	
+	/**
+	 * Initialize a new DHCP acknowledge message in reply to a DHCPINFORM message.
+	 * 
+	 * @param xid
+	 *        The transaction ID provided by the client
+	 * @param serverIP
+	 *        The IP of the server
+	 * @param macAddress
+	 *        The MAC address of the client
+	 *        
+	 * @effect The DHCP acknowledge message is a message with standard fields, given MAC address, 
+	 * 		   serverIP and transaction ID, no assigned address and no lease time.
+	 */
+	public DHCPAckMessage(int xid, InetAddress serverIP, String macAddress) throws IllegalArgumentException {
+		super(2,1,6,0, xid, 0, FLAGS1, ZERO_ADDRESS, ZERO_ADDRESS, serverIP, ZERO_ADDRESS, macAddress, "", "",  null);
+		OptionsList options = new OptionsList(new Option(53, Utilities.convertToByteArray(1, 5)), new Option(54, serverIP.getAddress()));
+		this.setOptions(options);
+	}
 }
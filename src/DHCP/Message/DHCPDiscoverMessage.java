@@ -23,13 +23,14 @@ public class DHCPDiscoverMessage extends Message {
 	 * 		   options for a discover message.
 	 */
 	public DHCPDiscoverMessage(String macAddress) throws IllegalArgumentException, UnknownHostException {
-		super(1,1,6,0, Utilities.generateXid(), 0, FLAGS1, InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), macAddress, "", "", null);
+		super(1,1,6,0, Utilities.generateXid(), 0, FLAGS1, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, macAddress, "", "", null);
 		Option option53 = new Option(53, Utilities.convertToByteArray(1, 1));
-		Option option50 = new Option(50, InetAddress.getByName("0.0.0.0").getAddress());
+		Option option50 = new Option(50, ZERO_ADDRESS.getAddress());
 //		Option option50 = new Option(50, InetAddress.getByName("192.168.100.105").getAddress());
-		Option option57 = new Option(57, Utilities.convertToByteArray(2, Message.MESSAGE_SIZE));
+		Option option57 = new Option(57, Utilities.convertToByteArray(2, Message.MAXIMUM_MESSAGE_SIZE));
+		Option option55 = new Option(55, PARAMETER_REQUEST_LIST);
 		Option option255 = new Option(255, new byte[0]);
-		OptionsList optionsList = new OptionsList(option53, option50, option57, option255);
+		OptionsList optionsList = new OptionsList(option53, option50, option55, option57, option255);
 		this.setOptions(optionsList);
 	}
 }
@@ -25,7 +25,7 @@ public class DHCPNakMessage extends Message {
 	 * @throws UnknownHostException
 	 */
 	public DHCPNakMessage(int xid, String macAddress) throws IllegalArgumentException, UnknownHostException {
-		super(2,1,6,0, xid, 0, FLAGS1, InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), macAddress, "", "",  null);
+		super(2,1,6,0, xid, 0, FLAGS1, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, macAddress, "", "",  null);
 		OptionsList options = new OptionsList(new Option(53, Utilities.convertToByteArray(1, 6)));
 		this.setOptions(options);
 	}
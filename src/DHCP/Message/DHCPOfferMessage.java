@@ -26,15 +26,12 @@ public class DHCPOfferMessage extends Message {
 	 * @param serverIP
 	 * 		  The IP address of the server
 	 * 
-	 * @throws Exception 
-	 *         When no IP addresses are available.
-	 * 
 	 * @effect The DHCP offer message is a message with standard fields and given MAC address, offerIP
 	 * 		   serverIP and transaction ID and standard
 	 * 		   options for an offer message.
 	 */
-	public DHCPOfferMessage(int xid, InetAddress offerIP, String macAddress, InetAddress serverIP) throws Exception {
-		super(2,1,6,0, xid, 0, FLAGS0, InetAddress.getByName("0.0.0.0"), offerIP, serverIP, InetAddress.getByName("0.0.0.0"), macAddress, "", "", null);
+	public DHCPOfferMessage(int xid, InetAddress offerIP, String macAddress, InetAddress serverIP) throws IllegalArgumentException {
+		super(2,1,6,0, xid, 0, FLAGS0, ZERO_ADDRESS, offerIP, serverIP, ZERO_ADDRESS, macAddress, "", "", null);
 		Option option53 = new Option(53, Utilities.convertToByteArray(1, 2));
 		Option option255 = new Option(255, new byte[0]);
 		OptionsList optionsList = new OptionsList(option53, option255);
@@ -18,9 +18,11 @@ public class DHCPReleaseMessage extends Message {
 	 * 
 	 * @param macAddress
 	 * 		  The MAC address of the client.
-	 * @effect The DHCP release message is a message with standard fields and no options.
+	 * @effect The DHCP release message is a message with standard fields and the DHCP message type option.
 	 */
 	public DHCPReleaseMessage(String macAddress) throws IllegalArgumentException, UnknownHostException {
-		super(1,1,6,0, Utilities.generateXid(), 0, FLAGS0, InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), macAddress, "", "",  new OptionsList());
+		super(1,1,6,0, Utilities.generateXid(), 0, FLAGS0, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, macAddress, "", "",  null);
+		OptionsList optionsList = new OptionsList(new Option(53, Utilities.convertToByteArray(1, MessageType.RELEASE.getCode())));
+		this.setOptions(optionsList);
 	}
 }
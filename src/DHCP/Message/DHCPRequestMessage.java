@@ -23,16 +23,41 @@ public class DHCPRequestMessage extends Message {
 	 * @param offeredAddress
 	 * 		  The offered address, received from the server.
 	 * @param serverAddress
-	 * 	      The IP address of the server.
+	 * 	      The IP address of the server, null for a client in the INIT-REBOOT state.
 	 * @effect The DHCP request message is a message with standard fields, given transaction ID, MAC address,
 	 * 		   offered address, server address and standard options for a request message.
+	 * 		   A message without server address carries no server identifier option.
 	 */
 	public DHCPRequestMessage(int transactionID, String macAddress, InetAddress offeredAddress, InetAddress serverAddress) throws IllegalArgumentException, UnknownHostException {
-		super(1,1,6,0, transactionID, 0, FLAGS1, InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), InetAddress.getByName("0.0.0.0"), macAddress, "", "", null);
+		super(1,1,6,0, transactionID, 0, FLAGS1, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, macAddress, "", "", null);
 		Option option53 = new Option(53, Utilities.convertToByteArray(1, 3));
 		Option option50 = new Option(50, offeredAddress.getAddress());
-		Option option54 = new Option(54, serverAddress.getAddress());
-		OptionsList optionsList = new OptionsList(option53, option50, option54);
+		Option option55 = new Option(55, PARAMETER_REQUEST_LIST);
+		OptionsList optionsList;
+		if(serverAddress == null)
+			optionsList = new OptionsList(option53, option50, option55);
+		else
+			optionsList = new OptionsList(option53, option50, new Option(54, serverAddress.getAddress()), option55);
+		this.setOptions(optionsList);
+	}
+	
+	/**
+	 * Initialize the new DHCP request message of a bound client renewing or rebinding its lease,
+	 * with given transaction ID, MAC address and client address.
+	 * 
+	 * @param transactionID
+	 * 		  The transaction ID of the messages.
+	 * @param macAddress
+	 * 		  The MAC Address of the client.
+	 * @param clientAddress
+	 * 		  The IP address currently leased to the client.
+	 * @effect The DHCP request message is a message with standard fields, given transaction ID, MAC address
+	 * 		   and client IP address, and only the message type option: no requested IP and no server identifier.
+	 */
+	public DHCPRequestMessage(int transactionID, String macAddress, InetAddress clientAddress) throws IllegalArgumentException {
+		super(1,1,6,0, transactionID, 0, FLAGS0, clientAddress, ZERO_ADDRESS, ZERO_ADDRESS, ZERO_ADDRESS, macAddress, "", "", null);
+		Option option53 = new Option(53, Utilities.convertToByteArray(1, 3));
+		OptionsList optionsList = new OptionsList(option53);
 		this.setOptions(optionsList);
 	}
 }
@@ -25,10 +25,68 @@ public class Message {
 	protected static final int FLAGS0 = 0;
 	
 	/**
-	 * Variable referencing the size of a message.
+	 * Variable referencing the size of a message every DHCP host must be able to receive.
 	 */
 	protected static final int MESSAGE_SIZE = 576;
 	
+	/**
+	 * Constant referencing the minimum size of a message, as required by BOOTP relay agents.
+	 */
+	protected static final int MINIMUM_MESSAGE_SIZE = 300;
+	
+	/**
+	 * Constant referencing the maximum size of a message this implementation can receive.
+	 */
+	public static final int MAXIMUM_MESSAGE_SIZE = 1500;
+	
+	/**
+	 * Constant referencing the options requested by the client in its Parameter Request List (option 55):
+	 * subnet mask, router, domain name server and domain name.
+	 */
+	protected static final byte[] PARAMETER_REQUEST_LIST = {1, 3, 6, 15};
+	
+	/**
+	 * Constants referencing the indices of the fields of an encoded message that are read without
+	 * converting the whole message.
+	 */
+	public static final int OP_INDEX = 0;
+	public static final int HOPS_INDEX = 3;
+	public static final int XID_INDEX = 4;
+	public static final int CIADDR_INDEX = 12;
+	public static final int YIADDR_INDEX = 16;
+	public static final int GIADDR_INDEX = 24;
+	public static final int CHADDR_INDEX = 28;
+	public static final int COOKIE_INDEX = 236;
+	
+	/**
+	 * Constant referencing the length of the client hardware address field in an encoded message.
+	 */
+	public static final int CHADDR_LENGTH = 16;
+	
+	/**
+	 * Constant referencing the index of the options field in an encoded message.
+	 */
+	public static final int OPTIONS_INDEX = 240;
+	
+	/**
+	 * Constant representing the unspecified IP address 0.0.0.0.
+	 */
+	public static final InetAddress ZERO_ADDRESS = createZeroAddress();
+	
+	/**
+	 * Creates the unspecified IP address 0.0.0.0.
+	 * 
+	 * @return The unspecified IP address.
+	 */
+	private static InetAddress createZeroAddress() {
+		try {
+			return InetAddress.getByAddress(new byte[4]);
+		} catch (UnknownHostException e) {
+			// Can not happen: the address has four bytes
+			throw new IllegalStateException(e);
+		}
+	}
+	
 	
 	/**********************************************************
 	 * Constructor
@@ -506,7 +564,7 @@ public class Message {
 	/**
 	 * Variable referencing the cookie of the message.
 	 */
-	private static final byte[] COOKIE = {0x63, (byte) 0x82, 0x53, 0x63};
+	static final byte[] COOKIE = {0x63, (byte) 0x82, 0x53, 0x63};
 
 	/**
 	 * Return the cookie of the message.
@@ -546,12 +604,49 @@ public class Message {
 	}
 
 	/**
-	 * Converts a message to bytes.
+	 * Return the type of the message, as given by the DHCP Message Type option (53).
+	 * 
+	 * @return The type of the message, MALFORMED if it can not be determined.
+	 */
+	public MessageType getMessageType() {
+		return MessageType.classify(this);
+	}
+	
+	/**
+	 * Return the maximum size of a message the sender of this message is willing to accept,
+	 * as given by the Maximum DHCP Message Size option (57).
+	 * 
+	 * @return The maximum message size of option 57, or the default message size
+	 * 		   if the option is absent or smaller than the default message size.
+	 */
+	public int getMaximumMessageSize() {
+		Option option57 = getOptions().findOption(57);
+		if(option57 == null || option57.getLengthContent() != 2)
+			return MESSAGE_SIZE;
+		return Math.max(MESSAGE_SIZE, Utilities.convertToInt(option57.getContents()));
+	}
+
+	/**
+	 * Converts a message to bytes, no longer than the default message size.
 	 * 
 	 * @return The byte array matching this message.
 	 */
 	public byte[] convertToByteArray() {
-		byte[] byteArray = new byte[MESSAGE_SIZE];
+		return convertToByteArray(MESSAGE_SIZE);
+	}
+	
+	/**
+	 * Converts a message to bytes. The byte array is exactly as long as the encoded message,
+	 * padded to the minimum BOOTP message size if it is shorter. Options that do not fit
+	 * in the given maximum size are left out.
+	 * 
+	 * @param maximumSize
+	 * 		  The maximum size of the encoded message.
+	 * @return The byte array matching this message.
+	 */
+	public byte[] convertToByteArray(int maximumSize) {
+		byte[] options = getOptions().returnBytes(maximumSize - OPTIONS_INDEX);
+		byte[] byteArray = new byte[Math.max(OPTIONS_INDEX + options.length, MINIMUM_MESSAGE_SIZE)];
 		byteArray[0] = Utilities.convertToByteArray(1, getOp())[0];
 		byteArray[1] = Utilities.convertToByteArray(1, getHtype())[0];
 		byteArray[2] = Utilities.convertToByteArray(1, getHlen())[0];
@@ -567,7 +662,7 @@ public class Message {
 		byteArray = Utilities.insertSubArrayInArrayAt(getSname().getBytes(), byteArray, 44);
 		byteArray = Utilities.insertSubArrayInArrayAt(getFile().getBytes(), byteArray, 108);
 		byteArray = Utilities.insertSubArrayInArrayAt(getCookie(), byteArray, 236);
-		byteArray = Utilities.insertSubArrayInArrayAt(getOptions().returnBytes(), byteArray, 240);
+		byteArray = Utilities.insertSubArrayInArrayAt(options, byteArray, OPTIONS_INDEX);
 
 		return byteArray;
 	}
@@ -578,8 +673,12 @@ public class Message {
 	 * @param array
 	 * 		  The byte array to convert to a message.
 	 * @return The converted byte array into a message.
+	 * @throws IllegalArgumentException
+	 * 		   The byte array is too short to contain a DHCP message.
 	 */
 	public static Message convertToMessage(byte[] array) throws UnknownHostException, UnsupportedEncodingException, IllegalArgumentException {
+		if(array.length < OPTIONS_INDEX)
+			throw new IllegalArgumentException("A DHCP message has at least " + OPTIONS_INDEX + " bytes.");
 		int op = (int) array[0];
 		int htype = (int) array[1];
 		int hlen = (int) array[2];
@@ -594,7 +693,7 @@ public class Message {
 		String chaddr = new String(Utilities.trimZeros(Utilities.getPartArray(28, 43, array)), "UTF-8");
 		String sname = new String(Utilities.trimZeros(Utilities.getPartArray(44, 107, array)), "UTF-8");
 		String file = new String(Utilities.trimZeros(Utilities.getPartArray(108, 235, array)), "UTF-8");
-		OptionsList options = OptionsList.returnOptionsList(Utilities.getPartArray(240, MESSAGE_SIZE-1, array));
+		OptionsList options = OptionsList.returnOptionsList(Utilities.getPartArray(OPTIONS_INDEX, array.length-1, array));
 		Message message = new Message(op, htype, hlen, hops, xid, secs, flags, ciaddr, yiaddr, siaddr, giaddr, chaddr, sname, file, options);
 		return message;
 	}
@@ -0,0 +1,141 @@
+package DHCP.Message;
+
+/**
+ * Enumeration of the DHCP message types, as carried in the DHCP Message Type option (53).
+ *
+ * Messages can be classified straight from their encoded bytes, without decoding the
+ * message and without throwing: a packet that is not a valid DHCP message is classified
+ * as MALFORMED.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ *
+ */
+public enum MessageType {
+
+	MALFORMED(0), DISCOVER(1), OFFER(2), REQUEST(3), DECLINE(4), ACK(5), NAK(6), RELEASE(7), INFORM(8);
+
+	/**
+	 * Initialize the message type with given code.
+	 *
+	 * @param code
+	 * 		  The value of option 53 for this message type.
+	 */
+	private MessageType(int code) {
+		this.code = code;
+	}
+
+	/**
+	 * Variable representing the value of option 53 for this message type.
+	 */
+	private final int code;
+
+	/**
+	 * Return the value of option 53 for this message type.
+	 *
+	 * @return The code of the message type.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * Constant representing the message types indexed by their code.
+	 */
+	private static final MessageType[] BY_CODE = new MessageType[9];
+
+	static {
+		for(MessageType type: values())
+			BY_CODE[type.getCode()] = type;
+	}
+
+	/**
+	 * Return the message type with given code.
+	 *
+	 * @param code
+	 * 		  The value of option 53.
+	 * @return The message type with the given code, MALFORMED if there is none.
+	 */
+	public static MessageType fromCode(int code) {
+		if(code < 1 || code >= BY_CODE.length)
+			return MALFORMED;
+		return BY_CODE[code];
+	}
+
+	/**
+	 * Classifies an encoded message.
+	 *
+	 * A message without option 53 sent by a client (opcode 1) with your IP address 0.0.0.0 is
+	 * classified as RELEASE, for compatibility with clients sending DHCPRELEASE without options.
+	 *
+	 * @param data
+	 * 		  The encoded message.
+	 * @return The type of the message, MALFORMED if the bytes do not form a valid DHCP message
+	 * 		   or the message type can not be determined.
+	 */
+	public static MessageType classify(byte[] data) {
+		if(data.length < Message.OPTIONS_INDEX)
+			return MALFORMED;
+		byte[] cookie = Message.COOKIE;
+		for(int i = 0; i < cookie.length; i++) {
+			if(data[Message.COOKIE_INDEX + i] != cookie[i])
+				return MALFORMED;
+		}
+		int index = Message.OPTIONS_INDEX;
+		while(index < data.length) {
+			int optionCode = data[index] & 0xFF;
+			if(optionCode == Option.PAD) {
+				index++;
+				continue;
+			}
+			if(optionCode == Option.END)
+				break;
+			if(index + 1 >= data.length)
+				return MALFORMED;
+			int length = data[index + 1] & 0xFF;
+			if(index + 2 + length > data.length)
+				return MALFORMED;
+			if(optionCode == 53)
+				return length == 1 ? fromCode(data[index + 2] & 0xFF) : MALFORMED;
+			index = index + 2 + length;
+		}
+		if(data[Message.OP_INDEX] == 1 && isZero(data, Message.YIADDR_INDEX, 4))
+			return RELEASE;
+		return MALFORMED;
+	}
+
+	/**
+	 * Classifies a decoded message, using the same rules as for encoded messages.
+	 *
+	 * @param message
+	 * 		  The message to classify.
+	 * @return The type of the message, MALFORMED if the message type can not be determined.
+	 */
+	public static MessageType classify(Message message) {
+		Option option53 = message.getOptions().findOption(53);
+		if(option53 != null)
+			return option53.getLengthContent() == 1 ? fromCode(option53.getContents()[0] & 0xFF) : MALFORMED;
+		if(message.getOp() == 1 && Message.ZERO_ADDRESS.equals(message.getYiaddr()))
+			return RELEASE;
+		return MALFORMED;
+	}
+
+	/**
+	 * Checks whether the given number of bytes starting at the given index are all zero.
+	 *
+	 * @param data
+	 * 		  The array to check.
+	 * @param index
+	 * 		  The index of the first byte to check.
+	 * @param length
+	 * 		  The number of bytes to check.
+	 * @return True if all bytes are zero.
+	 */
+	private static boolean isZero(byte[] data, int index, int length) {
+		for(int i = index; i < index + length; i++) {
+			if(data[i] != 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -11,6 +11,16 @@ import DHCP.Utilities;
  */
 public class Option {
 	
+	/**
+	 * Constant representing the code of the pad option.
+	 */
+	public static final int PAD = 0;
+	
+	/**
+	 * Constant representing the code of the end option, marking the end of the options field.
+	 */
+	public static final int END = 255;
+	
 	/**
 	 * Variable representing the option code.
 	 */
@@ -81,6 +91,8 @@ public class Option {
 	 * @return The byte representation of an option as used in a DHCP message.
 	 */
 	public byte[] returnBytes(){
+		if(isFixedLength())
+			return new byte[] {(byte) getOptionCode()};
 		byte[] result = new byte[2+getLengthContent()];
 		result[0] = Utilities.convertToByteArray(1, getOptionCode())[0];
 		result[1] = Utilities.convertToByteArray(1, getLengthContent())[0];
@@ -97,7 +109,7 @@ public class Option {
 	 * @return The option that starts at index.
 	 */
 	public static Option returnOptionAtIndex(byte[] array, int index){
-		Option result = new Option(array[index], Utilities.getPartArray(index + 2, index + 1 + array[index + 1], array));
+		Option result = new Option(array[index] & 0xFF, Utilities.getPartArray(index + 2, index + 1 + (array[index + 1] & 0xFF), array));
 		return result;
 	}
 	
@@ -110,6 +122,25 @@ public class Option {
 		return getContents().length;
 	}
 	
+	/**
+	 * Return the number of bytes of the option as used in a DHCP message.
+	 * 
+	 * @return The length of the encoded option: one byte for the pad and end options,
+	 *         the code, length and contents for all other options.
+	 */
+	public int getEncodedLength() {
+		return isFixedLength() ? 1 : 2 + getLengthContent();
+	}
+	
+	/**
+	 * Checks whether the option is a fixed length option (pad or end), encoded as its code only.
+	 * 
+	 * @return True if the option code is 0 (pad) or 255 (end).
+	 */
+	public boolean isFixedLength() {
+		return getOptionCode() == PAD || getOptionCode() == END;
+	}
+	
 	
 
 }
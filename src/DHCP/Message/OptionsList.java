@@ -34,12 +34,38 @@ public class OptionsList {
 	 * @return The byte representation of the options as used in a DHCP message.
 	 */
 	public byte[] returnBytes(){
-		byte[] result = new byte[Message.MESSAGE_SIZE-240];
-		int i = 0;
-		for(Option option: getOptions()){
-			Utilities.insertSubArrayInArrayAt(option.returnBytes(), result, i);
-			i = i + 2 + option.getLengthContent();
+		return returnBytes(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Returns the byte representation of the options as used in a DHCP message, terminated by 
+	 * the end option and no longer than the given maximum length. Options that do not fit are left out.
+	 * 
+	 * @param maximumLength
+	 * 		  The maximum number of bytes available for the options field.
+	 * @return The byte representation of the options, exactly as long as the encoded options.
+	 */
+	public byte[] returnBytes(int maximumLength){
+		int length = 0;
+		boolean[] included = new boolean[getNumberOfOptions()];
+		for(int i = 0; i<getNumberOfOptions(); i++){
+			Option option = getOptions()[i];
+			if(option.getOptionCode() == Option.END)
+				break;
+			if(length + option.getEncodedLength() < maximumLength){
+				included[i] = true;
+				length = length + option.getEncodedLength();
+			}
 		}
+		byte[] result = new byte[length + 1];
+		int index = 0;
+		for(int i = 0; i<getNumberOfOptions(); i++){
+			if(included[i]){
+				Utilities.insertSubArrayInArrayAt(getOptions()[i].returnBytes(), result, index);
+				index = index + getOptions()[i].getEncodedLength();
+			}
+		}
+		result[index] = (byte) Option.END;
 		return result;
 	}
 	
@@ -54,8 +80,10 @@ public class OptionsList {
 		OptionsList result = new OptionsList();
 		int index = 0;
 		while(index < bytes.length){
-			if(bytes[index]==0) 
+			if(bytes[index]==Option.PAD) 
 				index++;
+			else if((bytes[index] & 0xFF)==Option.END)
+				break;
 			else {
 				Option option = Option.returnOptionAtIndex(bytes, index);
 				result.addOption(option);
@@ -97,6 +125,21 @@ public class OptionsList {
 		throw new IllegalArgumentException("This option is not present in the list.");
 	}
 	
+	/**
+	 * Find an option with given option code in the options list.
+	 * 
+	 * @param optionCode
+	 * 		  The option code of the searched option.
+	 * @return The searched option, null if the option is not available in the list.
+	 */
+	public Option findOption(int optionCode) {
+		for(Option option : getOptions()) {
+			if(option.getOptionCode() == optionCode)
+				return option;
+		}
+		return null;
+	}
+	
 	/**
 	 * Return the options of the options list.
 	 * 
@@ -0,0 +1,238 @@
+package DHCP.Message;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * Class representing a pre-encoded server reply (DHCPOFFER, DHCPACK or DHCPNAK).
+ *
+ * The fixed part of the reply, up to the end of its fixed options, is serialized once when the
+ * template is created. Building a reply for a request copies the fixed part and a pre-encoded 
+ * block of requested options into a new array, and patches the per-request fields (transaction ID,
+ * your IP address, client hardware address and lease time). The template itself is never
+ * modified, so it can be shared between threads.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ *
+ */
+public class ReplyTemplate {
+
+	/**
+	 * Constant representing a placeholder client hardware address.
+	 */
+	private static final String PLACEHOLDER_MAC = "0000000000000000";
+
+	/**
+	 * Initialize the template with the given encoded message.
+	 *
+	 * @param prototype
+	 *        The message to use as template.
+	 * @post  The head of the template contains the encoded message up to its end option.
+	 * @post  The index of the lease time is the index of the contents of option 51 in the
+	 *        encoded message, or -1 if the message has no lease time.
+	 */
+	private ReplyTemplate(Message prototype) {
+		byte[] encoded = prototype.convertToByteArray();
+		this.head = Arrays.copyOf(encoded, findOptionsEnd(encoded));
+		this.leaseTimeIndex = findOptionContents(head, 51);
+	}
+
+	/**
+	 * Constant representing an empty block of options.
+	 */
+	private static final byte[] NO_OPTIONS = new byte[0];
+
+	/**
+	 * Variable representing the encoded reply up to the end option.
+	 */
+	private final byte[] head;
+
+	/**
+	 * Variable representing the index of the lease time in the buffer, -1 if there is none.
+	 */
+	private final int leaseTimeIndex;
+
+	/**
+	 * Returns a template for DHCPOFFER messages sent by the server with given IP.
+	 *
+	 * @param serverIP
+	 *        The IP of the server.
+	 * @return The template for DHCPOFFER messages.
+	 */
+	public static ReplyTemplate offer(InetAddress serverIP) throws IllegalArgumentException {
+		return new ReplyTemplate(new DHCPOfferMessage(0, Message.ZERO_ADDRESS, PLACEHOLDER_MAC, serverIP));
+	}
+
+	/**
+	 * Returns a template for DHCPACK messages sent by the server with given IP.
+	 *
+	 * @param serverIP
+	 *        The IP of the server.
+	 * @return The template for DHCPACK messages.
+	 */
+	public static ReplyTemplate ack(InetAddress serverIP) throws IllegalArgumentException, UnknownHostException {
+		return new ReplyTemplate(new DHCPAckMessage(0, Message.ZERO_ADDRESS, serverIP, PLACEHOLDER_MAC, 0));
+	}
+
+	/**
+	 * Returns a template for DHCPACK messages in reply to DHCPINFORM, carrying no lease time.
+	 *
+	 * @param serverIP
+	 *        The IP of the server.
+	 * @return The template for DHCPACK messages in reply to DHCPINFORM.
+	 */
+	public static ReplyTemplate informAck(InetAddress serverIP) throws IllegalArgumentException {
+		return new ReplyTemplate(new DHCPAckMessage(0, serverIP, PLACEHOLDER_MAC));
+	}
+
+	/**
+	 * Returns a template for DHCPNAK messages.
+	 *
+	 * @return The template for DHCPNAK messages.
+	 */
+	public static ReplyTemplate nak() throws IllegalArgumentException, UnknownHostException {
+		return new ReplyTemplate(new DHCPNakMessage(0, PLACEHOLDER_MAC));
+	}
+
+	/**
+	 * Builds the encoded reply without additional options.
+	 *
+	 * @param xid
+	 *        The transaction ID provided by the client.
+	 * @param yiaddr
+	 *        The address offered or assigned to the client.
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseTime
+	 *        The lease time, ignored if the reply carries no lease time.
+	 * @return The encoded reply.
+	 * @throws IllegalArgumentException
+	 *         The MAC address is not 16 bytes.
+	 */
+	public byte[] fill(int xid, InetAddress yiaddr, String macAddress, int leaseTime) throws IllegalArgumentException {
+		return fill(xid, yiaddr, macAddress, leaseTime, NO_OPTIONS, Message.MESSAGE_SIZE);
+	}
+
+	/**
+	 * Builds the encoded reply with the given block of encoded options appended to the fixed options.
+	 *
+	 * @param xid
+	 *        The transaction ID provided by the client.
+	 * @param yiaddr
+	 *        The address offered or assigned to the client.
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @param leaseTime
+	 *        The lease time, ignored if the reply carries no lease time.
+	 * @param optionBlock
+	 *        The encoded options to append, without end option.
+	 * @param maximumLength
+	 *        The maximum length of the reply the client accepts. Trailing options of the block
+	 *        that do not fit are left out.
+	 * @return The encoded reply, padded to the minimum message size.
+	 * @throws IllegalArgumentException
+	 *         The MAC address is not 16 bytes.
+	 */
+	public byte[] fill(int xid, InetAddress yiaddr, String macAddress, int leaseTime, byte[] optionBlock, int maximumLength) throws IllegalArgumentException {
+		byte[] mac = macAddress.getBytes();
+		if(mac.length != Message.CHADDR_LENGTH)
+			throw new IllegalArgumentException("MAC address should be 16 bytes.");
+		int blockLength = fittingLength(optionBlock, maximumLength - head.length - 1);
+		byte[] reply = new byte[Math.max(head.length + blockLength + 1, Message.MINIMUM_MESSAGE_SIZE)];
+		System.arraycopy(head, 0, reply, 0, head.length);
+		System.arraycopy(optionBlock, 0, reply, head.length, blockLength);
+		reply[head.length + blockLength] = (byte) Option.END;
+		writeInt(reply, Message.XID_INDEX, xid);
+		System.arraycopy(yiaddr.getAddress(), 0, reply, Message.YIADDR_INDEX, 4);
+		System.arraycopy(mac, 0, reply, Message.CHADDR_INDEX, Message.CHADDR_LENGTH);
+		if(leaseTimeIndex >= 0)
+			writeInt(reply, leaseTimeIndex, leaseTime);
+		return reply;
+	}
+
+	/**
+	 * Returns the length of the longest run of whole options at the start of the given block
+	 * that fits in the given number of bytes.
+	 *
+	 * @param optionBlock
+	 *        The encoded options.
+	 * @param available
+	 *        The number of bytes available.
+	 * @return The length of the options that fit.
+	 */
+	private static int fittingLength(byte[] optionBlock, int available) {
+		if(optionBlock.length <= available)
+			return optionBlock.length;
+		int length = 0;
+		while(length < optionBlock.length) {
+			int next = length + 2 + (optionBlock[length + 1] & 0xFF);
+			if(next > available)
+				break;
+			length = next;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes a given integer big-endian in a given array at a given index.
+	 *
+	 * @param array
+	 *        The array to write in.
+	 * @param index
+	 *        The index of the most significant byte.
+	 * @param value
+	 *        The integer to write.
+	 */
+	private static void writeInt(byte[] array, int index, int value) {
+		array[index] = (byte) (value >>> 24);
+		array[index + 1] = (byte) (value >>> 16);
+		array[index + 2] = (byte) (value >>> 8);
+		array[index + 3] = (byte) value;
+	}
+
+	/**
+	 * Returns the index of the end option in an encoded message.
+	 *
+	 * @param array
+	 *        The encoded message.
+	 * @return The index of the end option, the length of the message if it has none.
+	 */
+	private static int findOptionsEnd(byte[] array) {
+		int index = Message.OPTIONS_INDEX;
+		while(index < array.length) {
+			int code = array[index] & 0xFF;
+			if(code == Option.END)
+				return index;
+			index = code == Option.PAD ? index + 1 : index + 2 + (array[index + 1] & 0xFF);
+		}
+		return array.length;
+	}
+
+	/**
+	 * Returns the index of the contents of the option with given code in an encoded message.
+	 *
+	 * @param array
+	 *        The encoded message.
+	 * @param optionCode
+	 *        The code of the searched option.
+	 * @return The index of the first byte of the contents of the option, -1 if the option is not present.
+	 */
+	private static int findOptionContents(byte[] array, int optionCode) {
+		int index = Message.OPTIONS_INDEX;
+		while(index + 1 < array.length) {
+			int code = array[index] & 0xFF;
+			if(code == Option.PAD) {
+				index++;
+				continue;
+			}
+			if(code == Option.END)
+				break;
+			if(code == optionCode)
+				return index + 2;
+			index = index + 2 + (array[index + 1] & 0xFF);
+		}
+		return -1;
+	}
+}
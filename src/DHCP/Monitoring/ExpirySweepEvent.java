@@ -0,0 +1,62 @@
+package DHCP.Monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event representing one sweep of a pool for expired leases and offer reservations.
+ * The duration of the event is the duration of the sweep.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+@Name("DHCP.ExpirySweep")
+@Label("Expiry Sweep")
+@Category({"DHCP", "Pool"})
+@Description("A sweep of a pool for expired leases and offer reservations")
+@StackTrace(false)
+public class ExpirySweepEvent extends jdk.jfr.Event {
+
+	/**
+	 * Starts timing a sweep.
+	 *
+	 * @return The started event.
+	 */
+	public static ExpirySweepEvent start() {
+		ExpirySweepEvent event = new ExpirySweepEvent();
+		event.begin();
+		return event;
+	}
+
+	@Label("Addresses Examined")
+	private int examined;
+
+	@Label("Leases Expired")
+	private int expired;
+
+	@Label("Reservations Freed")
+	private int reservationsFreed;
+
+	/**
+	 * Ends the sweep and records it if the recording asks for it.
+	 *
+	 * @param examined
+	 *        The number of addresses examined.
+	 * @param expired
+	 *        The number of leases found expired.
+	 * @param reservationsFreed
+	 *        The number of expired offer reservations freed.
+	 */
+	public void end(int examined, int expired, int reservationsFreed) {
+		end();
+		if(shouldCommit()) {
+			this.examined = examined;
+			this.expired = expired;
+			this.reservationsFreed = reservationsFreed;
+			commit();
+		}
+	}
+}
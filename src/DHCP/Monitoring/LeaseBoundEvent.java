@@ -0,0 +1,60 @@
+package DHCP.Monitoring;
+
+import java.net.InetAddress;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * Flight recorder event representing an address leased to a client, or a lease extended by a renewal.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+@Name("DHCP.LeaseBound")
+@Label("Lease Bound")
+@Category({"DHCP", "Pool"})
+@Description("An address leased to a client or a lease renewed")
+@StackTrace(false)
+public class LeaseBoundEvent extends jdk.jfr.Event {
+
+	@Label("Address")
+	private String address;
+
+	@Label("Client Hardware Address")
+	private String chaddr;
+
+	@Label("Lease Expiration")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	private long leaseExpirationTime;
+
+	@Label("Renewal")
+	private boolean renewal;
+
+	/**
+	 * Records a bound lease if the recording asks for it.
+	 *
+	 * @param address
+	 *        The leased address.
+	 * @param chaddr
+	 *        The MAC address of the client, empty if the address is not leased to a client.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expires, on the clock of the pool.
+	 * @param renewal
+	 *        True if an existing lease is extended.
+	 */
+	public static void emit(InetAddress address, String chaddr, long leaseExpirationTime, boolean renewal) {
+		LeaseBoundEvent event = new LeaseBoundEvent();
+		if(event.shouldCommit()) {
+			event.address = address.getHostAddress();
+			event.chaddr = chaddr;
+			event.leaseExpirationTime = leaseExpirationTime;
+			event.renewal = renewal;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package DHCP.Monitoring;
+
+import java.net.InetAddress;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * Flight recorder event representing a lease found expired by the expiry sweep of a pool.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+@Name("DHCP.LeaseExpired")
+@Label("Lease Expired")
+@Category({"DHCP", "Pool"})
+@Description("A lease that expired without being renewed or released")
+@StackTrace(false)
+public class LeaseExpiredEvent extends jdk.jfr.Event {
+
+	@Label("Address")
+	private String address;
+
+	@Label("Client Hardware Address")
+	private String chaddr;
+
+	@Label("Lease Expiration")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	private long leaseExpirationTime;
+
+	/**
+	 * Records an expired lease if the recording asks for it.
+	 *
+	 * @param address
+	 *        The address of the expired lease.
+	 * @param chaddr
+	 *        The MAC address of the client.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expired, on the clock of the pool.
+	 */
+	public static void emit(InetAddress address, String chaddr, long leaseExpirationTime) {
+		LeaseExpiredEvent event = new LeaseExpiredEvent();
+		if(event.shouldCommit()) {
+			event.address = address.getHostAddress();
+			event.chaddr = chaddr;
+			event.leaseExpirationTime = leaseExpirationTime;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package DHCP.Monitoring;
+
+import java.nio.charset.StandardCharsets;
+
+import DHCP.Utilities;
+import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event representing one stage of the handling of a client message by the server.
+ * The duration of the event is the time spent in the stage.
+ *
+ * An event is started with {@link #start(String)} and committed with one of the end methods. The
+ * transaction fields are only filled in if the event is recorded, so the event costs next to nothing
+ * when no recording is running.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+@Name("DHCP.TransactionStage")
+@Label("Transaction Stage")
+@Category({"DHCP", "Server"})
+@Description("A stage of the handling of a client message by the server")
+@StackTrace(false)
+public class TransactionStageEvent extends jdk.jfr.Event {
+
+	/**
+	 * Constants representing the stages of a transaction.
+	 */
+	public static final String DECODE = "decode";
+	public static final String HANDLE = "handle";
+	public static final String POOL_SEARCH = "pool search";
+	public static final String ENCODE = "encode";
+	public static final String SEND = "send";
+
+	/**
+	 * Starts timing the given stage.
+	 *
+	 * @param stage
+	 *        The stage that starts.
+	 * @return The started event.
+	 */
+	public static TransactionStageEvent start(String stage) {
+		TransactionStageEvent event = new TransactionStageEvent();
+		event.stage = stage;
+		event.begin();
+		return event;
+	}
+
+	@Label("Stage")
+	private String stage;
+
+	@Label("Transaction ID")
+	private int xid;
+
+	@Label("Client Hardware Address")
+	private String chaddr;
+
+	@Label("Message Type")
+	private String messageType;
+
+	/**
+	 * Ends the stage for the given encoded message and records it if the recording asks for it.
+	 *
+	 * @param data
+	 *        The encoded message handled in the stage.
+	 * @param type
+	 *        The type of the message.
+	 */
+	public void end(byte[] data, MessageType type) {
+		end();
+		if(shouldCommit()) {
+			xid = Utilities.convertToInt(Utilities.getPartArray(4, 7, data));
+			chaddr = new String(Utilities.trimZeros(Utilities.getPartArray(28, 43, data)), StandardCharsets.UTF_8);
+			messageType = type.name();
+			commit();
+		}
+	}
+
+	/**
+	 * Ends the stage for the given message and records it if the recording asks for it.
+	 *
+	 * @param message
+	 *        The message handled in the stage.
+	 * @param type
+	 *        The type of the message.
+	 */
+	public void end(Message message, MessageType type) {
+		end();
+		if(shouldCommit()) {
+			xid = message.getXid();
+			chaddr = message.getChaddr();
+			messageType = type.name();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package DHCP;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class representing one partition of the free addresses of an IP pool: a contiguous slice
+ * of offsets handed out by one worker, with its own lock.
+ *
+ * Offsets that were never used are handed out in order from a cursor; offsets that became
+ * free again are kept on a stack and handed out first. The partition only holds candidates:
+ * the pool validates every candidate it takes, because an address can be leased directly
+ * without passing through the partition.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+class PoolPartition {
+
+	/**
+	 * Initialize the partition of the offsets from start (inclusive) to end (exclusive).
+	 *
+	 * @param start
+	 *        The first offset of the partition.
+	 * @param end
+	 *        The offset after the last offset of the partition.
+	 */
+	PoolPartition(int start, int end) {
+		this.start = start;
+		this.end = end;
+		this.cursor = start;
+	}
+
+	/**
+	 * Variable representing the first offset of the partition.
+	 */
+	private final int start;
+
+	/**
+	 * Variable representing the offset after the last offset of the partition.
+	 */
+	private final int end;
+
+	/**
+	 * Variable representing the first offset of the partition that was never handed out.
+	 */
+	private int cursor;
+
+	/**
+	 * Variable representing the stack of offsets that became free again.
+	 */
+	private int[] free = new int[16];
+
+	/**
+	 * Variable representing the number of offsets on the stack.
+	 */
+	private int numberOfFree = 0;
+
+	/**
+	 * Variable representing the offsets on the stack, relative to the first offset, to keep the stack free of duplicates.
+	 */
+	private final BitSet onStack = new BitSet();
+
+	/**
+	 * Return the first offset of the partition.
+	 *
+	 * @return The first offset.
+	 */
+	int getStart() {
+		return start;
+	}
+
+	/**
+	 * Return the number of candidates left in the partition.
+	 *
+	 * @return The number of offsets on the stack plus the number of offsets never handed out.
+	 */
+	synchronized int getNumberOfCandidates() {
+		return numberOfFree + (end - cursor);
+	}
+
+	/**
+	 * Removes and returns a candidate free offset.
+	 *
+	 * @return The most recently freed offset, the next offset that was never handed out if
+	 *         no offset was freed, -1 if the partition has no candidates left.
+	 */
+	synchronized int poll() {
+		if(numberOfFree > 0) {
+			int offset = free[--numberOfFree];
+			onStack.clear(offset - start);
+			return offset;
+		}
+		if(cursor < end)
+			return cursor++;
+		return -1;
+	}
+
+	/**
+	 * Returns an offset of this partition that became free again.
+	 *
+	 * @param offset
+	 *        The offset to return.
+	 */
+	synchronized void push(int offset) {
+		if(offset >= cursor || onStack.get(offset - start))
+			return;
+		if(numberOfFree == free.length)
+			free = Arrays.copyOf(free, free.length * 2);
+		free[numberOfFree++] = offset;
+		onStack.set(offset - start);
+	}
+}
@@ -0,0 +1,29 @@
+package DHCP;
+
+/**
+ * Enumeration of the ways the server dispatches received messages to be handled.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public enum ProcessingMode {
+
+	/**
+	 * Received messages wait in the admission queue, highest priority first, and one processing
+	 * thread handles them one by one.
+	 */
+	SERIAL,
+
+	/**
+	 * Received messages wait in the admission queue, highest priority first, and every message is
+	 * handled from decode to send by one thread of a pool of threads.
+	 */
+	THREAD_POOL,
+
+	/**
+	 * Received messages wait in the admission queue, highest priority first, and then pass through a
+	 * pipeline of stages on a ring buffer: decode and encode run on several threads, the pools are
+	 * only changed by one allocation thread and one thread sends the replies.
+	 */
+	PIPELINE
+}
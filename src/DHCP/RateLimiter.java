@@ -0,0 +1,283 @@
+package DHCP;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import DHCP.Message.Message;
+
+/**
+ * Class representing a per-client rate limit on received messages, applied to the encoded
+ * message before it is decoded.
+ *
+ * Every client hardware address (chaddr) has a token bucket: a message takes one token and
+ * tokens are refilled at a fixed rate up to the burst size. The buckets are kept in bounded
+ * maps in least recently used order, so the memory used stays fixed however many clients are
+ * seen. The clients are spread over a number of shards with their own map and lock, so
+ * receiving threads rarely wait for each other.
+ *
+ * A client without a bucket first takes a token from the bucket of its link, the relay agent
+ * address (giaddr) of its message or the link of the server itself. A flood of messages with
+ * spoofed hardware addresses therefore only creates new buckets at the rate of its link, so it
+ * pushes the buckets of other clients out of the maps no faster than that, and the burst every
+ * new address starts with only adds up to the rate of the link.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class RateLimiter {
+
+	/**
+	 * Constant representing the number of bits of the hash of a client selecting its shard.
+	 */
+	private static final int SHARD_BITS = 4;
+
+	/**
+	 * Constant representing the number of shards the buckets of the clients are spread over.
+	 */
+	private static final int SHARDS = 1 << SHARD_BITS;
+
+	/**
+	 * Constant representing the maximum number of links whose bucket is kept.
+	 */
+	private static final int LINK_CAPACITY = 4096;
+
+	/**
+	 * Initialize the new rate limiter.
+	 *
+	 * @param capacity
+	 *        The maximum number of clients whose bucket is kept.
+	 * @param burst
+	 *        The number of messages a client can send at once.
+	 * @param rate
+	 *        The number of messages per second a client can send in the long run.
+	 * @param linkBurst
+	 *        The number of new clients a link can bring at once.
+	 * @param linkRate
+	 *        The number of new clients per second a link can bring in the long run.
+	 * @param clock
+	 *        The clock the buckets are refilled by.
+	 * @throws IllegalArgumentException
+	 *         The capacity, a burst or a rate is not positive.
+	 */
+	public RateLimiter(int capacity, int burst, double rate, int linkBurst, double linkRate, Clock clock) throws IllegalArgumentException {
+		if(capacity <= 0 || burst <= 0 || rate <= 0 || linkBurst <= 0 || linkRate <= 0)
+			throw new IllegalArgumentException("The capacity, bursts and rates of the rate limiter have to be positive.");
+		this.clock = clock;
+		this.burst = burst;
+		this.ratePerMillisecond = rate / 1000;
+		this.linkBurst = linkBurst;
+		this.linkRatePerMillisecond = linkRate / 1000;
+		this.shards = new Shard[SHARDS];
+		for(int i = 0; i < SHARDS; i++)
+			shards[i] = new Shard(Math.max(1, capacity / SHARDS));
+		this.links = new LinkedHashMap<Integer, Bucket>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Bucket> eldest) {
+				return size() > LINK_CAPACITY;
+			}
+		};
+	}
+
+	/**
+	 * Variable representing the clock the buckets are refilled by.
+	 */
+	private final Clock clock;
+
+	/**
+	 * Variable representing the number of messages a client can send at once.
+	 */
+	private final int burst;
+
+	/**
+	 * Variable representing the number of tokens refilled per millisecond.
+	 */
+	private final double ratePerMillisecond;
+
+	/**
+	 * Variable representing the number of new clients a link can bring at once.
+	 */
+	private final int linkBurst;
+
+	/**
+	 * Variable representing the number of tokens of a link refilled per millisecond.
+	 */
+	private final double linkRatePerMillisecond;
+
+	/**
+	 * Variable representing the shards holding the token buckets of the clients.
+	 */
+	private final Shard[] shards;
+
+	/**
+	 * Variable representing the token buckets of the links in least recently used order,
+	 * keyed on the relay agent address, 0 for the link of the server.
+	 */
+	private final LinkedHashMap<Integer, Bucket> links;
+
+	/**
+	 * Return the number of clients whose bucket is kept.
+	 *
+	 * @return The number of buckets.
+	 */
+	public int size() {
+		int result = 0;
+		for(Shard shard: shards) {
+			synchronized(shard) {
+				result += shard.buckets.size();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Takes a token from the bucket of the client that sent the given encoded message.
+	 *
+	 * @param data
+	 *        The encoded client message, at least 44 bytes long.
+	 * @return True if the message is within the rate limit of the client, false if it has to be dropped.
+	 */
+	public boolean tryAcquire(byte[] data) {
+		return tryAcquire(data, clock.currentTimeMillis());
+	}
+
+	/**
+	 * Takes a token from the bucket of the client that sent the given encoded message, at the given time.
+	 * A client without a bucket only gets one if the link of the message has a token left.
+	 *
+	 * @param data
+	 *        The encoded client message, at least 44 bytes long.
+	 * @param currentTime
+	 *        The current time (in milliseconds).
+	 * @return True if the message is within the rate limit of the client, false if it has to be dropped.
+	 */
+	public boolean tryAcquire(byte[] data, long currentTime) {
+		Key key = new Key(data);
+		// The high bits select the shard, the low bits the slot in its map
+		Shard shard = shards[key.hashCode() >>> (32 - SHARD_BITS)];
+		synchronized(shard) {
+			Bucket bucket = shard.buckets.get(key);
+			if(bucket == null) {
+				if(!tryAcquireLink((int) Utilities.readLong(data, Message.GIADDR_INDEX, 4), currentTime))
+					return false;
+				bucket = new Bucket(burst, currentTime);
+				shard.buckets.put(key, bucket);
+			}
+			return bucket.tryTake(burst, ratePerMillisecond, currentTime);
+		}
+	}
+
+	/**
+	 * Takes a token from the bucket of the given link, for a client without a bucket.
+	 */
+	private boolean tryAcquireLink(int giaddr, long currentTime) {
+		synchronized(links) {
+			Bucket bucket = links.get(giaddr);
+			if(bucket == null) {
+				bucket = new Bucket(linkBurst, currentTime);
+				links.put(giaddr, bucket);
+			}
+			return bucket.tryTake(linkBurst, linkRatePerMillisecond, currentTime);
+		}
+	}
+
+	/**
+	 * Inner class representing a shard of the buckets of the clients, locked on its own.
+	 */
+	private static class Shard {
+
+		/**
+		 * Initialize an empty shard keeping at most the given number of buckets.
+		 */
+		private Shard(final int capacity) {
+			this.buckets = new LinkedHashMap<Key, Bucket>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Bucket> eldest) {
+					return size() > capacity;
+				}
+			};
+		}
+
+		/**
+		 * The token buckets of the clients of the shard in least recently used order.
+		 */
+		private final LinkedHashMap<Key, Bucket> buckets;
+	}
+
+	/**
+	 * Inner class representing a token bucket.
+	 */
+	private static class Bucket {
+
+		/**
+		 * Initialize a full bucket.
+		 */
+		private Bucket(double tokens, long lastRefill) {
+			this.tokens = tokens;
+			this.lastRefill = lastRefill;
+		}
+
+		/**
+		 * The number of tokens left.
+		 */
+		private double tokens;
+
+		/**
+		 * The time (in milliseconds) the bucket was last refilled.
+		 */
+		private long lastRefill;
+
+		/**
+		 * Refills the bucket up to the given burst and takes a token, if there is one.
+		 */
+		private boolean tryTake(int burst, double ratePerMillisecond, long currentTime) {
+			tokens = Math.min(burst, tokens + Math.max(0, currentTime - lastRefill) * ratePerMillisecond);
+			lastRefill = currentTime;
+			if(tokens < 1)
+				return false;
+			tokens--;
+			return true;
+		}
+	}
+
+	/**
+	 * Inner class representing the client hardware address of a message, read straight from the encoded message.
+	 */
+	private static class Key {
+
+		/**
+		 * Initialize the key of the given encoded client message.
+		 */
+		private Key(byte[] data) {
+			this.chaddrHigh = Utilities.readLong(data, Message.CHADDR_INDEX, 8);
+			this.chaddrLow = Utilities.readLong(data, Message.CHADDR_INDEX + 8, 8);
+		}
+
+		/**
+		 * The first eight bytes of the client hardware address.
+		 */
+		private final long chaddrHigh;
+
+		/**
+		 * The last eight bytes of the client hardware address.
+		 */
+		private final long chaddrLow;
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key))
+				return false;
+			Key key = (Key) other;
+			return chaddrHigh == key.chaddrHigh && chaddrLow == key.chaddrLow;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = (chaddrHigh * 31 + chaddrLow) * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
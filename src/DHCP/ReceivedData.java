@@ -1,7 +1,9 @@
 package DHCP;
 
+import java.net.InetAddress;
+
 /**
- * Represents data received via UDP. Contains the data and the port used by the sender.
+ * Represents data received via UDP. Contains the data, the address and the port used by the sender.
  * 
  * @author Simon Geirnaert
  *         Laurent De Laere
@@ -19,7 +21,26 @@ public class ReceivedData {
 	 * @post  The port is equal to the given port.
 	 */
 	public ReceivedData(byte[] data, int port){
+		this(data, data.length, null, port);
+	}
+	
+	/**
+	 * Creates a ReceivedData object for data received in (the start of) a given buffer.
+	 * 
+	 * @param data
+	 *        The buffer holding the data received.
+	 * @param length
+	 *        The number of bytes received.
+	 * @param address
+	 *        The address of the sender of the data.
+	 * @param port
+	 *        The port used by the sender of the data.
+	 * @post  The received data, length, address and port are equal to the given values.
+	 */
+	public ReceivedData(byte[] data, int length, InetAddress address, int port){
 		setData(data);
+		setLength(length);
+		setAddress(address);
 		setPort(port);
 	}
 
@@ -47,6 +68,54 @@ public class ReceivedData {
 		this.data = data;
 	}
 
+	/**
+	 * Variable representing the number of bytes received.
+	 */
+	private int length;
+	
+	/**
+	 * Return the number of bytes received, at the start of the data.
+	 * 
+	 * @return The length of the data received.
+	 */
+	public int getLength() {
+		return length;
+	}
+	
+	/**
+	 * Sets the number of bytes received.
+	 * 
+	 * @param length
+	 *        The length to set.
+	 */
+	void setLength(int length) {
+		this.length = length;
+	}
+	
+	/**
+	 * Variable representing the address of the sender of the data.
+	 */
+	private InetAddress address;
+	
+	/**
+	 * Return the address of the sender of the data.
+	 * 
+	 * @return The address of the sender, null if it is not known.
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+	
+	/**
+	 * Sets the address of the sender of the data.
+	 * 
+	 * @param address
+	 *        The address to set.
+	 */
+	void setAddress(InetAddress address) {
+		this.address = address;
+	}
+
 	/**
 	 * Variable representing the port used by the sender of the data.
 	 */
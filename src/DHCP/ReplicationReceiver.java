@@ -0,0 +1,278 @@
+package DHCP;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class representing the receiving end of lease replication: accepts the connections of
+ * {@link LeaseReplicator}s on a TCP port and applies the replicated lease changes to the pools of
+ * the given scopes, acknowledging the sequence number of every batch and heartbeat. Servers of a
+ * cluster introduce themselves on connection, so it is known when every one of them was last heard.
+ *
+ * Every connection is served by its own thread, so several servers can replicate to the same
+ * receiver. A snapshot either replaces all leases, for a secondary following a single primary, or is
+ * applied on top of the leases, for servers of a cluster that each replicate their own changes.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class ReplicationReceiver {
+
+	/**
+	 * Constant representing the number of missed heartbeats after which a replicating server is considered gone.
+	 */
+	public static final int MISSED_HEARTBEATS = 3;
+
+	/**
+	 * Initialize a new receiver applying replicated lease changes to the given scopes.
+	 *
+	 * @param scopeConfiguration
+	 *        The scopes the changes are applied to.
+	 * @param port
+	 *        The TCP port the replication connections are accepted on.
+	 * @param snapshotReplacesLeases
+	 *        Whether a snapshot ends all leases before it is applied.
+	 */
+	public ReplicationReceiver(ScopeConfiguration scopeConfiguration, int port, boolean snapshotReplacesLeases) {
+		this.scopeConfiguration = scopeConfiguration;
+		this.port = port;
+		this.snapshotReplacesLeases = snapshotReplacesLeases;
+	}
+
+	/**
+	 * Variable representing the scopes the changes are applied to.
+	 */
+	private final ScopeConfiguration scopeConfiguration;
+
+	/**
+	 * Variable representing the TCP port the replication connections are accepted on.
+	 */
+	private final int port;
+
+	/**
+	 * Variable registering whether a snapshot ends all leases before it is applied.
+	 */
+	private final boolean snapshotReplacesLeases;
+
+	/**
+	 * Variable representing the socket accepting the replication connections.
+	 */
+	private volatile ServerSocket listener = null;
+
+	/**
+	 * Variable representing the open replication connections.
+	 */
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Variable representing the time (System.nanoTime) a replicating server was last heard, 0 if none was ever heard.
+	 */
+	private volatile long lastHeard = 0;
+
+	/**
+	 * Variable representing the time (System.nanoTime) every server of a cluster was last heard, keyed on its identifier.
+	 */
+	private final ConcurrentHashMap<Integer, Long> lastHeardFrom = new ConcurrentHashMap<Integer, Long>();
+
+	/**
+	 * Variable representing the sequence number of the last batch or snapshot applied.
+	 */
+	private volatile long appliedSequence = 0;
+
+	/**
+	 * Variable representing the number of changes applied, snapshots included.
+	 */
+	private final AtomicLong appliedChanges = new AtomicLong();
+
+	/**
+	 * Variable registering whether the receiver is stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Return the time a replicating server was last heard.
+	 *
+	 * @return The System.nanoTime of the last frame received, 0 if none was received.
+	 */
+	public long getLastHeard() {
+		return lastHeard;
+	}
+
+	/**
+	 * Return the time the server of a cluster with the given identifier was last heard.
+	 *
+	 * @param nodeId
+	 *        The identifier of the server.
+	 * @return The System.nanoTime of the last frame received from the server, 0 if none was received.
+	 */
+	public long getLastHeard(int nodeId) {
+		return lastHeardFrom.getOrDefault(nodeId, 0L);
+	}
+
+	/**
+	 * Return the sequence number of the last batch or snapshot applied, on any connection.
+	 *
+	 * @return The applied sequence number.
+	 */
+	public long getAppliedSequence() {
+		return appliedSequence;
+	}
+
+	/**
+	 * Return the number of replicated lease changes applied.
+	 *
+	 * @return The number of applied changes.
+	 */
+	public long getAppliedChanges() {
+		return appliedChanges.get();
+	}
+
+	/**
+	 * Return the number of open replication connections.
+	 *
+	 * @return The number of connections.
+	 */
+	public int getNumberOfConnections() {
+		return connections.size();
+	}
+
+	/**
+	 * Starts accepting replication connections.
+	 *
+	 * @throws IOException
+	 *         The replication port could not be opened.
+	 */
+	public void start() throws IOException {
+		listener = new ServerSocket(port);
+		Thread acceptor = new Thread(this::accept, "replication-acceptor-" + port);
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stops accepting replication and closes all replication connections.
+	 */
+	public void stop() {
+		stopped = true;
+		try {
+			ServerSocket listener = this.listener;
+			if(listener != null)
+				listener.close();
+		} catch(IOException e) {
+			// Closing anyway
+		}
+		for(Socket connection: connections) {
+			try {
+				connection.close();
+			} catch(IOException e) {
+				// Closing anyway
+			}
+		}
+	}
+
+	/**
+	 * Runs the acceptor thread: serves every accepted connection on a thread of its own.
+	 */
+	private void accept() {
+		while(!stopped) {
+			try {
+				Socket socket = listener.accept();
+				connections.add(socket);
+				Thread receiver = new Thread(() -> receive(socket), "replication-receiver-" + socket.getPort());
+				receiver.setDaemon(true);
+				receiver.start();
+			} catch(IOException e) {
+				// Replication port closed
+			}
+		}
+	}
+
+	/**
+	 * Applies the frames received on a replication connection until it closes, or until nothing was
+	 * heard for the given number of heartbeat intervals.
+	 */
+	private void receive(Socket socket) {
+		String peer = socket.getRemoteSocketAddress().toString();
+		try(socket) {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout((int) (MISSED_HEARTBEATS * LeaseReplicator.HEARTBEAT_INTERVAL));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			// The identifier of the server of a cluster on the other end, -1 until it introduced itself
+			int nodeId = -1;
+			while(true) {
+				byte frame = in.readByte();
+				long now = System.nanoTime();
+				lastHeard = now;
+				long sequence = in.readLong();
+				if(frame == LeaseReplicator.HELLO)
+					nodeId = (int) sequence;
+				if(nodeId >= 0)
+					lastHeardFrom.put(nodeId, now);
+				if(frame == LeaseReplicator.HELLO)
+					continue;
+				if(frame == LeaseReplicator.HEARTBEAT) {
+					// Acknowledged, so the other end knows this end still keeps up
+					out.writeLong(sequence);
+					out.flush();
+					continue;
+				}
+				if(frame != LeaseReplicator.SNAPSHOT && frame != LeaseReplicator.BATCH)
+					throw new IOException("Unknown replication frame " + frame + ".");
+				if(frame == LeaseReplicator.SNAPSHOT && snapshotReplacesLeases)
+					clearLeases();
+				int count = in.readInt();
+				for(int i = 0; i < count; i++)
+					apply(LeaseReplicator.readEvent(in));
+				appliedChanges.addAndGet(count);
+				appliedSequence = sequence;
+				out.writeLong(sequence);
+				out.flush();
+			}
+		} catch(EOFException e) {
+			if(!stopped)
+				System.out.println("Lease replication from " + peer + " closed.");
+		} catch(SocketException e) {
+			// Replication port closed, or connection lost
+		} catch(IOException e) {
+			if(!stopped)
+				System.out.println("Lease replication from " + peer + " lost: " + e.getMessage());
+		} finally {
+			connections.remove(socket);
+		}
+	}
+
+	/**
+	 * Ends all leases, before a snapshot replacing them is applied.
+	 */
+	private void clearLeases() {
+		for(Scope scope: scopeConfiguration.getScopes()) {
+			IPPool pool = scope.getPool();
+			for(IPAddress ip: pool.returnLeasedAddresses())
+				pool.apply(new LeaseEvent(LeaseEventType.RELEASE, ip.getIpAddress(), ip.getMacAddress(), 0, true));
+		}
+	}
+
+	/**
+	 * Applies a replicated lease change to the pool the address belongs to.
+	 *
+	 * @param event
+	 *        The change to apply.
+	 */
+	private void apply(LeaseEvent event) {
+		for(Scope scope: scopeConfiguration.getScopes()) {
+			if(scope.getPool().apply(event))
+				return;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package DHCP;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Class representing the fixed reservations of a DHCP server: clients that always get the same IP address.
+ *
+ * The table is immutable and built for lookups. The 16-byte client hardware address is packed
+ * into two longs and hashed into one of a fixed number of shards; every shard is an open addressing
+ * hash table with linear probing, stored in flat arrays. A lookup costs one hash and, at a load
+ * factor of at most one half, a few probes in adjacent slots. The shards are built in parallel,
+ * so large tables load quickly at startup.
+ *
+ * The reservations are read from a file with one reservation per line, of the following form:
+ *
+ * <pre>
+ * # MAC address, IP address
+ * SG18SK12LD25BW01, 192.168.100.150
+ * </pre>
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class ReservationTable {
+
+	/**
+	 * Constant representing the number of bits of the hash selecting the shard.
+	 */
+	private static final int SHARD_BITS = 6;
+
+	/**
+	 * Constant representing the number of shards.
+	 */
+	private static final int NUMBER_OF_SHARDS = 1 << SHARD_BITS;
+
+	/**
+	 * Constant representing the table without reservations. It is not built in parallel: the worker
+	 * threads would wait for the initialization of this class, which waits for them.
+	 */
+	private static final ReservationTable EMPTY = new ReservationTable(new long[NUMBER_OF_SHARDS][2],
+			new long[NUMBER_OF_SHARDS][2], new int[NUMBER_OF_SHARDS][2], new int[0]);
+
+	/**
+	 * Return the table without reservations.
+	 *
+	 * @return An empty reservation table.
+	 */
+	public static ReservationTable empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Initialize the reservation table with the given shards.
+	 */
+	private ReservationTable(long[][] keysHigh, long[][] keysLow, int[][] addresses, int[] sortedAddresses) {
+		this.keysHigh = keysHigh;
+		this.keysLow = keysLow;
+		this.addresses = addresses;
+		this.sortedAddresses = sortedAddresses;
+	}
+
+	/**
+	 * Variable representing the first eight bytes of the hardware addresses, per shard and slot.
+	 */
+	private final long[][] keysHigh;
+
+	/**
+	 * Variable representing the last eight bytes of the hardware addresses, per shard and slot.
+	 */
+	private final long[][] keysLow;
+
+	/**
+	 * Variable representing the reserved IP addresses as integers, per shard and slot. Zero marks an empty slot.
+	 */
+	private final int[][] addresses;
+
+	/**
+	 * Variable representing all reserved IP addresses as integers, in ascending order of IP address
+	 * (as unsigned integers).
+	 */
+	private final int[] sortedAddresses;
+
+	/**
+	 * Return the number of reservations.
+	 *
+	 * @return The number of reservations.
+	 */
+	public int size() {
+		return sortedAddresses.length;
+	}
+
+	/**
+	 * Return all reserved IP addresses as integers.
+	 *
+	 * @return A copy of the reserved IP addresses, in ascending order.
+	 */
+	public int[] getReservedAddresses() {
+		return sortedAddresses.clone();
+	}
+
+	/**
+	 * Return the reserved IP addresses between the given IP addresses, found with a binary search
+	 * for either end of the range.
+	 *
+	 * @param firstAddress
+	 *        The first IP address of the range, as an integer.
+	 * @param lastAddress
+	 *        The last IP address of the range (inclusive), as an integer.
+	 * @return The reserved IP addresses in the range, in ascending order.
+	 */
+	public int[] getReservedAddresses(int firstAddress, int lastAddress) {
+		return Arrays.copyOfRange(sortedAddresses, position(sortedAddresses, firstAddress, false), position(sortedAddresses, lastAddress, true));
+	}
+
+	/**
+	 * Returns the position of the given IP address in the given IP addresses in ascending order: the
+	 * number of addresses below it, or, if the address is included, the number of addresses up to it.
+	 *
+	 * @param sortedAddresses
+	 *        The IP addresses as integers, in ascending order of IP address.
+	 * @param address
+	 *        The IP address to look for, as an integer.
+	 * @param inclusive
+	 *        Whether the given address itself comes before the position.
+	 * @return The position of the address, between 0 and the number of addresses.
+	 */
+	static int position(int[] sortedAddresses, int address, boolean inclusive) {
+		int low = 0;
+		int high = sortedAddresses.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			int comparison = Integer.compareUnsigned(sortedAddresses[middle], address);
+			if(comparison < 0 || (inclusive && comparison == 0))
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the IP address reserved for the client with given MAC address.
+	 *
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @return The reserved IP address, null if the client has no reservation.
+	 */
+	public InetAddress lookup(String macAddress) {
+		if(size() == 0)
+			return null;
+		byte[] chaddr = macAddress.getBytes();
+		if(chaddr.length != 16)
+			return null;
+		int address = lookup(Utilities.readLong(chaddr, 0, 8), Utilities.readLong(chaddr, 8, 8));
+		if(address == 0)
+			return null;
+		try {
+			return Utilities.convertToInetAddress(address);
+		} catch(UnknownHostException e) {
+			// Can not happen: an IPv4 address always has four bytes
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the IP address reserved for the client with given packed hardware address.
+	 *
+	 * @param high
+	 *        The first eight bytes of the hardware address.
+	 * @param low
+	 *        The last eight bytes of the hardware address.
+	 * @return The reserved IP address as an integer, zero if the client has no reservation.
+	 */
+	public int lookup(long high, long low) {
+		long hash = hash(high, low);
+		int shard = (int) (hash >>> (64 - SHARD_BITS));
+		int[] shardAddresses = addresses[shard];
+		int mask = shardAddresses.length - 1;
+		for(int slot = (int) hash & mask; shardAddresses[slot] != 0; slot = (slot + 1) & mask) {
+			if(keysHigh[shard][slot] == high && keysLow[shard][slot] == low)
+				return shardAddresses[slot];
+		}
+		return 0;
+	}
+
+	/**********************************************************
+	 * Building
+	 **********************************************************/
+
+	/**
+	 * Builds the reservation table out of the given reservations, one shard per task in parallel.
+	 *
+	 * @param high
+	 *        The first eight bytes of the hardware address of every reservation.
+	 * @param low
+	 *        The last eight bytes of the hardware address of every reservation.
+	 * @param reservedAddresses
+	 *        The reserved IP address of every reservation, as an integer.
+	 * @return The reservation table.
+	 * @throws IllegalArgumentException
+	 *         The arrays differ in length, a hardware address or IP address is reserved twice,
+	 *         or an IP address is 0.0.0.0.
+	 */
+	public static ReservationTable build(long[] high, long[] low, int[] reservedAddresses) throws IllegalArgumentException {
+		int size = reservedAddresses.length;
+		if(high.length != size || low.length != size)
+			throw new IllegalArgumentException("Every reservation needs a hardware address and an IP address.");
+		// Sorted in the order of IP addresses: with the sign bit flipped, signed order is unsigned order
+		int[] sortedAddresses = new int[size];
+		for(int i = 0; i < size; i++)
+			sortedAddresses[i] = reservedAddresses[i] ^ Integer.MIN_VALUE;
+		Arrays.parallelSort(sortedAddresses);
+		for(int i = 0; i < size; i++) {
+			sortedAddresses[i] ^= Integer.MIN_VALUE;
+			if(sortedAddresses[i] == 0)
+				throw new IllegalArgumentException("The IP address 0.0.0.0 can not be reserved.");
+			if(i > 0 && sortedAddresses[i] == sortedAddresses[i - 1])
+				throw new IllegalArgumentException("The IP address " + formatAddress(sortedAddresses[i]) + " is reserved twice.");
+		}
+
+		// Group the reservations per shard (counting sort)
+		long[] hashes = new long[size];
+		IntStream.range(0, size).parallel().forEach(i -> hashes[i] = hash(high[i], low[i]));
+		int[] shardStart = new int[NUMBER_OF_SHARDS + 1];
+		for(int i = 0; i < size; i++)
+			shardStart[(int) (hashes[i] >>> (64 - SHARD_BITS)) + 1]++;
+		for(int shard = 0; shard < NUMBER_OF_SHARDS; shard++)
+			shardStart[shard + 1] += shardStart[shard];
+		int[] next = Arrays.copyOf(shardStart, NUMBER_OF_SHARDS);
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++)
+			order[next[(int) (hashes[i] >>> (64 - SHARD_BITS))]++] = i;
+
+		// Fill every shard independently
+		long[][] keysHigh = new long[NUMBER_OF_SHARDS][];
+		long[][] keysLow = new long[NUMBER_OF_SHARDS][];
+		int[][] addresses = new int[NUMBER_OF_SHARDS][];
+		IntStream.range(0, NUMBER_OF_SHARDS).parallel().forEach(shard -> {
+			int count = shardStart[shard + 1] - shardStart[shard];
+			int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+			keysHigh[shard] = new long[capacity];
+			keysLow[shard] = new long[capacity];
+			addresses[shard] = new int[capacity];
+			int mask = capacity - 1;
+			for(int j = shardStart[shard]; j < shardStart[shard + 1]; j++) {
+				int i = order[j];
+				int slot = (int) hashes[i] & mask;
+				while(addresses[shard][slot] != 0) {
+					if(keysHigh[shard][slot] == high[i] && keysLow[shard][slot] == low[i])
+						throw new IllegalArgumentException("A hardware address is reserved twice.");
+					slot = (slot + 1) & mask;
+				}
+				keysHigh[shard][slot] = high[i];
+				keysLow[shard][slot] = low[i];
+				addresses[shard][slot] = reservedAddresses[i];
+			}
+		});
+		return new ReservationTable(keysHigh, keysLow, addresses, sortedAddresses);
+	}
+
+	/**
+	 * Loads the reservation table from the file at the given path. The lines are parsed in parallel.
+	 *
+	 * @param path
+	 *        The path of the reservations file.
+	 * @return The loaded reservation table.
+	 * @throws IOException
+	 *         The file could not be read.
+	 * @throws IllegalArgumentException
+	 *         A line is not a valid reservation, or a hardware address or IP address is reserved twice.
+	 */
+	public static ReservationTable load(String path) throws IOException, IllegalArgumentException {
+		List<String> lines = new ArrayList<String>();
+		for(String line: Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(!line.isEmpty() && !line.startsWith("#"))
+				lines.add(line);
+		}
+		int size = lines.size();
+		long[] high = new long[size];
+		long[] low = new long[size];
+		int[] reservedAddresses = new int[size];
+		IntStream.range(0, size).parallel().forEach(i -> {
+			String line = lines.get(i);
+			int separator = line.indexOf(',');
+			byte[] chaddr = separator < 0 ? new byte[0] : line.substring(0, separator).trim().getBytes();
+			if(chaddr.length != 16)
+				throw new IllegalArgumentException("Invalid reservation: " + line);
+			high[i] = Utilities.readLong(chaddr, 0, 8);
+			low[i] = Utilities.readLong(chaddr, 8, 8);
+			reservedAddresses[i] = parseAddress(line.substring(separator + 1).trim(), line);
+		});
+		return build(high, low, reservedAddresses);
+	}
+
+	/**
+	 * Parses a dotted IPv4 address without a name lookup.
+	 *
+	 * @param address
+	 *        The address to parse.
+	 * @param line
+	 *        The line the address was read from, for the error message.
+	 * @return The address as an integer.
+	 * @throws IllegalArgumentException
+	 *         The address is not a dotted IPv4 address.
+	 */
+	private static int parseAddress(String address, String line) throws IllegalArgumentException {
+		String[] parts = address.split("\\.");
+		if(parts.length != 4)
+			throw new IllegalArgumentException("Invalid reservation: " + line);
+		int result = 0;
+		for(String part: parts) {
+			int value;
+			try {
+				value = Integer.parseInt(part);
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid reservation: " + line);
+			}
+			if(value < 0 || value > 255)
+				throw new IllegalArgumentException("Invalid reservation: " + line);
+			result = (result << 8) | value;
+		}
+		return result;
+	}
+
+	/**
+	 * Formats an IPv4 address given as an integer in dotted notation.
+	 */
+	private static String formatAddress(int address) {
+		return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+	}
+
+	/**
+	 * Hashes a packed hardware address: the high bits select the shard, the low bits the slot.
+	 */
+	private static long hash(long high, long low) {
+		long hash = high * 0x9E3779B97F4A7C15L + low;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,249 @@
+package DHCP;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+
+/**
+ * Class representing a cache of the replies sent by the server, used to answer retransmitted
+ * client messages without handling them again.
+ *
+ * Replies are keyed on the client hardware address, the transaction ID and the type of the
+ * client message. Entries expire after a short time to live and the least recently used entry
+ * is evicted when the cache is full.
+ *
+ * A lookup that finds nothing marks the message as in flight until its reply is stored or the
+ * handling is abandoned, so a retransmission arriving while the original is still being handled
+ * is recognized as well and not handled a second time.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class ResponseCache {
+
+	/**
+	 * Initialize the new response cache with given capacity and time to live.
+	 *
+	 * @param capacity
+	 *        The maximum number of cached replies.
+	 * @param timeToLive
+	 *        The time (in milliseconds) a reply stays in the cache.
+	 * @param clock
+	 *        The clock the cached replies expire by.
+	 * @throws IllegalArgumentException
+	 *         The capacity or time to live is not positive.
+	 */
+	public ResponseCache(final int capacity, long timeToLive, Clock clock) throws IllegalArgumentException {
+		if(capacity <= 0 || timeToLive <= 0)
+			throw new IllegalArgumentException("The capacity and time to live of the cache have to be positive.");
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<Key, CachedReply>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedReply> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Constant returned by a lookup for a message that is still being handled.
+	 */
+	public static final byte[] IN_FLIGHT = new byte[0];
+
+	/**
+	 * Variable representing the time (in milliseconds) a reply stays in the cache.
+	 */
+	private final long timeToLive;
+
+	/**
+	 * Variable representing the clock the cached replies expire by.
+	 */
+	private final Clock clock;
+
+	/**
+	 * Variable representing the cached replies in least recently used order.
+	 */
+	private final LinkedHashMap<Key, CachedReply> entries;
+
+	/**
+	 * Variable representing the number of retransmissions answered from the cache.
+	 */
+	private long hits = 0;
+
+	/**
+	 * Variable representing the number of lookups that found no reply.
+	 */
+	private long misses = 0;
+
+	/**
+	 * Return the number of retransmissions answered from the cache.
+	 *
+	 * @return The number of cache hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Return the number of lookups that found no reply.
+	 *
+	 * @return The number of cache misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Return the number of cached replies and messages in flight, including expired entries not yet evicted.
+	 *
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the reply cached for the given encoded client message. If there is none, the message
+	 * is marked as in flight: the caller handles it and then either stores its reply or abandons it.
+	 *
+	 * @param data
+	 *        The encoded client message.
+	 * @param type
+	 *        The type of the client message.
+	 * @return The encoded reply, IN_FLIGHT if the same message is still being handled, or null if
+	 *         no reply is cached or the cached reply has expired.
+	 */
+	public synchronized byte[] lookup(byte[] data, MessageType type) {
+		Key key = new Key(data, type);
+		long currentTime = clock.currentTimeMillis();
+		CachedReply entry = entries.get(key);
+		if(entry == null || entry.expirationTime < currentTime) {
+			entries.put(key, new CachedReply(null, currentTime + timeToLive));
+			misses++;
+			return null;
+		}
+		if(entry.reply == null)
+			return IN_FLIGHT;
+		hits++;
+		return entry.reply;
+	}
+
+	/**
+	 * Caches the given reply to the given encoded client message.
+	 *
+	 * @param data
+	 *        The encoded client message.
+	 * @param type
+	 *        The type of the client message.
+	 * @param reply
+	 *        The buffer holding the encoded reply.
+	 * @param length
+	 *        The length of the encoded reply. Only this many bytes of the buffer are copied.
+	 */
+	public synchronized void store(byte[] data, MessageType type, byte[] reply, int length) {
+		entries.put(new Key(data, type), new CachedReply(Arrays.copyOf(reply, length), clock.currentTimeMillis() + timeToLive));
+	}
+
+	/**
+	 * Ends the handling of the given encoded client message without a reply, so a retransmission
+	 * of it is handled again.
+	 *
+	 * @param data
+	 *        The encoded client message.
+	 * @param type
+	 *        The type of the client message.
+	 */
+	public synchronized void abandon(byte[] data, MessageType type) {
+		Key key = new Key(data, type);
+		CachedReply entry = entries.get(key);
+		if(entry != null && entry.reply == null)
+			entries.remove(key);
+	}
+
+	/**
+	 * Inner class representing a cached reply.
+	 */
+	private static class CachedReply {
+
+		/**
+		 * Initialize the entry with given reply and expiration time.
+		 */
+		private CachedReply(byte[] reply, long expirationTime) {
+			this.reply = reply;
+			this.expirationTime = expirationTime;
+		}
+
+		/**
+		 * The encoded reply, null while the client message is being handled.
+		 */
+		private final byte[] reply;
+
+		/**
+		 * The time at which the entry expires.
+		 */
+		private final long expirationTime;
+	}
+
+	/**
+	 * Inner class representing the key of a cached reply: the client hardware address,
+	 * the transaction ID and the type of the client message, read straight from the encoded message.
+	 */
+	private static class Key {
+
+		/**
+		 * Initialize the key of the given encoded client message.
+		 *
+		 * @param data
+		 *        The encoded client message, at least 44 bytes long.
+		 * @param type
+		 *        The type of the client message.
+		 */
+		private Key(byte[] data, MessageType type) {
+			this.xid = Utilities.readLong(data, Message.XID_INDEX, 4);
+			this.chaddrHigh = Utilities.readLong(data, Message.CHADDR_INDEX, 8);
+			this.chaddrLow = Utilities.readLong(data, Message.CHADDR_INDEX + 8, 8);
+			this.type = type;
+		}
+
+		/**
+		 * The transaction ID of the client message.
+		 */
+		private final long xid;
+
+		/**
+		 * The first eight bytes of the client hardware address.
+		 */
+		private final long chaddrHigh;
+
+		/**
+		 * The last eight bytes of the client hardware address.
+		 */
+		private final long chaddrLow;
+
+		/**
+		 * The type of the client message.
+		 */
+		private final MessageType type;
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key))
+				return false;
+			Key key = (Key) other;
+			return xid == key.xid && chaddrHigh == key.chaddrHigh && chaddrLow == key.chaddrLow && type == key.type;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = xid * 31 + chaddrHigh;
+			hash = hash * 31 + chaddrLow;
+			return (int) (hash ^ (hash >>> 32)) * 31 + type.ordinal();
+		}
+	}
+}
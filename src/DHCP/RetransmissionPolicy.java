@@ -0,0 +1,118 @@
+package DHCP;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class representing the retransmission policy of a DHCP client, following the guidance of
+ * RFC 2131 (section 4.1): the delay before the first retransmission is 4 seconds, it doubles for
+ * every next retransmission up to 64 seconds, and every delay is randomized by plus or minus 1 second
+ * so that clients started together do not retransmit in lockstep.
+ *
+ * The number of retransmissions and restarts of one address acquisition is bounded by a retry budget.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class RetransmissionPolicy {
+
+	/**
+	 * Constant representing the default delay (in milliseconds) before the first retransmission.
+	 */
+	public static final long DEFAULT_INITIAL_DELAY = 4000;
+
+	/**
+	 * Constant representing the default maximum delay (in milliseconds) between retransmissions.
+	 */
+	public static final long DEFAULT_MAXIMUM_DELAY = 64000;
+
+	/**
+	 * Constant representing the default randomization (in milliseconds) of every delay.
+	 */
+	public static final long DEFAULT_JITTER = 1000;
+
+	/**
+	 * Constant representing the default number of retries allowed for one address acquisition.
+	 */
+	public static final int DEFAULT_RETRY_BUDGET = 8;
+
+	/**
+	 * Initialize the retransmission policy with the defaults of RFC 2131.
+	 */
+	public RetransmissionPolicy() {
+		this(DEFAULT_INITIAL_DELAY, DEFAULT_MAXIMUM_DELAY, DEFAULT_JITTER, DEFAULT_RETRY_BUDGET);
+	}
+
+	/**
+	 * Initialize the retransmission policy with given delays, jitter and retry budget.
+	 *
+	 * @param initialDelay
+	 *        The delay (in milliseconds) before the first retransmission.
+	 * @param maximumDelay
+	 *        The maximum delay (in milliseconds) between retransmissions.
+	 * @param jitter
+	 *        The maximum randomization (in milliseconds) added to or subtracted from every delay.
+	 * @param retryBudget
+	 *        The number of retries allowed for one address acquisition.
+	 * @throws IllegalArgumentException
+	 *         The delays are not positive, the jitter is negative or not smaller than the initial delay,
+	 *         or the retry budget is negative.
+	 */
+	public RetransmissionPolicy(long initialDelay, long maximumDelay, long jitter, int retryBudget) throws IllegalArgumentException {
+		if(initialDelay <= 0 || maximumDelay < initialDelay)
+			throw new IllegalArgumentException("The delays have to be positive and the maximum delay can not be smaller than the initial delay.");
+		if(jitter < 0 || jitter >= initialDelay)
+			throw new IllegalArgumentException("The jitter has to be positive and smaller than the initial delay.");
+		if(retryBudget < 0)
+			throw new IllegalArgumentException("The retry budget can not be negative.");
+		this.initialDelay = initialDelay;
+		this.maximumDelay = maximumDelay;
+		this.jitter = jitter;
+		this.retryBudget = retryBudget;
+	}
+
+	/**
+	 * Variable representing the delay (in milliseconds) before the first retransmission.
+	 */
+	private final long initialDelay;
+
+	/**
+	 * Variable representing the maximum delay (in milliseconds) between retransmissions.
+	 */
+	private final long maximumDelay;
+
+	/**
+	 * Variable representing the maximum randomization (in milliseconds) of every delay.
+	 */
+	private final long jitter;
+
+	/**
+	 * Variable representing the number of retries allowed for one address acquisition.
+	 */
+	private final int retryBudget;
+
+	/**
+	 * Return the number of retries allowed for one address acquisition.
+	 *
+	 * @return The retry budget.
+	 */
+	public int getRetryBudget() {
+		return retryBudget;
+	}
+
+	/**
+	 * Returns the randomized delay to wait for an answer after the given number of earlier attempts.
+	 *
+	 * @param attempt
+	 *        The number of earlier attempts, zero for the first transmission.
+	 * @return The delay (in milliseconds): the initial delay doubled for every earlier attempt,
+	 *         capped at the maximum delay, plus a random value between -jitter and +jitter.
+	 */
+	public long getDelay(int attempt) {
+		long delay = maximumDelay;
+		if(attempt < 31)
+			delay = Math.min(initialDelay << attempt, maximumDelay);
+		if(jitter == 0)
+			return delay;
+		return delay + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+	}
+}
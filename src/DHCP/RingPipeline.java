@@ -0,0 +1,328 @@
+package DHCP;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Class representing a pipeline of stages sharing one ring buffer of preallocated slots.
+ *
+ * A single producer claims a slot, fills it and publishes its sequence number. The slot then passes
+ * through the stages in the order they were added; a stage handles a slot once all workers of the
+ * previous stage have handled it. A stage with one worker is the single writer of the state it
+ * touches. A stage with several workers stripes the slots over its workers on their sequence number,
+ * so they run in parallel without coordination. Every worker handles all slots that became available
+ * since its last pass as one batch and publishes its progress once per batch. The producer waits
+ * for the last stage before it reuses a slot.
+ *
+ * Waiting threads spin briefly and then block until a sequence they wait for is published.
+ *
+ * @param <E> The type of the slots.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class RingPipeline<E> {
+
+	/**
+	 * Interface for the handling of a slot by a stage.
+	 *
+	 * @param <E> The type of the slots.
+	 */
+	public interface Stage<E> {
+
+		/**
+		 * Handle a slot.
+		 *
+		 * @param slot
+		 *        The slot to handle.
+		 * @param sequence
+		 *        The sequence number of the slot.
+		 */
+		void handle(E slot, long sequence);
+	}
+
+	/**
+	 * Constant representing the number of times a waiting thread checks the sequences before it blocks.
+	 */
+	private static final int SPIN_TRIES = 64;
+
+	/**
+	 * Initialize a new pipeline without stages on a ring buffer of the given capacity.
+	 *
+	 * @param capacity
+	 *        The number of slots, a power of two.
+	 * @param slotFactory
+	 *        The factory creating the slots.
+	 * @throws IllegalArgumentException
+	 *         The capacity is not a positive power of two.
+	 */
+	public RingPipeline(int capacity, Supplier<E> slotFactory) throws IllegalArgumentException {
+		if(capacity <= 0 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("The capacity has to be a power of two.");
+		this.slots = new Object[capacity];
+		for(int i = 0; i < capacity; i++)
+			slots[i] = slotFactory.get();
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Variable representing the slots of the ring buffer.
+	 */
+	private final Object[] slots;
+
+	/**
+	 * Variable representing the mask mapping a sequence number on its slot.
+	 */
+	private final int mask;
+
+	/**
+	 * Variable representing the sequence number of the last slot published by the producer.
+	 */
+	private final Sequence cursor = new Sequence(-1);
+
+	/**
+	 * Variable representing the sequence number of the next slot claimed by the producer.
+	 */
+	private long nextSequence = 0;
+
+	/**
+	 * Variable representing the stages, in order.
+	 */
+	private final List<StageGroup> stages = new ArrayList<StageGroup>();
+
+	/**
+	 * Variable representing the worker threads of all stages.
+	 */
+	private final List<Thread> threads = new ArrayList<Thread>();
+
+	/**
+	 * Variable representing the lock waiting threads block on.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Variable registering whether a thread is blocked, so publishing only takes the lock if needed.
+	 */
+	private volatile boolean signalNeeded = false;
+
+	/**
+	 * Variable registering whether the pipeline is running.
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * Return the number of slots of the ring buffer.
+	 *
+	 * @return The capacity of the pipeline.
+	 */
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Return the slot with the given sequence number.
+	 *
+	 * @param sequence
+	 *        The sequence number of the slot.
+	 * @return The slot.
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(long sequence) {
+		return (E) slots[(int) sequence & mask];
+	}
+
+	/**
+	 * Adds a stage after the stages added before.
+	 *
+	 * @param name
+	 *        The name of the stage, used for its worker threads.
+	 * @param workers
+	 *        The number of workers of the stage.
+	 * @param stage
+	 *        The handling of a slot by the stage.
+	 * @throws IllegalArgumentException
+	 *         The number of workers is not positive.
+	 * @throws IllegalStateException
+	 *         The pipeline is started.
+	 */
+	public void addStage(String name, int workers, Stage<E> stage) throws IllegalArgumentException, IllegalStateException {
+		if(workers <= 0)
+			throw new IllegalArgumentException("A stage needs at least one worker.");
+		if(running)
+			throw new IllegalStateException("Stages can not be added to a running pipeline.");
+		Sequence[] dependencies = stages.isEmpty() ? new Sequence[] {cursor} : stages.get(stages.size() - 1).sequences;
+		stages.add(new StageGroup(name, workers, stage, dependencies));
+	}
+
+	/**
+	 * Starts the workers of all stages.
+	 *
+	 * @throws IllegalStateException
+	 *         The pipeline has no stages or is already started.
+	 */
+	public void start() throws IllegalStateException {
+		if(stages.isEmpty() || running)
+			throw new IllegalStateException("The pipeline has no stages or is already started.");
+		running = true;
+		for(StageGroup group: stages) {
+			for(int worker = 0; worker < group.sequences.length; worker++) {
+				Thread thread = new Thread(new Worker(group, worker), "pipeline-" + group.name + "-" + worker);
+				thread.setDaemon(true);
+				threads.add(thread);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Stops the workers of all stages. Slots not yet handled by all stages are abandoned.
+	 */
+	public void stop() {
+		running = false;
+		synchronized(lock) {
+			lock.notifyAll();
+		}
+		for(Thread thread: threads)
+			thread.interrupt();
+	}
+
+	/**
+	 * Claims the next slot for the producer, waiting until the last stage has handled the slot
+	 * that used it before. Only one thread may produce.
+	 *
+	 * @return The sequence number of the claimed slot.
+	 * @throws InterruptedException
+	 *         The producer was interrupted or the pipeline stopped while waiting.
+	 */
+	public long next() throws InterruptedException {
+		long sequence = nextSequence++;
+		waitFor(sequence - slots.length, stages.get(stages.size() - 1).sequences);
+		return sequence;
+	}
+
+	/**
+	 * Publishes a claimed and filled slot to the first stage.
+	 *
+	 * @param sequence
+	 *        The sequence number of the slot.
+	 */
+	public void publish(long sequence) {
+		cursor.set(sequence);
+		signalAll();
+	}
+
+	/**
+	 * Waits until all given sequences reached the given sequence number.
+	 *
+	 * @param sequence
+	 *        The sequence number to wait for.
+	 * @param dependencies
+	 *        The sequences to wait on.
+	 * @return The lowest value of the given sequences, at least the given sequence number.
+	 * @throws InterruptedException
+	 *         The thread was interrupted or the pipeline stopped while waiting.
+	 */
+	private long waitFor(long sequence, Sequence[] dependencies) throws InterruptedException {
+		long available = Sequence.minimum(dependencies);
+		for(int tries = 0; available < sequence && tries < SPIN_TRIES; tries++) {
+			Thread.onSpinWait();
+			available = Sequence.minimum(dependencies);
+		}
+		if(available >= sequence)
+			return available;
+		synchronized(lock) {
+			while(true) {
+				// Ask for a signal before the last check, so a sequence published after the check signals
+				signalNeeded = true;
+				available = Sequence.minimum(dependencies);
+				if(available >= sequence)
+					return available;
+				if(!running)
+					throw new InterruptedException("The pipeline is stopped.");
+				lock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Wakes up all blocked threads after a sequence is published.
+	 */
+	private void signalAll() {
+		if(signalNeeded) {
+			signalNeeded = false;
+			synchronized(lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Class representing a stage with the progress of each of its workers.
+	 */
+	private final class StageGroup {
+
+		private StageGroup(String name, int workers, Stage<E> stage, Sequence[] dependencies) {
+			this.name = name;
+			this.stage = stage;
+			this.dependencies = dependencies;
+			this.sequences = new Sequence[workers];
+			for(int i = 0; i < workers; i++)
+				sequences[i] = new Sequence(-1);
+		}
+
+		private final String name;
+
+		private final Stage<E> stage;
+
+		/**
+		 * The sequences of the previous stage, or the cursor of the producer for the first stage.
+		 */
+		private final Sequence[] dependencies;
+
+		/**
+		 * The sequence number of the last slot passed by each worker.
+		 */
+		private final Sequence[] sequences;
+	}
+
+	/**
+	 * Class representing a worker of a stage, handling the slots striped to it in batches.
+	 */
+	private final class Worker implements Runnable {
+
+		private Worker(StageGroup group, int index) {
+			this.group = group;
+			this.index = index;
+		}
+
+		private final StageGroup group;
+
+		private final int index;
+
+		public void run() {
+			Sequence sequence = group.sequences[index];
+			int workers = group.sequences.length;
+			long next = sequence.get() + 1;
+			try {
+				while(running) {
+					long available = waitFor(next, group.dependencies);
+					for(long current = next; current <= available; current++) {
+						if(workers > 1 && current % workers != index)
+							continue;
+						try {
+							group.stage.handle(get(current), current);
+						} catch(RuntimeException e) {
+							System.out.println("Error in pipeline stage " + group.name + ": " + e.getMessage() + ". Resuming normal operation.");
+						}
+					}
+					sequence.set(available);
+					signalAll();
+					next = available + 1;
+				}
+			} catch(InterruptedException e) {
+				// Pipeline stopped
+			}
+		}
+	}
+}
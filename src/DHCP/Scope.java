@@ -0,0 +1,304 @@
+package DHCP;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import DHCP.Message.ReplyTemplate;
+
+/**
+ * Class representing a DHCP scope: a subnet served by the server together with the pool of IP addresses
+ * the server can issue in that subnet.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class Scope {
+
+	/**
+	 * Initialize the new scope with given name, subnet and pool.
+	 *
+	 * @param name
+	 *        The name of the scope.
+	 * @param subnet
+	 *        The network address of the subnet served by the scope.
+	 * @param prefixLength
+	 *        The prefix length of the subnet served by the scope.
+	 * @param pool
+	 *        The pool of IP addresses of the scope.
+	 * @post  The name, subnet, prefix length and pool are equal to the given values.
+	 * @post  The only option of the scope is the subnet mask of the given prefix length.
+	 * @throws IllegalArgumentException
+	 *         The prefix length is not between 0 and 32.
+	 */
+	public Scope(String name, InetAddress subnet, int prefixLength, IPPool pool) throws IllegalArgumentException {
+		if(prefixLength < 0 || prefixLength > 32)
+			throw new IllegalArgumentException("The prefix length has to be between 0 and 32.");
+		setName(name);
+		setSubnet(subnet);
+		setPrefixLength(prefixLength);
+		setPool(pool);
+		this.options = new ScopeOptions(prefixLength);
+	}
+
+	/**********************************************************
+	 * Name
+	 **********************************************************/
+
+	/**
+	 * Variable representing the name of the scope.
+	 */
+	private String name = "";
+
+	/**
+	 * Return the name of the scope.
+	 *
+	 * @return The name of the scope.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Sets the name of the scope.
+	 *
+	 * @param name
+	 *        The name to set.
+	 */
+	private void setName(String name) {
+		this.name = name;
+	}
+
+	/**********************************************************
+	 * Subnet
+	 **********************************************************/
+
+	/**
+	 * Variable representing the network address of the subnet.
+	 */
+	private InetAddress subnet = null;
+
+	/**
+	 * Return the network address of the subnet served by the scope.
+	 *
+	 * @return The network address of the subnet.
+	 */
+	public InetAddress getSubnet() {
+		return subnet;
+	}
+
+	/**
+	 * Sets the network address of the subnet.
+	 *
+	 * @param subnet
+	 *        The network address to set.
+	 */
+	private void setSubnet(InetAddress subnet) {
+		this.subnet = subnet;
+	}
+
+	/**
+	 * Variable representing the prefix length of the subnet.
+	 */
+	private int prefixLength = 0;
+
+	/**
+	 * Return the prefix length of the subnet served by the scope.
+	 *
+	 * @return The prefix length of the subnet.
+	 */
+	public int getPrefixLength() {
+		return prefixLength;
+	}
+
+	/**
+	 * Sets the prefix length of the subnet.
+	 *
+	 * @param prefixLength
+	 *        The prefix length to set.
+	 */
+	private void setPrefixLength(int prefixLength) {
+		this.prefixLength = prefixLength;
+	}
+
+	/**********************************************************
+	 * Pool of IP addresses
+	 **********************************************************/
+
+	/**
+	 * Variable representing the pool of IP addresses of the scope.
+	 */
+	private IPPool pool = null;
+
+	/**
+	 * Return the pool of IP addresses of the scope.
+	 *
+	 * @return The pool of IP addresses.
+	 */
+	public IPPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool of IP addresses of the scope.
+	 *
+	 * @param pool
+	 *        The pool to set.
+	 */
+	private void setPool(IPPool pool) {
+		this.pool = pool;
+	}
+
+	/**********************************************************
+	 * Lease time dispersion
+	 **********************************************************/
+
+	/**
+	 * Constant representing the largest band of lease time dispersion, as a percentage of the lease time.
+	 */
+	public static final int MAXIMUM_LEASE_TIME_JITTER = 50;
+
+	/**
+	 * Variable representing the band the lease times of the clients of the scope are dispersed over,
+	 * as a percentage of the lease time of the server.
+	 */
+	private int leaseTimeJitter = 0;
+
+	/**
+	 * Return the band the lease times of the clients of the scope are dispersed over.
+	 *
+	 * @return The lease time jitter, as a percentage of the lease time; 0 if lease times are not dispersed.
+	 */
+	public int getLeaseTimeJitter() {
+		return leaseTimeJitter;
+	}
+
+	/**
+	 * Sets the band the lease times of the clients of the scope are dispersed over.
+	 *
+	 * @param leaseTimeJitter
+	 *        The lease time jitter to set, as a percentage of the lease time.
+	 * @throws IllegalArgumentException
+	 *         The jitter is not between 0 and the maximum jitter.
+	 */
+	void setLeaseTimeJitter(int leaseTimeJitter) throws IllegalArgumentException {
+		if(leaseTimeJitter < 0 || leaseTimeJitter > MAXIMUM_LEASE_TIME_JITTER)
+			throw new IllegalArgumentException("The lease time jitter has to be between 0 and " + MAXIMUM_LEASE_TIME_JITTER + " percent.");
+		this.leaseTimeJitter = leaseTimeJitter;
+	}
+
+	/**
+	 * Return the lease time of the client with the given MAC address: the given lease time shortened
+	 * by a part of the jitter band that follows from a hash of the MAC address. A client thus always
+	 * gets the same lease time, while clients that were bound at the same time renew at different
+	 * times, further apart with every renewal.
+	 *
+	 * @param leaseTime
+	 *        The lease time of the server (in seconds).
+	 * @param macAddress
+	 *        The MAC address of the client.
+	 * @return The lease time of the client (in seconds), between the given lease time reduced by
+	 *         the jitter band and the given lease time.
+	 */
+	public int getLeaseTime(int leaseTime, String macAddress) {
+		int band = (int) ((long) leaseTime * leaseTimeJitter / 100);
+		if(band == 0 || macAddress.isEmpty())
+			return leaseTime;
+		return leaseTime - (int) Long.remainderUnsigned(Utilities.hashMacAddress(macAddress), band + 1);
+	}
+
+	/**********************************************************
+	 * Options
+	 **********************************************************/
+
+	/**
+	 * Variable representing the options the scope hands out to its clients.
+	 */
+	private final ScopeOptions options;
+
+	/**
+	 * Return the options the scope hands out to its clients.
+	 *
+	 * @return The options of the scope.
+	 */
+	public ScopeOptions getOptions() {
+		return options;
+	}
+
+	/**********************************************************
+	 * Reply templates
+	 **********************************************************/
+
+	/**
+	 * Variable representing the pre-encoded DHCPOFFER of the scope.
+	 */
+	private ReplyTemplate offerTemplate = null;
+
+	/**
+	 * Variable representing the pre-encoded DHCPACK of the scope.
+	 */
+	private ReplyTemplate ackTemplate = null;
+
+	/**
+	 * Variable representing the pre-encoded DHCPACK in reply to DHCPINFORM of the scope.
+	 */
+	private ReplyTemplate informAckTemplate = null;
+
+	/**
+	 * Variable representing the pre-encoded DHCPNAK of the scope.
+	 */
+	private ReplyTemplate nakTemplate = null;
+
+	/**
+	 * Return the pre-encoded DHCPOFFER of the scope.
+	 *
+	 * @return The DHCPOFFER template.
+	 */
+	public ReplyTemplate getOfferTemplate() {
+		return offerTemplate;
+	}
+
+	/**
+	 * Return the pre-encoded DHCPACK of the scope.
+	 *
+	 * @return The DHCPACK template.
+	 */
+	public ReplyTemplate getAckTemplate() {
+		return ackTemplate;
+	}
+
+	/**
+	 * Return the pre-encoded DHCPACK in reply to DHCPINFORM of the scope.
+	 *
+	 * @return The DHCPACK template for DHCPINFORM.
+	 */
+	public ReplyTemplate getInformAckTemplate() {
+		return informAckTemplate;
+	}
+
+	/**
+	 * Return the pre-encoded DHCPNAK of the scope.
+	 *
+	 * @return The DHCPNAK template.
+	 */
+	public ReplyTemplate getNakTemplate() {
+		return nakTemplate;
+	}
+
+	/**
+	 * Encodes the reply templates of the scope for the server with given IP.
+	 *
+	 * @param serverIP
+	 *        The IP of the server serving the scope.
+	 */
+	void initializeReplyTemplates(InetAddress serverIP) throws UnknownHostException {
+		this.offerTemplate = ReplyTemplate.offer(serverIP);
+		this.ackTemplate = ReplyTemplate.ack(serverIP);
+		this.informAckTemplate = ReplyTemplate.informAck(serverIP);
+		this.nakTemplate = ReplyTemplate.nak();
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " (" + getSubnet().getHostAddress() + "/" + getPrefixLength() + ")";
+	}
+}
@@ -0,0 +1,335 @@
+package DHCP;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Class representing the scope configuration of a DHCP server.
+ *
+ * The configuration is read from a properties file of the following form:
+ *
+ * <pre>
+ * scopes = lan, office
+ * default.scope = lan
+ * scope.lan.subnet = 192.168.100.0/24
+ * scope.lan.range = 192.168.100.100-192.168.100.200
+ * scope.lan.option.3 = 192.168.100.1
+ * scope.lan.option.6 = 192.168.100.1, 8.8.8.8
+ * scope.lan.option.15 = lan.example
+ * scope.office.subnet = 10.1.0.0/16
+ * scope.office.range = 10.1.0.10-10.1.255.250
+ * scope.office.lease-jitter = 20
+ * reservations = reservations.csv
+ * lease-journal = leases.journal
+ * </pre>
+ *
+ * The default scope serves clients whose relay agent address or receiving interface
+ * does not match any configured subnet. Options given as scope.NAME.option.CODE are handed out
+ * to the clients of the scope (see ScopeOptions); the subnet mask (option 1) follows from the
+ * subnet unless it is configured. The lease times of the clients of a scope can be dispersed
+ * over a band below the lease time of the server, given as a percentage (see Scope). The
+ * optional reservations file, relative to the configuration file, holds the fixed MAC to IP
+ * reservations (see ReservationTable); every reserved address has to lie in the range of a scope.
+ * The optional lease journal, also relative to the configuration file, is where the server keeps
+ * its leases across restarts (see LeaseJournal).
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class ScopeConfiguration {
+
+	/**
+	 * Initialize the new scope configuration with given scopes and default scope.
+	 *
+	 * @param scopes
+	 *        The configured scopes.
+	 * @param defaultScope
+	 *        The scope to use when no subnet matches, may be null.
+	 * @post  The scopes and the default scope are equal to the given ones.
+	 */
+	public ScopeConfiguration(List<Scope> scopes, Scope defaultScope) {
+		this(scopes, defaultScope, ReservationTable.empty());
+	}
+
+	/**
+	 * Initialize the new scope configuration with given scopes, default scope and fixed reservations.
+	 *
+	 * @param scopes
+	 *        The configured scopes.
+	 * @param defaultScope
+	 *        The scope to use when no subnet matches, may be null.
+	 * @param reservations
+	 *        The fixed MAC to IP reservations.
+	 * @post  The scopes, the default scope and the reservations are equal to the given ones.
+	 * @throws IllegalArgumentException
+	 *         A reserved IP address lies outside the pools of all scopes.
+	 */
+	public ScopeConfiguration(List<Scope> scopes, Scope defaultScope, ReservationTable reservations) throws IllegalArgumentException {
+		this(scopes, defaultScope, reservations, null);
+	}
+
+	/**
+	 * Initialize the new scope configuration with given scopes, default scope, fixed reservations and lease journal.
+	 *
+	 * @param scopes
+	 *        The configured scopes.
+	 * @param defaultScope
+	 *        The scope to use when no subnet matches, may be null.
+	 * @param reservations
+	 *        The fixed MAC to IP reservations.
+	 * @param leaseJournalPath
+	 *        The path of the file the leases are kept in, null to keep them in memory only.
+	 * @post  The scopes, the default scope, the reservations and the lease journal path are equal to the given ones.
+	 * @throws IllegalArgumentException
+	 *         A reserved IP address lies outside the pools of all scopes.
+	 */
+	public ScopeConfiguration(List<Scope> scopes, Scope defaultScope, ReservationTable reservations, String leaseJournalPath)
+			throws IllegalArgumentException {
+		int address = findAddressOutsidePools(scopes, reservations.getReservedAddresses());
+		if(address != 0)
+			throw new IllegalArgumentException("The reserved address " + (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "."
+					+ ((address >>> 8) & 0xFF) + "." + (address & 0xFF) + " lies outside the pools of all scopes.");
+		this.scopes = scopes;
+		this.defaultScope = defaultScope;
+		this.reservations = reservations;
+		this.leaseJournalPath = leaseJournalPath;
+	}
+
+	/**
+	 * Returns one of the given reserved IP addresses, in ascending order, that lies in the pool of none of
+	 * the given scopes, or 0 if there is none. The reserved addresses of every pool are found with a
+	 * binary search for either end of the pool.
+	 */
+	private static int findAddressOutsidePools(List<Scope> scopes, int[] reservedAddresses) {
+		BitSet inPool = new BitSet(reservedAddresses.length);
+		for(Scope scope: scopes) {
+			IPPool pool = scope.getPool();
+			inPool.set(ReservationTable.position(reservedAddresses, pool.getFirstAddress(), false),
+					ReservationTable.position(reservedAddresses, pool.getLastAddress(), true));
+		}
+		int outside = inPool.nextClearBit(0);
+		return outside < reservedAddresses.length ? reservedAddresses[outside] : 0;
+	}
+
+	/**
+	 * Variable representing the configured scopes.
+	 */
+	private final List<Scope> scopes;
+
+	/**
+	 * Return the configured scopes.
+	 *
+	 * @return The configured scopes.
+	 */
+	public List<Scope> getScopes() {
+		return scopes;
+	}
+
+	/**
+	 * Variable representing the default scope.
+	 */
+	private final Scope defaultScope;
+
+	/**
+	 * Return the scope to use when no subnet matches.
+	 *
+	 * @return The default scope, null if there is none.
+	 */
+	public Scope getDefaultScope() {
+		return defaultScope;
+	}
+
+	/**
+	 * Variable representing the fixed MAC to IP reservations.
+	 */
+	private final ReservationTable reservations;
+
+	/**
+	 * Return the fixed MAC to IP reservations.
+	 *
+	 * @return The reservation table, empty if there are no reservations.
+	 */
+	public ReservationTable getReservations() {
+		return reservations;
+	}
+
+	/**
+	 * Variable representing the path of the file the leases are kept in.
+	 */
+	private final String leaseJournalPath;
+
+	/**
+	 * Return the path of the file the leases are kept in across restarts.
+	 *
+	 * @return The path of the lease journal, null if the leases are kept in memory only.
+	 */
+	public String getLeaseJournalPath() {
+		return leaseJournalPath;
+	}
+
+	/**********************************************************
+	 * Loading
+	 **********************************************************/
+
+	/**
+	 * Constant representing the subnet of the built-in scope.
+	 */
+	private static final String DEFAULT_SUBNET = "192.168.100.0/24";
+
+	/**
+	 * Constant representing the address range of the built-in scope.
+	 */
+	private static final String DEFAULT_RANGE = "192.168.100.100-192.168.100.200";
+
+	/**
+	 * Returns the built-in configuration: a single default scope.
+	 *
+	 * @return The built-in configuration.
+	 */
+	public static ScopeConfiguration defaultConfiguration() throws UnknownHostException {
+		Properties properties = new Properties();
+		properties.setProperty("scopes", "default");
+		properties.setProperty("default.scope", "default");
+		properties.setProperty("scope.default.subnet", DEFAULT_SUBNET);
+		properties.setProperty("scope.default.range", DEFAULT_RANGE);
+		return fromProperties(properties);
+	}
+
+	/**
+	 * Loads the scope configuration from the properties file at the given path, together
+	 * with the reservations file it refers to. Relative paths of the reservations file and
+	 * the lease journal are resolved against the directory of the configuration file.
+	 *
+	 * @param path
+	 *        The path of the configuration file.
+	 * @return The loaded configuration.
+	 * @throws IOException
+	 *         The configuration file or reservations file could not be read.
+	 * @throws IllegalArgumentException
+	 *         The file contains an invalid scope definition or reservation.
+	 */
+	public static ScopeConfiguration load(String path) throws IOException, IllegalArgumentException {
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(path);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		ScopeConfiguration configuration = fromProperties(properties);
+		ReservationTable reservations = configuration.getReservations();
+		String reservationsPath = properties.getProperty("reservations", "").trim();
+		if(!reservationsPath.isEmpty())
+			reservations = ReservationTable.load(resolve(path, reservationsPath));
+		String leaseJournalPath = properties.getProperty("lease-journal", "").trim();
+		return new ScopeConfiguration(configuration.getScopes(), configuration.getDefaultScope(), reservations,
+				leaseJournalPath.isEmpty() ? null : resolve(path, leaseJournalPath));
+	}
+
+	/**
+	 * Resolves a path given in the configuration file at the given path against the directory of that file.
+	 */
+	private static String resolve(String configurationPath, String path) {
+		File file = new File(path);
+		if(!file.isAbsolute())
+			file = new File(new File(configurationPath).getAbsoluteFile().getParentFile(), path);
+		return file.getPath();
+	}
+
+	/**
+	 * Creates the scope configuration out of the given properties.
+	 *
+	 * @param properties
+	 *        The properties to convert.
+	 * @return The scope configuration described by the properties.
+	 * @throws IllegalArgumentException
+	 *         The properties contain an invalid scope definition.
+	 */
+	public static ScopeConfiguration fromProperties(Properties properties) throws UnknownHostException, IllegalArgumentException {
+		List<Scope> scopes = new ArrayList<Scope>();
+		Scope defaultScope = null;
+		String defaultName = properties.getProperty("default.scope", "").trim();
+		for(String name: properties.getProperty("scopes", "").split(",")) {
+			name = name.trim();
+			if(name.isEmpty())
+				continue;
+			Scope scope = parseScope(name, properties);
+			scopes.add(scope);
+			if(name.equals(defaultName))
+				defaultScope = scope;
+		}
+		if(!defaultName.isEmpty() && defaultScope == null)
+			throw new IllegalArgumentException("The default scope " + defaultName + " is not defined.");
+		return new ScopeConfiguration(scopes, defaultScope);
+	}
+
+	/**
+	 * Creates the scope with the given name out of the given properties.
+	 *
+	 * @param name
+	 *        The name of the scope.
+	 * @param properties
+	 *        The properties defining the scope.
+	 * @return The scope with given name.
+	 * @throws IllegalArgumentException
+	 *         The subnet or range of the scope is missing or invalid, or an option is invalid.
+	 */
+	private static Scope parseScope(String name, Properties properties) throws UnknownHostException, IllegalArgumentException {
+		String subnet = getRequiredProperty(properties, "scope." + name + ".subnet");
+		String range = getRequiredProperty(properties, "scope." + name + ".range");
+		String[] subnetParts = subnet.split("/");
+		String[] rangeParts = range.split("-");
+		if(subnetParts.length != 2 || rangeParts.length != 2)
+			throw new IllegalArgumentException("Scope " + name + " must have a subnet a.b.c.d/n and a range a.b.c.d-e.f.g.h.");
+		int prefixLength = Integer.parseInt(subnetParts[1].trim());
+		IPPool pool = new IPPool(InetAddress.getByName(rangeParts[0].trim()), InetAddress.getByName(rangeParts[1].trim()));
+		Scope scope = new Scope(name, InetAddress.getByName(subnetParts[0].trim()), prefixLength, pool);
+		String jitter = properties.getProperty("scope." + name + ".lease-jitter");
+		if(jitter != null) {
+			try {
+				scope.setLeaseTimeJitter(Integer.parseInt(jitter.trim()));
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid lease time jitter of scope " + name + ".");
+			}
+		}
+		String optionPrefix = "scope." + name + ".option.";
+		for(String key: properties.stringPropertyNames()) {
+			if(!key.startsWith(optionPrefix))
+				continue;
+			int code;
+			try {
+				code = Integer.parseInt(key.substring(optionPrefix.length()));
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid option code in " + key + ".");
+			}
+			scope.getOptions().setOption(code, properties.getProperty(key));
+		}
+		return scope;
+	}
+
+	/**
+	 * Return the value of a given key that has to be present in the given properties.
+	 *
+	 * @param properties
+	 *        The properties to search.
+	 * @param key
+	 *        The key of the value.
+	 * @return The trimmed value.
+	 * @throws IllegalArgumentException
+	 *         The key is not present.
+	 */
+	private static String getRequiredProperty(Properties properties, String key) throws IllegalArgumentException {
+		String value = properties.getProperty(key);
+		if(value == null)
+			throw new IllegalArgumentException("Missing configuration property " + key + ".");
+		return value.trim();
+	}
+}
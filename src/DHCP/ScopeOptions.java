@@ -0,0 +1,177 @@
+package DHCP;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import DHCP.Message.Option;
+
+/**
+ * Class representing the options a scope hands out to its clients, such as the subnet mask (1),
+ * routers (3), domain name servers (6) and domain name (15).
+ *
+ * A client lists the options it wants in its Parameter Request List (option 55); a client
+ * without such a list gets all configured options. Clients of the same kind send the same list,
+ * so the number of distinct lists is small: the encoded block of options is built once per
+ * distinct list and cached, and building a reply copies the cached block as a whole.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class ScopeOptions {
+
+	/**
+	 * Constant representing the maximum number of distinct request lists whose option block is cached.
+	 */
+	private static final int MAXIMUM_CACHED_BLOCKS = 256;
+
+	/**
+	 * Initialize the options of a scope with the given subnet mask and no other options.
+	 *
+	 * @param prefixLength
+	 *        The prefix length of the subnet of the scope.
+	 * @post  The subnet mask option (1) is set to the mask of the given prefix length.
+	 */
+	public ScopeOptions(int prefixLength) {
+		int mask = prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+		setOption(1, Utilities.convertToByteArray(4, mask));
+	}
+
+	/**
+	 * Variable representing the contents of the configured options, keyed on their code.
+	 */
+	private final TreeMap<Integer, byte[]> options = new TreeMap<Integer, byte[]>();
+
+	/**
+	 * Variable representing the encoded option blocks, keyed on the request list they answer.
+	 */
+	private final ConcurrentHashMap<String, byte[]> blocks = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * Return the contents of the configured option with given code.
+	 *
+	 * @param code
+	 *        The code of the option.
+	 * @return The contents of the option, null if it is not configured.
+	 */
+	public byte[] getOption(int code) {
+		synchronized(options) {
+			byte[] contents = options.get(code);
+			return contents == null ? null : contents.clone();
+		}
+	}
+
+	/**
+	 * Configures the option with given code. The cached option blocks are cleared.
+	 *
+	 * @param code
+	 *        The code of the option.
+	 * @param contents
+	 *        The contents of the option.
+	 * @throws IllegalArgumentException
+	 *         The code is a pad or end option or an option the server fills in itself (50 to 61),
+	 *         or the contents are longer than 255 bytes.
+	 */
+	public void setOption(int code, byte[] contents) throws IllegalArgumentException {
+		if(code <= Option.PAD || code >= Option.END || (code >= 50 && code <= 61))
+			throw new IllegalArgumentException("Option " + code + " can not be configured.");
+		if(contents.length > 255)
+			throw new IllegalArgumentException("The contents of option " + code + " are longer than 255 bytes.");
+		synchronized(options) {
+			options.put(code, contents.clone());
+			blocks.clear();
+		}
+	}
+
+	/**
+	 * Configures the option with given code from its textual value: a comma separated list of
+	 * IPv4 addresses, or otherwise a string.
+	 *
+	 * @param code
+	 *        The code of the option.
+	 * @param value
+	 *        The value of the option, for example "192.168.100.1" or "8.8.8.8, 8.8.4.4" or "example.com".
+	 * @throws IllegalArgumentException
+	 *         The option can not be configured.
+	 */
+	public void setOption(int code, String value) throws IllegalArgumentException {
+		String[] parts = value.split(",");
+		ByteArrayOutputStream addresses = new ByteArrayOutputStream();
+		for(String part: parts) {
+			part = part.trim();
+			if(!part.matches("\\d{1,3}(\\.\\d{1,3}){3}")) {
+				setOption(code, value.trim().getBytes(StandardCharsets.US_ASCII));
+				return;
+			}
+			byte[] address;
+			try {
+				address = InetAddress.getByName(part).getAddress();
+			} catch(UnknownHostException e) {
+				throw new IllegalArgumentException("Invalid address " + part + " for option " + code + ".");
+			}
+			addresses.write(address, 0, address.length);
+		}
+		setOption(code, addresses.toByteArray());
+	}
+
+	/**
+	 * Returns the encoded block of options answering the given Parameter Request List.
+	 *
+	 * @param requestList
+	 *        The codes of the requested options, in order of preference, null if the client sent no list.
+	 * @return The configured options among the requested ones, encoded in the requested order and
+	 *         without end option; all configured options in ascending order if there is no list.
+	 *         The returned array is shared and must not be modified.
+	 */
+	public byte[] getOptionBlock(byte[] requestList) {
+		String key = requestList == null ? "" : "L" + new String(requestList, StandardCharsets.ISO_8859_1);
+		byte[] block = blocks.get(key);
+		if(block == null) {
+			block = encode(requestList);
+			if(blocks.size() < MAXIMUM_CACHED_BLOCKS)
+				blocks.putIfAbsent(key, block);
+		}
+		return block;
+	}
+
+	/**
+	 * Encodes the configured options answering the given Parameter Request List.
+	 *
+	 * @param requestList
+	 *        The codes of the requested options, null for all configured options.
+	 * @return The encoded options.
+	 */
+	private byte[] encode(byte[] requestList) {
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		synchronized(options) {
+			if(requestList == null) {
+				for(Map.Entry<Integer, byte[]> option: options.entrySet())
+					write(block, option.getKey(), option.getValue());
+			}
+			else {
+				boolean[] written = new boolean[256];
+				for(byte code: requestList) {
+					byte[] contents = options.get(code & 0xFF);
+					if(contents != null && !written[code & 0xFF]) {
+						write(block, code & 0xFF, contents);
+						written[code & 0xFF] = true;
+					}
+				}
+			}
+		}
+		return block.toByteArray();
+	}
+
+	/**
+	 * Writes one option to the given block.
+	 */
+	private static void write(ByteArrayOutputStream block, int code, byte[] contents) {
+		block.write(code);
+		block.write(contents.length);
+		block.write(contents, 0, contents.length);
+	}
+}
@@ -0,0 +1,105 @@
+package DHCP;
+
+import java.net.InetAddress;
+
+/**
+ * Class representing a binary radix trie over IPv4 addresses, used to map an address
+ * (the relay agent address or the address of the receiving interface) to the scope
+ * with the longest matching subnet prefix.
+ *
+ * A lookup walks at most 32 levels, independent of the number of scopes.
+ *
+ * @author Simon Geirnaert
+ *         Laurent De Laere
+ */
+public class ScopeTrie {
+
+	/**
+	 * Inner class representing a node of the trie.
+	 */
+	private static class Node {
+
+		/**
+		 * The children of the node, indexed by the value of the next bit.
+		 */
+		private final Node[] children = new Node[2];
+
+		/**
+		 * The scope whose subnet prefix ends at this node, null if there is none.
+		 */
+		private Scope scope = null;
+	}
+
+	/**
+	 * Variable representing the root of the trie (the empty prefix).
+	 */
+	private final Node root = new Node();
+
+	/**
+	 * Variable representing the number of scopes in the trie.
+	 */
+	private int numberOfScopes = 0;
+
+	/**
+	 * Return the number of scopes in the trie.
+	 *
+	 * @return The number of scopes.
+	 */
+	public int getNumberOfScopes() {
+		return numberOfScopes;
+	}
+
+	/**
+	 * Adds a given scope to the trie, keyed on its subnet and prefix length.
+	 *
+	 * @param scope
+	 *        The scope to add.
+	 * @throws IllegalArgumentException
+	 *         A scope with the same subnet and prefix length is already present.
+	 */
+	public void insert(Scope scope) throws IllegalArgumentException {
+		int prefix = Utilities.convertToInt(scope.getSubnet().getAddress());
+		Node node = root;
+		for(int depth = 0; depth < scope.getPrefixLength(); depth++) {
+			int bit = (prefix >>> (31 - depth)) & 1;
+			if(node.children[bit] == null)
+				node.children[bit] = new Node();
+			node = node.children[bit];
+		}
+		if(node.scope != null)
+			throw new IllegalArgumentException("Scope " + node.scope.getName() + " already serves this subnet.");
+		node.scope = scope;
+		numberOfScopes++;
+	}
+
+	/**
+	 * Returns the scope with the longest subnet prefix matching the given address.
+	 *
+	 * @param address
+	 *        The address to look up.
+	 * @return The scope with the longest matching prefix, null if no scope matches.
+	 */
+	public Scope lookup(InetAddress address) {
+		return lookup(Utilities.convertToInt(address.getAddress()));
+	}
+
+	/**
+	 * Returns the scope with the longest subnet prefix matching the given address.
+	 *
+	 * @param address
+	 *        The address to look up, as an integer.
+	 * @return The scope with the longest matching prefix, null if no scope matches.
+	 */
+	public Scope lookup(int address) {
+		Node node = root;
+		Scope match = node.scope;
+		for(int depth = 0; depth < 32; depth++) {
+			node = node.children[(address >>> (31 - depth)) & 1];
+			if(node == null)
+				break;
+			if(node.scope != null)
+				match = node.scope;
+		}
+		return match;
+	}
+}
@@ -0,0 +1,79 @@
+package DHCP;
+
+/**
+ * Class representing a sequence number in a ring buffer, written by a single thread and read by others.
+ *
+ * The value is padded on both sides so that sequences written by different threads never share a
+ * cache line.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class Sequence extends SequenceValue {
+
+	/**
+	 * Variables padding the value after it.
+	 */
+	@SuppressWarnings("unused")
+	private long p9, p10, p11, p12, p13, p14, p15;
+
+	/**
+	 * Initialize a new sequence with the given value.
+	 *
+	 * @param value
+	 *        The initial value.
+	 */
+	public Sequence(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * Return the value of the sequence.
+	 *
+	 * @return The last published value.
+	 */
+	public long get() {
+		return value;
+	}
+
+	/**
+	 * Publishes a new value of the sequence. Only the thread owning the sequence writes it.
+	 *
+	 * @param value
+	 *        The value to publish.
+	 */
+	public void set(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * Return the minimum of the given sequences.
+	 *
+	 * @param sequences
+	 *        The sequences, at least one.
+	 * @return The lowest value of the given sequences.
+	 */
+	public static long minimum(Sequence[] sequences) {
+		long result = Long.MAX_VALUE;
+		for(Sequence sequence: sequences)
+			result = Math.min(result, sequence.get());
+		return result;
+	}
+}
+
+/**
+ * Class padding the value of a sequence before it: fields of a superclass are laid out first.
+ */
+abstract class SequencePadding {
+
+	@SuppressWarnings("unused")
+	private long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * Class holding the value of a sequence between its padding.
+ */
+abstract class SequenceValue extends SequencePadding {
+
+	protected volatile long value;
+}
@@ -0,0 +1,171 @@
+package DHCP;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Class representing a hot standby secondary DHCP server.
+ *
+ * The secondary accepts the replication connection of the primary on a TCP port and applies the
+ * replicated lease changes to its own pools, acknowledging the sequence number of every batch. It
+ * does not answer clients. Once the primary has been heard, the secondary takes over when it misses
+ * the heartbeats of the primary for a few intervals: it stops accepting replication and starts a
+ * DHCP server on the replicated pools, so bound clients can renew their leases with it.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class StandbyServer {
+
+	/**
+	 * Initialize a new standby server for the given scopes. The replicated leases are applied to the
+	 * pools of the given configuration, and on takeover a server is started as with the constructor
+	 * of {@link DHCPServer} with the same arguments.
+	 *
+	 * @param serverIP
+	 *        The IP at which the server can be reached after takeover.
+	 * @param leaseTime
+	 * 		  The lease time (in seconds).
+	 * @param scopeConfiguration
+	 *        The configuration of the scopes, the same as the configuration of the primary.
+	 * @param transportFactory
+	 *        The factory opening the transport endpoint of the server after takeover.
+	 * @param clock
+	 *        The clock of the lease logic of the server after takeover.
+	 * @param replicationPort
+	 *        The TCP port the replication connection of the primary is accepted on.
+	 */
+	public StandbyServer(InetAddress serverIP, int leaseTime, ScopeConfiguration scopeConfiguration, Transport.Factory transportFactory,
+			Clock clock, int replicationPort) {
+		this.serverIP = serverIP;
+		this.leaseTime = leaseTime;
+		this.scopeConfiguration = scopeConfiguration;
+		this.transportFactory = transportFactory;
+		this.clock = clock;
+		this.receiver = new ReplicationReceiver(scopeConfiguration, replicationPort, true);
+	}
+
+	/**
+	 * Variables representing the arguments of the server started on takeover.
+	 */
+	private final InetAddress serverIP;
+	private final int leaseTime;
+	private final ScopeConfiguration scopeConfiguration;
+	private final Transport.Factory transportFactory;
+	private final Clock clock;
+
+	/**
+	 * Variable representing the receiver applying the replicated changes of the primary.
+	 */
+	private final ReplicationReceiver receiver;
+
+	/**
+	 * Variable representing the server started on takeover, null before takeover.
+	 */
+	private volatile DHCPServer server = null;
+
+	/**
+	 * Variable registering whether the standby server is stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Return the sequence number of the last batch or snapshot of the primary applied.
+	 *
+	 * @return The applied sequence number.
+	 */
+	public long getAppliedSequence() {
+		return receiver.getAppliedSequence();
+	}
+
+	/**
+	 * Return the number of lease changes of the primary applied.
+	 *
+	 * @return The number of applied changes.
+	 */
+	public long getAppliedChanges() {
+		return receiver.getAppliedChanges();
+	}
+
+	/**
+	 * Check whether the secondary took over from the primary.
+	 *
+	 * @return True if the secondary serves clients; false otherwise.
+	 */
+	public boolean hasTakenOver() {
+		return server != null;
+	}
+
+	/**
+	 * Return the server started on takeover.
+	 *
+	 * @return The server, null before takeover.
+	 */
+	public DHCPServer getServer() {
+		return server;
+	}
+
+	/**
+	 * Return the configuration of the scopes the replicated leases are applied to.
+	 *
+	 * @return The scope configuration.
+	 */
+	public ScopeConfiguration getScopeConfiguration() {
+		return scopeConfiguration;
+	}
+
+	/**
+	 * Starts accepting the replication connection of the primary and watching its heartbeats.
+	 *
+	 * @throws IOException
+	 *         The replication port could not be opened.
+	 */
+	public void start() throws IOException {
+		receiver.start();
+		Thread monitor = new Thread(this::monitor, "standby-monitor");
+		monitor.setDaemon(true);
+		monitor.start();
+	}
+
+	/**
+	 * Stops the standby server, and the server started on takeover if any.
+	 */
+	public void stop() {
+		stopped = true;
+		receiver.stop();
+		DHCPServer server = this.server;
+		if(server != null)
+			server.stop();
+	}
+
+	/**
+	 * Runs the monitor thread: takes over once the primary has been silent for the given number of heartbeat intervals.
+	 */
+	private void monitor() {
+		long timeout = ReplicationReceiver.MISSED_HEARTBEATS * LeaseReplicator.HEARTBEAT_INTERVAL * 1000000;
+		try {
+			while(!stopped) {
+				Thread.sleep(LeaseReplicator.HEARTBEAT_INTERVAL);
+				long heard = receiver.getLastHeard();
+				if(heard != 0 && System.nanoTime() - heard > timeout) {
+					takeOver();
+					return;
+				}
+			}
+		} catch(InterruptedException e) {
+			// Stopped
+		} catch(UnknownHostException e) {
+			System.out.println("Error occured in takeover");
+		}
+	}
+
+	/**
+	 * Stops accepting replication and starts serving clients on the replicated pools.
+	 */
+	private void takeOver() throws UnknownHostException {
+		receiver.stop();
+		System.out.println("Primary missed " + ReplicationReceiver.MISSED_HEARTBEATS + " heartbeats. Secondary taking over at sequence " + getAppliedSequence() + ".");
+		server = new DHCPServer(serverIP, leaseTime, scopeConfiguration, transportFactory, clock);
+	}
+}
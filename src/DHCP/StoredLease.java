@@ -0,0 +1,145 @@
+package DHCP;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Properties;
+
+/**
+ * Class representing the last lease of a client, persisted to a small local file so the
+ * client can request the same IP address directly after a restart (INIT-REBOOT).
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class StoredLease {
+
+	/**
+	 * Initialize the stored lease with given address, server and expiration time.
+	 *
+	 * @param address
+	 *        The leased IP address.
+	 * @param server
+	 *        The IP address of the server that granted the lease.
+	 * @param leaseExpirationTime
+	 *        The time at which the lease expires.
+	 * @post  The address, server and expiration time are equal to the given values.
+	 */
+	public StoredLease(InetAddress address, InetAddress server, long leaseExpirationTime) {
+		this.address = address;
+		this.server = server;
+		this.leaseExpirationTime = leaseExpirationTime;
+	}
+
+	/**
+	 * Variable representing the leased IP address.
+	 */
+	private final InetAddress address;
+
+	/**
+	 * Return the leased IP address.
+	 *
+	 * @return The leased IP address.
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Variable representing the IP address of the server that granted the lease.
+	 */
+	private final InetAddress server;
+
+	/**
+	 * Return the IP address of the server that granted the lease.
+	 *
+	 * @return The IP address of the server.
+	 */
+	public InetAddress getServer() {
+		return server;
+	}
+
+	/**
+	 * Variable representing the time at which the lease expires.
+	 */
+	private final long leaseExpirationTime;
+
+	/**
+	 * Return the time at which the lease expires.
+	 *
+	 * @return The lease expiration time.
+	 */
+	public long getLeaseExpirationTime() {
+		return leaseExpirationTime;
+	}
+
+	/**
+	 * Writes the lease to the file at the given path.
+	 *
+	 * @param path
+	 *        The path of the lease file.
+	 * @throws IOException
+	 *         The file could not be written.
+	 */
+	public void save(String path) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("address", getAddress().getHostAddress());
+		properties.setProperty("server", getServer().getHostAddress());
+		properties.setProperty("expiration", Long.toString(getLeaseExpirationTime()));
+		OutputStream output = new FileOutputStream(path);
+		try {
+			properties.store(output, "Last DHCP lease");
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads the lease from the file at the given path.
+	 *
+	 * @param path
+	 *        The path of the lease file.
+	 * @param currentTime
+	 *        The current time.
+	 * @return The stored lease, null if there is no readable lease file or the lease has expired.
+	 */
+	public static StoredLease load(String path, long currentTime) {
+		File file = new File(path);
+		if(!file.isFile())
+			return null;
+		Properties properties = new Properties();
+		try {
+			InputStream input = new FileInputStream(file);
+			try {
+				properties.load(input);
+			} finally {
+				input.close();
+			}
+			String address = properties.getProperty("address");
+			String server = properties.getProperty("server");
+			String expiration = properties.getProperty("expiration");
+			if(address == null || server == null || expiration == null)
+				return null;
+			StoredLease lease = new StoredLease(InetAddress.getByName(address), InetAddress.getByName(server), Long.parseLong(expiration));
+			return lease.getLeaseExpirationTime() > currentTime ? lease : null;
+		} catch(IOException e) {
+			return null;
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes the lease file at the given path, if there is one.
+	 *
+	 * @param path
+	 *        The path of the lease file.
+	 */
+	public static void delete(String path) {
+		new File(path).delete();
+	}
+}
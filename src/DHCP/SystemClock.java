@@ -0,0 +1,29 @@
+package DHCP;
+
+/**
+ * Class representing the wall clock of the system.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public final class SystemClock implements Clock {
+
+	/**
+	 * Constant representing the only system clock.
+	 */
+	public static final SystemClock INSTANCE = new SystemClock();
+
+	/**
+	 * Initialize the system clock.
+	 */
+	private SystemClock() {
+	}
+
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+}
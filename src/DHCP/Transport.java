@@ -0,0 +1,96 @@
+package DHCP;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+
+/**
+ * Interface representing the datagram transport under a UDP host: an endpoint bound to a port
+ * that sends datagrams to other endpoints and receives the datagrams sent to its port.
+ *
+ * The default transport uses a DatagramSocket; a LoopbackNetwork provides in-memory endpoints
+ * for running clients and servers in a single JVM.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public interface Transport {
+
+	/**
+	 * Interface representing a factory opening endpoints of one kind of transport.
+	 */
+	interface Factory {
+
+		/**
+		 * Opens an endpoint bound to the given address and port.
+		 *
+		 * @param address
+		 *        The local address to bind to, null for any local address.
+		 * @param port
+		 *        The local port to bind to, 0 for any free port.
+		 * @return The opened endpoint.
+		 * @throws SocketException
+		 *         The endpoint could not be opened, for example because the port is in use.
+		 */
+		Transport open(InetAddress address, int port) throws SocketException;
+	}
+
+	/**
+	 * Sends the first given number of bytes of the given data to the given address and port.
+	 *
+	 * @param data
+	 *        Buffer holding the datagram to be sent.
+	 * @param length
+	 *        The number of bytes of the buffer to send.
+	 * @param address
+	 *        The address to send the datagram to.
+	 * @param port
+	 *        The port to send the datagram to.
+	 * @throws IOException
+	 *         The datagram could not be sent.
+	 */
+	void send(byte[] data, int length, InetAddress address, int port) throws IOException;
+
+	/**
+	 * Receives a datagram into the given buffer, waiting at most the timeout of the endpoint.
+	 * A datagram longer than the buffer is truncated.
+	 *
+	 * @param buffer
+	 *        The buffer to receive the datagram in.
+	 * @return The received data, holding the given buffer, the length of the datagram and its sender.
+	 * @throws java.net.SocketTimeoutException
+	 *         No datagram arrived within the timeout.
+	 * @throws IOException
+	 *         The endpoint is closed or the datagram could not be received.
+	 */
+	ReceivedData receive(byte[] buffer) throws IOException;
+
+	/**
+	 * Sets the maximum time a receive waits for a datagram.
+	 *
+	 * @param timeout
+	 *        The timeout (in milliseconds), 0 to wait indefinitely.
+	 * @throws SocketException
+	 *         The timeout could not be set.
+	 */
+	void setTimeout(int timeout) throws SocketException;
+
+	/**
+	 * Return the local port the endpoint is bound to.
+	 *
+	 * @return The local port.
+	 */
+	int getLocalPort();
+
+	/**
+	 * Closes the endpoint. A receive waiting on the endpoint fails.
+	 */
+	void close();
+
+	/**
+	 * Checks whether the endpoint is closed.
+	 *
+	 * @return True if the endpoint is closed.
+	 */
+	boolean isClosed();
+}
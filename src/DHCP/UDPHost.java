@@ -1,13 +1,14 @@
 package DHCP;
 import java.io.IOException;
-import java.net.DatagramSocket;
-import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import DHCP.Message.Message;
 
 /**
- * A class implementing UDP.
+ * A class implementing UDP, addressed to one receiver, on top of a transport.
  * 
  * @version 1.0 - 2016
  * @author Laurent De Laere
@@ -17,9 +18,9 @@ import java.net.UnknownHostException;
 public class UDPHost {
 	
 	/**
-	 * Constant referencing the packet size.
+	 * Constant referencing the maximum size of a packet that can be received.
 	 */
-	private static final int PACKETSIZE = 576;
+	private static final int PACKETSIZE = Message.MAXIMUM_MESSAGE_SIZE;
 	
 	/**
 	 * Initialize the new UPD client.
@@ -85,16 +86,16 @@ public class UDPHost {
 	 * @param sendData
 	 * 		  Data packet to be sent to the UDP server.
 	 * @param socket
-	 *        The DatagramSocket currently in use
+	 *        The transport currently in use
 	 * 
 	 * @throws UnknownHostException
 	 * 		   InetAddress.getByName() can't find a host for the given hostname.
 	 * @throws IOException
 	 * 		   socket.send() or socket.receive() encountered an error with the IO.
 	 * @throws SocketException
-	 *         The construction of the DatagramSocket has failed.
+	 *         The transport could not be used.
 	 */
-	public byte[] sendData(byte[] sendData, DatagramSocket socket) throws UnknownHostException, IOException {
+	public byte[] sendData(byte[] sendData, Transport socket) throws UnknownHostException, IOException {
 		sendDataWithoutResponse(sendData, socket);
 		return receiveData(socket).getData();
 	}
@@ -105,18 +106,34 @@ public class UDPHost {
 	 * @param sendData
 	 * 		  Data packet to be sent to the other end of the UDP connection.
 	 * @param socket
-	 *        The DatagramSocket currently in use
+	 *        The transport currently in use
 	 *        
 	 * @throws UnknownHostException
 	 * 		   InetAddress.getByName() can't find a host for the given hostname.
 	 * @throws IOException
 	 * 		   socket.send() or socket.receive() encountered an error with the IO.
 	 * @throws SocketException
-	 *         The construction of the DatagramSocket has failed.
+	 *         The transport could not be used.
+	 */
+	public void sendDataWithoutResponse(byte[] sendData, Transport socket) throws UnknownHostException, IOException {
+		sendDataWithoutResponse(sendData, sendData.length, socket);
+	}
+	
+	/**
+	 * Send the first given number of bytes of the given data to the UDP receiver without receiving a response.
+	 * 
+	 * @param sendData
+	 * 		  Buffer holding the data packet to be sent.
+	 * @param length
+	 *        The number of bytes of the buffer to send.
+	 * @param socket
+	 *        The transport currently in use
+	 *        
+	 * @throws IOException
+	 * 		   socket.send() encountered an error with the IO.
 	 */
-	public void sendDataWithoutResponse(byte[] sendData, DatagramSocket socket) throws UnknownHostException, IOException {
-		DatagramPacket sendPacket = new DatagramPacket(sendData, PACKETSIZE, getReceiverIP(), getDestinationPort());
-		socket.send(sendPacket);
+	public void sendDataWithoutResponse(byte[] sendData, int length, Transport socket) throws IOException {
+		socket.send(sendData, length, getReceiverIP(), getDestinationPort());
 	}
 	
 	/**
@@ -125,14 +142,48 @@ public class UDPHost {
 	 * @param socket
 	 *        The socket used in the transaction
 	 *        
-	 * @return The received data
+	 * @return The received data, exactly as long as the received packet
 	 */
-	public ReceivedData receiveData(DatagramSocket socket) throws IOException {
-        byte[] receiveData = new byte[PACKETSIZE];
-        DatagramPacket receivePacket = new DatagramPacket(receiveData, PACKETSIZE);
-        socket.receive(receivePacket);
-        ReceivedData rcvd = new ReceivedData(receiveData, receivePacket.getPort());
+	public ReceivedData receiveData(Transport socket) throws IOException {
+        ReceivedData received = socket.receive(new byte[PACKETSIZE]);
+        ReceivedData rcvd = new ReceivedData(Arrays.copyOf(received.getData(), received.getLength()), received.getLength(), received.getAddress(), received.getPort());
         return rcvd;
 	}
 	
+	/**
+	 * Receives data via UDP into the given buffer, without copying it.
+	 * 
+	 * @param socket
+	 *        The socket used in the transaction
+	 * @param buffer
+	 *        The buffer to receive the data in.
+	 *        
+	 * @return The received data, holding the given buffer and the length of the received packet
+	 */
+	public ReceivedData receiveData(Transport socket, byte[] buffer) throws IOException {
+        return socket.receive(buffer);
+	}
+	
+	/**
+	 * Send the first given number of bytes of the given data to the given address and port,
+	 * instead of to the receiver of this UDP host.
+	 * 
+	 * @param sendData
+	 * 		  Buffer holding the data packet to be sent.
+	 * @param length
+	 *        The number of bytes of the buffer to send.
+	 * @param address
+	 *        The IP address to send the data to.
+	 * @param port
+	 *        The port to send the data to.
+	 * @param socket
+	 *        The transport currently in use
+	 *        
+	 * @throws IOException
+	 * 		   socket.send() encountered an error with the IO.
+	 */
+	public void sendDataTo(byte[] sendData, int length, InetAddress address, int port, Transport socket) throws IOException {
+		socket.send(sendData, length, address, port);
+	}
+	
 }
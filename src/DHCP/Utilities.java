@@ -1,4 +1,6 @@
 package DHCP;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -55,6 +57,38 @@ public abstract class Utilities {
 		return result;
 	}
 	
+	/**
+	 * Convert an integer to the IPv4 address it represents.
+	 * 
+	 * @param address
+	 * 		  The integer to convert, most significant byte first.
+	 * @return The IPv4 address represented by the integer.
+	 */
+	public static InetAddress convertToInetAddress(int address) throws UnknownHostException {
+		return InetAddress.getByAddress(convertToByteArray(4, address));
+	}
+	
+	/**
+	 * Hash a MAC address, so the same client always gets the same hash and nearby MAC addresses 
+	 * get hashes far apart.
+	 * 
+	 * @param macAddress
+	 * 		  The MAC address to hash.
+	 * @return The 64-bit hash of the MAC address.
+	 */
+	public static long hashMacAddress(String macAddress){
+		// 64-bit FNV-1a, with a final mix so nearby MAC addresses land far apart
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < macAddress.length(); i++) {
+			hash ^= macAddress.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
 	/**
 	 * Insert a given byte array in another given byte array at a given index.
 	 *
@@ -114,6 +148,26 @@ public abstract class Utilities {
 		return result;
 	}
 
+	/**
+	 * Read a given number of bytes of a byte array as an unsigned integer, most significant byte first.
+	 * 
+	 * @param array
+	 * 		  The array to read from.
+	 * @param index
+	 * 		  The index of the first byte to read.
+	 * @param nbOfBytes
+	 * 		  The number of bytes to read.
+	 * @return The bytes read as a long.
+	 * @pre At most eight bytes are read.
+	 * 		| nbOfBytes <= 8
+	 */
+	public static long readLong(byte[] array, int index, int nbOfBytes) {
+		long result = 0;
+		for(int i = index; i < index + nbOfBytes; i++)
+			result = (result << 8) | (array[i] & 0xFF);
+		return result;
+	}
+
 	/**
 	 * Generates a random integer to use as transaction ID.
 	 * 
@@ -0,0 +1,72 @@
+package DHCP;
+
+/**
+ * Class representing a clock that only moves when it is advanced. Threads sleeping on the clock
+ * wake up when the clock is advanced past the end of their sleep, however large the jump.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class VirtualClock implements Clock {
+
+	/**
+	 * Initialize the virtual clock at the given time.
+	 *
+	 * @param startTime
+	 *        The initial time (in milliseconds since the epoch).
+	 */
+	public VirtualClock(long startTime) {
+		this.now = startTime;
+	}
+
+	/**
+	 * Variable representing the current time of the clock.
+	 */
+	private long now;
+
+	public synchronized long currentTimeMillis() {
+		return now;
+	}
+
+	/**
+	 * Waits until the clock is advanced by at least the given time.
+	 */
+	public synchronized void sleep(long millis) throws InterruptedException {
+		long end = now + millis;
+		while(now < end)
+			wait();
+	}
+
+	/**
+	 * Advances the clock by the given time and wakes up the threads whose sleep has ended.
+	 *
+	 * @param millis
+	 *        The time to advance the clock by (in milliseconds).
+	 * @throws IllegalArgumentException
+	 *         The given time is negative.
+	 */
+	public synchronized void advance(long millis) throws IllegalArgumentException {
+		if(millis < 0)
+			throw new IllegalArgumentException("A clock can not go back in time.");
+		now += millis;
+		notifyAll();
+	}
+
+	/**
+	 * Return a clock telling the time of this clock but sleeping in real time, for threads that have to
+	 * wait while the thread advancing this clock waits for them, such as clients backing off.
+	 *
+	 * @return A clock reading this clock and sleeping on the system clock.
+	 */
+	public Clock sleepingInRealTime() {
+		return new Clock() {
+			public long currentTimeMillis() {
+				return VirtualClock.this.currentTimeMillis();
+			}
+
+			public void sleep(long millis) throws InterruptedException {
+				SystemClock.INSTANCE.sleep(millis);
+			}
+		};
+	}
+}
@@ -0,0 +1,315 @@
+package DHCP;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class representing write-behind persistence of the leases of a server to a {@link LeaseJournal}.
+ *
+ * The store listens to the lease changes of all pools and only remembers the last change of every
+ * address, so the request path never waits for the disk. A flusher thread writes the remembered
+ * changes to the journal once per flush window, sorted on address, as one batch that is synced to
+ * the storage device. Repeated changes of the same address within a window, like the renewals of a
+ * client, are coalesced into one record.
+ *
+ * A crash loses at most the changes of one flush window and the flush in progress. When more
+ * addresses than the given maximum are waiting, the flusher is woken up early, which also bounds
+ * the number of lost changes under load. The journal is rewritten to the current leases when it
+ * has grown to several times their number.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class WriteBehindLeaseStore implements LeaseListener {
+
+	/**
+	 * Constant representing the minimum number of records appended to the journal before it is rewritten.
+	 */
+	private static final long MINIMUM_COMPACTION_RECORDS = 1 << 16;
+
+	/**
+	 * Constant representing the factor by which the appended records have to outnumber the leases before the journal is rewritten.
+	 */
+	private static final int COMPACTION_FACTOR = 4;
+
+	/**
+	 * Initialize a new write-behind store of the leases of the given scopes.
+	 *
+	 * @param scopeConfiguration
+	 *        The scopes whose leases are persisted.
+	 * @param journal
+	 *        The journal the leases are written to.
+	 * @param flushWindow
+	 *        The maximum time (in milliseconds) a change waits before it is written.
+	 * @param maximumPending
+	 *        The number of waiting addresses at which a flush starts before the window ends.
+	 * @throws IllegalArgumentException
+	 *         The flush window or the maximum number of waiting addresses is not positive.
+	 */
+	public WriteBehindLeaseStore(ScopeConfiguration scopeConfiguration, LeaseJournal journal, long flushWindow, int maximumPending)
+			throws IllegalArgumentException {
+		if(flushWindow <= 0 || maximumPending <= 0)
+			throw new IllegalArgumentException("The flush window and the maximum number of pending changes have to be positive.");
+		this.scopeConfiguration = scopeConfiguration;
+		this.journal = journal;
+		this.flushWindow = flushWindow;
+		this.maximumPending = maximumPending;
+	}
+
+	/**
+	 * Variable representing the scopes whose leases are persisted.
+	 */
+	private final ScopeConfiguration scopeConfiguration;
+
+	/**
+	 * Variable representing the journal the leases are written to.
+	 */
+	private final LeaseJournal journal;
+
+	/**
+	 * Variable representing the maximum time (in milliseconds) a change waits before it is written.
+	 */
+	private final long flushWindow;
+
+	/**
+	 * Variable representing the number of waiting addresses at which a flush starts early.
+	 */
+	private final int maximumPending;
+
+	/**
+	 * Variable representing the last change of every address waiting to be written, keyed on the address as an integer.
+	 */
+	private final ConcurrentHashMap<Integer, LeaseEvent> pending = new ConcurrentHashMap<Integer, LeaseEvent>();
+
+	/**
+	 * Variable representing the flusher thread.
+	 */
+	private volatile Thread flusher = null;
+
+	/**
+	 * Variable registering whether the store is running.
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * Variables representing the numbers of changes received and of records written.
+	 */
+	private final LongAdder receivedChanges = new LongAdder();
+	private volatile long writtenRecords = 0;
+
+	/**
+	 * Variables representing the number of flushes and their total and maximum duration (in nanoseconds).
+	 */
+	private volatile long flushes = 0;
+	private volatile long totalFlushTime = 0;
+	private volatile long maximumFlushTime = 0;
+
+	/**
+	 * Variable representing the number of flushes that failed; their changes are written with the next flush.
+	 */
+	private volatile long failedFlushes = 0;
+
+	/**
+	 * Return the journal the leases are written to.
+	 *
+	 * @return The lease journal.
+	 */
+	public LeaseJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Return the number of lease changes received from the pools.
+	 *
+	 * @return The number of received changes.
+	 */
+	public long getReceivedChanges() {
+		return receivedChanges.sum();
+	}
+
+	/**
+	 * Return the number of records written to the journal by flushes.
+	 *
+	 * @return The number of written records.
+	 */
+	public long getWrittenRecords() {
+		return writtenRecords;
+	}
+
+	/**
+	 * Return the number of changes received per record written.
+	 *
+	 * @return The coalescing ratio, 1 if nothing was coalesced, 0 if nothing was written yet.
+	 */
+	public double getCoalescingRatio() {
+		long written = writtenRecords;
+		return written == 0 ? 0 : (double) getReceivedChanges() / written;
+	}
+
+	/**
+	 * Return the number of addresses with a change waiting to be written.
+	 *
+	 * @return The number of pending changes.
+	 */
+	public int getPendingChanges() {
+		return pending.size();
+	}
+
+	/**
+	 * Return the number of flushes that wrote at least one record.
+	 *
+	 * @return The number of flushes.
+	 */
+	public long getFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Return the number of flushes that failed to write to the journal.
+	 *
+	 * @return The number of failed flushes.
+	 */
+	public long getFailedFlushes() {
+		return failedFlushes;
+	}
+
+	/**
+	 * Return the mean time a flush took, from collecting the changes until they were synced.
+	 *
+	 * @return The mean flush latency (in microseconds).
+	 */
+	public double getMeanFlushLatency() {
+		long count = flushes;
+		return count == 0 ? 0 : totalFlushTime / 1000.0 / count;
+	}
+
+	/**
+	 * Return the longest time a flush took.
+	 *
+	 * @return The maximum flush latency (in microseconds).
+	 */
+	public double getMaximumFlushLatency() {
+		return maximumFlushTime / 1000.0;
+	}
+
+	/**
+	 * Starts listening to the pools and flushing.
+	 */
+	public void start() {
+		running = true;
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().addLeaseListener(this);
+		flusher = new Thread(this::run, "lease-store-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Stops listening to the pools, writes the waiting changes and closes the journal.
+	 *
+	 * @throws IOException
+	 *         The waiting changes could not be written.
+	 */
+	public void stop() throws IOException {
+		running = false;
+		for(Scope scope: scopeConfiguration.getScopes())
+			scope.getPool().removeLeaseListener(this);
+		Thread flusher = this.flusher;
+		if(flusher != null) {
+			LockSupport.unpark(flusher);
+			try {
+				flusher.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+		journal.close();
+	}
+
+	/**
+	 * Remembers the change as the last change of its address, replacing a change still waiting to be written.
+	 */
+	public void leaseChanged(LeaseEvent event) {
+		receivedChanges.increment();
+		if(pending.put(Utilities.convertToInt(event.getAddress().getAddress()), event) == null && pending.size() >= maximumPending)
+			LockSupport.unpark(flusher);
+	}
+
+	/**
+	 * Runs the flusher thread: flushes once per window, or earlier when too many changes are waiting.
+	 */
+	private void run() {
+		while(running) {
+			long windowEnd = System.nanoTime() + flushWindow * 1000000;
+			for(long left = windowEnd - System.nanoTime(); running && left > 0 && pending.size() < maximumPending; left = windowEnd - System.nanoTime())
+				LockSupport.parkNanos(this, left);
+			try {
+				flush();
+				compactIfNeeded();
+			} catch(IOException e) {
+				failedFlushes++;
+				System.out.println("Error occured in lease persistence: " + e.getMessage() + ". Retrying with the next flush.");
+			}
+		}
+	}
+
+	/**
+	 * Writes the waiting changes to the journal as one batch sorted on address. If the batch can not
+	 * be written, its changes wait for the next flush, unless the address changed again meanwhile.
+	 *
+	 * @throws IOException
+	 *         The batch could not be written.
+	 */
+	private synchronized void flush() throws IOException {
+		if(pending.isEmpty())
+			return;
+		long start = System.nanoTime();
+		List<Integer> addresses = new ArrayList<Integer>(pending.keySet());
+		addresses.sort(Integer::compareUnsigned);
+		List<LeaseEvent> batch = new ArrayList<LeaseEvent>(addresses.size());
+		for(Integer address: addresses) {
+			LeaseEvent change = pending.remove(address);
+			if(change != null)
+				batch.add(change);
+		}
+		try {
+			journal.append(batch, true);
+		} catch(IOException e) {
+			for(LeaseEvent change: batch)
+				pending.putIfAbsent(Utilities.convertToInt(change.getAddress().getAddress()), change);
+			throw e;
+		}
+		long time = System.nanoTime() - start;
+		writtenRecords += batch.size();
+		flushes++;
+		totalFlushTime += time;
+		maximumFlushTime = Math.max(maximumFlushTime, time);
+	}
+
+	/**
+	 * Rewrites the journal to the current leases when the appended records far outnumber them.
+	 */
+	private void compactIfNeeded() throws IOException {
+		int leases = 0;
+		for(Scope scope: scopeConfiguration.getScopes())
+			leases += scope.getPool().getNumberOfLeasedAddresses();
+		long appended = journal.getAppendedRecords();
+		if(appended < MINIMUM_COMPACTION_RECORDS || appended < (long) COMPACTION_FACTOR * leases)
+			return;
+		List<LeaseEvent> snapshot = new ArrayList<LeaseEvent>(leases);
+		for(Scope scope: scopeConfiguration.getScopes()) {
+			for(IPAddress ip: scope.getPool().returnLeasedAddresses()) {
+				synchronized(ip) {
+					if(ip.isLeased())
+						snapshot.add(new LeaseEvent(LeaseEventType.BIND, ip.getIpAddress(), ip.getMacAddress(), ip.getLeaseExpirationTime()));
+				}
+			}
+		}
+		journal.rewrite(snapshot);
+	}
+}
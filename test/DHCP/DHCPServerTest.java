@@ -0,0 +1,268 @@
+package DHCP;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DHCP.Message.Message;
+import DHCP.Message.MessageType;
+import DHCP.Message.Option;
+import DHCP.Message.OptionsList;
+
+/**
+ * Tests of a server with two scopes on a loopback network, receiving the messages of its clients
+ * through a relay agent on either subnet: the scoping of fixed reservations, the echo of the Relay
+ * Agent Information option in a DHCPNAK, and the ownership checks of DHCPRELEASE and DHCPDECLINE.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class DHCPServerTest {
+
+	private static final int SERVER_PORT = 1602;
+
+	private static final String RESERVED_CLIENT = "SG18SK12LD25BW01";
+
+	private static final String CLIENT = "JH57DF98RV15FH95";
+
+	private static final String OTHER_CLIENT = "NK18SK12LD25BW02";
+
+	private static final byte[] AGENT_INFORMATION = {1, 4, 'e', 't', 'h', '0', 2, 2, 7, 9};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private InetAddress serverIP;
+
+	private InetAddress lanRelay;
+
+	private InetAddress officeRelay;
+
+	private InetAddress reservedIP;
+
+	private ScopeConfiguration configuration;
+
+	private DHCPServer server;
+
+	private Transport relay;
+
+	@Before
+	public void setUp() throws Exception {
+		serverIP = InetAddress.getByName("127.0.0.1");
+		lanRelay = InetAddress.getByName("10.0.0.1");
+		officeRelay = InetAddress.getByName("10.0.1.1");
+		reservedIP = InetAddress.getByName("10.0.0.50");
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "lan, office");
+		scopes.setProperty("default.scope", "lan");
+		scopes.setProperty("scope.lan.subnet", "10.0.0.0/24");
+		scopes.setProperty("scope.lan.range", "10.0.0.10-10.0.0.60");
+		scopes.setProperty("scope.office.subnet", "10.0.1.0/24");
+		scopes.setProperty("scope.office.range", "10.0.1.10-10.0.1.60");
+		List<Scope> configured = ScopeConfiguration.fromProperties(scopes).getScopes();
+		File reservations = folder.newFile("reservations.csv");
+		Files.write(reservations.toPath(), Collections.singletonList(RESERVED_CLIENT + ", " + reservedIP.getHostAddress()), StandardCharsets.UTF_8);
+		configuration = new ScopeConfiguration(configured, configured.get(0), ReservationTable.load(reservations.getPath()));
+
+		LoopbackNetwork network = new LoopbackNetwork();
+		server = new DHCPServer(serverIP, 3600, configuration, network, SystemClock.INSTANCE, ProcessingMode.SERIAL);
+		relay = network.open(null, 0);
+		relay.setTimeout(200);
+	}
+
+	@After
+	public void tearDown() {
+		relay.close();
+		server.stop();
+	}
+
+	/**********************************************************
+	 * Reservations
+	 **********************************************************/
+
+	@Test
+	public void discover_ReservedClientOnItsSubnet() throws Exception {
+		Message offer = exchange(message(MessageType.DISCOVER, RESERVED_CLIENT, lanRelay, null));
+		assertSame(MessageType.OFFER, offer.getMessageType());
+		assertEquals(reservedIP, offer.getYiaddr());
+	}
+
+	@Test
+	public void discover_ReservedClientOnOtherSubnet() throws Exception {
+		Message offer = exchange(message(MessageType.DISCOVER, RESERVED_CLIENT, officeRelay, null));
+		assertSame(MessageType.OFFER, offer.getMessageType());
+		assertNotEquals(reservedIP, offer.getYiaddr());
+		assertTrue(pool("office").contains(offer.getYiaddr()));
+	}
+
+	@Test
+	public void request_ReservedAddressOnOtherSubnet() throws Exception {
+		Message nak = exchange(message(MessageType.REQUEST, RESERVED_CLIENT, officeRelay, reservedIP));
+		assertSame(MessageType.NAK, nak.getMessageType());
+		assertFalse(pool("lan").getIPFromPool(reservedIP).isLeased());
+	}
+
+	@Test
+	public void discover_ReservedAddressRequestedByOtherClient() throws Exception {
+		Message offer = exchange(message(MessageType.DISCOVER, CLIENT, lanRelay, reservedIP));
+		assertSame(MessageType.OFFER, offer.getMessageType());
+		assertNotEquals(reservedIP, offer.getYiaddr());
+		assertTrue(pool("lan").contains(offer.getYiaddr()));
+	}
+
+	/**********************************************************
+	 * Relay agent information
+	 **********************************************************/
+
+	@Test
+	public void request_OutsideScope_NakEchoesAgentInformation() throws Exception {
+		Message nak = exchange(message(MessageType.REQUEST, CLIENT, lanRelay, InetAddress.getByName("10.0.1.20")));
+		assertSame(MessageType.NAK, nak.getMessageType());
+		Option option82 = nak.getOptions().findOption(82);
+		assertNotNull(option82);
+		assertArrayEquals(AGENT_INFORMATION, option82.getContents());
+	}
+
+	@Test
+	public void discover_OfferEchoesAgentInformation() throws Exception {
+		Message offer = exchange(message(MessageType.DISCOVER, CLIENT, lanRelay, null));
+		assertSame(MessageType.OFFER, offer.getMessageType());
+		assertArrayEquals(AGENT_INFORMATION, offer.getOptions().getOption(82).getContents());
+	}
+
+	/**********************************************************
+	 * Release and decline
+	 **********************************************************/
+
+	@Test
+	public void release_ByOtherClient() throws Exception {
+		InetAddress address = bind(CLIENT);
+		send(message(MessageType.RELEASE, OTHER_CLIENT, lanRelay, null, address));
+		// The server handles the messages in order: once this is answered, the release was handled
+		exchange(message(MessageType.DISCOVER, OTHER_CLIENT, lanRelay, null));
+		IPAddress lease = pool("lan").findIPByMacAddress(CLIENT);
+		assertNotNull(lease);
+		assertTrue(lease.isLeased());
+		assertEquals(address, lease.getIpAddress());
+	}
+
+	@Test
+	public void release_ByClient() throws Exception {
+		InetAddress address = bind(CLIENT);
+		send(message(MessageType.RELEASE, CLIENT, lanRelay, null, address));
+		exchange(message(MessageType.DISCOVER, OTHER_CLIENT, lanRelay, null));
+		assertNull(pool("lan").findIPByMacAddress(CLIENT));
+		assertFalse(pool("lan").getIPFromPool(address).isLeased());
+	}
+
+	@Test
+	public void decline_ByOtherClient() throws Exception {
+		InetAddress address = bind(CLIENT);
+		send(message(MessageType.DECLINE, OTHER_CLIENT, lanRelay, address));
+		exchange(message(MessageType.DISCOVER, OTHER_CLIENT, lanRelay, null));
+		IPAddress lease = pool("lan").getIPFromPool(address);
+		assertTrue(lease.isLeased());
+		assertEquals(CLIENT, lease.getMacAddress());
+	}
+
+	@Test
+	public void decline_ByClient() throws Exception {
+		InetAddress address = bind(CLIENT);
+		send(message(MessageType.DECLINE, CLIENT, lanRelay, address));
+		exchange(message(MessageType.DISCOVER, OTHER_CLIENT, lanRelay, null));
+		IPAddress declined = pool("lan").getIPFromPool(address);
+		assertTrue(declined.isLeased());
+		assertEquals("", declined.getMacAddress());
+		assertNull(pool("lan").findIPByMacAddress(CLIENT));
+	}
+
+	/**********************************************************
+	 * Helpers
+	 **********************************************************/
+
+	/**
+	 * Binds an address of the lan scope to the given client through the relay agent of the lan.
+	 */
+	private InetAddress bind(String macAddress) throws Exception {
+		Message offer = exchange(message(MessageType.DISCOVER, macAddress, lanRelay, null));
+		assertSame(MessageType.OFFER, offer.getMessageType());
+		Message ack = exchange(message(MessageType.REQUEST, macAddress, lanRelay, offer.getYiaddr()));
+		assertSame(MessageType.ACK, ack.getMessageType());
+		return ack.getYiaddr();
+	}
+
+	private IPPool pool(String scope) {
+		for(Scope candidate: configuration.getScopes()) {
+			if(candidate.getName().equals(scope))
+				return candidate.getPool();
+		}
+		throw new IllegalArgumentException("No scope " + scope + ".");
+	}
+
+	/**
+	 * Creates a client message forwarded by the relay agent at the given address, with the given
+	 * requested IP address (option 50) if any and the Relay Agent Information option of the relay agent.
+	 */
+	private Message message(MessageType type, String macAddress, InetAddress giaddr, InetAddress requestedIP) throws Exception {
+		return message(type, macAddress, giaddr, requestedIP, Message.ZERO_ADDRESS);
+	}
+
+	private Message message(MessageType type, String macAddress, InetAddress giaddr, InetAddress requestedIP, InetAddress ciaddr) throws Exception {
+		Option option53 = new Option(53, Utilities.convertToByteArray(1, type.getCode()));
+		Option option82 = new Option(82, AGENT_INFORMATION);
+		OptionsList options = requestedIP == null ? new OptionsList(option53, option82)
+				: new OptionsList(option53, new Option(50, requestedIP.getAddress()), option82);
+		return new Message(1, 1, 6, 1, Utilities.generateXid(), 0, 0, ciaddr, Message.ZERO_ADDRESS, Message.ZERO_ADDRESS, giaddr,
+				macAddress, "", "", options);
+	}
+
+	private void send(Message message) throws Exception {
+		byte[] data = message.convertToByteArray();
+		relay.send(data, data.length, serverIP, SERVER_PORT);
+	}
+
+	/**
+	 * Sends the given message to the server and returns the reply with the same transaction ID. The message
+	 * is sent again when no reply arrives in time, since the server may not be listening yet.
+	 */
+	private Message exchange(Message message) throws Exception {
+		byte[] buffer = new byte[Message.MAXIMUM_MESSAGE_SIZE];
+		for(int attempt = 0; attempt < 20; attempt++) {
+			send(message);
+			try {
+				while(true) {
+					ReceivedData received = relay.receive(buffer);
+					Message reply = Message.convertToMessage(Arrays.copyOf(received.getData(), received.getLength()));
+					if(reply.getXid() == message.getXid())
+						return reply;
+				}
+			} catch(SocketTimeoutException e) {
+				// Sent again
+			}
+		}
+		fail("No reply to the " + message.getMessageType() + " of " + message.getChaddr() + ".");
+		return null;
+	}
+}
@@ -0,0 +1,137 @@
+package DHCP;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the ownership checks of declines and releases of {@link IPPool}, and of the state it keeps.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class IPPoolTest {
+
+	private static final String CLIENT = "SG18SK12LD25BW01";
+
+	private static final String OTHER_CLIENT = "JH57DF98RV15FH95";
+
+	private VirtualClock clock;
+
+	private IPPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		clock = new VirtualClock(1000000);
+		pool = new IPPool(InetAddress.getByName("10.0.0.10"), InetAddress.getByName("10.0.0.20"), 2);
+		pool.setClock(clock);
+	}
+
+	@Test
+	public void decline_LeasedToClient() throws Exception {
+		InetAddress address = leaseTo(CLIENT);
+		assertNotNull(pool.decline(address, CLIENT, clock.currentTimeMillis() + 60000));
+		IPAddress ip = pool.getIPFromPool(address);
+		assertTrue(ip.isLeased());
+		assertEquals("", ip.getMacAddress());
+		assertNull(pool.findIPByMacAddress(CLIENT));
+		assertFalse(pool.isInPoolAndAvailable(address, OTHER_CLIENT));
+	}
+
+	@Test
+	public void decline_OfferedToClient() throws Exception {
+		InetAddress address = pool.reserveAvailableAddress(CLIENT, clock.currentTimeMillis() + 10000);
+		assertNotNull(pool.decline(address, CLIENT, clock.currentTimeMillis() + 60000));
+		assertFalse(pool.isInPoolAndAvailable(address, CLIENT));
+	}
+
+	@Test
+	public void decline_LeasedToOtherClient() throws Exception {
+		InetAddress address = leaseTo(OTHER_CLIENT);
+		assertNull(pool.decline(address, CLIENT, clock.currentTimeMillis() + 60000));
+		IPAddress ip = pool.getIPFromPool(address);
+		assertTrue(ip.isLeased());
+		assertEquals(OTHER_CLIENT, ip.getMacAddress());
+	}
+
+	@Test
+	public void decline_OfferedToOtherClient() throws Exception {
+		InetAddress address = pool.reserveAvailableAddress(OTHER_CLIENT, clock.currentTimeMillis() + 10000);
+		assertNull(pool.decline(address, CLIENT, clock.currentTimeMillis() + 60000));
+		assertTrue(pool.isInPoolAndAvailable(address, OTHER_CLIENT));
+	}
+
+	@Test
+	public void decline_FreeAddress() throws Exception {
+		InetAddress address = InetAddress.getByName("10.0.0.15");
+		assertNull(pool.decline(address, CLIENT, clock.currentTimeMillis() + 60000));
+		assertTrue(pool.isInPoolAndAvailable(address));
+	}
+
+	@Test
+	public void decline_OutsidePool() throws Exception {
+		assertNull(pool.decline(InetAddress.getByName("10.0.1.15"), CLIENT, clock.currentTimeMillis() + 60000));
+	}
+
+	@Test
+	public void decline_ExpiresLikeALease() throws Exception {
+		InetAddress address = leaseTo(CLIENT);
+		pool.decline(address, CLIENT, clock.currentTimeMillis() + 60000);
+		clock.advance(60001);
+		pool.checkPoolLeases();
+		assertTrue(pool.isInPoolAndAvailable(address));
+		assertEquals(0, pool.getIpPool().size());
+	}
+
+	@Test
+	public void release_FreesTheAddressAndItsState() throws Exception {
+		InetAddress address = leaseTo(CLIENT);
+		pool.release(pool.findIPByMacAddress(CLIENT));
+		assertEquals(0, pool.getNumberOfLeasedAddresses());
+		assertEquals(0, pool.getIpPool().size());
+		assertNull(pool.findIPByMacAddress(CLIENT));
+		assertTrue(pool.isInPoolAndAvailable(address, OTHER_CLIENT));
+	}
+
+	@Test
+	public void release_ReturningClientPrefersSameAddress() throws Exception {
+		InetAddress address = leaseTo(CLIENT);
+		pool.release(pool.findIPByMacAddress(CLIENT));
+		assertEquals(address, pool.reserveAvailableAddress(CLIENT, clock.currentTimeMillis() + 10000));
+	}
+
+	@Test
+	public void leaseIfAvailable_OfferedToOtherClient() throws Exception {
+		InetAddress address = pool.reserveAvailableAddress(OTHER_CLIENT, clock.currentTimeMillis() + 10000);
+		assertNull(pool.leaseIfAvailable(address, CLIENT, clock.currentTimeMillis() + 60000));
+		IPAddress ip = pool.leaseIfAvailable(address, OTHER_CLIENT, clock.currentTimeMillis() + 60000);
+		assertNotNull(ip);
+		assertSame(ip, pool.findIPByMacAddress(OTHER_CLIENT));
+	}
+
+	@Test
+	public void checkPoolLeases_ExpiredOfferFreesTheAddress() throws Exception {
+		InetAddress address = pool.reserveAvailableAddress(OTHER_CLIENT, clock.currentTimeMillis() + 10000);
+		clock.advance(10000);
+		pool.checkPoolLeases();
+		assertEquals(0, pool.getIpPool().size());
+		assertTrue(pool.isInPoolAndAvailable(address, CLIENT));
+	}
+
+	/**
+	 * Offers an address to the given client and leases it for a minute.
+	 */
+	private InetAddress leaseTo(String macAddress) throws Exception {
+		InetAddress address = pool.reserveAvailableAddress(macAddress, clock.currentTimeMillis() + 10000);
+		assertNotNull(pool.leaseIfAvailable(address, macAddress, clock.currentTimeMillis() + 60000));
+		return address;
+	}
+}
@@ -0,0 +1,135 @@
+package DHCP;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the replay of the lease changes recorded in a {@link LeaseJournal}.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class LeaseJournalTest {
+
+	private static final long NOW = 1000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	private LeaseJournal journal;
+
+	private ScopeConfiguration configuration;
+
+	@Before
+	public void setUp() throws Exception {
+		file = new File(folder.getRoot(), "leases.journal");
+		journal = new LeaseJournal(file.getPath());
+		Properties scopes = new Properties();
+		scopes.setProperty("scopes", "lan");
+		scopes.setProperty("default.scope", "lan");
+		scopes.setProperty("scope.lan.subnet", "10.0.0.0/24");
+		scopes.setProperty("scope.lan.range", "10.0.0.10-10.0.0.200");
+		configuration = ScopeConfiguration.fromProperties(scopes);
+	}
+
+	@Test
+	public void restore_LastChangeOfEveryAddressWins() throws Exception {
+		journal.append(Arrays.asList(
+				change(LeaseEventType.BIND, "10.0.0.10", "SG18SK12LD25BW01", NOW + 1000),
+				change(LeaseEventType.BIND, "10.0.0.11", "JH57DF98RV15FH95", NOW + 1000),
+				change(LeaseEventType.RENEW, "10.0.0.10", "SG18SK12LD25BW01", NOW + 5000),
+				change(LeaseEventType.RELEASE, "10.0.0.11", "JH57DF98RV15FH95", 0)), false);
+		journal.close();
+
+		assertEquals(1, journal.restore(configuration, NOW));
+		IPPool pool = pool();
+		IPAddress ip = pool.findIPByMacAddress("SG18SK12LD25BW01");
+		assertNotNull(ip);
+		assertEquals(InetAddress.getByName("10.0.0.10"), ip.getIpAddress());
+		assertEquals(NOW + 5000, ip.getLeaseExpirationTime());
+		assertTrue(ip.isLeased());
+		assertNull(pool.findIPByMacAddress("JH57DF98RV15FH95"));
+		assertEquals(1, pool.getNumberOfLeasedAddresses());
+	}
+
+	@Test
+	public void restore_SkipsExpiredLeases() throws Exception {
+		journal.append(Arrays.asList(
+				change(LeaseEventType.BIND, "10.0.0.10", "SG18SK12LD25BW01", NOW - 1),
+				change(LeaseEventType.BIND, "10.0.0.11", "JH57DF98RV15FH95", NOW + 1000),
+				change(LeaseEventType.BIND, "10.0.0.12", "NK18SK12LD25BW02", NOW + 1000),
+				change(LeaseEventType.EXPIRE, "10.0.0.12", "NK18SK12LD25BW02", NOW + 1000)), false);
+		journal.close();
+
+		assertEquals(1, journal.restore(configuration, NOW));
+		assertNull(pool().findIPByMacAddress("SG18SK12LD25BW01"));
+		assertNotNull(pool().findIPByMacAddress("JH57DF98RV15FH95"));
+		assertNull(pool().findIPByMacAddress("NK18SK12LD25BW02"));
+	}
+
+	@Test
+	public void restore_SkipsAddressesOutsideThePools() throws Exception {
+		journal.append(Arrays.asList(change(LeaseEventType.BIND, "10.0.1.10", "SG18SK12LD25BW01", NOW + 1000)), false);
+		journal.close();
+
+		assertEquals(0, journal.restore(configuration, NOW));
+		assertEquals(0, pool().getNumberOfLeasedAddresses());
+	}
+
+	@Test
+	public void restore_TornLastChangeEndsTheJournal() throws Exception {
+		journal.append(Arrays.asList(
+				change(LeaseEventType.BIND, "10.0.0.10", "SG18SK12LD25BW01", NOW + 1000),
+				change(LeaseEventType.BIND, "10.0.0.11", "JH57DF98RV15FH95", NOW + 1000)), false);
+		journal.close();
+		// A crash in the middle of the next change: its type and half of its address
+		try(FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(new byte[] {(byte) LeaseEventType.BIND.ordinal(), 10, 0});
+		}
+
+		assertEquals(2, journal.read().size());
+		assertEquals(2, journal.restore(configuration, NOW));
+	}
+
+	@Test
+	public void restore_AfterRewrite() throws Exception {
+		journal.append(Arrays.asList(
+				change(LeaseEventType.BIND, "10.0.0.10", "SG18SK12LD25BW01", NOW + 1000),
+				change(LeaseEventType.RELEASE, "10.0.0.10", "SG18SK12LD25BW01", 0)), false);
+		journal.rewrite(Arrays.asList(change(LeaseEventType.BIND, "10.0.0.20", "JH57DF98RV15FH95", NOW + 1000)));
+		journal.append(Arrays.asList(change(LeaseEventType.RENEW, "10.0.0.20", "JH57DF98RV15FH95", NOW + 2000)), false);
+		journal.close();
+
+		assertEquals(1, journal.getAppendedRecords());
+		assertEquals(1, journal.restore(configuration, NOW));
+		assertEquals(NOW + 2000, pool().findIPByMacAddress("JH57DF98RV15FH95").getLeaseExpirationTime());
+	}
+
+	@Test
+	public void restore_MissingJournal() throws Exception {
+		assertEquals(0, journal.restore(configuration, NOW));
+	}
+
+	private IPPool pool() {
+		return configuration.getScopes().get(0).getPool();
+	}
+
+	private static LeaseEvent change(LeaseEventType type, String address, String macAddress, long leaseExpirationTime) throws Exception {
+		return new LeaseEvent(type, InetAddress.getByName(address), macAddress, leaseExpirationTime);
+	}
+}
@@ -0,0 +1,87 @@
+package DHCP;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.InetAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the longest prefix match of {@link ScopeTrie}.
+ *
+ * @author Laurent De Laere
+ * 		   Simon Geirnaert
+ */
+public class ScopeTrieTest {
+
+	private ScopeTrie trie;
+
+	private Scope wide;
+
+	private Scope office;
+
+	private Scope floor;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new ScopeTrie();
+		wide = scope("wide", "10.0.0.0", 8);
+		office = scope("office", "10.1.0.0", 16);
+		floor = scope("floor", "10.1.2.0", 24);
+		// Inserted out of order: the match does not depend on the order of insertion
+		trie.insert(floor);
+		trie.insert(wide);
+		trie.insert(office);
+	}
+
+	@Test
+	public void lookup_LongestPrefixWins() throws Exception {
+		assertSame(floor, trie.lookup(InetAddress.getByName("10.1.2.3")));
+		assertSame(office, trie.lookup(InetAddress.getByName("10.1.3.3")));
+		assertSame(wide, trie.lookup(InetAddress.getByName("10.200.0.1")));
+	}
+
+	@Test
+	public void lookup_SubnetBoundaries() throws Exception {
+		assertSame(floor, trie.lookup(InetAddress.getByName("10.1.2.0")));
+		assertSame(floor, trie.lookup(InetAddress.getByName("10.1.2.255")));
+		assertSame(office, trie.lookup(InetAddress.getByName("10.1.1.255")));
+		assertSame(office, trie.lookup(InetAddress.getByName("10.1.255.255")));
+	}
+
+	@Test
+	public void lookup_NoMatch() throws Exception {
+		assertNull(trie.lookup(InetAddress.getByName("11.0.0.1")));
+		assertNull(trie.lookup(InetAddress.getByName("192.168.1.1")));
+	}
+
+	@Test
+	public void lookup_HighAddresses() throws Exception {
+		Scope high = scope("high", "192.168.0.0", 16);
+		trie.insert(high);
+		assertSame(high, trie.lookup(InetAddress.getByName("192.168.100.1")));
+		assertSame(wide, trie.lookup(InetAddress.getByName("10.2.200.1")));
+	}
+
+	@Test
+	public void lookup_EmptyPrefixMatchesEverything() throws Exception {
+		Scope any = scope("any", "0.0.0.0", 0);
+		trie.insert(any);
+		assertSame(any, trie.lookup(InetAddress.getByName("172.16.0.1")));
+		assertSame(floor, trie.lookup(InetAddress.getByName("10.1.2.3")));
+		assertEquals(4, trie.getNumberOfScopes());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void insert_SameSubnetTwice() throws Exception {
+		trie.insert(scope("other", "10.1.0.0", 16));
+	}
+
+	private static Scope scope(String name, String subnet, int prefixLength) throws Exception {
+		InetAddress address = InetAddress.getByName(subnet);
+		return new Scope(name, address, prefixLength, new IPPool(address, address));
+	}
+}